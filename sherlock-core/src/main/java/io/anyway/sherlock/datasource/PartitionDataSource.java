@@ -46,4 +46,46 @@ public interface PartitionDataSource{
 	 * @return
      */
 	ExecutorService getExecutorService();
+	
+	/**
+	 * 获取对冲查询使用的线程池，不排队，线程用完时拒绝任务，只在开启对冲读时存在
+	 * @return
+	 */
+	ExecutorService getHedgeExecutorService();
+	
+	/**
+	 * 获取单个查询在该分片上最多使用的连接数，路由到该分片的执行单元超过此数量时共用连接
+	 * @return 连接数
+	 */
+	int getConnectionBudget();
+	
+	/**
+	 * 获取对冲读的等待时间，只读查询超过该时间未返回则在其他数据源上发起相同的查询
+	 * @return 毫秒数，-1表示不进行对冲读
+	 */
+	long getHedgeDelay();
+	
+	/**
+	 * 预留一次对冲读的额度，对冲读占全部读操作的比例不能超过设置的最大比例
+	 * @return 是否预留成功，超过对冲比例返回false
+	 */
+	boolean reserveHedge();
+	
+	/**
+	 * 归还预留后没有发起的对冲读额度
+	 */
+	void releaseHedge();
+	
+	/**
+	 * 获取对冲读使用的数据源，调用前需要先预留对冲额度
+	 * @param dataSource 正在执行查询的数据源
+	 * @return 其他只读数据源或主数据源，没有可用的数据源返回null
+	 */
+	DataSource getHedgeDataSource(DataSource dataSource);
+	
+	/**
+	 * 记录只读查询的耗时
+	 * @param millis 毫秒数
+	 */
+	void recordReadLatency(long millis);
 }
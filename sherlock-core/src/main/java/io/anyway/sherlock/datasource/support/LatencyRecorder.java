@@ -0,0 +1,54 @@
+package io.anyway.sherlock.datasource.support;
+
+import java.util.Arrays;
+
+/**
+ * 记录分片最近查询耗时的环形缓冲区，用于估算指定百分位的耗时
+ * @author yangzz
+ *
+ */
+public class LatencyRecorder {
+	
+	//样本数不足时百分位没有参考意义
+	private static final int MIN_SAMPLES= 32;
+	
+	//每记录多少个样本重新计算一次百分位
+	private static final int REFRESH_INTERVAL= 32;
+	
+	private final long[] samples;
+	
+	private final double percentile;
+	
+	private int count;
+	
+	private int position;
+	
+	private long cachedPercentile= -1;
+	
+	public LatencyRecorder(int capacity,double percentile){
+		this.samples= new long[capacity];
+		this.percentile= percentile;
+	}
+	
+	public synchronized void record(long millis){
+		samples[position]= millis;
+		position= (position+ 1) % samples.length;
+		if(count< samples.length){
+			count++;
+		}
+		if(count>= MIN_SAMPLES && (cachedPercentile< 0 || position % REFRESH_INTERVAL == 0)){
+			long[] sorted= Arrays.copyOf(samples, count);
+			Arrays.sort(sorted);
+			int idx= (int)Math.ceil(percentile/ 100* count)- 1;
+			cachedPercentile= sorted[Math.min(Math.max(idx, 0), count- 1)];
+		}
+	}
+	
+	/**
+	 * 获取百分位耗时
+	 * @return 毫秒数，样本不足时返回-1
+	 */
+	public synchronized long getPercentile(){
+		return cachedPercentile;
+	}
+}
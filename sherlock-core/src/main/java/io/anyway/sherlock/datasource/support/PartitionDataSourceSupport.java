@@ -3,11 +3,13 @@ package io.anyway.sherlock.datasource.support;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.sql.DataSource;
 
 import io.anyway.sherlock.datasource.DataSourceReadStrategy;
 import io.anyway.sherlock.datasource.PartitionDataSource;
+import io.anyway.sherlock.metrics.ShardingMetrics;
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.support.BeanDefinitionBuilder;
@@ -49,6 +51,48 @@ public class PartitionDataSourceSupport implements PartitionDataSource,Applicati
     
     private int timeout= 60;
     
+    /**
+     * 读操作超过最近读延迟的该百分位时发起对冲读，0表示不对冲
+     */
+    private double hedgePercentile= 0;
+    
+    private long hedgeMinDelay= 10;
+    
+    /**
+     * 对冲读占全部读操作的最大比例
+     */
+    private double hedgeMaxRatio= 0.1;
+    
+    /**
+     * 单个查询在该分片上最多使用的连接数，0表示poolSize的一半
+     */
+    private int connectionBudget= 0;
+    
+    private LatencyRecorder latencyRecorder;
+    
+    private final AtomicLong reads= new AtomicLong();
+    
+    private final AtomicLong hedges= new AtomicLong();
+    
+	public void setHedgePercentile(double hedgePercentile){
+		Assert.isTrue(hedgePercentile>= 0 && hedgePercentile< 100, "hedgePercentile must be in [0,100)");
+		this.hedgePercentile= hedgePercentile;
+		this.latencyRecorder= hedgePercentile> 0 ? new LatencyRecorder(1024,hedgePercentile) : null;
+	}
+	
+	public void setHedgeMinDelay(long hedgeMinDelay){
+		this.hedgeMinDelay= hedgeMinDelay;
+	}
+	
+	public void setHedgeMaxRatio(double hedgeMaxRatio){
+		this.hedgeMaxRatio= hedgeMaxRatio;
+	}
+	
+	public void setConnectionBudget(int connectionBudget){
+		Assert.isTrue(connectionBudget>= 0, "connectionBudget must not be negative");
+		this.connectionBudget= connectionBudget;
+	}
+	
 	public void setReadStrategy(String readStrategy){
 		this.readStrategy= readStrategy;
 	}
@@ -119,6 +163,72 @@ public class PartitionDataSourceSupport implements PartitionDataSource,Applicati
         return ((ThreadPoolTaskExecutor)applicationContext.getBean(name+"-"+"threadPool")).getThreadPoolExecutor();
     }
 
+    @Override
+    public ExecutorService getHedgeExecutorService() {
+        Assert.state(hedgePercentile> 0, "hedge read is not enabled on partition ["+name+"]");
+        return ((ThreadPoolTaskExecutor)applicationContext.getBean(name+"-"+"hedgePool")).getThreadPoolExecutor();
+    }
+
+    @Override
+    public int getConnectionBudget(){
+    	//默认留一半连接给其他请求
+    	return connectionBudget> 0 ? connectionBudget : Math.max(1, poolSize/ 2);
+    }
+
+    @Override
+    public long getHedgeDelay(){
+    	if(latencyRecorder== null){
+    		return -1;
+    	}
+    	long percentile= latencyRecorder.getPercentile();
+    	return percentile< 0 ? -1 : Math.max(percentile, hedgeMinDelay);
+    }
+    
+    @Override
+    public boolean reserveHedge(){
+    	long count;
+    	do{
+    		count= hedges.get();
+    		if(count+ 1 > reads.get()* hedgeMaxRatio){
+    			ShardingMetrics.increment(ShardingMetrics.HEDGE_SKIPPED);
+    			return false;
+    		}
+    	}while(!hedges.compareAndSet(count, count+ 1));
+    	return true;
+    }
+    
+    @Override
+    public void releaseHedge(){
+    	hedges.decrementAndGet();
+    }
+    
+    @Override
+    public DataSource getHedgeDataSource(DataSource dataSource){
+    	List<DataSource> candidates= new ArrayList<DataSource>();
+    	if(slaveDataSources!= null){
+    		for(DataSource each: slaveDataSources){
+    			if(each!= dataSource){
+    				candidates.add(each);
+    			}
+    		}
+    	}
+    	if(candidates.isEmpty() && masterDataSource!= dataSource){
+    		candidates.add(masterDataSource);
+    	}
+    	if(candidates.isEmpty()){
+    		return null;
+    	}
+    	return candidates.get((int)(hedges.get() % candidates.size()));
+    }
+    
+    @Override
+    public void recordReadLatency(long millis){
+    	if(latencyRecorder!= null){
+    		reads.incrementAndGet();
+    		latencyRecorder.record(millis);
+    	}
+    }
+
     @Override
     public int hashCode() {
         final int prime = 31;
@@ -159,11 +269,28 @@ public class PartitionDataSourceSupport implements PartitionDataSource,Applicati
     @Override
     public void afterPropertiesSet() throws Exception {
         BeanDefinitionBuilder beanDefinitionBuilder= BeanDefinitionBuilder.genericBeanDefinition(ThreadPoolTaskExecutor.class);
+        //队列无界时线程数不会超过corePoolSize，核心线程数必须等于poolSize，分片查询才能并行执行
+        beanDefinitionBuilder.addPropertyValue("corePoolSize",poolSize);
         beanDefinitionBuilder.addPropertyValue("maxPoolSize",poolSize);
         beanDefinitionBuilder.addPropertyValue("keepAliveSeconds",timeout);
+        beanDefinitionBuilder.addPropertyValue("allowCoreThreadTimeOut",true);
 
         ConfigurableApplicationContext configurableApplicationContext= (ConfigurableApplicationContext)applicationContext;
         BeanDefinitionRegistry beanDefinitionRegistry= (BeanDefinitionRegistry)configurableApplicationContext.getBeanFactory();
         beanDefinitionRegistry.registerBeanDefinition(name+"-"+"threadPool",beanDefinitionBuilder.getRawBeanDefinition());
+
+        //没有开启对冲读时不创建对冲线程池
+        if(hedgePercentile<= 0){
+        	return;
+        }
+        //对冲查询单独的线程池，按对冲比例确定大小，不排队
+        int hedgePoolSize= Math.max(1, (int)Math.ceil(poolSize* hedgeMaxRatio));
+        BeanDefinitionBuilder hedgeDefinitionBuilder= BeanDefinitionBuilder.genericBeanDefinition(ThreadPoolTaskExecutor.class);
+        hedgeDefinitionBuilder.addPropertyValue("corePoolSize",hedgePoolSize);
+        hedgeDefinitionBuilder.addPropertyValue("maxPoolSize",hedgePoolSize);
+        hedgeDefinitionBuilder.addPropertyValue("queueCapacity",0);
+        hedgeDefinitionBuilder.addPropertyValue("keepAliveSeconds",timeout);
+        hedgeDefinitionBuilder.addPropertyValue("allowCoreThreadTimeOut",true);
+        beanDefinitionRegistry.registerBeanDefinition(name+"-"+"hedgePool",hedgeDefinitionBuilder.getRawBeanDefinition());
     }
 }
@@ -0,0 +1,32 @@
+package io.anyway.sherlock.executor;
+
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * 按完成顺序获取多个Statement操作的执行结果
+ * @author yangzz
+ *
+ * @param <OUT> 执行结果类型
+ */
+public interface ExecuteCompletion<OUT> {
+
+	/**
+	 * 是否还有未获取的执行结果
+	 * @return
+	 */
+	boolean hasNext();
+
+	/**
+	 * 获取下一个最先完成的执行结果，如果都未完成则阻塞等待
+	 * @return 执行结果
+	 * @throws SQLException 执行失败或等待超时
+	 */
+	OUT next() throws SQLException;
+
+	/**
+	 * 取消所有未完成的执行任务，正在执行的Statement会被cancel
+	 * @return 已完成但还未获取的执行结果，由调用方负责释放
+	 */
+	List<OUT> cancel();
+}
@@ -82,4 +82,10 @@ public interface ExecuteContext{
 	 */
 	DatabaseType getDatabaseType();
 	
+	/**
+	 * 获取当前SQL执行的截止时间，由Statement的queryTimeout确定
+	 * @return 截止时间的毫秒数，0表示没有设置
+	 */
+	long getDeadline();
+	
 }
@@ -3,6 +3,8 @@ package io.anyway.sherlock.executor;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 import io.anyway.sherlock.executor.support.ExecuteStatementWrapper;
 
@@ -18,4 +20,24 @@ public interface ExecuteStatementProcessor {
 	 */
 	<IN extends Statement, OUT> List<OUT> execute(ExecuteContext ctx,List<ExecuteStatementWrapper<IN>> wrappers,ExecuteStatementCallback<IN, OUT> callback) throws SQLException;
 	
+	/**
+	 * 提交Statement操作集合后立即返回，执行结果按完成的先后顺序获取，
+	 * 用于无需排序的只读查询边执行边归并
+	 * @param ctx ShardingConnection对应的上下文
+	 * @param wrappers ExecuteStatementWrapper列表，IN的类型：Statement|PreparedStatement
+	 * @param callback Statement处理回调方法
+	 * @return 按完成顺序获取结果的ExecuteCompletion
+	 * @throws SQLException
+	 */
+	<IN extends Statement, OUT> ExecuteCompletion<OUT> executeStreaming(ExecuteContext ctx,List<ExecuteStatementWrapper<IN>> wrappers,ExecuteStatementCallback<IN, OUT> callback) throws SQLException;
+	
+	/**
+	 * 提交分片上的其他操作，如获取连接，和Statement操作使用相同的执行方式
+	 * @param ctx ShardingConnection对应的上下文
+	 * @param dataSourceName 分片数据源名称
+	 * @param task 执行任务
+	 * @return Future
+	 */
+	<T> Future<T> submit(ExecuteContext ctx,String dataSourceName,Callable<T> task);
+	
 }
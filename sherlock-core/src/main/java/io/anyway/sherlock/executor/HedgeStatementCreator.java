@@ -0,0 +1,20 @@
+package io.anyway.sherlock.executor;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * 对冲读时在其他只读数据源上创建相同的Statement
+ * @author yangzz
+ *
+ * @param <T> Statement|PreparedStatement
+ */
+public interface HedgeStatementCreator<T extends Statement> {
+	
+	/**
+	 * 在分片的其他只读数据源或主数据源上创建Statement，PreparedStatement需要设置好参数
+	 * @return Statement，没有可用的数据源时返回null
+	 * @throws SQLException
+	 */
+	T createHedgeStatement() throws SQLException;
+}
@@ -0,0 +1,118 @@
+package io.anyway.sherlock.executor.support;
+
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import io.anyway.sherlock.executor.ExecuteCompletion;
+import io.anyway.sherlock.metrics.ShardingMetrics;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * 按完成顺序获取执行结果，任务结束（包括被取消）后把自己的序号放入完成队列
+ * @author yangzz
+ *
+ * @param <OUT> 执行结果类型
+ */
+class ExecuteCompletionSupport<OUT> implements ExecuteCompletion<OUT> {
+
+	private Log logger = LogFactory.getLog(ExecuteCompletionSupport.class);
+
+	private final List<Future<OUT>> futures;
+
+	private final List<? extends Statement> statements;
+
+	private final BlockingQueue<Integer> completed;
+
+	private final long deadline;
+
+	private final boolean[] taken;
+
+	private int remaining;
+
+	ExecuteCompletionSupport(List<Future<OUT>> futures,List<? extends Statement> statements,BlockingQueue<Integer> completed,long deadline){
+		this.futures= futures;
+		this.statements= statements;
+		this.completed= completed;
+		this.deadline= deadline;
+		this.taken= new boolean[futures.size()];
+		this.remaining= futures.size();
+	}
+
+	@Override
+	public boolean hasNext() {
+		return remaining > 0;
+	}
+
+	@Override
+	public OUT next() throws SQLException {
+		if(remaining== 0){
+			throw new SQLException("No more execute result");
+		}
+		try{
+			Integer index= completed.poll(ExecuteProcessorSupport.getRemaining(deadline), TimeUnit.MILLISECONDS);
+			if(index== null){
+				throw new TimeoutException("Wait execute result timeout");
+			}
+			remaining--;
+			taken[index]= true;
+			return futures.get(index).get(ExecuteProcessorSupport.getRemaining(deadline), TimeUnit.MILLISECONDS);
+		}catch(TimeoutException e){
+			ShardingMetrics.increment(ShardingMetrics.STATEMENT_TIMEOUT);
+			close(cancel());
+			throw new SQLTimeoutException(e.getMessage(),e);
+		}catch(Exception e){
+			//只要有一个有错就取消其他任务，合并结果没意义
+			close(cancel());
+			throw new SQLException(e.getMessage(),e);
+		}
+	}
+
+	/**
+	 * 出错时已完成的结果不会返回给调用者，需要在这里关闭
+	 */
+	private void close(List<OUT> results){
+		for(OUT each: results){
+			ExecuteProcessorSupport.closeResult(each);
+		}
+	}
+
+	@Override
+	public List<OUT> cancel() {
+		List<OUT> result= new ArrayList<OUT>();
+		for(int i=0;i<futures.size();i++){
+			if(taken[i]){
+				continue;
+			}
+			taken[i]= true;
+			Future<OUT> each= futures.get(i);
+			if(each.isDone()){
+				try{
+					result.add(each.get());
+				}catch(Exception e){
+					//执行失败的任务没有结果需要释放
+				}
+				continue;
+			}
+			each.cancel(true);
+			//中断线程并不能终止数据库端的执行，需要取消正在执行的Statement
+			try{
+				statements.get(i).cancel();
+				ShardingMetrics.increment(ShardingMetrics.STATEMENT_CANCELLED);
+			}catch(SQLException e){
+				if(logger.isWarnEnabled()){
+					logger.warn("cancel statement error: "+e.getMessage());
+				}
+			}
+		}
+		remaining= 0;
+		return result;
+	}
+}
@@ -29,6 +29,8 @@ public class ExecuteContextSupport implements ExecuteContext{
 	
 	private List<Object> parameters;
 	
+	private long deadline;
+	
 	private ShardingConnection shardingConnection;
 	
 	private ShardingDataSourceRepository shardingDataSourceRepository;
@@ -133,6 +135,15 @@ public class ExecuteContextSupport implements ExecuteContext{
 		return logicTableRepository;
 	}
 
+	public void setDeadline(long deadline){
+		this.deadline= deadline;
+	}
+
+	@Override
+	public long getDeadline() {
+		return deadline;
+	}
+
 	@Override
 	public DatabaseType getDatabaseType() {
 		return shardingDataSourceRepository.getDatabaseType();
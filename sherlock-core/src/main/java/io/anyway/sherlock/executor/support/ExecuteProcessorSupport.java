@@ -1,22 +1,37 @@
 package io.anyway.sherlock.executor.support;
 
+import java.sql.Connection;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+import io.anyway.sherlock.datasource.PartitionDataSource;
+import io.anyway.sherlock.executor.ExecuteCompletion;
 import io.anyway.sherlock.executor.ExecuteContext;
 import io.anyway.sherlock.executor.ExecuteStatementCallback;
 import io.anyway.sherlock.executor.ExecuteStatementProcessor;
+import io.anyway.sherlock.merger.resultset.memory.MaterializedResultSet;
+import io.anyway.sherlock.metrics.ShardingMetrics;
+import io.anyway.sherlock.router.support.SQLExecutionUnit;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
@@ -29,10 +44,14 @@ public class ExecuteProcessorSupport implements ExecuteStatementProcessor {
 
 	private Log logger = LogFactory.getLog(ExecuteProcessorSupport.class);
 
+	private final static int OPEN= -1;
+	
+	private final static int ABANDONED= -2;
+
 	private long timeout= 30;
 	
 	/**
-	 * 设置执行Statement操作的超时时间，默认是30秒
+	 * 设置执行Statement操作的超时时间，默认是30秒，所有分片共用此时限
 	 * @param timeout
 	 */
 	public void setTimeout(long timeout){
@@ -44,10 +63,17 @@ public class ExecuteProcessorSupport implements ExecuteStatementProcessor {
 			final ExecuteContext ctx,
 			List<ExecuteStatementWrapper<IN>> wrappers,
 			final ExecuteStatementCallback<IN, OUT> executeUnit) throws SQLException{
+		//所有分片共用一个截止时间，而不是每个分片单独计算超时
+		final long deadline= getDeadline(ctx);
+		//只读查询在慢的分片上发起对冲读，共用连接时不能对冲
+		if(ctx.isSimplyDQLOperation() && isHedgeable(ctx,wrappers) && !isConnectionShared(wrappers)){
+			return executeHedged(ctx,wrappers,executeUnit,deadline);
+		}
 		//如果只有一个Statement对象
 		if(wrappers.size() == 1){
-			String actualSql= wrappers.get(0).getSQLExecutionUnit().getShardingSql();
-			return Collections.singletonList(executeUnit.execute(actualSql,wrappers.get(0).getStatement()));
+			ExecuteStatementWrapper<IN> wrapper= wrappers.get(0);
+			return Collections.singletonList(ctx.isSimplyDQLOperation() ? 
+					executeRead(ctx,wrapper,wrapper.getStatement(),executeUnit,deadline) : execute(wrapper,executeUnit,deadline));
 		} 
 		//或者是DML或InTransaction操作则需要顺序执行
 		if(!ctx.isSimplyDQLOperation()){
@@ -63,15 +89,16 @@ public class ExecuteProcessorSupport implements ExecuteStatementProcessor {
 				logger.info("merge ExecuteStatementWrapper by same dataSource name: " + hash);
 			}
 			List<Future<List<OUT>>> futures = new ArrayList<Future<List<OUT>>>(hash.size());
+			List<List<ExecuteStatementWrapper<IN>>> groups= new ArrayList<List<ExecuteStatementWrapper<IN>>>(hash.size());
 			for(final Entry<String,List<ExecuteStatementWrapper<IN>>> each: hash.entrySet()){
-				ExecutorService executorService = ctx.getShardingDataSourceRepository().getPartitionDataSource(each.getKey()).getExecutorService();
-				futures.add(executorService.submit(new Callable<List<OUT>>(){
+				groups.add(each.getValue());
+				futures.add(submit(ctx,each.getKey(),new Callable<List<OUT>>(){
 					@Override
 					public List<OUT> call() throws Exception {
 						List<OUT> rs= new ArrayList<OUT>(each.getValue().size());
 						for(ExecuteStatementWrapper<IN> it: each.getValue()){
 							//只有有一个有错就抛出，认为整个操作不成功，合并结果没意义
-							rs.add(executeUnit.execute(it.getSQLExecutionUnit().getShardingSql(),it.getStatement()));
+							rs.add(execute(it,executeUnit,deadline));
 						}
 						return rs;
 					}
@@ -80,46 +107,563 @@ public class ExecuteProcessorSupport implements ExecuteStatementProcessor {
 			try {
 				List<OUT> result = new ArrayList<OUT>(wrappers.size());
 				for (Future<List<OUT>> each : futures) {
-					result.addAll(each.get(timeout,TimeUnit.SECONDS));
+					result.addAll(each.get(getRemaining(deadline),TimeUnit.MILLISECONDS));
 				}
 				return result;
 			} catch (Exception e) {
 				//cancel other running task，release thread immediately
-				for (Future<List<OUT>> each : futures) {
-					if(each instanceof FutureTask){
-						((FutureTask<List<OUT>>)each).cancel(true);
+				for (int i=0;i<futures.size();i++) {
+					if(!futures.get(i).isDone()){
+						futures.get(i).cancel(true);
+						cancel(groups.get(i));
 					}
 				}
-				throw new SQLException(e.getMessage(),e);
+				throw translateException(e);
 			}
 		}
 		//如果是只读查询需要进行并行处理
 		List<Future<OUT>> futures = new ArrayList<Future<OUT>>(wrappers.size());
-		for (final ExecuteStatementWrapper<IN> each : wrappers) {
-			//根据不同的数据源获取不同的线程池对象
-			ExecutorService executorService = ctx.getShardingDataSourceRepository().getPartitionDataSource(each.getSQLExecutionUnit().getDataSourceName()).getExecutorService();
-			futures.add(executorService.submit(new Callable<OUT>() {
-				@Override
-				public OUT call() throws Exception {
-					return executeUnit.execute(each.getSQLExecutionUnit().getShardingSql(),each.getStatement());
-				}
-			}));
-		}
+		submitReads(ctx,wrappers,executeUnit,deadline,null,futures);
 		//依次获取执行结果
+		List<OUT> result = new ArrayList<OUT>(wrappers.size());
 		try {
-			List<OUT> result = new ArrayList<OUT>(wrappers.size());
 			for (Future<OUT> each : futures) {
-				result.add(each.get(timeout,TimeUnit.SECONDS));
+				result.add(each.get(getRemaining(deadline),TimeUnit.MILLISECONDS));
 			}
 			return result;
 		} catch (Exception e) {
 			//cancel other running task，release thread immediately
-			for (Future<OUT> each : futures) {
-				if(each instanceof FutureTask){
-					((FutureTask<OUT>)each).cancel(true);
+			for (int i=0;i<futures.size();i++) {
+				if(i< result.size()){
+					closeResult(result.get(i));
+				}else if(futures.get(i).isDone()){
+					closeResult(getQuietly(futures.get(i)));
+				}else{
+					futures.get(i).cancel(true);
+					cancel(Collections.singletonList(wrappers.get(i)));
 				}
 			}
+			throw translateException(e);
+		}
+	}
+	
+	@Override
+	public <IN extends Statement, OUT> ExecuteCompletion<OUT> executeStreaming(
+			final ExecuteContext ctx,
+			List<ExecuteStatementWrapper<IN>> wrappers,
+			final ExecuteStatementCallback<IN, OUT> executeUnit) throws SQLException{
+		final long deadline= getDeadline(ctx);
+		final BlockingQueue<Integer> completed= new LinkedBlockingQueue<Integer>();
+		List<Future<OUT>> futures = new ArrayList<Future<OUT>>(wrappers.size());
+		try{
+			submitReads(ctx,wrappers,executeUnit,deadline,completed,futures);
+		}catch(RuntimeException e){
+			//线程池拒绝任务时取消已提交的任务
+			for (Future<OUT> each : futures) {
+				each.cancel(true);
+			}
 			throw new SQLException(e.getMessage(),e);
 		}
+		List<IN> statements= new ArrayList<IN>(wrappers.size());
+		for (ExecuteStatementWrapper<IN> each : wrappers) {
+			statements.add(each.getStatement());
+		}
+		return new ExecuteCompletionSupport<OUT>(futures, statements, completed, deadline);
+	}
+	
+	/**
+	 * 提交只读查询，每个连接一个任务。超过分片连接预算的执行单元共用连接，
+	 * 同一连接上的执行单元顺序执行，除最后一个外的结果集先读取到内存中再执行下一个
+	 * @param completed 执行单元结束时放入其序号，为null则不通知
+	 * @param futures 和wrappers一一对应的执行结果
+	 */
+	private <IN extends Statement, OUT> void submitReads(
+			final ExecuteContext ctx,
+			List<ExecuteStatementWrapper<IN>> wrappers,
+			final ExecuteStatementCallback<IN, OUT> executeUnit,
+			final long deadline,
+			final BlockingQueue<Integer> completed,
+			List<Future<OUT>> futures) throws SQLException{
+		Map<Connection,List<Integer>> groups= groupByConnection(wrappers);
+		List<FutureTask<OUT>> tasks= new ArrayList<FutureTask<OUT>>(Collections.<FutureTask<OUT>>nCopies(wrappers.size(), null));
+		List<Future<?>> submitted= new ArrayList<Future<?>>(groups.size());
+		for(List<Integer> group: groups.values()){
+			for(int k=0;k<group.size();k++){
+				final int index= group.get(k);
+				final ExecuteStatementWrapper<IN> each= wrappers.get(index);
+				final boolean materialize= k< group.size()- 1;
+				tasks.set(index, new ReadTask<OUT>(new Callable<OUT>() {
+					@Override
+					public OUT call() throws Exception {
+						OUT result= executeRead(ctx,each,each.getStatement(),executeUnit,deadline);
+						return materialize ? materialize(result) : result;
+					}
+				},index,completed));
+			}
+			final List<FutureTask<OUT>> sequence= new ArrayList<FutureTask<OUT>>(group.size());
+			for(Integer index: group){
+				sequence.add(tasks.get(index));
+			}
+			String dataSourceName= wrappers.get(group.get(0)).getSQLExecutionUnit().getDataSourceName();
+			try{
+				submitted.add(submit(ctx,dataSourceName,new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						runSequentially(sequence);
+						return null;
+					}
+				}));
+			}catch(RuntimeException e){
+				for(Future<?> each: submitted){
+					each.cancel(true);
+				}
+				throw e;
+			}
+		}
+		futures.addAll(tasks);
+	}
+	
+	private <OUT> void runSequentially(List<FutureTask<OUT>> sequence){
+		for(int i=0;i<sequence.size();i++){
+			FutureTask<OUT> each= sequence.get(i);
+			each.run();
+			if(sequence.size()== 1){
+				return;
+			}
+			try{
+				each.get();
+			}catch(Exception e){
+				//连接上前面的查询失败，后面的查询不再执行
+				for(int j=i+ 1;j<sequence.size();j++){
+					sequence.get(j).cancel(false);
+				}
+				return;
+			}
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	private <OUT> OUT materialize(OUT result) throws SQLException{
+		if(!(result instanceof ResultSet)){
+			return result;
+		}
+		ShardingMetrics.increment(ShardingMetrics.RESULTSET_MATERIALIZED);
+		return (OUT)new MaterializedResultSet((ResultSet)result);
+	}
+	
+	/**
+	 * 按Statement所属的连接分组，保持执行单元原有的顺序
+	 */
+	private <IN extends Statement> Map<Connection,List<Integer>> groupByConnection(List<ExecuteStatementWrapper<IN>> wrappers) throws SQLException{
+		Map<Connection,List<Integer>> result= new IdentityHashMap<Connection,List<Integer>>();
+		for(int i=0;i<wrappers.size();i++){
+			Connection connection= wrappers.get(i).getStatement().getConnection();
+			List<Integer> group= result.get(connection);
+			if(group== null){
+				result.put(connection, group= new ArrayList<Integer>());
+			}
+			group.add(i);
+		}
+		return result;
+	}
+	
+	private <IN extends Statement> boolean isConnectionShared(List<ExecuteStatementWrapper<IN>> wrappers) throws SQLException{
+		return groupByConnection(wrappers).size()< wrappers.size();
+	}
+	
+	/**
+	 * 只读查询执行时同时开始计时，第一个返回的结果胜出，
+	 * 超过分片对冲等待时间还未返回的查询会在其他数据源上再执行一次，另一个查询随即被cancel
+	 */
+	private <IN extends Statement, OUT> List<OUT> executeHedged(
+			ExecuteContext ctx,
+			List<ExecuteStatementWrapper<IN>> wrappers,
+			ExecuteStatementCallback<IN, OUT> executeUnit,
+			long deadline) throws SQLException{
+		int size= wrappers.size();
+		//完成队列中序号*2表示原查询，序号*2+1表示对冲查询
+		BlockingQueue<Integer> completed= new LinkedBlockingQueue<Integer>();
+		List<Future<OUT>> primaries= new ArrayList<Future<OUT>>(size);
+		List<Future<OUT>> hedges= new ArrayList<Future<OUT>>(Collections.<Future<OUT>>nCopies(size, null));
+		List<IN> hedgeStatements= new ArrayList<IN>(Collections.<IN>nCopies(size, null));
+		List<OUT> result= new ArrayList<OUT>(Collections.<OUT>nCopies(size, null));
+		long[] hedgeAt= new long[size];
+		int[] running= new int[size];
+		boolean[] done= new boolean[size];
+		//先返回结果的查询占用该分片，另一个查询或放弃等待后返回的查询自己关闭结果
+		int[] winners= new int[size];
+		Arrays.fill(winners, OPEN);
+		long begin= System.currentTimeMillis();
+		try{
+			for(int i=0;i<size;i++){
+				ExecuteStatementWrapper<IN> each= wrappers.get(i);
+				String dataSourceName= each.getSQLExecutionUnit().getDataSourceName();
+				long delay= each.getHedgeCreator()== null ? -1 : getPartitionDataSource(ctx,dataSourceName).getHedgeDelay();
+				hedgeAt[i]= delay< 0 ? 0 : begin+ delay;
+				running[i]= 1;
+				primaries.add(submit(ctx,dataSourceName,
+						newHedgeTask(ctx,each,immediate(each.getStatement()),executeUnit,deadline,completed,winners,i* 2)));
+			}
+			int pending= size;
+			while(pending> 0){
+				long wait= getRemaining(deadline);
+				if(wait== 0){
+					throw new TimeoutException("Wait execute result timeout");
+				}
+				long now= System.currentTimeMillis();
+				for(int i=0;i<size;i++){
+					if(hedgeAt[i]> 0){
+						wait= Math.min(wait, Math.max(hedgeAt[i]- now, 0));
+					}
+				}
+				Integer token= completed.poll(wait, TimeUnit.MILLISECONDS);
+				if(token== null){
+					now= System.currentTimeMillis();
+					for(int i=0;i<size;i++){
+						if(hedgeAt[i]> 0 && hedgeAt[i]<= now){
+							hedgeAt[i]= 0;
+							issueHedge(ctx,wrappers.get(i),executeUnit,deadline,completed,winners,i,hedges,hedgeStatements,running);
+						}
+					}
+					continue;
+				}
+				int i= token/ 2;
+				boolean hedged= token% 2== 1;
+				//没有创建出Statement的对冲任务不计入执行中的查询，它的结束或失败都不影响原查询
+				if(done[i] || hedged && hedgeStatements.get(i)== null){
+					continue;
+				}
+				OUT value;
+				try{
+					value= (hedged ? hedges : primaries).get(i).get();
+				}catch(ExecutionException e){
+					//另一个查询还在执行则继续等待
+					if(--running[i]> 0){
+						continue;
+					}
+					throw e;
+				}
+				synchronized(winners){
+					//另一个查询已经占用了结果，等待它的完成通知
+					if(winners[i]!= token){
+						continue;
+					}
+				}
+				result.set(i, value);
+				done[i]= true;
+				hedgeAt[i]= 0;
+				pending--;
+				Future<OUT> loser= (hedged ? primaries : hedges).get(i);
+				if(loser!= null && !loser.isDone()){
+					loser.cancel(true);
+					cancel(hedged ? wrappers.get(i).getStatement() : hedgeStatements.get(i));
+				}
+				if(hedged){
+					ShardingMetrics.increment(ShardingMetrics.HEDGE_WON);
+				}
+			}
+			return result;
+		}catch(Exception e){
+			synchronized(winners){
+				for(int i=0;i<size;i++){
+					if(winners[i]== OPEN){
+						winners[i]= ABANDONED;
+					}
+				}
+			}
+			for(int i=0;i<size;i++){
+				Future<OUT> primary= primaries.size()> i ? primaries.get(i) : null;
+				Future<OUT> hedge= hedges.get(i);
+				if(winners[i]>= 0){
+					//已经胜出的结果不会再返回给调用者，需要关闭，胜出的任务占用结果后很快就会返回
+					Future<OUT> winner= winners[i]% 2== 1 ? hedge : primary;
+					closeResult(done[i] ? result.get(i) : getQuietly(winner));
+					if(winner== hedge){
+						hedge= null;
+					}else{
+						primary= null;
+					}
+				}
+				if(primary!= null && !primary.isDone()){
+					primary.cancel(true);
+					cancel(wrappers.get(i).getStatement());
+				}
+				if(hedge!= null && !hedge.isDone()){
+					hedge.cancel(true);
+					cancel(hedgeStatements.get(i));
+				}
+			}
+			throw translateException(e);
+		}
+	}
+	
+	/**
+	 * 发起对冲查询：先预留对冲比例额度，再占用对冲线程或并发许可，
+	 * 都成功后才创建对冲Statement并获取连接，任何一步失败都不会留下未执行的Statement或计入已发起的对冲
+	 */
+	private <IN extends Statement, OUT> void issueHedge(
+			ExecuteContext ctx,
+			final ExecuteStatementWrapper<IN> wrapper,
+			ExecuteStatementCallback<IN, OUT> executeUnit,
+			long deadline,
+			BlockingQueue<Integer> completed,
+			int[] winners,
+			int index,
+			List<Future<OUT>> hedges,
+			List<IN> hedgeStatements,
+			int[] running){
+		String dataSourceName= wrapper.getSQLExecutionUnit().getDataSourceName();
+		PartitionDataSource pds= getPartitionDataSource(ctx,dataSourceName);
+		if(!pds.reserveHedge()){
+			return;
+		}
+		//对冲任务占用线程后等待Statement创建完成
+		FutureTask<IN> creation= new FutureTask<IN>(new Callable<IN>(){
+			@Override
+			public IN call() throws Exception {
+				return wrapper.getHedgeCreator().createHedgeStatement();
+			}
+		});
+		try{
+			hedges.set(index, submitHedge(ctx,dataSourceName,newHedgeTask(ctx,wrapper,creation,executeUnit,deadline,completed,winners,index* 2+ 1)));
+		}catch(RejectedExecutionException e){
+			//对冲线程池或分片并发许可已满时不再对冲，继续等待原查询
+			pds.releaseHedge();
+			ShardingMetrics.increment(ShardingMetrics.HEDGE_SKIPPED);
+			return;
+		}
+		creation.run();
+		IN statement= getQuietly(creation);
+		if(statement== null){
+			//没有可用的对冲数据源或创建失败，对冲任务随即结束
+			pds.releaseHedge();
+			return;
+		}
+		hedgeStatements.set(index, statement);
+		running[index]++;
+		ShardingMetrics.increment(ShardingMetrics.HEDGE_ISSUED);
+		ShardingMetrics.increment(ShardingMetrics.HEDGE_ISSUED+ "."+ dataSourceName);
+	}
+	
+	private <IN extends Statement, OUT> Callable<OUT> newHedgeTask(
+			final ExecuteContext ctx,
+			final ExecuteStatementWrapper<IN> wrapper,
+			final Future<IN> statementFuture,
+			final ExecuteStatementCallback<IN, OUT> executeUnit,
+			final long deadline,
+			final BlockingQueue<Integer> completed,
+			final int[] winners,
+			final int token){
+		return new Callable<OUT>(){
+			@Override
+			public OUT call() throws Exception {
+				try{
+					IN statement= statementFuture.get();
+					if(statement== null){
+						return null;
+					}
+					OUT result= executeRead(ctx,wrapper,statement,executeUnit,deadline);
+					synchronized(winners){
+						if(winners[token/ 2]== OPEN){
+							winners[token/ 2]= token;
+							return result;
+						}
+					}
+					//另一个查询已胜出或已放弃等待，结果没有人使用
+					closeResult(result);
+					return null;
+				}finally{
+					completed.add(token);
+				}
+			}
+		};
+	}
+	
+	/**
+	 * 只读查询任务，结束后才放入完成队列，保证取到序号时结果已经可以获取；
+	 * 已被取消的任务执行完成后关闭自己的结果
+	 */
+	private static class ReadTask<OUT> extends FutureTask<OUT> {
+		
+		private final int index;
+		
+		private final BlockingQueue<Integer> completed;
+		
+		ReadTask(Callable<OUT> callable,int index,BlockingQueue<Integer> completed){
+			super(callable);
+			this.index= index;
+			this.completed= completed;
+		}
+		
+		@Override
+		protected void set(OUT result){
+			super.set(result);
+			//任务已被取消时结果不会被保存，没有人会关闭
+			if(isCancelled()){
+				closeResult(result);
+			}
+		}
+		
+		@Override
+		protected void done(){
+			//无论成功、失败还是取消都通知已完成
+			if(completed!= null){
+				completed.add(index);
+			}
+		}
+	}
+	
+	private static <T> Future<T> immediate(final T value){
+		FutureTask<T> result= new FutureTask<T>(new Callable<T>(){
+			@Override
+			public T call(){
+				return value;
+			}
+		});
+		result.run();
+		return result;
+	}
+	
+	private <OUT> OUT getQuietly(Future<OUT> future){
+		try{
+			return future.get();
+		}catch(Exception e){
+			return null;
+		}
+	}
+	
+	/**
+	 * 关闭不再使用的执行结果，释放数据库游标
+	 */
+	static void closeResult(Object result){
+		if(!(result instanceof ResultSet)){
+			return;
+		}
+		try{
+			((ResultSet)result).close();
+		}catch(SQLException e){
+			Log logger= LogFactory.getLog(ExecuteProcessorSupport.class);
+			if(logger.isWarnEnabled()){
+				logger.warn("close result error: "+e.getMessage());
+			}
+		}
+	}
+	
+	private <IN extends Statement> boolean isHedgeable(ExecuteContext ctx,List<ExecuteStatementWrapper<IN>> wrappers){
+		for(ExecuteStatementWrapper<IN> each: wrappers){
+			if(each.getHedgeCreator()!= null && getPartitionDataSource(ctx,each.getSQLExecutionUnit().getDataSourceName()).getHedgeDelay()>= 0){
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	private PartitionDataSource getPartitionDataSource(ExecuteContext ctx,String dataSourceName){
+		return ctx.getShardingDataSourceRepository().getPartitionDataSource(dataSourceName);
+	}
+	
+	/**
+	 * 执行只读查询并记录耗时，用于计算对冲读的等待时间
+	 */
+	private <IN extends Statement, OUT> OUT executeRead(ExecuteContext ctx,ExecuteStatementWrapper<IN> wrapper,IN statement,ExecuteStatementCallback<IN, OUT> executeUnit,long deadline) throws SQLException{
+		long begin= System.currentTimeMillis();
+		OUT result= execute(wrapper.getSQLExecutionUnit(),statement,executeUnit,deadline);
+		getPartitionDataSource(ctx,wrapper.getSQLExecutionUnit().getDataSourceName()).recordReadLatency(System.currentTimeMillis()- begin);
+		return result;
+	}
+	
+	private <IN extends Statement, OUT> OUT execute(ExecuteStatementWrapper<IN> wrapper,ExecuteStatementCallback<IN, OUT> executeUnit,long deadline) throws SQLException{
+		return execute(wrapper.getSQLExecutionUnit(),wrapper.getStatement(),executeUnit,deadline);
+	}
+	
+	/**
+	 * 按剩余时间设置分片Statement的queryTimeout后执行，由数据库驱动保证超时后终止执行
+	 */
+	private <IN extends Statement, OUT> OUT execute(SQLExecutionUnit unit,IN statement,ExecuteStatementCallback<IN, OUT> executeUnit,long deadline) throws SQLException{
+		long remaining= getRemaining(deadline);
+		if(remaining== 0){
+			ShardingMetrics.increment(ShardingMetrics.STATEMENT_TIMEOUT);
+			throw new SQLTimeoutException("Execute timeout before sql: "+unit.getShardingSql());
+		}
+		statement.setQueryTimeout((int)((remaining+ 999)/ 1000));
+		return executeUnit.execute(unit.getShardingSql(),statement);
+	}
+	
+	/**
+	 * 中断线程并不能终止数据库端的执行，需要cancel正在执行的Statement
+	 */
+	private <IN extends Statement> void cancel(List<ExecuteStatementWrapper<IN>> wrappers){
+		for(ExecuteStatementWrapper<IN> each: wrappers){
+			cancel(each.getStatement());
+		}
+	}
+	
+	private void cancel(Statement statement){
+		//对冲Statement没有创建成功
+		if(statement== null){
+			return;
+		}
+		try{
+			statement.cancel();
+			ShardingMetrics.increment(ShardingMetrics.STATEMENT_CANCELLED);
+		}catch(SQLException e){
+			if(logger.isWarnEnabled()){
+				logger.warn("cancel statement error: "+e.getMessage());
+			}
+		}
+	}
+	
+	private SQLException translateException(Exception e){
+		if(e instanceof TimeoutException){
+			ShardingMetrics.increment(ShardingMetrics.STATEMENT_TIMEOUT);
+			return new SQLTimeoutException("Execute timeout: "+e.getMessage(),e);
+		}
+		return new SQLException(e.getMessage(),e);
+	}
+	
+	/**
+	 * 计算截止时间，取处理器超时时间和Statement的queryTimeout中较早的一个
+	 * @param ctx ShardingConnection对应的上下文
+	 * @return 截止时间的毫秒数
+	 */
+	protected long getDeadline(ExecuteContext ctx){
+		long result= System.currentTimeMillis()+ timeout* 1000;
+		return ctx.getDeadline() > 0 ? Math.min(ctx.getDeadline(), result) : result;
+	}
+	
+	/**
+	 * 计算距离截止时间的剩余毫秒数
+	 * @param deadline 截止时间的毫秒数
+	 * @return 剩余毫秒数，已过截止时间返回0
+	 */
+	protected static long getRemaining(long deadline){
+		return Math.max(deadline- System.currentTimeMillis(), 0);
+	}
+	
+	/**
+	 * 提交Statement操作任务，默认根据不同的数据源获取不同的线程池对象
+	 * @param ctx ShardingConnection对应的上下文
+	 * @param dataSourceName 分片数据源名称
+	 * @param task 执行任务
+	 * @return Future
+	 */
+	@Override
+	public <T> Future<T> submit(ExecuteContext ctx,String dataSourceName,Callable<T> task){
+		ExecutorService executorService = getPartitionDataSource(ctx,dataSourceName).getExecutorService();
+		return executorService.submit(task);
+	}
+	
+	/**
+	 * 提交对冲查询任务，使用分片数据源单独的对冲线程池，
+	 * 避免对冲查询排在原查询所在的线程池后面等待
+	 * @param ctx ShardingConnection对应的上下文
+	 * @param dataSourceName 分片数据源名称
+	 * @param task 执行任务
+	 * @return Future
+	 * @throws RejectedExecutionException 对冲线程池或分片并发许可已满
+	 */
+	protected <T> Future<T> submitHedge(ExecuteContext ctx,String dataSourceName,Callable<T> task){
+		ExecutorService executorService = getPartitionDataSource(ctx,dataSourceName).getHedgeExecutorService();
+		return executorService.submit(task);
 	}
 }
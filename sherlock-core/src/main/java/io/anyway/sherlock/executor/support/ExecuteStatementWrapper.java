@@ -2,6 +2,7 @@ package io.anyway.sherlock.executor.support;
 
 import java.sql.Statement;
 
+import io.anyway.sherlock.executor.HedgeStatementCreator;
 import io.anyway.sherlock.router.support.SQLExecutionUnit;
 /**
  * 
@@ -15,6 +16,8 @@ public class ExecuteStatementWrapper<T extends Statement> {
 	
 	private T statement;
 	
+	private HedgeStatementCreator<T> hedgeCreator;
+	
 	public ExecuteStatementWrapper(SQLExecutionUnit unit,T statement){
 		this.unit= unit;
 		this.statement= statement;
@@ -34,4 +37,16 @@ public class ExecuteStatementWrapper<T extends Statement> {
 	public T getStatement(){
 		return statement;
 	}
+	
+	/**
+	 * 获取对冲读的Statement创建器，只有无事务的查询才会设置
+	 * @return HedgeStatementCreator
+	 */
+	public HedgeStatementCreator<T> getHedgeCreator(){
+		return hedgeCreator;
+	}
+	
+	public void setHedgeCreator(HedgeStatementCreator<T> hedgeCreator){
+		this.hedgeCreator= hedgeCreator;
+	}
 }
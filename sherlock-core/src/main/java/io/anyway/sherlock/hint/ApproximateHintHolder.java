@@ -0,0 +1,36 @@
+package io.anyway.sherlock.hint;
+
+/**
+ * 近似聚合提示，打开后COUNT(DISTINCT x)改为各分片返回去重计数和最小的若干个哈希值，合并时估算跨分片的去重数，
+ * 不需要把所有去重值拉回客户端
+ * <pre>
+ * ApproximateHintHolder.setApproximate(true);
+ * try{
+ *     //select count(distinct user_id) from t_order where ...
+ * }finally{
+ *     ApproximateHintHolder.clear();
+ * }
+ * </pre>
+ * APPROX_COUNT_DISTINCT(x)和PERCENTILE_APPROX(x, p)不需要提示总是按近似计算，
+ * x只支持列名，近似去重的误差约为1/sqrt(k)，k为每个分片返回的哈希个数
+ * @author yangzz
+ *
+ */
+final public class ApproximateHintHolder {
+	
+	private ApproximateHintHolder(){}
+	
+	private static ThreadLocal<Boolean> holder= new ThreadLocal<Boolean>();
+	
+	public static boolean isApproximate(){
+		return Boolean.TRUE.equals(holder.get());
+	}
+	
+	public static void setApproximate(boolean approximate){
+		holder.set(approximate);
+	}
+	
+	public static void clear(){
+		holder.set(null);
+	}
+}
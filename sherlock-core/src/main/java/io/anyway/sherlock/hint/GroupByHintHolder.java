@@ -0,0 +1,35 @@
+package io.anyway.sherlock.hint;
+
+/**
+ * 哈希分组提示，分组列是字符串等类型时数据库按排序规则比较，分片的顺序和Java不一致，归并只能在内存中哈希分组，
+ * 打开后分片不再按分组列排序，MySQL追加ORDER BY NULL去掉GROUP BY的隐式排序
+ * <pre>
+ * GroupByHintHolder.setHashGrouping(true);
+ * try{
+ *     //select user_name, count(*) from t_order where ... group by user_name
+ * }finally{
+ *     GroupByHintHolder.clear();
+ * }
+ * </pre>
+ * 不设置时分片按分组列排序，分组列是数字或日期时可以边归并边聚合，否则归并时仍按哈希分组
+ * @author yangzz
+ *
+ */
+final public class GroupByHintHolder {
+	
+	private GroupByHintHolder(){}
+	
+	private static ThreadLocal<Boolean> holder= new ThreadLocal<Boolean>();
+	
+	public static boolean isHashGrouping(){
+		return Boolean.TRUE.equals(holder.get());
+	}
+	
+	public static void setHashGrouping(boolean hashGrouping){
+		holder.set(hashGrouping);
+	}
+	
+	public static void clear(){
+		holder.set(null);
+	}
+}
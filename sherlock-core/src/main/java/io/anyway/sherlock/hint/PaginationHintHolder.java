@@ -0,0 +1,35 @@
+package io.anyway.sherlock.hint;
+
+/**
+ * 深分页提示，设置上一页最后一行的排序键值后，
+ * 只有一个排序列且有limit的查询改为按排序键定位，各分片只需要返回一页的数据
+ * <pre>
+ * PaginationHintHolder.setLastKey(lastOrderId);
+ * try{
+ *     //select order_id, ... from t_order where ... order by order_id limit 100000, 20
+ * }finally{
+ *     PaginationHintHolder.clear();
+ * }
+ * </pre>
+ * 排序列的值必须唯一，否则会漏掉和上一页最后一行排序值相同的行
+ * @author yangzz
+ *
+ */
+final public class PaginationHintHolder {
+	
+	private PaginationHintHolder(){}
+	
+	private static ThreadLocal<Object> holder= new ThreadLocal<Object>();
+	
+	public static Object getLastKey(){
+		return holder.get();
+	}
+	
+	public static void setLastKey(Object lastKey){
+		holder.set(lastKey);
+	}
+	
+	public static void clear(){
+		holder.set(null);
+	}
+}
@@ -3,18 +3,35 @@ package io.anyway.sherlock.jdbc;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
 import java.sql.Statement;
 import java.util.Collection;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import javax.sql.DataSource;
 
+import io.anyway.sherlock.datasource.DatabaseType;
 import io.anyway.sherlock.datasource.PartitionDataSource;
 import io.anyway.sherlock.executor.ExecuteContext;
 import io.anyway.sherlock.executor.support.ExecuteContextSupport;
 import io.anyway.sherlock.jdbc.adapter.AbstractConnectionAdapter;
+import io.anyway.sherlock.metrics.ShardingMetrics;
+import io.anyway.sherlock.sqlparser.SQLApproximateAggregation;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
@@ -24,7 +41,11 @@ public final class ShardingConnection extends AbstractConnectionAdapter {
 	
 	private ExecuteContext ctx;
 	
-	private Set<Connection> connections= new HashSet<Connection>();
+	//按获取顺序保存打开的连接及其状态，和idleReadConnections一起在connections上同步修改
+	private final Map<Connection,ConnectionState> connections= new LinkedHashMap<Connection,ConnectionState>();
+	
+	//已释放的只读连接，按数据源分组复用
+	private final Map<DataSource,LinkedList<Connection>> idleReadConnections= new IdentityHashMap<DataSource,LinkedList<Connection>>();
 	
 	ShardingDataSource shardingDataSource;
 	
@@ -95,36 +116,587 @@ public final class ShardingConnection extends AbstractConnectionAdapter {
         return new ShardingStatement(this, resultSetType, resultSetConcurrency, resultSetHoldability);
     }
 
+	/**
+	 * 开启parallelCommit时多个连接的提交、回滚和关闭等操作通过处理器并行执行，
+	 * 默认仍按获取连接的顺序依次执行
+	 */
+	@Override
+	protected void forEachConnection(final ConnectionCallback callback,boolean ordered) throws SQLException {
+		List<Map.Entry<Connection,ConnectionState>> entries;
+		synchronized(connections){
+			entries= new ArrayList<Map.Entry<Connection,ConnectionState>>(connections.entrySet());
+		}
+		if(!shardingDataSource.parallelCommit || ordered || entries.size()<= 1){
+			super.forEachConnection(callback, ordered);
+			return;
+		}
+		//提交、回滚和关闭不受上一条SQL的截止时间限制，只受处理器超时时间限制
+		setExecuteDeadline(0);
+		List<Future<Void>> futures= new ArrayList<Future<Void>>(entries.size());
+		SQLException exception= null;
+		for(final Map.Entry<Connection,ConnectionState> each: entries){
+			Callable<Void> task= new Callable<Void>(){
+				@Override
+				public Void call() throws Exception {
+					callback.doInConnection(each.getKey());
+					return null;
+				}
+			};
+			try{
+				futures.add(shardingDataSource.processor.submit(ctx,each.getValue().dataSourceName,task));
+			}catch(RuntimeException e){
+				//线程池拒绝时在当前线程执行
+				try{
+					callback.doInConnection(each.getKey());
+				}catch(SQLException ex){
+					exception= chainException(exception, ex);
+				}
+			}
+		}
+		for(Future<Void> each: futures){
+			try{
+				each.get();
+			}catch(ExecutionException e){
+				exception= chainException(exception, e.getCause() instanceof SQLException ? 
+						(SQLException)e.getCause() : new SQLException(e.getCause().getMessage(),e.getCause()));
+			}catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+				exception= chainException(exception, new SQLException(e.getMessage(),e));
+			}
+		}
+		if(exception!= null){
+			throw exception;
+		}
+	}
+	
+	/**
+	 * 单次结果归并可在内存中缓存的字节数
+	 * @return 字节数，0表示不限制
+	 */
+	public long getMergeMemoryBudget() {
+		return shardingDataSource.mergeMemoryBudget;
+	}
+	
+	/**
+	 * 结果归并时并行排序使用的线程池
+	 * @return 线程池，为null时只在调用线程中排序
+	 */
+	public ExecutorService getMergeSortExecutor() {
+		return shardingDataSource.getMergeSortExecutor();
+	}
+	
+	@Override
+	protected boolean isOrderedCommit() {
+		return !shardingDataSource.parallelCommit;
+	}
+	
 	@Override
 	protected Collection<Connection> getConnections() {
-		return connections;
+		synchronized(connections){
+			return new ArrayList<Connection>(connections.keySet());
+		}
+	}
+	
+	@Override
+	protected void clearConnections() {
+		synchronized(connections){
+			connections.clear();
+			idleReadConnections.clear();
+		}
 	}
+	
 	@Override
 	public Connection getConnection(String dataSourceName) throws SQLException{
 		PartitionDataSource pds= shardingDataSource.shardingDataSourceRepository.getPartitionDataSource(dataSourceName);
 		Connection connection = null;
 		ExecuteContextSupport ctx= (ExecuteContextSupport)getExecuteContext();
+		checkDeadline(ctx,dataSourceName);
 		if(!ctx.isSimplyDQLOperation()){
 			if(null!= (connection= ctx.getTranOrUpdateConnection(dataSourceName))){
 				return connection;
 			}
-			connection= pds.getMasterDataSource().getConnection();
+			connection= openConnection(pds.getMasterDataSource());
+			register(connection,dataSourceName,null);
 			ctx.setTranOrUpdateConnection(dataSourceName,connection);
 		}
 		else{
-			connection= pds.getSlaveDataSource().getConnection();
+			connection= getReadConnection(dataSourceName,pds.getSlaveDataSource());
             if(logger.isDebugEnabled()) {
                 logger.debug("sql: "+ctx.getLogicSql() + " use partition ["+dataSourceName+"] slave datasource connection");
             }
 		}
-        connection.setAutoCommit(getAutoCommit());
-        connection.setReadOnly(isReadOnly());
-		connections.add(connection);
 		return connection;
 	}
 	
+	private void checkDeadline(ExecuteContext ctx,String dataSourceName) throws SQLTimeoutException{
+		if(ctx.getDeadline() > 0 && System.currentTimeMillis() >= ctx.getDeadline()){
+			ShardingMetrics.increment(ShardingMetrics.STATEMENT_TIMEOUT);
+			throw new SQLTimeoutException("sql: "+ctx.getLogicSql()+" exceed query timeout before get partition ["+dataSourceName+"] connection");
+		}
+	}
+	
+	/**
+	 * 获取只读连接，优先复用同一数据源上已释放的连接
+	 */
+	private Connection getReadConnection(String dataSourceName,DataSource ds) throws SQLException{
+		Connection connection= pollIdleReadConnection(ds);
+		if(connection!= null){
+			return connection;
+		}
+		connection= openConnection(ds);
+		register(connection,dataSourceName,ds);
+		return connection;
+	}
+	
+	private Connection pollIdleReadConnection(DataSource ds) throws SQLException{
+		Connection connection;
+		synchronized(connections){
+			LinkedList<Connection> idle= idleReadConnections.get(ds);
+			if(idle== null || idle.isEmpty()){
+				return null;
+			}
+			connection= idle.removeFirst();
+		}
+		applyAutoCommit(connection,getAutoCommit());
+		applyReadOnly(connection,isReadOnly());
+		return connection;
+	}
+	
+	/**
+	 * 新获取的连接按ShardingConnection的状态设置，读取的是驱动本地保存的状态，不会访问数据库
+	 */
+	private Connection openConnection(DataSource ds) throws SQLException{
+		Connection connection= ds.getConnection();
+		try{
+			if(connection.getAutoCommit()!= getAutoCommit()){
+				connection.setAutoCommit(getAutoCommit());
+			}
+			if(connection.isReadOnly()!= isReadOnly()){
+				connection.setReadOnly(isReadOnly());
+			}
+		}catch(SQLException e){
+			connection.close();
+			throw e;
+		}
+		return connection;
+	}
+	
+	/**
+	 * 保存打开的连接，此时连接的状态和openConnection设置的一致
+	 * @param connection 新打开的连接
+	 * @param dataSourceName 分片数据源名称
+	 * @param readDataSource 只读连接所属的数据源，事务或写操作的连接为null
+	 */
+	private void register(Connection connection,String dataSourceName,DataSource readDataSource) throws SQLException{
+		ConnectionState state= new ConnectionState(dataSourceName,readDataSource);
+		state.autoCommit= getAutoCommit();
+		state.readOnly= isReadOnly();
+		synchronized(connections){
+			connections.put(connection,state);
+		}
+	}
+	
+	private ConnectionState getState(Connection connection){
+		synchronized(connections){
+			return connections.get(connection);
+		}
+	}
+	
+	/**
+	 * 批量获取多个分片的连接，需要新建的连接通过处理器并行获取，共用一个截止时间。
+	 * 任何一个获取失败则释放已获取的连接，避免部分占用连接池和其他请求互相等待
+	 * @param dataSourceNames 分片数据源名称列表
+	 * @return 和dataSourceNames一一对应的连接
+	 * @throws SQLException
+	 */
+	List<Connection> getConnections(List<String> dataSourceNames) throws SQLException{
+		int size= dataSourceNames.size();
+		if(size<= 1){
+			List<Connection> result= new ArrayList<Connection>(size);
+			for(String each: dataSourceNames){
+				result.add(getConnection(each));
+			}
+			return result;
+		}
+		ExecuteContextSupport ctx= (ExecuteContextSupport)getExecuteContext();
+		checkDeadline(ctx,dataSourceNames.toString());
+		boolean simplyDQL= ctx.isSimplyDQLOperation();
+		final Connection[] result= new Connection[size];
+		DataSource[] sources= new DataSource[size];
+		int[] alias= new int[size];
+		Map<String,Integer> opening= new HashMap<String,Integer>();
+		//只读查询每个分片最多使用连接预算数量的连接，超出的执行单元轮流共用已获取的连接
+		Map<String,List<Integer>> budgeted= new HashMap<String,List<Integer>>();
+		int pending= 0;
+		for(int i=0;i<size;i++){
+			alias[i]= -1;
+			String name= dataSourceNames.get(i);
+			PartitionDataSource pds= shardingDataSource.shardingDataSourceRepository.getPartitionDataSource(name);
+			if(simplyDQL){
+				List<Integer> owners= budgeted.get(name);
+				if(owners== null){
+					budgeted.put(name, owners= new ArrayList<Integer>());
+				}
+				int budget= pds.getConnectionBudget();
+				if(owners.size()>= budget){
+					if(owners.size()== budget){
+						ShardingMetrics.increment(ShardingMetrics.CONNECTION_BUDGET_EXCEEDED);
+						ShardingMetrics.increment(ShardingMetrics.CONNECTION_BUDGET_EXCEEDED+ "."+ name);
+						if(logger.isDebugEnabled()){
+							logger.debug("sql: "+ctx.getLogicSql()+" exceed partition ["+name+"] connection budget: "+budget);
+						}
+					}
+					alias[i]= owners.get(owners.size()% budget);
+					owners.add(alias[i]);
+					continue;
+				}
+				owners.add(i);
+				DataSource ds= pds.getSlaveDataSource();
+				if((result[i]= pollIdleReadConnection(ds))== null){
+					sources[i]= ds;
+					pending++;
+				}
+				continue;
+			}
+			//事务或写操作同一分片只使用一个连接
+			if((result[i]= ctx.getTranOrUpdateConnection(name))!= null){
+				continue;
+			}
+			if(opening.containsKey(name)){
+				alias[i]= opening.get(name);
+				continue;
+			}
+			opening.put(name, i);
+			sources[i]= pds.getMasterDataSource();
+			pending++;
+		}
+		try{
+			openConnections(ctx,dataSourceNames,sources,result,pending);
+		}catch(SQLException e){
+			//复用的只读连接归还以便后续使用
+			List<Connection> reused= new ArrayList<Connection>();
+			for(int i=0;i<size;i++){
+				if(simplyDQL && sources[i]== null && result[i]!= null){
+					reused.add(result[i]);
+				}
+			}
+			releaseConnections(reused);
+			throw e;
+		}
+		for(int i=0;i<size;i++){
+			if(alias[i]>= 0){
+				result[i]= result[alias[i]];
+			}
+			else if(sources[i]!= null){
+				String name= dataSourceNames.get(i);
+				register(result[i],name,simplyDQL ? sources[i] : null);
+				if(!simplyDQL){
+					ctx.setTranOrUpdateConnection(name,result[i]);
+				}
+			}
+		}
+		return Arrays.asList(result);
+	}
+	
+	private void openConnections(ExecuteContext ctx,List<String> dataSourceNames,DataSource[] sources,final Connection[] result,int pending) throws SQLException{
+		if(pending== 0){
+			return;
+		}
+		if(pending== 1){
+			for(int i=0;i<sources.length;i++){
+				if(sources[i]!= null){
+					result[i]= openConnection(sources[i]);
+				}
+			}
+			return;
+		}
+		long deadline= ctx.getDeadline();
+		final Object lock= new Object();
+		final boolean[] abandoned= new boolean[1];
+		List<Future<Void>> futures= new ArrayList<Future<Void>>(pending);
+		try{
+			for(int i=0;i<sources.length;i++){
+				if(sources[i]== null){
+					continue;
+				}
+				PartitionDataSource pds= shardingDataSource.shardingDataSourceRepository.getPartitionDataSource(dataSourceNames.get(i));
+				if(deadline<= 0){
+					deadline= System.currentTimeMillis()+ pds.getTimeout()* 1000L;
+				}
+				final int index= i;
+				final DataSource ds= sources[i];
+				futures.add(shardingDataSource.processor.submit(ctx,dataSourceNames.get(i),new Callable<Void>(){
+					@Override
+					public Void call() throws Exception {
+						Connection connection= openConnection(ds);
+						synchronized(lock){
+							//调用方已经放弃则直接释放
+							if(abandoned[0]){
+								connection.close();
+							}
+							else{
+								result[index]= connection;
+							}
+						}
+						return null;
+					}
+				}));
+			}
+			for(Future<Void> each: futures){
+				each.get(Math.max(deadline- System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+			}
+		}catch(Exception e){
+			synchronized(lock){
+				abandoned[0]= true;
+				for(int i=0;i<result.length;i++){
+					if(sources[i]!= null && result[i]!= null){
+						try{
+							result[i].close();
+						}catch(SQLException ex){
+							logger.warn("release connection error: "+ex.getMessage());
+						}
+						result[i]= null;
+					}
+				}
+			}
+			for(Future<Void> each: futures){
+				each.cancel(true);
+			}
+			if(e instanceof TimeoutException){
+				ShardingMetrics.increment(ShardingMetrics.STATEMENT_TIMEOUT);
+				throw new SQLTimeoutException("sql: "+ctx.getLogicSql()+" get partition connections timeout",e);
+			}
+			if(e instanceof ExecutionException && e.getCause() instanceof SQLException){
+				throw (SQLException)e.getCause();
+			}
+			throw new SQLException(e.getMessage(),e);
+		}
+	}
+	
+	/**
+	 * 释放Statement使用的连接，只读连接可以被后续的查询复用，直到ShardingConnection关闭
+	 * @param released Statement使用过的连接
+	 */
+	void releaseConnections(Collection<Connection> released){
+		for(Connection each: released){
+			ConnectionState state= getState(each);
+			if(state== null || state.readDataSource== null || !resetConnection(each)){
+				continue;
+			}
+			DataSource ds= state.readDataSource;
+			synchronized(connections){
+				LinkedList<Connection> idle= idleReadConnections.get(ds);
+				if(idle== null){
+					idleReadConnections.put(ds, idle= new LinkedList<Connection>());
+				}
+				if(!idle.contains(each)){
+					idle.add(each);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * 多分片只读查询开启流式读取，避免驱动把整个分片结果读到内存后才开始归并。
+	 * MySQL逐行读取，PostgreSQL使用游标分批读取，游标需要关闭连接的自动提交，
+	 * 连接释放或关闭时再恢复，避免连接一直处于事务中
+	 * @param statement 分片Statement
+	 * @param connection 分片Statement所属的连接
+	 * @param units 执行单元数
+	 * @return 是否开启流式读取
+	 * @throws SQLException
+	 */
+	boolean applyStreamingFetch(Statement statement,Connection connection,int units) throws SQLException{
+		int fetchSize= shardingDataSource.streamingFetchSize;
+		ExecuteContext ctx= getExecuteContext();
+		if(fetchSize<= 0 || units<= 1 || !ctx.isSimplyDQLOperation()
+				|| statement.getResultSetType()!= ResultSet.TYPE_FORWARD_ONLY
+				|| statement.getResultSetConcurrency()!= ResultSet.CONCUR_READ_ONLY){
+			return false;
+		}
+		switch(ctx.getDatabaseType()){
+		case MySQL:
+			statement.setFetchSize(Integer.MIN_VALUE);
+			break;
+		case PostgreSQL:
+			ConnectionState state= getState(connection);
+			if(getAutoCommit() && state!= null){
+				state.streaming= true;
+			}
+			applyAutoCommit(connection,false);
+			statement.setFetchSize(fetchSize);
+			break;
+		default:
+			statement.setFetchSize(fetchSize);
+		}
+		return true;
+	}
+	
+	/**
+	 * MySQL近似聚合用GROUP_CONCAT返回分片上的摘要，默认的group_concat_max_len只有1024字节，
+	 * 截断后只剩很少的哈希值或样本，执行近似聚合前调大会话的该参数。
+	 * 只读连接在Statement释放时恢复原来的值，事务连接在ShardingConnection关闭时恢复，不影响连接池的其他使用者。
+	 * 每个连接只查询一次该参数，之后使用保存的值
+	 * @param connection 分片Statement所属的连接
+	 * @throws SQLException
+	 */
+	void applyGroupConcatMaxLen(Connection connection) throws SQLException{
+		ExecuteContext ctx= getExecuteContext();
+		if(DatabaseType.MySQL!= ctx.getDatabaseType() || !SQLApproximateAggregation.hasApproximateAggregation(ctx.getSQLParsedResult())){
+			return;
+		}
+		ConnectionState state= getState(connection);
+		if(state== null || state.previousGroupConcatMaxLen!= null){
+			return;
+		}
+		Long previous= state.groupConcatMaxLen;
+		if(previous!= null && previous>= SQLApproximateAggregation.MYSQL_GROUP_CONCAT_MAX_LEN){
+			return;
+		}
+		Statement statement= connection.createStatement();
+		try{
+			if(previous== null){
+				ResultSet rs= statement.executeQuery("SELECT @@SESSION.group_concat_max_len");
+				previous= rs.next() ? rs.getLong(1) : SQLApproximateAggregation.MYSQL_GROUP_CONCAT_MAX_LEN;
+				rs.close();
+				state.groupConcatMaxLen= previous;
+				if(previous>= SQLApproximateAggregation.MYSQL_GROUP_CONCAT_MAX_LEN){
+					return;
+				}
+			}
+			statement.execute("SET SESSION group_concat_max_len = "+ SQLApproximateAggregation.MYSQL_GROUP_CONCAT_MAX_LEN);
+			state.previousGroupConcatMaxLen= previous;
+			state.groupConcatMaxLen= (long)SQLApproximateAggregation.MYSQL_GROUP_CONCAT_MAX_LEN;
+		}finally{
+			statement.close();
+		}
+	}
+	
+	/**
+	 * 恢复执行分片查询时临时修改的会话状态，失败的连接不再复用
+	 * @param connection 分片连接
+	 * @return 是否恢复成功
+	 */
+	private boolean resetConnection(Connection connection){
+		try{
+			resetSession(connection);
+			return true;
+		}catch(SQLException e){
+			logger.warn("reset connection session error: "+e.getMessage());
+			return false;
+		}
+	}
+	
+	@Override
+	protected void resetSession(Connection connection) throws SQLException {
+		ConnectionState state= getState(connection);
+		if(state== null){
+			return;
+		}
+		//结束游标读取的事务，释放快照
+		if(state.streaming){
+			state.streaming= false;
+			connection.commit();
+			applyAutoCommit(connection,getAutoCommit());
+		}
+		Long groupConcatMaxLen= state.previousGroupConcatMaxLen;
+		state.previousGroupConcatMaxLen= null;
+		if(groupConcatMaxLen!= null){
+			Statement statement= connection.createStatement();
+			try{
+				statement.execute("SET SESSION group_concat_max_len = "+ groupConcatMaxLen);
+				state.groupConcatMaxLen= groupConcatMaxLen;
+			}finally{
+				statement.close();
+			}
+		}
+	}
+	
+	@Override
+	protected void applyAutoCommit(Connection connection,boolean autoCommit) throws SQLException {
+		ConnectionState state= getState(connection);
+		if(state== null){
+			super.applyAutoCommit(connection, autoCommit);
+			return;
+		}
+		if(state.autoCommit!= autoCommit){
+			connection.setAutoCommit(autoCommit);
+			state.autoCommit= autoCommit;
+		}
+	}
+	
+	@Override
+	protected void applyReadOnly(Connection connection,boolean readOnly) throws SQLException {
+		ConnectionState state= getState(connection);
+		if(state== null){
+			super.applyReadOnly(connection, readOnly);
+			return;
+		}
+		if(state.readOnly!= readOnly){
+			connection.setReadOnly(readOnly);
+			state.readOnly= readOnly;
+		}
+	}
+	
+	/**
+	 * 获取对冲读使用的连接，和原查询的连接来自同一分片的不同数据源
+	 * @param dataSourceName 分片数据源名称
+	 * @param connection 原查询使用的连接
+	 * @return Connection，没有可用的数据源返回null
+	 * @throws SQLException
+	 */
+	Connection getHedgeConnection(String dataSourceName,Connection connection) throws SQLException{
+		PartitionDataSource pds= shardingDataSource.shardingDataSourceRepository.getPartitionDataSource(dataSourceName);
+		ConnectionState state= getState(connection);
+		DataSource ds= pds.getHedgeDataSource(state== null ? null : state.readDataSource);
+		if(ds== null){
+			return null;
+		}
+		if(logger.isDebugEnabled()) {
+			logger.debug("sql: "+ctx.getLogicSql() + " hedge read on partition ["+dataSourceName+"]");
+		}
+		return getReadConnection(dataSourceName,ds);
+	}
+	
+	/**
+	 * 设置当前SQL执行的截止时间，获取分片连接和执行Statement都受此限制
+	 * @param queryTimeout 超时秒数，0表示不限制
+	 */
+	void setExecuteDeadline(int queryTimeout){
+		((ExecuteContextSupport)ctx).setDeadline(queryTimeout > 0 ? System.currentTimeMillis()+ queryTimeout* 1000L : 0);
+	}
+	
 	public ExecuteContext getExecuteContext(){
 	    return ctx;
 	}
-    
+	
+	/**
+	 * 物理连接所属的分片和最后设置的会话状态，状态不变时不再调用驱动，
+	 * 同一时刻只有一个线程使用某个连接，但可能先后在不同的线程中使用
+	 */
+	private static final class ConnectionState{
+		
+		final String dataSourceName;
+		
+		//只读连接对应的数据源，对冲读时需要排除，事务或写操作的连接为null
+		final DataSource readDataSource;
+		
+		volatile boolean autoCommit;
+		
+		volatile boolean readOnly;
+		
+		//为PostgreSQL游标临时关闭了自动提交，释放时恢复
+		volatile boolean streaming;
+		
+		//会话当前的group_concat_max_len，第一次执行近似聚合时查询，null表示未知
+		volatile Long groupConcatMaxLen;
+		
+		//调大group_concat_max_len之前的值，释放时恢复
+		volatile Long previousGroupConcatMaxLen;
+		
+		ConnectionState(String dataSourceName,DataSource readDataSource){
+			this.dataSourceName= dataSourceName;
+			this.readDataSource= readDataSource;
+		}
+	}
 }
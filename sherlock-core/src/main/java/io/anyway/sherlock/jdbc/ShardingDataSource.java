@@ -2,6 +2,12 @@ package io.anyway.sherlock.jdbc;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.DisposableBean;
 
 import io.anyway.sherlock.executor.ExecuteStatementProcessor;
 import io.anyway.sherlock.router.table.GlobalTableRepository;
@@ -15,12 +21,32 @@ import io.anyway.sherlock.router.table.LogicTableRepository;
  * @author yangzz
  *
  */
-public class ShardingDataSource extends AbstractDataSourceAdapter{
+public class ShardingDataSource extends AbstractDataSourceAdapter implements DisposableBean{
     //SQL数据源和表路由器
     SQLRouter sqlRouter;
     
     ExecuteStatementProcessor processor;
     
+    //无排序的只读查询是否按分片完成顺序边执行边归并
+    boolean streamingMerge;
+    
+    //是否在分片线程池中并行提交、回滚和关闭连接，默认按获取连接的顺序依次执行，提交出错即停止
+    boolean parallelCommit;
+    
+    //多分片只读查询流式读取的批量大小，0表示由驱动一次读取全部结果
+    int streamingFetchSize;
+    
+    //单次结果归并可在内存中缓存的字节数，超过后写入临时文件，0表示不限制
+    long mergeMemoryBudget;
+    
+    //结果归并时并行排序的线程数，小于2表示只在调用线程中排序
+    int mergeSortThreads= Runtime.getRuntime().availableProcessors();
+    
+    //并行排序的线程池，第一次需要时创建，数据源销毁时关闭
+    private ExecutorService mergeSortExecutor;
+    
+    private boolean destroyed;
+    
     ShardingDataSourceRepository shardingDataSourceRepository;
     
     GlobalTableRepository globalTableRepository;
@@ -35,6 +61,59 @@ public class ShardingDataSource extends AbstractDataSourceAdapter{
     	this.processor= processor;
     }
     
+    public void setStreamingMerge(boolean streamingMerge){
+    	this.streamingMerge= streamingMerge;
+    }
+    
+    public void setParallelCommit(boolean parallelCommit){
+    	this.parallelCommit= parallelCommit;
+    }
+    
+    public void setStreamingFetchSize(int streamingFetchSize){
+    	this.streamingFetchSize= streamingFetchSize;
+    }
+    
+    public void setMergeMemoryBudget(long mergeMemoryBudget){
+    	this.mergeMemoryBudget= mergeMemoryBudget;
+    }
+    
+    public void setMergeSortThreads(int mergeSortThreads){
+    	this.mergeSortThreads= mergeSortThreads;
+    }
+    
+    /**
+     * 获取结果归并时并行排序的线程池
+     * @return 线程池，没有开启并行排序或数据源已销毁时返回null
+     */
+    synchronized ExecutorService getMergeSortExecutor(){
+    	if(mergeSortThreads< 2 || destroyed){
+    		return null;
+    	}
+    	if(mergeSortExecutor== null){
+    		mergeSortExecutor= Executors.newFixedThreadPool(mergeSortThreads, new ThreadFactory() {
+    			
+    			private final AtomicInteger sequence= new AtomicInteger();
+    			
+    			@Override
+    			public Thread newThread(Runnable runnable) {
+    				Thread result= new Thread(runnable, "sherlock-merge-sort-"+ sequence.incrementAndGet());
+    				result.setDaemon(true);
+    				return result;
+    			}
+    		});
+    	}
+    	return mergeSortExecutor;
+    }
+    
+    @Override
+    public synchronized void destroy() throws Exception {
+    	destroyed= true;
+    	if(mergeSortExecutor!= null){
+    		mergeSortExecutor.shutdown();
+    		mergeSortExecutor= null;
+    	}
+    }
+    
     public void setShardingDataSourceRepository(ShardingDataSourceRepository shardingDataSourceRepository){
     	this.shardingDataSourceRepository= shardingDataSourceRepository;
     }
@@ -6,11 +6,13 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 
 import io.anyway.sherlock.merger.MergeUtils;
 import io.anyway.sherlock.executor.ExecuteStatementCallback;
+import io.anyway.sherlock.executor.HedgeStatementCreator;
 import io.anyway.sherlock.executor.support.ExecuteStatementWrapper;
 import io.anyway.sherlock.jdbc.adapter.AbstractPreparedStatementAdapter;
 import io.anyway.sherlock.router.support.SQLExecutionUnit;
@@ -22,6 +24,13 @@ public final class ShardingPreparedStatement extends AbstractPreparedStatementAd
     
     private final List<PreparedStatement> cachedRoutedPreparedStatements = new LinkedList<PreparedStatement>();
     
+    private final List<Connection> routedConnections = new ArrayList<Connection>();
+    
+    //对冲读创建的Statement和连接，再次执行时释放
+    private final List<PreparedStatement> hedgeStatements = new ArrayList<PreparedStatement>();
+    
+    private final List<Connection> hedgeConnections = new ArrayList<Connection>();
+    
     private Integer autoGeneratedKeys;
     
     private int[] columnIndexes;
@@ -66,14 +75,12 @@ public final class ShardingPreparedStatement extends AbstractPreparedStatementAd
     public ResultSet executeQuery() throws SQLException {
         hasExecuted = true;
         
-        List<ResultSet> result= processor.execute(shardingConnection.getExecuteContext(),generateExecuteStatementWrappers(parameters), new ExecuteStatementCallback<PreparedStatement,ResultSet>(){
+        return currentResultSet= executeAndMergeQuery(generateExecuteStatementWrappers(parameters), new ExecuteStatementCallback<PreparedStatement,ResultSet>(){
 			@Override
 			public ResultSet execute(String actualSql,PreparedStatement statement) throws SQLException {
 				return statement.executeQuery();
 			}
     	});
-        
-        return currentResultSet= MergeUtils.mergeResultSet(result, shardingConnection.getExecuteContext());
     }
     
     @Override
@@ -139,40 +146,117 @@ public final class ShardingPreparedStatement extends AbstractPreparedStatementAd
     @Override
     public void clearRoutedStatements() throws SQLException {
         getRoutedPreparedStatements().clear();
+        shardingConnection.releaseConnections(routedConnections);
+        routedConnections.clear();
+        hedgeStatements.clear();
+        hedgeConnections.clear();
+    }
+    
+    /**
+     * 关闭上一次执行的对冲读Statement并释放其连接，再次执行时上一次的结果集已不再使用
+     */
+    private void releaseHedgeStatements() throws SQLException {
+        if (hedgeStatements.isEmpty()) {
+            return;
+        }
+        for (PreparedStatement each : hedgeStatements) {
+            try {
+                each.close();
+            } catch (final SQLException ignored) {
+            }
+            cachedRoutedPreparedStatements.remove(each);
+        }
+        for (Connection each : hedgeConnections) {
+            routedConnections.remove(each);
+        }
+        shardingConnection.releaseConnections(hedgeConnections);
+        hedgeStatements.clear();
+        hedgeConnections.clear();
     }
     
-    private List<ExecuteStatementWrapper<PreparedStatement>> generateExecuteStatementWrappers(List<Object> parameters) throws SQLException {
+    private List<ExecuteStatementWrapper<PreparedStatement>> generateExecuteStatementWrappers(List<Object> boundParameters) throws SQLException {
+    	releaseHedgeStatements();
+    	shardingConnection.setExecuteDeadline(getQueryTimeout());
+    	//解析时会改写分页参数，每次执行使用参数的副本，再次执行时仍是用户设置的值
+    	List<Object> parameters= new ArrayList<Object>(boundParameters);
     	List<SQLExecutionUnit> executionUnits = sqlRouter.doRoute(shardingConnection.getExecuteContext(),sql, parameters);
     	List<ExecuteStatementWrapper<PreparedStatement>> result= new ArrayList<ExecuteStatementWrapper<PreparedStatement>>(executionUnits.size());
+    	boolean simplyDQL= shardingConnection.getExecuteContext().isSimplyDQLOperation();
+    	List<String> dataSourceNames= new ArrayList<String>(executionUnits.size());
+    	for (SQLExecutionUnit each : executionUnits) {
+    		dataSourceNames.add(each.getDataSourceName());
+    	}
+    	Iterator<Connection> connections= shardingConnection.getConnections(dataSourceNames).iterator();
         for (SQLExecutionUnit each : executionUnits) {
-        	Connection conn= shardingConnection.getConnection(each.getDataSourceName());
+        	Connection conn= connections.next();
             PreparedStatement preparedStatement = generatePrepareStatement(conn, each.getShardingSql());
-            setParameters(preparedStatement, parameters);
+            shardingConnection.applyGroupConcatMaxLen(conn);
+            applyStreamingFetch(preparedStatement, conn, executionUnits.size());
+            //UNION拆分后的执行单元只绑定自己分支的参数
+            List<Object> unitParameters= null != each.getParameters() ? each.getParameters() : parameters;
+            setParameters(preparedStatement, unitParameters);
             cachedRoutedPreparedStatements.add(preparedStatement);
-            result.add(new ExecuteStatementWrapper<PreparedStatement>(each,preparedStatement));
+            routedConnections.add(conn);
+            ExecuteStatementWrapper<PreparedStatement> wrapper= new ExecuteStatementWrapper<PreparedStatement>(each,preparedStatement);
+            if(simplyDQL){
+            	wrapper.setHedgeCreator(generateHedgeCreator(each, conn, unitParameters, executionUnits.size()));
+            }
+            result.add(wrapper);
         }
         return result;
     }
     
+    private HedgeStatementCreator<PreparedStatement> generateHedgeCreator(final SQLExecutionUnit unit, final Connection connection, final List<Object> parameters, final int units) {
+    	return new HedgeStatementCreator<PreparedStatement>(){
+			@Override
+			public PreparedStatement createHedgeStatement() throws SQLException {
+				Connection hedgeConnection= shardingConnection.getHedgeConnection(unit.getDataSourceName(), connection);
+				if(hedgeConnection== null){
+					return null;
+				}
+				PreparedStatement result = generatePrepareStatement(hedgeConnection, unit.getShardingSql());
+				shardingConnection.applyGroupConcatMaxLen(hedgeConnection);
+				applyStreamingFetch(result, hedgeConnection, units);
+				setParameters(result, parameters);
+				cachedRoutedPreparedStatements.add(result);
+				routedConnections.add(hedgeConnection);
+				hedgeStatements.add(result);
+				hedgeConnections.add(hedgeConnection);
+				return result;
+			}
+    	};
+    }
+    
     @Override
     public List<PreparedStatement> getRoutedStatements() throws SQLException {
        return getRoutedPreparedStatements();
     }
     
     private PreparedStatement generatePrepareStatement(final Connection conn, final String shardingSql) throws SQLException {
+        PreparedStatement result;
         if (null != autoGeneratedKeys) {
-            return conn.prepareStatement(shardingSql, autoGeneratedKeys);
-        }
-        if (null != columnIndexes) {
-            return conn.prepareStatement(shardingSql, columnIndexes);
+            result = conn.prepareStatement(shardingSql, autoGeneratedKeys);
+        } else if (null != columnIndexes) {
+            result = conn.prepareStatement(shardingSql, columnIndexes);
+        } else if (null != columnNames) {
+            result = conn.prepareStatement(shardingSql, columnNames);
+        } else if (0 != getResultSetHoldability()) {
+            result = conn.prepareStatement(shardingSql, getResultSetType(), getResultSetConcurrency(), getResultSetHoldability());
+        } else {
+            result = conn.prepareStatement(shardingSql, getResultSetType(), getResultSetConcurrency());
         }
-        if (null != columnNames) {
-            return conn.prepareStatement(shardingSql, columnNames);
-        }
-        if (0 != getResultSetHoldability()) {
-            return conn.prepareStatement(shardingSql, getResultSetType(), getResultSetConcurrency(), getResultSetHoldability());
+        applyStatementSettings(result);
+        applyMaxRows(result, shardingConnection.getExecuteContext());
+        return result;
+    }
+    
+    /**
+     * 没有显式设置fetchSize时按数据库类型开启流式读取.
+     */
+    private void applyStreamingFetch(final PreparedStatement statement, final Connection connection, final int units) throws SQLException {
+        if (0 == getFetchSize()) {
+            shardingConnection.applyStreamingFetch(statement, connection, units);
         }
-        return conn.prepareStatement(shardingSql, getResultSetType(), getResultSetConcurrency());
     }
     
     private void setParameters(final PreparedStatement preparedStatement, final List<Object> parameters) throws SQLException {
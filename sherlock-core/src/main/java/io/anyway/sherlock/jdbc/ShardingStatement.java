@@ -15,8 +15,10 @@ import com.google.common.base.Charsets;
 import com.google.common.hash.HashCode;
 import com.google.common.hash.Hashing;
 
+import io.anyway.sherlock.executor.ExecuteContext;
 import io.anyway.sherlock.executor.ExecuteStatementCallback;
 import io.anyway.sherlock.executor.ExecuteStatementProcessor;
+import io.anyway.sherlock.executor.HedgeStatementCreator;
 import io.anyway.sherlock.executor.support.ExecuteStatementWrapper;
 import io.anyway.sherlock.jdbc.adapter.AbstractStatementAdapter;
 import io.anyway.sherlock.merger.MergeUtils;
@@ -39,6 +41,11 @@ public class ShardingStatement extends AbstractStatementAdapter {
     
     private Map<HashCode, Statement> cachedRoutedStatements = new HashMap<HashCode, Statement>();
     
+    private Map<Statement, Connection> routedConnections = new HashMap<Statement, Connection>();
+    
+    //对冲读创建的Statement，再次执行或关闭时释放
+    private List<Statement> hedgeStatements = new ArrayList<Statement>();
+    
     protected ResultSet currentResultSet;
     
     public ShardingStatement(final ShardingConnection shardingConnection) {
@@ -69,13 +76,29 @@ public class ShardingStatement extends AbstractStatementAdapter {
             currentResultSet.close();
         }
         
-        List<ResultSet> result= processor.execute(shardingConnection.getExecuteContext(),generateExecuteStatementWrappers(sql), new ExecuteStatementCallback<Statement,ResultSet>(){
+        return currentResultSet= executeAndMergeQuery(generateExecuteStatementWrappers(sql), new ExecuteStatementCallback<Statement,ResultSet>(){
 			@Override
 			public ResultSet execute(String shardingSql,Statement statement) throws SQLException {
 				return statement.executeQuery(shardingSql);
 			}
     	});
-        return currentResultSet= MergeUtils.mergeResultSet(result, shardingConnection.getExecuteContext());
+    }
+    
+    /**
+     * 执行查询并归并结果集，开启streamingMerge或有limit时无排序的只读查询按分片完成顺序归并，
+     * limit满足后可以取消其余分片的查询
+     * @param wrappers
+     * @param callback
+     * @return 归并后的结果集
+     * @throws SQLException
+     */
+    protected <T extends Statement> ResultSet executeAndMergeQuery(List<ExecuteStatementWrapper<T>> wrappers,ExecuteStatementCallback<T,ResultSet> callback) throws SQLException {
+        ExecuteContext ctx= shardingConnection.getExecuteContext();
+        if(wrappers.size() > 1 && ctx.isSimplyDQLOperation() && MergeUtils.isStreamingMergeable(ctx)
+        		&& (shardingConnection.shardingDataSource.streamingMerge || ctx.getSQLParsedResult().getLimit()!= null)){
+        	return limitMaxRows(MergeUtils.mergeResultSet(processor.executeStreaming(ctx, wrappers, callback), ctx));
+        }
+        return limitMaxRows(MergeUtils.mergeResultSet(processor.execute(ctx, wrappers, callback), ctx));
     }
     
     @Override
@@ -167,31 +190,122 @@ public class ShardingStatement extends AbstractStatementAdapter {
     }
     
     private List<ExecuteStatementWrapper<Statement>> generateExecuteStatementWrappers(final String sql) throws SQLException {
+    	releaseHedgeStatements();
+    	shardingConnection.setExecuteDeadline(getQueryTimeout());
     	List<SQLExecutionUnit> executionUnits = sqlRouter.doRoute(shardingConnection.getExecuteContext(),sql, Collections.emptyList());
         List<ExecuteStatementWrapper<Statement>> result= new ArrayList<ExecuteStatementWrapper<Statement>>(executionUnits.size());
+        boolean simplyDQL= shardingConnection.getExecuteContext().isSimplyDQLOperation();
+        Map<HashCode, Connection> connections= acquireConnections(executionUnits);
     	for (SQLExecutionUnit it : executionUnits) {
-        	Statement statement= generateStatement(it.getShardingSql(),it.getDataSourceName());
-        	result.add(new ExecuteStatementWrapper<Statement>(it,statement));
+        	Statement statement= generateStatement(it.getShardingSql(),it.getDataSourceName(),connections);
+        	applyMaxRows(statement,shardingConnection.getExecuteContext());
+        	shardingConnection.applyGroupConcatMaxLen(routedConnections.get(statement));
+        	applyStreamingFetch(statement,routedConnections.get(statement),executionUnits.size());
+        	ExecuteStatementWrapper<Statement> wrapper= new ExecuteStatementWrapper<Statement>(it,statement);
+        	if(simplyDQL){
+        		wrapper.setHedgeCreator(generateHedgeCreator(it.getDataSourceName(),routedConnections.get(statement),executionUnits.size()));
+        	}
+        	result.add(wrapper);
+        }
+        return result;
+    }
+    
+    private HedgeStatementCreator<Statement> generateHedgeCreator(final String dataSourceName, final Connection connection, final int units) {
+    	return new HedgeStatementCreator<Statement>(){
+			@Override
+			public Statement createHedgeStatement() throws SQLException {
+				Connection hedgeConnection= shardingConnection.getHedgeConnection(dataSourceName, connection);
+				if(hedgeConnection== null){
+					return null;
+				}
+				Statement result= createStatement(hedgeConnection);
+				applyMaxRows(result,shardingConnection.getExecuteContext());
+				shardingConnection.applyGroupConcatMaxLen(hedgeConnection);
+				applyStreamingFetch(result,hedgeConnection,units);
+				hedgeStatements.add(result);
+				routedConnections.put(result, hedgeConnection);
+				return result;
+			}
+    	};
+    }
+    
+    /**
+     * 关闭上一次执行的对冲读Statement并释放其连接，再次执行时上一次的结果集已不再使用，
+     * 否则复用的Statement每次执行都会多占用一个对冲读连接
+     */
+    private void releaseHedgeStatements() throws SQLException {
+        if (hedgeStatements.isEmpty()) {
+            return;
+        }
+        List<Connection> connections = new ArrayList<Connection>(hedgeStatements.size());
+        for (Statement each : hedgeStatements) {
+            try {
+                each.close();
+            } catch (final SQLException ignored) {
+            }
+            connections.add(routedConnections.remove(each));
+        }
+        hedgeStatements.clear();
+        shardingConnection.releaseConnections(connections);
+    }
+    
+    /**
+     * 为没有缓存Statement的执行单元一次性获取连接
+     */
+    private Map<HashCode, Connection> acquireConnections(final List<SQLExecutionUnit> executionUnits) throws SQLException {
+        List<HashCode> hashCodes = new ArrayList<HashCode>(executionUnits.size());
+        List<String> dataSourceNames = new ArrayList<String>(executionUnits.size());
+        for (SQLExecutionUnit each : executionUnits) {
+            HashCode hashCode = hash(each.getShardingSql(), each.getDataSourceName());
+            if (!cachedRoutedStatements.containsKey(hashCode) && !hashCodes.contains(hashCode)) {
+                hashCodes.add(hashCode);
+                dataSourceNames.add(each.getDataSourceName());
+            }
+        }
+        List<Connection> connections = shardingConnection.getConnections(dataSourceNames);
+        Map<HashCode, Connection> result = new HashMap<HashCode, Connection>(hashCodes.size());
+        for (int i = 0; i < hashCodes.size(); i++) {
+            result.put(hashCodes.get(i), connections.get(i));
         }
         return result;
     }
     
-    private Statement generateStatement(final String sql, final String dataSourceName) throws SQLException {
-        HashCode hashCode =  Hashing.md5().newHasher().putString(sql, Charsets.UTF_8).putString(dataSourceName, Charsets.UTF_8).hash();
+    private HashCode hash(final String sql, final String dataSourceName) {
+        return Hashing.md5().newHasher().putString(sql, Charsets.UTF_8).putString(dataSourceName, Charsets.UTF_8).hash();
+    }
+    
+    private Statement generateStatement(final String sql, final String dataSourceName, final Map<HashCode, Connection> connections) throws SQLException {
+        HashCode hashCode = hash(sql, dataSourceName);
         if (cachedRoutedStatements.containsKey(hashCode)) {
             return cachedRoutedStatements.get(hashCode);
         }
-        Connection connection = shardingConnection.getConnection(dataSourceName);
+        Connection connection = connections.get(hashCode);
+        Statement result = createStatement(connection);
+        cachedRoutedStatements.put(hashCode, result);
+        routedConnections.put(result, connection);
+        return result;
+    }
+    
+    private Statement createStatement(final Connection connection) throws SQLException {
         Statement result;
         if (0 == resultSetHoldability) {
             result = connection.createStatement(resultSetType, resultSetConcurrency);
         } else {
             result = connection.createStatement(resultSetType, resultSetConcurrency, resultSetHoldability);
         }
-        cachedRoutedStatements.put(hashCode, result);
+        applyStatementSettings(result);
         return result;
     }
     
+    /**
+     * 没有显式设置fetchSize时按数据库类型开启流式读取.
+     */
+    private void applyStreamingFetch(final Statement statement, final Connection connection, final int units) throws SQLException {
+        if (0 == getFetchSize()) {
+            shardingConnection.applyStreamingFetch(statement, connection, units);
+        }
+    }
+    
     @Override
     public ResultSet getResultSet() throws SQLException {
         if (null != currentResultSet) {
@@ -201,17 +315,25 @@ public class ShardingStatement extends AbstractStatementAdapter {
         for (Statement each : getRoutedStatements()) {
             resultSets.add(each.getResultSet());
         }
-        return currentResultSet = MergeUtils.mergeResultSet(resultSets, shardingConnection.getExecuteContext());
+        return currentResultSet = limitMaxRows(MergeUtils.mergeResultSet(resultSets, shardingConnection.getExecuteContext()));
     }
     
     @Override
     public Collection<? extends Statement> getRoutedStatements() throws SQLException {
-        return cachedRoutedStatements.values();
+        if (hedgeStatements.isEmpty()) {
+            return cachedRoutedStatements.values();
+        }
+        List<Statement> result = new ArrayList<Statement>(cachedRoutedStatements.values());
+        result.addAll(hedgeStatements);
+        return result;
     }
     
     @Override
     public void clearRoutedStatements() throws SQLException {
         cachedRoutedStatements.clear();
+        shardingConnection.releaseConnections(routedConnections.values());
+        routedConnections.clear();
+        hedgeStatements.clear();
     }
 
 	@Override
@@ -40,31 +40,55 @@ public abstract class AbstractConnectionAdapter extends AbstractUnsupportedOpera
     @Override
     public final void setAutoCommit(final boolean autoCommit) throws SQLException {
         this.autoCommit = autoCommit;
-        for (Connection each : getConnections()) {
-            each.setAutoCommit(autoCommit);
-        }
+        forEachConnection(new ConnectionCallback() {
+            
+            @Override
+            public void doInConnection(final Connection connection) throws SQLException {
+                applyAutoCommit(connection, autoCommit);
+            }
+        }, false);
     }
     
     @Override
     public final void commit() throws SQLException {
-        for (Connection each : getConnections()) {
-            each.commit();
-        }
+        forEachConnection(new ConnectionCallback() {
+            
+            @Override
+            public void doInConnection(final Connection connection) throws SQLException {
+                connection.commit();
+            }
+        }, isOrderedCommit());
     }
     
     @Override
     public final void rollback() throws SQLException {
-        for (Connection each : getConnections()) {
-            each.rollback();
-        }
+        forEachConnection(new ConnectionCallback() {
+            
+            @Override
+            public void doInConnection(final Connection connection) throws SQLException {
+                connection.rollback();
+            }
+        }, false);
     }
     
     @Override
     public final void close() throws SQLException {
-        for (Connection each : getConnections()) {
-            each.close();
+        try {
+            forEachConnection(new ConnectionCallback() {
+                
+                @Override
+                public void doInConnection(final Connection connection) throws SQLException {
+                    try {
+                        resetSession(connection);
+                    } finally {
+                        connection.close();
+                    }
+                }
+            }, false);
+        } finally {
+            closed = true;
+            clearConnections();
         }
-        closed = true;
     }
     
     @Override
@@ -80,9 +104,13 @@ public abstract class AbstractConnectionAdapter extends AbstractUnsupportedOpera
     @Override
     public final void setReadOnly(final boolean readOnly) throws SQLException {
         this.readOnly = readOnly;
-        for (Connection each : getConnections()) {
-            each.setReadOnly(readOnly);
-        }
+        forEachConnection(new ConnectionCallback() {
+            
+            @Override
+            public void doInConnection(final Connection connection) throws SQLException {
+                applyReadOnly(connection, readOnly);
+            }
+        }, false);
     }
     
     @Override
@@ -93,9 +121,101 @@ public abstract class AbstractConnectionAdapter extends AbstractUnsupportedOpera
     @Override
     public final void setTransactionIsolation(final int level) throws SQLException {
         transactionIsolation = level;
+        forEachConnection(new ConnectionCallback() {
+            
+            @Override
+            public void doInConnection(final Connection connection) throws SQLException {
+                connection.setTransactionIsolation(level);
+            }
+        }, false);
+    }
+    
+    /**
+     * 对所有连接执行相同的操作.
+     * 无序执行时某个连接出错不影响其他连接, 所有异常通过setNextException串联后抛出;
+     * 有序执行时按获取连接的顺序依次执行, 出错即停止.
+     * 
+     * @param callback 连接操作
+     * @param ordered 是否需要按获取连接的顺序执行
+     * @throws SQLException
+     */
+    protected void forEachConnection(final ConnectionCallback callback, final boolean ordered) throws SQLException {
+        SQLException exception = null;
         for (Connection each : getConnections()) {
-            each.setTransactionIsolation(level);
+            try {
+                callback.doInConnection(each);
+            } catch (final SQLException ex) {
+                if (ordered) {
+                    throw ex;
+                }
+                exception = chainException(exception, ex);
+            }
+        }
+        if (null != exception) {
+            throw exception;
+        }
+    }
+    
+    protected static SQLException chainException(final SQLException exception, final SQLException next) {
+        if (null == exception) {
+            return next;
         }
+        exception.setNextException(next);
+        return exception;
+    }
+    
+    /**
+     * 设置实际连接的自动提交状态.
+     * 
+     * @param connection 实际连接
+     * @param autoCommit 是否自动提交
+     * @throws SQLException
+     */
+    protected void applyAutoCommit(final Connection connection, final boolean autoCommit) throws SQLException {
+        connection.setAutoCommit(autoCommit);
+    }
+    
+    /**
+     * 设置实际连接的只读状态.
+     * 
+     * @param connection 实际连接
+     * @param readOnly 是否只读
+     * @throws SQLException
+     */
+    protected void applyReadOnly(final Connection connection, final boolean readOnly) throws SQLException {
+        connection.setReadOnly(readOnly);
+    }
+    
+    /**
+     * 关闭前恢复实际连接被临时修改的会话状态, 避免带给连接池的下一个使用者.
+     * 
+     * @param connection 实际连接
+     * @throws SQLException
+     */
+    protected void resetSession(final Connection connection) throws SQLException {
+    }
+    
+    /**
+     * 关闭后清除保存的实际连接及其状态, 避免已关闭的连接一直被引用.
+     */
+    protected void clearConnections() {
+    }
+    
+    /**
+     * 提交事务时是否需要按获取连接的顺序依次提交.
+     * 
+     * @return 默认依次提交, 出错即停止
+     */
+    protected boolean isOrderedCommit() {
+        return true;
+    }
+    
+    /**
+     * 对单个连接的操作.
+     */
+    protected interface ConnectionCallback {
+        
+        void doInConnection(Connection connection) throws SQLException;
     }
     
     @Override
@@ -39,7 +39,7 @@ public abstract class AbstractResultSetAdapter extends AbstractUnsupportedOperat
     }
     
     @Override
-    public final void close() throws SQLException {
+    public void close() throws SQLException {
         for (ResultSet each : resultSets) {
             each.close();
         }
@@ -1,20 +1,32 @@
 package io.anyway.sherlock.jdbc.adapter;
 
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.SQLWarning;
 import java.sql.Statement;
 import java.util.Collection;
 
+import io.anyway.sherlock.executor.ExecuteContext;
 import io.anyway.sherlock.jdbc.unsupported.AbstractUnsupportedOperationStatement;
+import io.anyway.sherlock.merger.MergeUtils;
+import io.anyway.sherlock.merger.pipeline.coupling.MaxRowsCouplingResultSet;
 
 public abstract class AbstractStatementAdapter extends AbstractUnsupportedOperationStatement {
     
     private boolean closed;
     
-    private boolean poolable;
+    private Boolean poolable;
     
     private int fetchSize;
     
+    private int maxRows;
+    
+    private int maxFieldSize;
+    
+    private boolean escapeProcessing = true;
+    
+    private int queryTimeout;
+    
     @Override
     public final void close() throws SQLException {
         for (Statement each : getRoutedStatements()) {
@@ -31,7 +43,7 @@ public abstract class AbstractStatementAdapter extends AbstractUnsupportedOperat
     
     @Override
     public final boolean isPoolable() throws SQLException {
-        return poolable;
+        return null != poolable && poolable;
     }
     
     @Override
@@ -55,8 +67,57 @@ public abstract class AbstractStatementAdapter extends AbstractUnsupportedOperat
         }
     }
     
+    @Override
+    public final int getMaxRows() throws SQLException {
+        return maxRows;
+    }
+    
+    /* 
+     * 有分组或聚合的查询不能限制分片结果的行数, 因此只保存设置, 每次执行时再决定下推到分片的行数.
+     */
+    @Override
+    public final void setMaxRows(final int max) throws SQLException {
+        if (max < 0) {
+            throw new SQLException("maxRows must be >= 0");
+        }
+        this.maxRows = max;
+    }
+    
+    @Override
+    public final int getMaxFieldSize() throws SQLException {
+        return maxFieldSize;
+    }
+    
+    @Override
+    public final void setMaxFieldSize(final int max) throws SQLException {
+        if (max < 0) {
+            throw new SQLException("maxFieldSize must be >= 0");
+        }
+        this.maxFieldSize = max;
+        for (Statement each : getRoutedStatements()) {
+            each.setMaxFieldSize(max);
+        }
+    }
+    
+    @Override
+    public final int getQueryTimeout() throws SQLException {
+        return queryTimeout;
+    }
+    
+    /* 
+     * 超时时间在每次执行时换算成截止时间, 分片Statement按剩余时间设置queryTimeout.
+     */
+    @Override
+    public final void setQueryTimeout(final int seconds) throws SQLException {
+        if (seconds < 0) {
+            throw new SQLException("queryTimeout must be >= 0");
+        }
+        this.queryTimeout = seconds;
+    }
+    
     @Override
     public final void setEscapeProcessing(final boolean enable) throws SQLException {
+        this.escapeProcessing = enable;
         for (Statement each : getRoutedStatements()) {
             each.setEscapeProcessing(enable);
         }
@@ -107,6 +168,52 @@ public abstract class AbstractStatementAdapter extends AbstractUnsupportedOperat
         return false;
     }
     
+    /**
+     * 把保存的Statement设置应用到新创建的分片Statement上, 只设置和驱动默认值不同的部分.
+     * 
+     * @param statement 分片Statement
+     * @throws SQLException
+     */
+    protected final void applyStatementSettings(final Statement statement) throws SQLException {
+        if (0 != fetchSize) {
+            statement.setFetchSize(fetchSize);
+        }
+        if (0 != maxFieldSize) {
+            statement.setMaxFieldSize(maxFieldSize);
+        }
+        if (!escapeProcessing) {
+            statement.setEscapeProcessing(false);
+        }
+        if (null != poolable) {
+            statement.setPoolable(poolable);
+        }
+    }
+    
+    /**
+     * 每次执行前设置分片Statement的最大行数, 缓存的分片Statement会被不同的查询重用, 不能下推时要重置为0.
+     * 
+     * @param statement 分片Statement
+     * @param ctx 当前执行的上下文
+     * @throws SQLException
+     */
+    protected final void applyMaxRows(final Statement statement, final ExecuteContext ctx) throws SQLException {
+        int rows = MergeUtils.getPushableMaxRows(ctx, maxRows);
+        if (statement.getMaxRows() != rows) {
+            statement.setMaxRows(rows);
+        }
+    }
+    
+    /**
+     * 分片各自最多返回maxRows行, 归并后的结果仍需截断到maxRows行.
+     * 
+     * @param resultSet 归并后的结果集
+     * @return 限制了最大行数的结果集
+     * @throws SQLException
+     */
+    protected final ResultSet limitMaxRows(final ResultSet resultSet) throws SQLException {
+        return 0 == maxRows ? resultSet : new MaxRowsCouplingResultSet(resultSet, maxRows, getRoutedStatements());
+    }
+    
     /**
      * 获取路由的静态语句对象集合.
      * 
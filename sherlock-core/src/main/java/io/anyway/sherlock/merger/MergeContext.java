@@ -1,11 +1,19 @@
 package io.anyway.sherlock.merger;
 
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
+import io.anyway.sherlock.datasource.DatabaseType;
 import io.anyway.sherlock.executor.ExecuteContext;
+import io.anyway.sherlock.sqlparser.SQLHavingPredicate;
 import io.anyway.sherlock.sqlparser.bean.AggregationColumn;
 import io.anyway.sherlock.sqlparser.bean.GroupColumn;
 import io.anyway.sherlock.sqlparser.bean.OrderColumn;
@@ -27,9 +35,15 @@ public final class MergeContext {
     
     private final ExecuteContext ctx;
 
+    private final boolean groupBySorted;
+
+    private final boolean distinctSorted;
+
     public MergeContext(final List<ResultSet> resultSets, final ExecuteContext ctx) throws SQLException {
         this.resultSets = resultSets;
         this.ctx = ctx;
+        groupBySorted = hasGroupColumn() && !getGroupOrderColumns().isEmpty() && isOrderedAsJava(getGroupOrderColumns());
+        distinctSorted = isDistinct() && isOrderByDistinctColumns() && isOrderedAsJava(getOrderColumns());
     }
     
     public List<OrderColumn> getOrderColumns() {
@@ -54,6 +68,71 @@ public final class MergeContext {
         return !CollectionUtils.isEmpty(ctx.getSQLParsedResult().getGroupColumns());
     }
 
+    /**
+     * 获取分片结果已排序的分组列.
+     *
+     * @return 分组列的排序方式, 分片结果没有按分组列排序时返回空集合
+     */
+    public List<OrderColumn> getGroupOrderColumns() {
+        List<OrderColumn> result = ctx.getSQLParsedResult().getGroupOrderColumns();
+        return null == result ? Collections.<OrderColumn>emptyList() : result;
+    }
+
+    /**
+     * 判断分片结果是否已按分组列排序, 是则可以边归并边聚合.
+     *
+     * @return true:已按分组列排序 false:需要在内存中分组
+     */
+    public boolean isGroupBySorted() {
+        return groupBySorted;
+    }
+
+    /**
+     * 判断空值是否最小, MySQL中空值最小, PostgreSQL和Oracle中空值最大.
+     *
+     * @return true:空值最小 false:空值最大
+     */
+    public boolean isNullsLowest() {
+        return DatabaseType.MySQL == ctx.getDatabaseType();
+    }
+
+    /*
+     * 数据库按排序规则比较字符串, 例如MySQL不区分大小写, 和Java的比较结果不一致,
+     * 同一分组的行归并后可能不相邻, 所以只有数字和日期列才认为数据库的顺序和Java一致
+     */
+    private boolean isOrderedAsJava(final List<OrderColumn> orderColumns) throws SQLException {
+        if (resultSets.isEmpty()) {
+            return false;
+        }
+        ResultSetMetaData metaData = resultSets.get(0).getMetaData();
+        for (OrderColumn each : orderColumns) {
+            if (each.getColumnIndex() < 1 || each.getColumnIndex() > metaData.getColumnCount() || !isNumericOrDate(metaData.getColumnType(each.getColumnIndex()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isNumericOrDate(final int columnType) {
+        switch (columnType) {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+            case Types.BIGINT:
+            case Types.REAL:
+            case Types.FLOAT:
+            case Types.DOUBLE:
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+            case Types.DATE:
+            case Types.TIME:
+            case Types.TIMESTAMP:
+                return true;
+            default:
+                return false;
+        }
+    }
+
     public boolean hasAggregationColumn() {
         return !CollectionUtils.isEmpty(ctx.getSQLParsedResult().getAggregationColumns());
     }
@@ -65,6 +144,101 @@ public final class MergeContext {
         return Collections.emptyList();
     }
 
+    /**
+     * 判断是否有近似聚合, 分片返回的是摘要字符串, 只有一个分片时也需要合并.
+     *
+     * @return true:有近似聚合 false:没有近似聚合
+     */
+    public boolean hasApproximateAggregation() {
+        for (AggregationColumn each : getAgregationColumns()) {
+            if (each.getAggregationType().isApproximate()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 获取归并后按合并的聚合值过滤的HAVING条件.
+     *
+     * @return HAVING条件, 分片上已过滤或没有HAVING时返回null
+     */
+    public SQLHavingPredicate getHavingPredicate() {
+        return ctx.getSQLParsedResult().getHavingPredicate();
+    }
+
+    public boolean hasHavingPredicate() {
+        return null != getHavingPredicate();
+    }
+
+    /**
+     * 判断是否需要DISTINCT去重.
+     * 有分组或聚合时每组只有一行结果, 不再单独去重.
+     *
+     * @return true:需要去重 false:不需要去重
+     */
+    public boolean isDistinct() {
+        return ctx.getSQLParsedResult().distinct() && !hasGroupByOrAggregation();
+    }
+
+    /**
+     * 获取去重列, 即除补充的排序列之外的全部选择项.
+     *
+     * @return 去重列
+     */
+    public List<GroupColumn> getDistinctColumns() {
+        List<String> metadataColumns = ctx.getSQLParsedResult().getMetadataColumns();
+        List<GroupColumn> result = new ArrayList<GroupColumn>(metadataColumns.size());
+        for (int i = 0; i < metadataColumns.size(); i++) {
+            result.add(new GroupColumn(metadataColumns.get(i), i + 1));
+        }
+        return result;
+    }
+
+    /**
+     * 判断分片结果是否已按去重列排序, 是则相同的数据行归并后相邻.
+     * 字符串按数据库的排序规则比较, 和Java不一致时归并后相同的行可能不相邻, 只有数字和日期列才按有序去重.
+     *
+     * @return true:已按去重列排序 false:需要哈希去重
+     */
+    public boolean isDistinctSorted() {
+        return distinctSorted;
+    }
+
+    // 排序列覆盖全部去重列时, 相同的数据行在各分片上相邻
+    private boolean isOrderByDistinctColumns() {
+        if (!hasOrderColumn()) {
+            return false;
+        }
+        int columnCount = ctx.getSQLParsedResult().getMetadataColumns().size();
+        Set<Integer> orderIndexes = new HashSet<Integer>();
+        for (OrderColumn each : getOrderColumns()) {
+            if (each.getColumnIndex() < 1 || each.getColumnIndex() > columnCount) {
+                return false;
+            }
+            orderIndexes.add(each.getColumnIndex());
+        }
+        return orderIndexes.size() == columnCount;
+    }
+
+    /**
+     * 获取归并可在内存中缓存的字节数.
+     *
+     * @return 字节数, 0表示不限制
+     */
+    public long getMemoryBudget() {
+        return null == ctx.getShardingConnection() ? 0 : ctx.getShardingConnection().getMergeMemoryBudget();
+    }
+
+    /**
+     * 获取内存排序使用的线程池.
+     *
+     * @return 线程池, 为null时只在调用线程中排序
+     */
+    public ExecutorService getSortExecutor() {
+        return null == ctx.getShardingConnection() ? null : ctx.getShardingConnection().getMergeSortExecutor();
+    }
+
     public Limit getLimit() {
         return ctx.getSQLParsedResult()!=null?ctx.getSQLParsedResult().getLimit(): null;
     }
@@ -91,11 +265,20 @@ public final class MergeContext {
 
 
     /**
-     * 判断排序归并是否需要内存排序.
+     * 判断是否为没有分组的聚合计算, 每个分片只返回一行.
+     *
+     * @return true:没有分组的聚合计算 false:有分组或没有聚合
+     */
+    public boolean isScalarAggregation() {
+        return hasAggregationColumn() && !hasGroupColumn();
+    }
+
+    /**
+     * 判断排序归并是否需要内存排序, 哈希分组和哈希去重都会打乱分片结果的顺序.
      *
      * @return 排序归并是否需要内存排序
      */
     public boolean isNeedMemorySortForOrderBy() {
-        return hasOrderColumn() && hasGroupColumn();
+        return hasOrderColumn() && (hasGroupColumn() && !isGroupBySorted() || isDistinct() && !isDistinctSorted());
     }
 }
@@ -1,9 +1,13 @@
 package io.anyway.sherlock.merger;
 
+import io.anyway.sherlock.executor.ExecuteCompletion;
 import io.anyway.sherlock.executor.ExecuteContext;
+import io.anyway.sherlock.sqlparser.SQLParsedResult;
+import org.springframework.util.CollectionUtils;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -26,6 +30,59 @@ public class MergeUtils {
 		return ResultSetFactory.getResultSet(mc);
 	}
 
+	/**
+	 * 按分片完成顺序归并结果集，等到第一个分片返回即可读取
+	 *
+	 * @param completion 按完成顺序获取的分片结果集
+	 * @param ctx
+	 * @return
+	 * @throws SQLException
+	 */
+	public static ResultSet mergeResultSet(ExecuteCompletion<ResultSet> completion, ExecuteContext ctx) throws SQLException {
+		List<ResultSet> resultSets= new ArrayList<ResultSet>(4);
+		resultSets.add(completion.next());
+		MergeContext mc = new MergeContext(resultSets, ctx);
+		return ResultSetFactory.getStreamingResultSet(mc, completion);
+	}
+
+	/**
+	 * 判断是否可以按分片完成顺序归并，有分组、排序或去重的查询需要等待所有分片结果，没有分组的聚合可以边完成边累加
+	 *
+	 * @param ctx
+	 * @return
+	 */
+	public static boolean isStreamingMergeable(ExecuteContext ctx) {
+		SQLParsedResult parsedResult= ctx.getSQLParsedResult();
+		if(parsedResult== null || !CollectionUtils.isEmpty(parsedResult.getGroupColumns())){
+			return false;
+		}
+		//没有分组的聚合每个分片只有一行，按完成顺序累加即可
+		if(!CollectionUtils.isEmpty(parsedResult.getAggregationColumns())){
+			return true;
+		}
+		return CollectionUtils.isEmpty(parsedResult.getOrderColumns()) && !parsedResult.distinct();
+	}
+
+	/**
+	 * 计算下推到分片的最大行数，有分组或聚合的查询需要分片的全部结果，返回0表示不限制；
+	 * 有分页偏移量时归并要先跳过offset行，分片需要返回offset+maxRows行
+	 *
+	 * @param ctx
+	 * @param maxRows Statement设置的最大行数
+	 * @return
+	 */
+	public static int getPushableMaxRows(ExecuteContext ctx,int maxRows) {
+		SQLParsedResult parsedResult= ctx.getSQLParsedResult();
+		if(maxRows== 0 || parsedResult== null
+				|| !CollectionUtils.isEmpty(parsedResult.getGroupColumns())
+				|| !CollectionUtils.isEmpty(parsedResult.getAggregationColumns())){
+			return 0;
+		}
+		Limit limit= parsedResult.getLimit();
+		long result= limit== null? maxRows: (long)Math.max(0,limit.getOffset())+ maxRows;
+		return result> Integer.MAX_VALUE? 0: (int)result;
+	}
+
 	/**
 	 * 其它结果集合归并
 	 *
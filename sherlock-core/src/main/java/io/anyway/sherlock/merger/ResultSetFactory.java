@@ -4,11 +4,18 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.List;
 
+import io.anyway.sherlock.executor.ExecuteCompletion;
+import io.anyway.sherlock.merger.pipeline.coupling.DistinctCouplingResultSet;
 import io.anyway.sherlock.merger.pipeline.coupling.GroupByCouplingResultSet;
+import io.anyway.sherlock.merger.pipeline.coupling.HavingCouplingResultSet;
 import io.anyway.sherlock.merger.pipeline.coupling.LimitCouplingResultSet;
 import io.anyway.sherlock.merger.pipeline.coupling.MemoryOrderByCouplingResultSet;
+import io.anyway.sherlock.merger.pipeline.coupling.TopNOrderByCouplingResultSet;
+import io.anyway.sherlock.merger.pipeline.reducer.CompletionOrderReducerResultSet;
+import io.anyway.sherlock.merger.pipeline.reducer.DistinctReducerResultSet;
 import io.anyway.sherlock.merger.pipeline.reducer.GroupByReducerResultSet;
 import io.anyway.sherlock.merger.pipeline.reducer.IteratorReducerResultSet;
+import io.anyway.sherlock.merger.pipeline.reducer.ScalarAggregationReducerResultSet;
 import io.anyway.sherlock.merger.pipeline.reducer.StreamingOrderByReducerResultSet;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
@@ -30,19 +37,37 @@ public final class ResultSetFactory {
     public static ResultSet getResultSet(final MergeContext mergeContext) throws SQLException {
         if (mergeContext.getResultSets().isEmpty()) {
             return buildEmpty(mergeContext.getResultSets());
-        } else if (mergeContext.getResultSets().size() == 1) {
+        } else if (mergeContext.getResultSets().size() == 1 && !mergeContext.hasApproximateAggregation()) {
             return buildSingle(mergeContext.getResultSets(), mergeContext);
         } else {
             return buildMultiple(mergeContext.getResultSets(), mergeContext);
         }
     }
     
+    /**
+     * 获取按分片完成顺序归并的结果集, 仅适用于无分组、聚合和排序的查询, 或者没有分组的聚合查询.
+     *
+     * @param mergeContext 结果归并上下文, 只包含最先完成的分片结果集
+     * @param completion 其余分片的执行结果
+     * @return 结果集包装
+     */
+    public static ResultSet getStreamingResultSet(final MergeContext mergeContext, final ExecuteCompletion<ResultSet> completion) throws SQLException {
+        ResultSet result = mergeContext.isScalarAggregation()
+                ? new ScalarAggregationReducerResultSet(mergeContext, completion) : new CompletionOrderReducerResultSet(mergeContext, completion);
+        if (mergeContext.hasHavingPredicate()) {
+            result = new HavingCouplingResultSet(result, mergeContext);
+        }
+        return mergeContext.hasLimit() ? new LimitCouplingResultSet(result, mergeContext) : result;
+    }
+    
     private static ResultSet buildEmpty(final List<ResultSet> resultSets) {
         return resultSets.get(0);
     }
     
     private static ResultSet buildSingle(final List<ResultSet> resultSets, final MergeContext mergeContext) throws SQLException {
-        return mergeContext.hasLimit() ? new LimitCouplingResultSet(resultSets.get(0), mergeContext) : resultSets.get(0);
+        // 只有一个分片时聚合值已经是最终结果, 但HAVING已从分片SQL中提出, 仍需过滤
+        ResultSet result = mergeContext.hasHavingPredicate() ? new HavingCouplingResultSet(resultSets.get(0), mergeContext) : resultSets.get(0);
+        return mergeContext.hasLimit() ? new LimitCouplingResultSet(result, mergeContext) : result;
     }
     
     private static ResultSet buildMultiple(final List<ResultSet> resultSets, final MergeContext mergeContext) throws SQLException {
@@ -50,9 +75,20 @@ public final class ResultSetFactory {
     }
     
     private static ResultSet buildReducer(final MergeContext mergeContext) throws SQLException {
+        if (mergeContext.isGroupBySorted()) {
+            // 各分片已按分组列排序, 多路归并后相同分组相邻, 由分组连接结果集边读边聚合
+            return new StreamingOrderByReducerResultSet(mergeContext, mergeContext.getGroupOrderColumns());
+        }
+        if (mergeContext.isScalarAggregation()) {
+            // 没有分组时只有一行结果, 直接累加各分片的行
+            return new ScalarAggregationReducerResultSet(mergeContext);
+        }
         if (mergeContext.hasGroupByOrAggregation()) {
             return new GroupByReducerResultSet(mergeContext);
         }
+        if (mergeContext.isDistinct() && !mergeContext.isDistinctSorted()) {
+            return new DistinctReducerResultSet(mergeContext);
+        }
         if (mergeContext.hasOrderColumn()) {
             return new StreamingOrderByReducerResultSet(mergeContext);
         }
@@ -61,15 +97,40 @@ public final class ResultSetFactory {
     
     private static ResultSet buildCoupling(final ResultSet resultSet, final MergeContext mergeContext) throws SQLException {
         ResultSet result = resultSet;
-        if (mergeContext.hasGroupByOrAggregation()) {
+        // 哈希聚合的结果已经每组一行, 只有按分组列有序归并时需要边读边聚合
+        if (mergeContext.isGroupBySorted()) {
             result = new GroupByCouplingResultSet(result, mergeContext);
         }
-        if (mergeContext.hasOrderColumn()) {
-            result = new MemoryOrderByCouplingResultSet(result, mergeContext);
+        // 聚合值合并之后才能判断HAVING条件, 先过滤再排序可以减少排序的行数
+        if (mergeContext.hasHavingPredicate()) {
+            result = new HavingCouplingResultSet(result, mergeContext);
+        }
+        // 没有分组时各分片结果已经由流式归并排好序, 只有哈希分组或哈希去重后需要重新排序
+        if (mergeContext.isNeedMemorySortForOrderBy()) {
+            int topN = getTopN(mergeContext);
+            result = topN > 0 ? new TopNOrderByCouplingResultSet(result, mergeContext, topN) : new MemoryOrderByCouplingResultSet(result, mergeContext);
+        }
+        // 按去重列排序后相同的数据行相邻, 和上一行比较即可去重
+        if (mergeContext.isDistinctSorted()) {
+            result = new DistinctCouplingResultSet(result, mergeContext);
         }
         if (mergeContext.hasLimit()) {
             result = new LimitCouplingResultSet(result, mergeContext);
         }
         return result;
     }
+    
+    /**
+     * 有分页限制时只需要保留的行数.
+     *
+     * @return 行数, 没有分页限制或行数无效时返回0
+     */
+    private static int getTopN(final MergeContext mergeContext) {
+        if (!mergeContext.hasLimit()) {
+            return 0;
+        }
+        Limit limit = mergeContext.getLimit();
+        long result = (long) limit.getOffset() + limit.getRowCount();
+        return limit.getOffset() < 0 || limit.getRowCount() <= 0 || result > Integer.MAX_VALUE ? 0 : (int) result;
+    }
 }
@@ -0,0 +1,92 @@
+package io.anyway.sherlock.merger.pipeline.coupling;
+
+import io.anyway.sherlock.merger.resultset.delegate.AbstractDelegateResultSet;
+import io.anyway.sherlock.merger.resultset.memory.MaterializedResultSet;
+import io.anyway.sherlock.merger.util.ResultSetUtil;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * 限制返回行数的连接结果集抽象类.
+ *
+ * <p>
+ * 返回最后一行时把该行缓存到内存中并立即关闭归并结果集, 未完成的分片查询随之取消, 不必等调用方读取下一行.
+ * MySQL流式读取的结果集关闭时会读完剩余的行, 关闭前先取消分片查询.
+ * </p>
+ *
+ * @author yangzz
+ */
+public abstract class AbstractRowLimitCouplingResultSet extends AbstractDelegateResultSet {
+
+    private final int offset;
+
+    private final int rowCount;
+
+    private int rowNumber;
+
+    private boolean terminated;
+
+    protected AbstractRowLimitCouplingResultSet(final ResultSet resultSet, final int offset, final int rowCount) throws SQLException {
+        super(Collections.singletonList(resultSet));
+        this.offset = offset;
+        this.rowCount = rowCount;
+    }
+
+    /**
+     * 获取归并结果集读取的分片Statement.
+     *
+     * @return 分片Statement集合
+     * @throws SQLException
+     */
+    protected abstract Collection<? extends Statement> getShardStatements() throws SQLException;
+
+    @Override
+    protected final boolean firstNext() throws SQLException {
+        return skipOffset() && doNext();
+    }
+
+    private boolean skipOffset() throws SQLException {
+        for (int i = 0; i < offset; i++) {
+            if (!getDelegate().next()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    protected final boolean afterFirstNext() throws SQLException {
+        return doNext();
+    }
+
+    private boolean doNext() throws SQLException {
+        if (rowNumber >= rowCount) {
+            terminate();
+            return false;
+        }
+        if (!getDelegate().next()) {
+            return false;
+        }
+        if (++rowNumber == rowCount) {
+            ResultSet lastRow = MaterializedResultSet.currentRow(getDelegate());
+            terminate();
+            setDelegate(lastRow);
+            lastRow.next();
+        }
+        return true;
+    }
+
+    private void terminate() throws SQLException {
+        if (!terminated) {
+            terminated = true;
+            for (Statement each : getShardStatements()) {
+                ResultSetUtil.cancelStreaming(each);
+            }
+            getDelegate().close();
+        }
+    }
+}
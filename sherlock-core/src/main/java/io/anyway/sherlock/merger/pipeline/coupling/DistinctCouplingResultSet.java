@@ -0,0 +1,63 @@
+package io.anyway.sherlock.merger.pipeline.coupling;
+
+import io.anyway.sherlock.merger.MergeContext;
+import io.anyway.sherlock.merger.pipeline.reducer.GroupByKey;
+import io.anyway.sherlock.merger.resultset.delegate.AbstractDelegateResultSet;
+import io.anyway.sherlock.sqlparser.bean.GroupColumn;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 已按去重列排序的DISTINCT连接结果集.
+ *
+ * <p>
+ * 相同的数据行在归并后相邻, 只需和上一行比较, 不占用额外内存.
+ * </p>
+ *
+ * @author yangzz
+ */
+public final class DistinctCouplingResultSet extends AbstractDelegateResultSet {
+
+    private final List<GroupColumn> distinctColumns;
+
+    private GroupByKey previous;
+
+    private GroupByKey current;
+
+    private boolean hasPrevious;
+
+    public DistinctCouplingResultSet(final ResultSet resultSet, final MergeContext mergeContext) throws SQLException {
+        super(Collections.singletonList(resultSet));
+        distinctColumns = mergeContext.getDistinctColumns();
+        previous = new GroupByKey(distinctColumns.size());
+        current = new GroupByKey(distinctColumns.size());
+    }
+
+    @Override
+    protected boolean firstNext() throws SQLException {
+        return doNext();
+    }
+
+    @Override
+    protected boolean afterFirstNext() throws SQLException {
+        return doNext();
+    }
+
+    private boolean doNext() throws SQLException {
+        while (getDelegate().next()) {
+            current.load(getDelegate(), distinctColumns);
+            if (hasPrevious && current.equals(previous)) {
+                continue;
+            }
+            GroupByKey swap = previous;
+            previous = current;
+            current = swap;
+            hasPrevious = true;
+            return true;
+        }
+        return false;
+    }
+}
@@ -47,9 +47,8 @@ public final class GroupByCouplingResultSet extends AbstractMemoryResultSet {
         }
 
         GroupByResultSetRow result = new GroupByResultSetRow(resultSet, groupByColumns, aggregationColumns);
-        List<Object> groupByValues = result.getGroupByValues();
-        while (hasNext && (groupByColumns.isEmpty() || groupByValues.equals(result.getGroupByValues()))) {
-            result.aggregate();
+        while (hasNext && result.isSameGroup(resultSet)) {
+            result.aggregate(resultSet);
             hasNext = resultSet.next();
         }
         result.generateResult();
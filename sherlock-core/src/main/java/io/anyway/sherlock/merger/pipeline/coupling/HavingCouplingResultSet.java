@@ -0,0 +1,47 @@
+package io.anyway.sherlock.merger.pipeline.coupling;
+
+import io.anyway.sherlock.merger.MergeContext;
+import io.anyway.sherlock.merger.resultset.delegate.AbstractDelegateResultSet;
+import io.anyway.sherlock.sqlparser.SQLHavingPredicate;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+
+/**
+ * HAVING条件的连接结果集.
+ *
+ * <p>
+ * 分片上的HAVING只能看到部分聚合值, 在各分片的聚合值合并之后按解析时编译好的条件逐行过滤.
+ * </p>
+ *
+ * @author yangzz
+ */
+public final class HavingCouplingResultSet extends AbstractDelegateResultSet {
+
+    private final SQLHavingPredicate havingPredicate;
+
+    public HavingCouplingResultSet(final ResultSet resultSet, final MergeContext mergeContext) throws SQLException {
+        super(Collections.singletonList(resultSet));
+        havingPredicate = mergeContext.getHavingPredicate();
+    }
+
+    @Override
+    protected boolean firstNext() throws SQLException {
+        return doNext();
+    }
+
+    @Override
+    protected boolean afterFirstNext() throws SQLException {
+        return doNext();
+    }
+
+    private boolean doNext() throws SQLException {
+        while (getDelegate().next()) {
+            if (havingPredicate.evaluate(getDelegate())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -1,49 +1,36 @@
 package io.anyway.sherlock.merger.pipeline.coupling;
 
-import io.anyway.sherlock.merger.Limit;
 import io.anyway.sherlock.merger.MergeContext;
-import io.anyway.sherlock.merger.resultset.delegate.AbstractDelegateResultSet;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.Collections;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 
 /**
  * 分页限制条件的连接结果集.
  * 
  * @author xiong.j
  */
-public final class LimitCouplingResultSet extends AbstractDelegateResultSet {
+public final class LimitCouplingResultSet extends AbstractRowLimitCouplingResultSet {
     
-    private final Limit limit;
-    
-    private int rowNumber;
+    private final List<ResultSet> shardResultSets;
     
     public LimitCouplingResultSet(final ResultSet resultSet, final MergeContext mergeContext) throws SQLException {
-        super(Collections.singletonList(resultSet));
-        limit = mergeContext.getLimit();
+        super(resultSet, mergeContext.getLimit().getOffset(), mergeContext.getLimit().getRowCount());
+        shardResultSets = mergeContext.getResultSets();
     }
     
     @Override
-    protected boolean firstNext() throws SQLException {
-        return skipOffset() && doNext();
-    }
-    
-    private boolean skipOffset() throws SQLException {
-        for (int i = 0; i < limit.getOffset(); i++) {
-            if (!getDelegate().next()) {
-                return false;
+    protected Collection<? extends Statement> getShardStatements() throws SQLException {
+        List<Statement> result = new ArrayList<Statement>(shardResultSets.size());
+        for (ResultSet each : shardResultSets) {
+            if (!each.isClosed()) {
+                result.add(each.getStatement());
             }
         }
-        return true;
-    }
-    
-    @Override
-    protected boolean afterFirstNext() throws SQLException {
-        return doNext();
-    }
-    
-    private boolean doNext() throws SQLException {
-        return ++rowNumber <= limit.getRowCount() && getDelegate().next();
+        return result;
     }
 }
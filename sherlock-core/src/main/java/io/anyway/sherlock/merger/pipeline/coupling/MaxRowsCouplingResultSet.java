@@ -0,0 +1,30 @@
+package io.anyway.sherlock.merger.pipeline.coupling;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collection;
+
+/**
+ * 最大行数限制的连接结果集.
+ *
+ * <p>
+ * 每个分片各自返回最多maxRows行, 归并后的结果仍需截断到maxRows行.
+ * </p>
+ *
+ * @author yangzz
+ */
+public final class MaxRowsCouplingResultSet extends AbstractRowLimitCouplingResultSet {
+
+    private final Collection<? extends Statement> shardStatements;
+
+    public MaxRowsCouplingResultSet(final ResultSet resultSet, final int maxRows, final Collection<? extends Statement> shardStatements) throws SQLException {
+        super(resultSet, 0, maxRows);
+        this.shardStatements = shardStatements;
+    }
+
+    @Override
+    protected Collection<? extends Statement> getShardStatements() {
+        return shardStatements;
+    }
+}
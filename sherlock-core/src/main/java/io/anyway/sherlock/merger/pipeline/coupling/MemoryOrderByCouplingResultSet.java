@@ -15,6 +15,6 @@ import java.util.Collections;
 public final class MemoryOrderByCouplingResultSet extends AbstractMemoryOrderByResultSet {
     
     public MemoryOrderByCouplingResultSet(final ResultSet resultSet, final MergeContext mergeContext) throws SQLException {
-        super(Collections.singletonList(resultSet), mergeContext.getOrderColumns());
+        super(Collections.singletonList(resultSet), mergeContext.getOrderColumns(), mergeContext.getMemoryBudget(), mergeContext.getSortExecutor(), mergeContext.isNullsLowest());
     }
 }
@@ -0,0 +1,101 @@
+package io.anyway.sherlock.merger.pipeline.coupling;
+
+import com.google.common.base.Optional;
+import io.anyway.sherlock.merger.MergeContext;
+import io.anyway.sherlock.merger.resultset.memory.AbstractMemoryResultSet;
+import io.anyway.sherlock.merger.resultset.memory.row.OrderByResultSetRow;
+import io.anyway.sherlock.merger.resultset.memory.row.ResultSetRow;
+import io.anyway.sherlock.sqlparser.bean.OrderColumn;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * 根据排序列只保留前N行的连接结果集.
+ *
+ * <p>
+ * 有分页限制时只需要offset + rowCount行, 使用大小有界的堆代替全部结果的内存排序.
+ * </p>
+ *
+ * @author yangzz
+ */
+public final class TopNOrderByCouplingResultSet extends AbstractMemoryResultSet {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final List<OrderColumn> orderByColumns;
+
+    private final int topN;
+
+    private final boolean nullsLowest;
+
+    private Iterator<TopNRow> rowIterator;
+
+    public TopNOrderByCouplingResultSet(final ResultSet resultSet, final MergeContext mergeContext, final int topN) throws SQLException {
+        super(Collections.singletonList(resultSet));
+        orderByColumns = mergeContext.getOrderColumns();
+        this.topN = topN;
+        nullsLowest = mergeContext.isNullsLowest();
+    }
+
+    @Override
+    protected void initRows(final List<ResultSet> resultSets) throws SQLException {
+        // 堆顶是当前保留的行中排在最后的一行; LIMIT很大时按实际行数扩容, 不预先分配
+        PriorityQueue<TopNRow> heap = new PriorityQueue<TopNRow>(Math.min(topN, INITIAL_CAPACITY), Collections.reverseOrder());
+        long sequence = 0;
+        for (ResultSet each : resultSets) {
+            while (each.next()) {
+                // 堆满后先只比较排序值, 排序值相同时后读取的行排在后面, 不需要保留
+                if (heap.size() >= topN && heap.peek().row.compareTo(each) <= 0) {
+                    sequence++;
+                    continue;
+                }
+                TopNRow row = new TopNRow(new OrderByResultSetRow(each, orderByColumns, nullsLowest), sequence++);
+                if (heap.size() >= topN) {
+                    heap.poll();
+                }
+                heap.offer(row);
+            }
+        }
+        List<TopNRow> rows = new ArrayList<TopNRow>(heap);
+        Collections.sort(rows);
+        rowIterator = rows.iterator();
+    }
+
+    @Override
+    protected Optional<? extends ResultSetRow> nextRow() throws SQLException {
+        if (rowIterator.hasNext()) {
+            return Optional.of(rowIterator.next().row);
+        }
+        return Optional.absent();
+    }
+
+    /**
+     * 排序值相同时按读取顺序, 和全部排序的结果保持一致.
+     */
+    private static final class TopNRow implements Comparable<TopNRow> {
+
+        private final OrderByResultSetRow row;
+
+        private final long sequence;
+
+        TopNRow(final OrderByResultSetRow row, final long sequence) {
+            this.row = row;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(final TopNRow other) {
+            int result = row.compareTo(other.row);
+            if (0 != result) {
+                return result;
+            }
+            return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+        }
+    }
+}
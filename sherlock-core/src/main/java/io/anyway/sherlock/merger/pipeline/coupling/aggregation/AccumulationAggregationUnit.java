@@ -4,28 +4,29 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 import java.math.BigDecimal;
-import java.util.List;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 
 /**
- * 累加聚合单元.
+ * 累加聚合单元, 用于DECIMAL等定点数类型.
  * 
  */
 @RequiredArgsConstructor
 @Slf4j
 public final class AccumulationAggregationUnit implements AggregationUnit {
     
+    private final int columnIndex;
+    
     private BigDecimal result;
     
     @Override
-    public void merge(final List<Comparable<?>> values) {
-        if (null == values || null == values.get(0)) {
+    public void merge(final ResultSet resultSet) throws SQLException {
+        BigDecimal value = resultSet.getBigDecimal(columnIndex);
+        if (null == value) {
             return;
         }
-        if (null == result) {
-            result = new BigDecimal("0");
-        }
-        result = result.add(new BigDecimal(values.get(0).toString()));
-        log.trace("Accumulation result: {}", result.toString());
+        result = null == result ? value : result.add(value);
+        log.trace("Accumulation result: {}", result);
     }
     
     @Override
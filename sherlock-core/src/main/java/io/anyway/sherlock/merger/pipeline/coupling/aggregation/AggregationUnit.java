@@ -1,6 +1,7 @@
 package io.anyway.sherlock.merger.pipeline.coupling.aggregation;
 
-import java.util.List;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 
 /**
  * 归并计算单元接口.
@@ -9,11 +10,12 @@ import java.util.List;
 public interface AggregationUnit {
     
     /**
-     * 归并聚合值.
+     * 归并结果集当前行的聚合值.
      * 
-     * @param values 聚合数值
+     * @param resultSet 分片结果集
+     * @throws SQLException SQL异常
      */
-    void merge(List<Comparable<?>> values);
+    void merge(ResultSet resultSet) throws SQLException;
     
     /**
      * 获取计算结果.
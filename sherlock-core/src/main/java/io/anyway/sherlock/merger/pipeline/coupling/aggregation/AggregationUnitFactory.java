@@ -4,27 +4,70 @@ import io.anyway.sherlock.sqlparser.bean.AggregationColumn;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+
 /**
  * 聚合函数结果集归并单元工厂.
  * 
+ * <p>
+ * 根据聚合列的数据库类型选择累加方式: 整数用long, 浮点数用double, 其余用BigDecimal.
+ * AVG、STDDEV和VARIANCE按分片追加的SUM、COUNT和平方和列合并.
+ * 近似聚合的列是分片返回的摘要字符串, 由对应的近似聚合单元解析合并.
+ * </p>
+ * 
  * @author xiong.j
  */
 @RequiredArgsConstructor(access = AccessLevel.PRIVATE)
 public final class AggregationUnitFactory {
     
-    public static AggregationUnit create(final AggregationColumn.AggregationType type) {
+    /**
+     * 创建归并单元.
+     * 
+     * @param column 聚合列
+     * @param metaData 分片结果集元数据
+     * @return 归并单元
+     * @throws SQLException SQL异常
+     */
+    public static AggregationUnit create(final AggregationColumn column, final ResultSetMetaData metaData) throws SQLException {
+        AggregationColumn.AggregationType type = column.getAggregationType();
+        int columnIndex = column.getColumnIndex();
         if (type.equals(AggregationColumn.AggregationType.MAX)) {
-            return new ComparableAggregationUnit(false);
+            return new ComparableAggregationUnit(false, columnIndex);
         } else if (type.equals(AggregationColumn.AggregationType.MIN)) {
-            return new ComparableAggregationUnit(true);
-        } else if (type.equals(AggregationColumn.AggregationType.SUM)) {
-            return new AccumulationAggregationUnit();
+            return new ComparableAggregationUnit(true, columnIndex);
         } else if (type.equals(AggregationColumn.AggregationType.COUNT)) {
-            return new AccumulationAggregationUnit();
+            return new LongAccumulationAggregationUnit(columnIndex);
+        } else if (type.equals(AggregationColumn.AggregationType.SUM)) {
+            int sqlType = metaData.getColumnType(columnIndex);
+            if (isInteger(sqlType)) {
+                return new LongAccumulationAggregationUnit(columnIndex);
+            }
+            if (isFloating(sqlType)) {
+                return new DoubleAccumulationAggregationUnit(columnIndex);
+            }
+            return new AccumulationAggregationUnit(columnIndex);
         } else if (type.equals(AggregationColumn.AggregationType.AVG)) {
-            return new AverageAggregationUnit();
+            return new AverageAggregationUnit(column.getSumIndex(), column.getCountIndex(), isFloating(metaData.getColumnType(column.getSumIndex())));
+        } else if (type.isStatistic()) {
+            boolean sample = type.equals(AggregationColumn.AggregationType.STDDEV_SAMP) || type.equals(AggregationColumn.AggregationType.VAR_SAMP);
+            boolean standardDeviation = type.equals(AggregationColumn.AggregationType.STDDEV_POP) || type.equals(AggregationColumn.AggregationType.STDDEV_SAMP);
+            return new VarianceAggregationUnit(column.getCountIndex(), column.getSumIndex(), column.getSumOfSquaresIndex(), sample, standardDeviation);
+        } else if (type.equals(AggregationColumn.AggregationType.APPROX_COUNT_DISTINCT)) {
+            return new ApproximateCountDistinctAggregationUnit(columnIndex);
+        } else if (type.equals(AggregationColumn.AggregationType.PERCENTILE_APPROX)) {
+            return new PercentileAggregationUnit(columnIndex, column.getPercentile());
         } else {
             throw new UnsupportedOperationException(type.toString());
         }
     }
+    
+    private static boolean isInteger(final int sqlType) {
+        return Types.TINYINT == sqlType || Types.SMALLINT == sqlType || Types.INTEGER == sqlType || Types.BIGINT == sqlType;
+    }
+    
+    private static boolean isFloating(final int sqlType) {
+        return Types.FLOAT == sqlType || Types.REAL == sqlType || Types.DOUBLE == sqlType;
+    }
 }
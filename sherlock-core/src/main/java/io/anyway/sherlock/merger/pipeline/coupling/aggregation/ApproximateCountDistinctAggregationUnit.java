@@ -0,0 +1,93 @@
+package io.anyway.sherlock.merger.pipeline.coupling.aggregation;
+
+import io.anyway.sherlock.sqlparser.SQLApproximateAggregation;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 近似去重计数聚合单元.
+ * 
+ * <p>
+ * 分片返回"去重计数:升序的最小哈希值列表", 哈希值是MD5的前15个十六进制字符, 在[0, 2^60)内均匀分布.
+ * 只取前k个哈希值, 去重计数大于k时以第k个哈希值为该分片的阈值.
+ * 哈希值少于min(去重计数, k)或长度不对说明被数据库截断了, 直接报错, 不用不完整的摘要估算.
+ * 取所有分片阈值的最小值T, 不超过T的哈希值在每个分片上都是完整的,
+ * 合并后不超过T的哈希值个数为k, 去重数估算为(k - 1) * 2^60 / (T + 1), 误差约为1/sqrt(k).
+ * 没有分片被截断时合并后的哈希值个数就是去重数.
+ * </p>
+ * 
+ * @author yangzz
+ */
+@RequiredArgsConstructor
+@Slf4j
+public final class ApproximateCountDistinctAggregationUnit implements AggregationUnit {
+    
+    private static final double HASH_SPACE = 1152921504606846976D;
+    
+    private final int columnIndex;
+    
+    private final Set<Long> hashes = new HashSet<Long>();
+    
+    private long threshold = Long.MAX_VALUE;
+    
+    private long maxCount;
+    
+    private boolean merged;
+    
+    @Override
+    public void merge(final ResultSet resultSet) throws SQLException {
+        String sketch = resultSet.getString(columnIndex);
+        if (null == sketch) {
+            return;
+        }
+        int separator = sketch.indexOf(':');
+        try {
+            long count = Long.parseLong(sketch.substring(0, separator));
+            String[] tokens = separator == sketch.length() - 1 ? new String[0] : sketch.substring(separator + 1).split(",");
+            int size = Math.min(tokens.length, SQLApproximateAggregation.SKETCH_SIZE);
+            if (size < Math.min(count, SQLApproximateAggregation.SKETCH_SIZE)) {
+                throw new SQLException(String.format("Approximate count distinct sketch of column %d is truncated, %d of %d hashes returned", columnIndex, tokens.length, count));
+            }
+            long max = -1;
+            for (int i = 0; i < size; i++) {
+                if (SQLApproximateAggregation.HASH_LENGTH != tokens[i].length()) {
+                    throw new SQLException(String.format("Approximate count distinct sketch of column %d is truncated, invalid hash: %s", columnIndex, tokens[i]));
+                }
+                long hash = Long.parseLong(tokens[i], 16);
+                hashes.add(hash);
+                max = Math.max(max, hash);
+            }
+            if (count > size) {
+                threshold = Math.min(threshold, max);
+            }
+            maxCount = Math.max(maxCount, count);
+        } catch (final RuntimeException ex) {
+            throw new SQLException(String.format("Invalid approximate count distinct sketch of column %d: %s", columnIndex, sketch), ex);
+        }
+        merged = true;
+        log.trace("Approximate count distinct hashes: {}, threshold: {}", hashes.size(), threshold);
+    }
+    
+    @Override
+    public Comparable<?> getResult() {
+        if (!merged) {
+            return null;
+        }
+        if (Long.MAX_VALUE == threshold) {
+            return Math.max(maxCount, hashes.size());
+        }
+        long k = 0;
+        for (Long each : hashes) {
+            if (each <= threshold) {
+                k++;
+            }
+        }
+        // 每个分片至少有自己的去重计数
+        return Math.max(maxCount, Math.round((k - 1) * HASH_SPACE / (threshold + 1)));
+    }
+}
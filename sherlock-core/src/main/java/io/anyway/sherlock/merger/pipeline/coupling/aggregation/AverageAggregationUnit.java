@@ -4,10 +4,12 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 import java.math.BigDecimal;
-import java.util.List;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 
 /**
- * 平均值聚合单元.
+ * 平均值聚合单元, 按各分片追加的SUM和COUNT列累加后相除.
+ * 浮点数列使用double计算, 其余使用BigDecimal.
  *
  * @author xiong.j
  */
@@ -15,32 +17,44 @@ import java.util.List;
 @Slf4j
 public final class AverageAggregationUnit implements AggregationUnit {
     
-    private BigDecimal count;
+    private final int sumIndex;
+    
+    private final int countIndex;
+    
+    private final boolean floating;
+    
+    private long count;
+    
+    private double doubleSum;
     
     private BigDecimal sum;
     
     @Override
-    public void merge(final List<Comparable<?>> values) {
-        if (null == values || null == values.get(0) || null == values.get(1)) {
+    public void merge(final ResultSet resultSet) throws SQLException {
+        long eachCount = resultSet.getLong(countIndex);
+        // 分片上没有非空值时SUM为NULL
+        if (0 == eachCount) {
             return;
         }
-        if (null == count) {
-            count = new BigDecimal("0");
-        }
-        if (null == sum) {
-            sum = new BigDecimal("0");
+        if (floating) {
+            doubleSum += resultSet.getDouble(sumIndex);
+        } else {
+            BigDecimal eachSum = resultSet.getBigDecimal(sumIndex);
+            sum = null == sum ? eachSum : sum.add(eachSum);
         }
-        sum = sum.add(new BigDecimal(values.get(1).toString()).multiply(new BigDecimal(values.get(0).toString())));
-        count = count.add(new BigDecimal(values.get(1).toString()));
-        log.trace("AVG result COUNT: {} SUM: {}", count, sum);
+        count += eachCount;
+        log.trace("AVG result COUNT: {} SUM: {}", count, floating ? doubleSum : sum);
     }
     
     @Override
     public Comparable<?> getResult() {
-        if (null == count || BigDecimal.ZERO.equals(count)) {
-            return count;
+        if (0 == count) {
+            return null;
+        }
+        if (floating) {
+            return doubleSum / count;
         }
         // TODO 通过metadata获取数据库的浮点数精度值
-        return sum.divide(count, 4, BigDecimal.ROUND_HALF_UP);
+        return sum.divide(BigDecimal.valueOf(count), 4, BigDecimal.ROUND_HALF_UP);
     }
 }
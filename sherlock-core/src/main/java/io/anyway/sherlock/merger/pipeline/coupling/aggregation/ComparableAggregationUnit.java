@@ -3,7 +3,8 @@ package io.anyway.sherlock.merger.pipeline.coupling.aggregation;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
-import java.util.List;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 
 /**
  * 比较聚合单元.
@@ -15,23 +16,26 @@ public final class ComparableAggregationUnit implements AggregationUnit {
     
     private final boolean asc;
     
+    private final int columnIndex;
+    
     private Comparable<?> result;
     
     @SuppressWarnings("unchecked")
     @Override
-    public void merge(final List<Comparable<?>> values) {
-        if (null == values || null == values.get(0)) {
+    public void merge(final ResultSet resultSet) throws SQLException {
+        Object value = resultSet.getObject(columnIndex);
+        if (null == value) {
             return;
         }
         if (null == result) {
-            result = values.get(0);
+            result = (Comparable<?>) value;
             log.trace("Comparable result: {}", result);
             return;
         }
         @SuppressWarnings("rawtypes")
-		int comparedValue = ((Comparable) values.get(0)).compareTo(result);
+		int comparedValue = ((Comparable) value).compareTo(result);
         if (asc && comparedValue < 0 || !asc && comparedValue > 0) {
-            result = values.get(0);
+            result = (Comparable<?>) value;
             log.trace("Comparable result: {}", result);
         }
     }
@@ -0,0 +1,36 @@
+package io.anyway.sherlock.merger.pipeline.coupling.aggregation;
+
+import lombok.RequiredArgsConstructor;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * 浮点数累加聚合单元, 用于FLOAT、REAL和DOUBLE列的SUM.
+ * 
+ * @author yangzz
+ */
+@RequiredArgsConstructor
+public final class DoubleAccumulationAggregationUnit implements AggregationUnit {
+    
+    private final int columnIndex;
+    
+    private boolean merged;
+    
+    private double result;
+    
+    @Override
+    public void merge(final ResultSet resultSet) throws SQLException {
+        double value = resultSet.getDouble(columnIndex);
+        if (resultSet.wasNull()) {
+            return;
+        }
+        merged = true;
+        result += value;
+    }
+    
+    @Override
+    public Comparable<?> getResult() {
+        return merged ? (Comparable<?>) result : null;
+    }
+}
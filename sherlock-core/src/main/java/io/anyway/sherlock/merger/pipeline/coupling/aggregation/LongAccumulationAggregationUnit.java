@@ -0,0 +1,44 @@
+package io.anyway.sherlock.merger.pipeline.coupling.aggregation;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * 整数累加聚合单元, 用于COUNT和整数列的SUM.
+ * 
+ * @author yangzz
+ */
+@RequiredArgsConstructor
+@Slf4j
+public final class LongAccumulationAggregationUnit implements AggregationUnit {
+    
+    private final int columnIndex;
+    
+    private boolean merged;
+    
+    private long result;
+    
+    @Override
+    public void merge(final ResultSet resultSet) throws SQLException {
+        long value = resultSet.getLong(columnIndex);
+        if (resultSet.wasNull()) {
+            return;
+        }
+        long sum = result + value;
+        // 两个同号的数相加结果变号即为溢出, 和数据库对整数列的处理一致直接报错
+        if (((result ^ sum) & (value ^ sum)) < 0) {
+            throw new SQLException(String.format("Accumulation of column %d is out of range: %d + %d", columnIndex, result, value));
+        }
+        result = sum;
+        merged = true;
+        log.trace("Accumulation result: {}", result);
+    }
+    
+    @Override
+    public Comparable<?> getResult() {
+        return merged ? (Comparable<?>) result : null;
+    }
+}
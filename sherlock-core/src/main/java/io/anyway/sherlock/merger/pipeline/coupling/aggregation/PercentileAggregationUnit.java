@@ -0,0 +1,94 @@
+package io.anyway.sherlock.merger.pipeline.coupling.aggregation;
+
+import io.anyway.sherlock.sqlparser.SQLApproximateAggregation;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 近似分位数聚合单元.
+ * 
+ * <p>
+ * 分片返回"行数:样本列表", MySQL是随机样本, PostgreSQL是等间隔的分位点, 只取前k个样本.
+ * 样本少于min(行数, k)说明被数据库截断了, 直接报错, 不用不完整的摘要估算.
+ * 每个样本代表该分片上行数/样本个数行, 合并后按权重累加到总权重的指定百分位即为结果.
+ * 内存只和分片数与样本个数有关.
+ * </p>
+ * 
+ * @author yangzz
+ */
+@RequiredArgsConstructor
+@Slf4j
+public final class PercentileAggregationUnit implements AggregationUnit {
+    
+    private final int columnIndex;
+    
+    private final double percentile;
+    
+    private final List<Sample> samples = new ArrayList<Sample>();
+    
+    private double totalWeight;
+    
+    @Override
+    public void merge(final ResultSet resultSet) throws SQLException {
+        String sketch = resultSet.getString(columnIndex);
+        if (null == sketch) {
+            return;
+        }
+        int separator = sketch.indexOf(':');
+        try {
+            long count = Long.parseLong(sketch.substring(0, separator));
+            String[] tokens = separator == sketch.length() - 1 ? new String[0] : sketch.substring(separator + 1).split(",");
+            int size = Math.min(tokens.length, SQLApproximateAggregation.SKETCH_SIZE);
+            if (size < Math.min(count, SQLApproximateAggregation.SKETCH_SIZE)) {
+                throw new SQLException(String.format("Percentile sketch of column %d is truncated, %d of %d samples returned", columnIndex, tokens.length, count));
+            }
+            if (size <= 0) {
+                return;
+            }
+            double weight = (double) count / size;
+            for (int i = 0; i < size; i++) {
+                samples.add(new Sample(Double.parseDouble(tokens[i]), weight));
+            }
+            totalWeight += count;
+        } catch (final RuntimeException ex) {
+            throw new SQLException(String.format("Invalid percentile sketch of column %d: %s", columnIndex, sketch), ex);
+        }
+        log.trace("Percentile samples: {}, total weight: {}", samples.size(), totalWeight);
+    }
+    
+    @Override
+    public Comparable<?> getResult() {
+        if (samples.isEmpty()) {
+            return null;
+        }
+        Collections.sort(samples);
+        double target = percentile * totalWeight;
+        double cumulative = 0;
+        for (Sample each : samples) {
+            cumulative += each.weight;
+            if (cumulative >= target) {
+                return each.value;
+            }
+        }
+        return samples.get(samples.size() - 1).value;
+    }
+    
+    @RequiredArgsConstructor
+    private static final class Sample implements Comparable<Sample> {
+        
+        private final double value;
+        
+        private final double weight;
+        
+        @Override
+        public int compareTo(final Sample other) {
+            return Double.compare(value, other.value);
+        }
+    }
+}
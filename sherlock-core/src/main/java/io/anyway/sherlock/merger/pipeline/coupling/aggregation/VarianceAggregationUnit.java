@@ -0,0 +1,64 @@
+package io.anyway.sherlock.merger.pipeline.coupling.aggregation;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * 标准差和方差聚合单元.
+ * 
+ * <p>
+ * 各分片追加COUNT、SUM和平方和列, 累加后方差为(平方和 - 和 * 和 / 行数) / 行数,
+ * 样本方差的除数为行数 - 1. 累加使用BigDecimal, 避免两个相近的大数相减丢失精度.
+ * </p>
+ * 
+ * @author yangzz
+ */
+@RequiredArgsConstructor
+@Slf4j
+public final class VarianceAggregationUnit implements AggregationUnit {
+    
+    private final int countIndex;
+    
+    private final int sumIndex;
+    
+    private final int sumOfSquaresIndex;
+    
+    private final boolean sample;
+    
+    private final boolean standardDeviation;
+    
+    private long count;
+    
+    private BigDecimal sum = BigDecimal.ZERO;
+    
+    private BigDecimal sumOfSquares = BigDecimal.ZERO;
+    
+    @Override
+    public void merge(final ResultSet resultSet) throws SQLException {
+        long eachCount = resultSet.getLong(countIndex);
+        if (0 == eachCount) {
+            return;
+        }
+        sum = sum.add(resultSet.getBigDecimal(sumIndex));
+        sumOfSquares = sumOfSquares.add(resultSet.getBigDecimal(sumOfSquaresIndex));
+        count += eachCount;
+        log.trace("Variance result COUNT: {} SUM: {} SUM OF SQUARES: {}", count, sum, sumOfSquares);
+    }
+    
+    @Override
+    public Comparable<?> getResult() {
+        // 和数据库一致, 没有数据或样本方差只有一行时结果为NULL
+        if (0 == count || sample && 1 == count) {
+            return null;
+        }
+        BigDecimal n = BigDecimal.valueOf(count);
+        BigDecimal deviation = sumOfSquares.subtract(sum.multiply(sum).divide(n, MathContext.DECIMAL128));
+        double result = Math.max(0D, deviation.divide(sample ? BigDecimal.valueOf(count - 1) : n, MathContext.DECIMAL128).doubleValue());
+        return standardDeviation ? Math.sqrt(result) : result;
+    }
+}
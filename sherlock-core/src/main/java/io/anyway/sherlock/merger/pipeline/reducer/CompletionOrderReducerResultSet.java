@@ -0,0 +1,60 @@
+package io.anyway.sherlock.merger.pipeline.reducer;
+
+import io.anyway.sherlock.executor.ExecuteCompletion;
+import io.anyway.sherlock.merger.MergeContext;
+import io.anyway.sherlock.merger.resultset.delegate.AbstractDelegateResultSet;
+import io.anyway.sherlock.merger.util.ResultSetUtil;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * 按分片完成顺序迭代归并的聚集结果集.
+ * 第一个分片返回后即可读取数据，其余分片在后台继续执行.
+ *
+ * @author yangzz
+ */
+public final class CompletionOrderReducerResultSet extends AbstractDelegateResultSet {
+    
+    private final ExecuteCompletion<ResultSet> completion;
+    
+    public CompletionOrderReducerResultSet(final MergeContext mc, final ExecuteCompletion<ResultSet> completion) throws SQLException {
+        super(mc.getResultSets());
+        this.completion = completion;
+    }
+    
+    @Override
+    protected boolean firstNext() throws SQLException {
+        return processCurrent() || processNext();
+    }
+    
+    @Override
+    protected boolean afterFirstNext() throws SQLException {
+        return processCurrent() || processNext();
+    }
+    
+    private boolean processCurrent() throws SQLException {
+        return getDelegate().next();
+    }
+    
+    private boolean processNext() throws SQLException {
+        while (completion.hasNext()) {
+            ResultSet resultSet = completion.next();
+            getResultSets().add(resultSet);
+            setDelegate(resultSet);
+            if (resultSet.next()) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    @Override
+    public void close() throws SQLException {
+        for (ResultSet each : completion.cancel()) {
+            ResultSetUtil.cancelStreaming(each.getStatement());
+            each.close();
+        }
+        super.close();
+    }
+}
@@ -0,0 +1,159 @@
+package io.anyway.sherlock.merger.pipeline.reducer;
+
+import io.anyway.sherlock.merger.MergeContext;
+import io.anyway.sherlock.merger.resultset.delegate.AbstractDelegateResultSet;
+import io.anyway.sherlock.merger.resultset.spill.SpillFile;
+import io.anyway.sherlock.merger.resultset.spill.SpilledResultSet;
+import io.anyway.sherlock.sqlparser.bean.GroupColumn;
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 基于哈希去重的DISTINCT聚集结果集.
+ *
+ * <p>
+ * 依次读取各分片结果集, 只在内存中保存已出现的去重键, 第一次出现的数据行直接返回.
+ * 设置了内存预算时, 去重键超过预算后新出现的数据行按哈希值写入临时文件分区, 分片读完后再逐个分区去重.
+ * </p>
+ *
+ * @author yangzz
+ */
+@Slf4j
+public final class DistinctReducerResultSet extends AbstractDelegateResultSet {
+
+    private final List<GroupColumn> distinctColumns;
+
+    private final long memoryBudget;
+
+    private final LinkedList<Partition> partitions = new LinkedList<Partition>();
+
+    private final GroupByKey probe;
+
+    private Set<GroupByKey> keys = new HashSet<GroupByKey>();
+
+    private long usedBytes;
+
+    private int level;
+
+    private SpillFile[] spillFiles;
+
+    private int resultSetIndex;
+
+    private ResultSet spilledResultSet;
+
+    public DistinctReducerResultSet(final MergeContext mc) throws SQLException {
+        super(mc.getResultSets());
+        distinctColumns = mc.getDistinctColumns();
+        memoryBudget = mc.getMemoryBudget();
+        probe = new GroupByKey(distinctColumns.size());
+    }
+
+    @Override
+    protected boolean firstNext() throws SQLException {
+        return doNext();
+    }
+
+    @Override
+    protected boolean afterFirstNext() throws SQLException {
+        return doNext();
+    }
+
+    private boolean doNext() throws SQLException {
+        do {
+            ResultSet current = getDelegate();
+            while (current.next()) {
+                probe.load(current, distinctColumns);
+                if (keys.contains(probe)) {
+                    continue;
+                }
+                if (null != spillFiles) {
+                    spill(probe.partition(level, GroupByReducerResultSet.PARTITION_COUNT)).write(current);
+                    continue;
+                }
+                GroupByKey key = probe.copy();
+                keys.add(key);
+                if (memoryBudget > 0 && level < GroupByReducerResultSet.MAX_SPILL_LEVEL) {
+                    usedBytes += key.getEstimatedSize();
+                    if (usedBytes > memoryBudget) {
+                        spillFiles = new SpillFile[GroupByReducerResultSet.PARTITION_COUNT];
+                    }
+                }
+                return true;
+            }
+        } while (nextResultSet());
+        return false;
+    }
+
+    private SpillFile spill(final int index) throws SQLException {
+        if (null == spillFiles[index]) {
+            spillFiles[index] = SpillFile.create(getResultSets().get(0).getMetaData().getColumnCount());
+            // 创建后立即登记, 出现异常时由close删除
+            partitions.add(new Partition(spillFiles[index], level + 1));
+        }
+        return spillFiles[index];
+    }
+
+    private boolean nextResultSet() throws SQLException {
+        if (++resultSetIndex < getResultSets().size()) {
+            setDelegate(getResultSets().get(resultSetIndex));
+            return true;
+        }
+        // 分片或当前分区读完, 此前写入的分区才可以读取
+        if (null != spillFiles) {
+            for (SpillFile each : spillFiles) {
+                if (null != each) {
+                    each.finish();
+                }
+            }
+            spillFiles = null;
+        }
+        closeSpilledResultSet();
+        if (partitions.isEmpty()) {
+            return false;
+        }
+        Partition partition = partitions.removeFirst();
+        log.debug("Distinct spilled partition with {} rows", partition.spillFile.getRowCount());
+        // 分区之间的去重键互不相同, 每个分区重新计数
+        keys = new HashSet<GroupByKey>();
+        usedBytes = 0;
+        level = partition.level;
+        spilledResultSet = new SpilledResultSet(getResultSets().get(0), partition.spillFile);
+        setDelegate(spilledResultSet);
+        return true;
+    }
+
+    private void closeSpilledResultSet() throws SQLException {
+        if (null != spilledResultSet) {
+            spilledResultSet.close();
+            spilledResultSet = null;
+        }
+    }
+
+    @Override
+    public void close() throws SQLException {
+        closeSpilledResultSet();
+        for (Partition each : partitions) {
+            each.spillFile.delete();
+        }
+        partitions.clear();
+        super.close();
+    }
+
+    private static final class Partition {
+
+        private final SpillFile spillFile;
+
+        private final int level;
+
+        Partition(final SpillFile spillFile, final int level) {
+            this.spillFile = spillFile;
+            this.level = level;
+        }
+    }
+}
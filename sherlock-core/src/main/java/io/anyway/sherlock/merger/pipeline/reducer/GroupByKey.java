@@ -0,0 +1,183 @@
+package io.anyway.sherlock.merger.pipeline.reducer;
+
+import io.anyway.sherlock.merger.resultset.spill.RowCodec;
+import io.anyway.sherlock.sqlparser.bean.GroupColumn;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 分组键, 保存分组列的原始类型值并预先计算哈希值.
+ * 
+ * <p>
+ * 查找时重复使用同一个实例装载当前行, 只有出现新分组时才复制一份作为哈希表的键.
+ * 也用于DISTINCT去重, 此时分组列即为全部选择项.
+ * </p>
+ * 
+ * <p>
+ * 各分片同一列返回的数值类型可能不同, 例如Integer和Long, 或小数位数不同的BigDecimal,
+ * 数值先统一为Long或去掉末尾0的BigDecimal再计算哈希值和比较, 相等的数值落在同一分组.
+ * </p>
+ * 
+ * @author yangzz
+ */
+public final class GroupByKey {
+    
+    private static final BigDecimal LONG_MIN = BigDecimal.valueOf(Long.MIN_VALUE);
+    
+    private static final BigDecimal LONG_MAX = BigDecimal.valueOf(Long.MAX_VALUE);
+    
+    private final Object[] values;
+    
+    private int hash;
+    
+    public GroupByKey(final int size) {
+        values = new Object[size];
+    }
+    
+    private GroupByKey(final Object[] values, final int hash) {
+        this.values = values;
+        this.hash = hash;
+    }
+    
+    /**
+     * 装载结果集当前行的分组值.
+     * 
+     * @param resultSet 结果集
+     * @param groupByColumns 分组列
+     * @return 当前实例
+     * @throws SQLException SQL异常
+     */
+    public GroupByKey load(final ResultSet resultSet, final List<GroupColumn> groupByColumns) throws SQLException {
+        int result = 1;
+        for (int i = 0; i < values.length; i++) {
+            Object value = normalize(resultSet.getObject(groupByColumns.get(i).getColumnIndex()));
+            values[i] = value;
+            result = 31 * result + hashOf(value);
+        }
+        hash = result;
+        return this;
+    }
+    
+    /**
+     * 复制当前的分组值, 作为哈希表中保存的键.
+     * 
+     * @return 分组键
+     */
+    public GroupByKey copy() {
+        return new GroupByKey(values.clone(), hash);
+    }
+    
+    /**
+     * 根据哈希值计算溢出分区, 每一层使用不同的哈希方式, 保证同一分区在下一层可以继续拆分.
+     * 
+     * @param level 溢出层数
+     * @param partitionCount 分区数
+     * @return 分区序号
+     */
+    int partition(final int level, final int partitionCount) {
+        int result = hash ^ (level * 0x9E3779B9);
+        result *= 0x85EBCA6B;
+        result ^= result >>> 13;
+        return (result & Integer.MAX_VALUE) % partitionCount;
+    }
+    
+    /**
+     * 估算作为哈希表的键时占用的字节数.
+     * 
+     * @return 字节数
+     */
+    long getEstimatedSize() {
+        long result = 64 + 8L * values.length;
+        for (Object each : values) {
+            result += RowCodec.estimateSize(each);
+        }
+        return result;
+    }
+    
+    private static Object normalize(final Object value) {
+        if (value instanceof Long) {
+            return value;
+        }
+        if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof BigInteger) {
+            return normalize(new BigDecimal((BigInteger) value));
+        }
+        if (value instanceof Double || value instanceof Float) {
+            double result = ((Number) value).doubleValue();
+            if (Double.isNaN(result) || Double.isInfinite(result)) {
+                return value;
+            }
+            return normalize(value instanceof Float ? new BigDecimal(value.toString()) : BigDecimal.valueOf(result));
+        }
+        if (value instanceof BigDecimal) {
+            BigDecimal result = (BigDecimal) value;
+            // JDK 8之前0的stripTrailingZeros不会去掉小数位
+            if (0 == result.signum()) {
+                return 0L;
+            }
+            result = result.stripTrailingZeros();
+            if (result.scale() <= 0 && result.compareTo(LONG_MIN) >= 0 && result.compareTo(LONG_MAX) <= 0) {
+                return result.longValue();
+            }
+            return result;
+        }
+        return value;
+    }
+    
+    private static int hashOf(final Object value) {
+        if (null == value) {
+            return 0;
+        }
+        return value instanceof byte[] ? Arrays.hashCode((byte[]) value) : value.hashCode();
+    }
+    
+    private static boolean equal(final Object a, final Object b) {
+        if (a == b) {
+            return true;
+        }
+        if (null == a || null == b) {
+            return false;
+        }
+        if (a instanceof byte[] && b instanceof byte[]) {
+            return Arrays.equals((byte[]) a, (byte[]) b);
+        }
+        return a.equals(b);
+    }
+    
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+    
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof GroupByKey)) {
+            return false;
+        }
+        GroupByKey other = (GroupByKey) obj;
+        if (hash != other.hash || values.length != other.values.length) {
+            return false;
+        }
+        for (int i = 0; i < values.length; i++) {
+            if (!equal(values[i], other.values[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    @Override
+    public String toString() {
+        return Arrays.toString(values);
+    }
+}
@@ -2,111 +2,162 @@ package io.anyway.sherlock.merger.pipeline.reducer;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
 import com.google.common.base.Optional;
 
-import io.anyway.sherlock.merger.resultset.memory.row.AbstractResultSetRow;
+import io.anyway.sherlock.merger.resultset.memory.row.GroupByResultSetRow;
 import io.anyway.sherlock.merger.resultset.memory.row.ResultSetRow;
+import io.anyway.sherlock.merger.resultset.spill.RowCodec;
+import io.anyway.sherlock.merger.resultset.spill.SpillFile;
+import io.anyway.sherlock.merger.resultset.spill.SpilledResultSet;
+import io.anyway.sherlock.sqlparser.bean.AggregationColumn;
 import io.anyway.sherlock.sqlparser.bean.GroupColumn;
 import io.anyway.sherlock.merger.MergeContext;
 import io.anyway.sherlock.merger.resultset.memory.AbstractMemoryResultSet;
+import lombok.extern.slf4j.Slf4j;
 
 /**
- * 根据GroupBy字段分组结果集.
+ * 根据GroupBy字段做哈希聚合的结果集.
+ *
+ * <p>
+ * 每个分组只保留一行聚合结果, 读取分片结果时直接累加, 不再缓存原始数据行.
+ * 设置了内存预算时, 分组数超过预算后不再新建分组, 新分组的数据行按哈希值写入临时文件分区,
+ * 内存中的分组输出完后再逐个分区聚合.
+ * </p>
  *
  * @author xiong.j
  */
+@Slf4j
 public final class GroupByReducerResultSet extends AbstractMemoryResultSet {
 
-    private Map<String, List<GroupByReducerResultSetRow>> mapResultSet;
-            
-    private Iterator<Map.Entry<String, List<GroupByReducerResultSetRow>>> mapRowIterator;
-
-    private Iterator<GroupByReducerResultSetRow> listRowIterator;
+    static final int PARTITION_COUNT = 16;
 
-    private List<GroupByReducerResultSetRow> listResultSet;
+    // 同一分区再次超过预算时换一种哈希方式继续拆分, 超过层数后不再写文件
+    static final int MAX_SPILL_LEVEL = 4;
 
     private final List<GroupColumn> groupByColumns;
 
+    private final List<AggregationColumn> aggregationColumns;
+
+    private final long memoryBudget;
+
+    private final LinkedList<Partition> partitions = new LinkedList<Partition>();
+
+    private ResultSet template;
+
+    private int columnCount;
+
+    private Iterator<GroupByResultSetRow> rowIterator;
+
     public GroupByReducerResultSet(final MergeContext mc) throws SQLException {
         super(mc.getResultSets());
         groupByColumns = mc.getGroupColumns();
+        aggregationColumns = mc.getAgregationColumns();
+        memoryBudget = mc.getMemoryBudget();
     }
 
     @Override
     protected void initRows(final List<ResultSet> resultSets) throws SQLException {
-        // TODO 需换一种容器实现
-        mapResultSet = new HashMap<String, List<GroupByReducerResultSetRow>>();
-        List<GroupByReducerResultSetRow> orderByResultSetRowList;
-        String hash;
+        template = resultSets.get(0);
+        columnCount = template.getMetaData().getColumnCount();
+        rowIterator = aggregate(resultSets, 0);
+    }
 
-        // 根据hash分组数据
+    private Iterator<GroupByResultSetRow> aggregate(final List<ResultSet> resultSets, final int level) throws SQLException {
+        Map<GroupByKey, GroupByResultSetRow> groups = new LinkedHashMap<GroupByKey, GroupByResultSetRow>();
+        GroupByKey probe = new GroupByKey(groupByColumns.size());
+        SpillFile[] spillFiles = null;
+        long usedBytes = 0;
         for (ResultSet each : resultSets) {
             while (each.next()) {
-                hash = getHash(each);
-                if (mapResultSet.containsKey(hash)) {
-                    mapResultSet.get(hash).add(new GroupByReducerResultSetRow(each));
-                } else {
-                    orderByResultSetRowList = new LinkedList<GroupByReducerResultSetRow>();
-                    orderByResultSetRowList.add(new GroupByReducerResultSetRow(each));
-                    mapResultSet.put(hash, orderByResultSetRowList);
+                probe.load(each, groupByColumns);
+                GroupByResultSetRow row = groups.get(probe);
+                if (null == row) {
+                    if (null != spillFiles) {
+                        spill(spillFiles, probe.partition(level, PARTITION_COUNT), level + 1).write(each);
+                        continue;
+                    }
+                    row = new GroupByResultSetRow(each, groupByColumns, aggregationColumns);
+                    groups.put(probe.copy(), row);
+                    if (memoryBudget > 0 && level < MAX_SPILL_LEVEL) {
+                        // 分组键和数据行各占一份
+                        usedBytes += 2 * RowCodec.estimateSize(row, columnCount);
+                        if (usedBytes > memoryBudget) {
+                            spillFiles = new SpillFile[PARTITION_COUNT];
+                        }
+                    }
                 }
+                row.aggregate(each);
             }
         }
-
-        // 初始化Iterator
-        mapRowIterator = mapResultSet.entrySet().iterator();
-        if (mapRowIterator.hasNext()) {
-            listResultSet = mapRowIterator.next().getValue();
-            listRowIterator = listResultSet.iterator();
+        if (null != spillFiles) {
+            finishPartitions(spillFiles);
+        }
+        for (GroupByResultSetRow each : groups.values()) {
+            each.generateResult();
         }
+        return groups.values().iterator();
     }
 
-    @Override
-    protected Optional<? extends ResultSetRow> nextRow() throws SQLException {
-        if (listRowIterator.hasNext()) {
-            return Optional.of(listRowIterator.next());
+    private SpillFile spill(final SpillFile[] spillFiles, final int index, final int level) throws SQLException {
+        if (null == spillFiles[index]) {
+            spillFiles[index] = SpillFile.create(columnCount);
+            // 创建后立即登记, 出现异常时由close删除
+            partitions.add(new Partition(spillFiles[index], level));
         }
+        return spillFiles[index];
+    }
 
-        if (mapRowIterator.hasNext()) {
-            listResultSet = mapRowIterator.next().getValue();
-            listRowIterator = listResultSet.iterator();
-            if (listRowIterator.hasNext()) {
-                return Optional.of(listRowIterator.next());
+    private void finishPartitions(final SpillFile[] spillFiles) throws SQLException {
+        for (SpillFile each : spillFiles) {
+            if (null != each) {
+                each.finish();
             }
         }
-        return Optional.absent();
     }
 
-    private String getHash(ResultSet resultSet) throws SQLException {
-        List<Object> groupByValues = getGroupByValues(resultSet);
-        StringBuilder hash = new StringBuilder(groupByValues.size());
-        for (Object o : groupByValues) {
-            hash.append(o.toString()).append(",");
+    @Override
+    protected Optional<? extends ResultSetRow> nextRow() throws SQLException {
+        while (!rowIterator.hasNext()) {
+            if (partitions.isEmpty()) {
+                return Optional.absent();
+            }
+            Partition partition = partitions.removeFirst();
+            log.debug("Aggregate spilled partition with {} rows", partition.spillFile.getRowCount());
+            ResultSet resultSet = new SpilledResultSet(template, partition.spillFile);
+            try {
+                rowIterator = aggregate(Collections.singletonList(resultSet), partition.level);
+            } finally {
+                resultSet.close();
+            }
         }
-        return hash.toString();
+        return Optional.of(rowIterator.next());
     }
 
-    private List<Object> getGroupByValues(ResultSet resultSet) throws SQLException {
-        List<Object> result = new ArrayList<Object>(groupByColumns.size());
-        for (GroupColumn each : groupByColumns) {
-            result.add(resultSet.getObject(each.getColumnIndex()));
+    @Override
+    public void close() throws SQLException {
+        for (Partition each : partitions) {
+            each.spillFile.delete();
         }
-        return result;
+        partitions.clear();
+        super.close();
     }
 
-    private class GroupByReducerResultSetRow extends AbstractResultSetRow {
+    private static final class Partition {
+
+        private final SpillFile spillFile;
+
+        private final int level;
 
-        public GroupByReducerResultSetRow(ResultSet resultSet) throws SQLException {
-            super(resultSet);
+        Partition(final SpillFile spillFile, final int level) {
+            this.spillFile = spillFile;
+            this.level = level;
         }
     }
 }
-
-
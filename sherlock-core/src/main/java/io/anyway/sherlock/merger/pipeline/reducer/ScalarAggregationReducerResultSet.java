@@ -0,0 +1,91 @@
+package io.anyway.sherlock.merger.pipeline.reducer;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+
+import com.google.common.base.Optional;
+
+import io.anyway.sherlock.executor.ExecuteCompletion;
+import io.anyway.sherlock.merger.MergeContext;
+import io.anyway.sherlock.merger.resultset.memory.AbstractMemoryResultSet;
+import io.anyway.sherlock.merger.resultset.memory.row.GroupByResultSetRow;
+import io.anyway.sherlock.merger.resultset.memory.row.ResultSetRow;
+import io.anyway.sherlock.sqlparser.bean.AggregationColumn;
+import io.anyway.sherlock.sqlparser.bean.GroupColumn;
+
+/**
+ * 没有分组的聚合查询结果集.
+ *
+ * <p>
+ * 每个分片只返回一行, 不需要分组键和哈希表, 读到分片结果后直接累加到同一行的聚合单元, 最后只输出一行.
+ * 按完成顺序获取分片结果时, 先返回的分片先累加, 不需要等待所有分片执行完.
+ * </p>
+ *
+ * @author yangzz
+ */
+public final class ScalarAggregationReducerResultSet extends AbstractMemoryResultSet {
+
+    private final List<AggregationColumn> aggregationColumns;
+
+    private final ExecuteCompletion<ResultSet> completion;
+
+    private GroupByResultSetRow row;
+
+    public ScalarAggregationReducerResultSet(final MergeContext mc) throws SQLException {
+        this(mc, null);
+    }
+
+    public ScalarAggregationReducerResultSet(final MergeContext mc, final ExecuteCompletion<ResultSet> completion) throws SQLException {
+        super(mc.getResultSets());
+        aggregationColumns = mc.getAgregationColumns();
+        this.completion = completion;
+    }
+
+    @Override
+    protected void initRows(final List<ResultSet> resultSets) throws SQLException {
+        for (ResultSet each : resultSets) {
+            aggregate(each);
+        }
+        if (null != completion) {
+            while (completion.hasNext()) {
+                ResultSet each = completion.next();
+                resultSets.add(each);
+                aggregate(each);
+            }
+        }
+        if (null != row) {
+            row.generateResult();
+        }
+    }
+
+    private void aggregate(final ResultSet resultSet) throws SQLException {
+        while (resultSet.next()) {
+            if (null == row) {
+                row = new GroupByResultSetRow(resultSet, Collections.<GroupColumn>emptyList(), aggregationColumns);
+            }
+            row.aggregate(resultSet);
+        }
+    }
+
+    @Override
+    protected Optional<? extends ResultSetRow> nextRow() throws SQLException {
+        if (null == row) {
+            return Optional.absent();
+        }
+        Optional<GroupByResultSetRow> result = Optional.of(row);
+        row = null;
+        return result;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        if (null != completion) {
+            for (ResultSet each : completion.cancel()) {
+                each.close();
+            }
+        }
+        super.close();
+    }
+}
@@ -1,67 +1,129 @@
 package io.anyway.sherlock.merger.pipeline.reducer;
 
+import com.google.common.base.Preconditions;
 import io.anyway.sherlock.merger.MergeContext;
 import io.anyway.sherlock.merger.resultset.delegate.AbstractDelegateResultSet;
-import io.anyway.sherlock.merger.resultset.memory.row.OrderByResultSetRow;
+import io.anyway.sherlock.merger.util.ResultSetUtil;
 import io.anyway.sherlock.sqlparser.bean.OrderColumn;
 import lombok.extern.slf4j.Slf4j;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.LinkedList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.PriorityQueue;
 
 /**
  * 流式排序的聚集结果集.
+ *
+ * <p>
+ * 各分片结果集已按相同的排序项排序, 使用堆做多路归并.
+ * 每个分片只读取排序项的值, 只有前进过的分片重新入堆.
+ * </p>
+ *
  * @author xiong.j
  */
 @Slf4j
 public final class StreamingOrderByReducerResultSet extends AbstractDelegateResultSet {
-    
+
     private final List<OrderColumn> orderByColumns;
-    
-    private final List<ResultSet> resultSets = new LinkedList<ResultSet>();
-    
+
+    private final boolean nullsLowest;
+
+    private final PriorityQueue<OrderByCursor> cursors;
+
+    private OrderByCursor current;
+
     public StreamingOrderByReducerResultSet(final MergeContext mc) throws SQLException {
+        this(mc, mc.getOrderColumns());
+    }
+
+    public StreamingOrderByReducerResultSet(final MergeContext mc, final List<OrderColumn> orderByColumns) throws SQLException {
         super(mc.getResultSets());
-        orderByColumns = mc.getOrderColumns();
-        resultSets.addAll(mc.getResultSets());
+        this.orderByColumns = orderByColumns;
+        nullsLowest = mc.isNullsLowest();
+        cursors = new PriorityQueue<OrderByCursor>(Math.max(1, mc.getResultSets().size()));
     }
-    
+
     @Override
     protected boolean firstNext() throws SQLException {
-        initialResultSetCursors();
-        return doNext();
-    }
-    
-    private void initialResultSetCursors() throws SQLException {
-        for (ResultSet each : resultSets) {
-            each.next();
+        List<ResultSet> resultSets = getResultSets();
+        for (int i = 0; i < resultSets.size(); i++) {
+            ResultSet each = resultSets.get(i);
+            if (each.next()) {
+                OrderByCursor cursor = new OrderByCursor(each, i, orderByColumns, nullsLowest);
+                cursor.load();
+                cursors.offer(cursor);
+            }
         }
+        return doNext();
     }
-    
+
     @Override
     protected boolean afterFirstNext() throws SQLException {
-        if (!getDelegate().next()) {
-            resultSets.remove(getDelegate());
+        if (null != current && current.resultSet.next()) {
+            current.load();
+            cursors.offer(current);
         }
         return doNext();
     }
-    
-    private boolean doNext() throws SQLException {
-        setDelegateResultSet();
-        return !resultSets.isEmpty();
+
+    private boolean doNext() {
+        current = cursors.poll();
+        if (null == current) {
+            return false;
+        }
+        setDelegate(current.resultSet);
+        log.trace("Chosen order by value: {}, current result set hashcode: {}", current, current.resultSet.hashCode());
+        return true;
     }
-    
-    private void setDelegateResultSet() throws SQLException {
-        OrderByResultSetRow chosenOrderByValue = null;
-        for (ResultSet each : resultSets) {
-            OrderByResultSetRow eachOrderByValue = new OrderByResultSetRow(each, orderByColumns);
-            if (null == chosenOrderByValue || chosenOrderByValue.compareTo(eachOrderByValue) > 0) {
-                chosenOrderByValue = eachOrderByValue;
-                setDelegate(each);
+
+    /**
+     * 分片结果集的当前排序项的值, 随游标前进重复使用.
+     */
+    private static final class OrderByCursor implements Comparable<OrderByCursor> {
+
+        private final ResultSet resultSet;
+
+        private final int index;
+
+        private final List<OrderColumn> orderByColumns;
+
+        private final boolean nullsLowest;
+
+        private final Comparable<?>[] orderByValues;
+
+        OrderByCursor(final ResultSet resultSet, final int index, final List<OrderColumn> orderByColumns, final boolean nullsLowest) {
+            this.resultSet = resultSet;
+            this.index = index;
+            this.orderByColumns = orderByColumns;
+            this.nullsLowest = nullsLowest;
+            orderByValues = new Comparable<?>[orderByColumns.size()];
+        }
+
+        void load() throws SQLException {
+            for (int i = 0; i < orderByValues.length; i++) {
+                Object value = resultSet.getObject(orderByColumns.get(i).getColumnIndex());
+                Preconditions.checkState(null == value || value instanceof Comparable, "Sharding-JDBC: order by value must extends Comparable");
+                orderByValues[i] = (Comparable<?>) value;
             }
         }
-        log.trace("Chosen order by value: {}, current result set hashcode: {}", chosenOrderByValue, getDelegate().hashCode());
+
+        @Override
+        public int compareTo(final OrderByCursor other) {
+            for (int i = 0; i < orderByValues.length; i++) {
+                int result = ResultSetUtil.compareTo(orderByValues[i], other.orderByValues[i], orderByColumns.get(i).getOrderType(), nullsLowest);
+                if (0 != result) {
+                    return result;
+                }
+            }
+            // 排序项相同时按分片顺序输出, 保证结果稳定
+            return index < other.index ? -1 : (index == other.index ? 0 : 1);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Order by columns value is %s", Arrays.toString(orderByValues));
+        }
     }
 }
@@ -1,49 +1,186 @@
 package io.anyway.sherlock.merger.resultset.memory;
 
 import com.google.common.base.Optional;
+import io.anyway.sherlock.merger.resultset.memory.row.ColumnarRowBuffer;
 import io.anyway.sherlock.merger.resultset.memory.row.OrderByResultSetRow;
 import io.anyway.sherlock.merger.resultset.memory.row.ResultSetRow;
+import io.anyway.sherlock.merger.resultset.spill.SpillFile;
 import io.anyway.sherlock.sqlparser.bean.OrderColumn;
+import lombok.extern.slf4j.Slf4j;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.Collections;
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutorService;
 
 /**
  * 基于内存排序的结果集抽象类.
  * 
+ * <p>
+ * 数据行按列缓存在{@link ColumnarRowBuffer}中, 排序只调整数据行序号.
+ * 设置了内存预算时, 缓存的数据行超过预算后排序并写入临时文件, 最后对各个有序文件做多路归并.
+ * </p>
+ * 
  */
+@Slf4j
 public abstract class AbstractMemoryOrderByResultSet extends AbstractMemoryResultSet {
     
     private final List<OrderColumn> orderByColumns;
     
-    private Iterator<OrderByResultSetRow> orderByResultSetRowIterator;
+    private final long memoryBudget;
+    
+    private final ExecutorService sortExecutor;
+    
+    private final boolean nullsLowest;
+    
+    private final List<SpillFile> runs = new ArrayList<SpillFile>();
+    
+    private ColumnarRowBuffer buffer;
+    
+    private int[] sortedRows;
+    
+    private int position;
+    
+    private PriorityQueue<RunCursor> runCursors;
     
     public AbstractMemoryOrderByResultSet(final List<ResultSet> resultSets, final List<OrderColumn> orderByColumns) throws SQLException {
+        this(resultSets, orderByColumns, 0);
+    }
+    
+    public AbstractMemoryOrderByResultSet(final List<ResultSet> resultSets, final List<OrderColumn> orderByColumns, final long memoryBudget) throws SQLException {
+        this(resultSets, orderByColumns, memoryBudget, null, true);
+    }
+    
+    public AbstractMemoryOrderByResultSet(final List<ResultSet> resultSets, final List<OrderColumn> orderByColumns, final long memoryBudget, final ExecutorService sortExecutor,
+                                          final boolean nullsLowest) throws SQLException {
         super(resultSets);
         this.orderByColumns = orderByColumns;
+        this.memoryBudget = memoryBudget;
+        this.sortExecutor = sortExecutor;
+        this.nullsLowest = nullsLowest;
     }
     
     @Override
     protected void initRows(final List<ResultSet> resultSets) throws SQLException {
-        List<OrderByResultSetRow> orderByResultSetRows = new LinkedList<OrderByResultSetRow>();
+        buffer = new ColumnarRowBuffer(resultSets.get(0).getMetaData().getColumnCount());
         for (ResultSet each : resultSets) {
+            buffer.bind(each.getMetaData());
             while (each.next()) {
-                orderByResultSetRows.add(new OrderByResultSetRow(each, orderByColumns));
+                buffer.add(each);
+                if (memoryBudget > 0 && buffer.getEstimatedSize() > memoryBudget) {
+                    spill();
+                }
             }
         }
-        Collections.sort(orderByResultSetRows);
-        orderByResultSetRowIterator = orderByResultSetRows.iterator();
+        int[] sorted = buffer.sort(orderByColumns, sortExecutor, nullsLowest);
+        if (runs.isEmpty()) {
+            sortedRows = sorted;
+            return;
+        }
+        log.debug("Merge {} sorted runs spilled to disk", runs.size());
+        runCursors = new PriorityQueue<RunCursor>(runs.size() + 1);
+        for (int i = 0; i < runs.size(); i++) {
+            offer(new RunCursor(runs.get(i), null, i));
+        }
+        // 最后一批数据不写文件, 作为序号最大的有序段直接参与归并
+        offer(new RunCursor(null, sorted, runs.size()));
+    }
+    
+    private void spill() throws SQLException {
+        SpillFile run = SpillFile.create(buffer.getColumnCount());
+        runs.add(run);
+        for (int each : buffer.sort(orderByColumns, sortExecutor, nullsLowest)) {
+            run.write(buffer.getRow(each));
+        }
+        run.finish();
+        buffer.clear();
+    }
+    
+    private void offer(final RunCursor cursor) throws SQLException {
+        if (cursor.next()) {
+            runCursors.offer(cursor);
+        }
     }
     
     @Override
     protected Optional<? extends ResultSetRow> nextRow() throws SQLException {
-        if (orderByResultSetRowIterator.hasNext()) {
-            return Optional.of(orderByResultSetRowIterator.next());
+        if (null == runCursors) {
+            if (position < sortedRows.length) {
+                return Optional.of(buffer.getRow(sortedRows[position++]));
+            }
+            return Optional.absent();
+        }
+        RunCursor cursor = runCursors.poll();
+        if (null == cursor) {
+            return Optional.absent();
+        }
+        OrderByResultSetRow result = cursor.current;
+        offer(cursor);
+        return Optional.of(result);
+    }
+    
+    @Override
+    public void close() throws SQLException {
+        for (SpillFile each : runs) {
+            each.delete();
+        }
+        super.close();
+    }
+    
+    /**
+     * 有序段的读取位置, 排序项相同时按段的序号输出, 和全部在内存中排序的结果保持一致.
+     */
+    private final class RunCursor implements Comparable<RunCursor> {
+        
+        private final SpillFile run;
+        
+        private final int[] rows;
+        
+        private final int index;
+        
+        private int position;
+        
+        private OrderByResultSetRow current;
+        
+        RunCursor(final SpillFile run, final int[] rows, final int index) {
+            this.run = run;
+            this.rows = rows;
+            this.index = index;
+        }
+        
+        boolean next() throws SQLException {
+            if (null != rows) {
+                if (position == rows.length) {
+                    current = null;
+                    return false;
+                }
+                Object[] rowData = new Object[buffer.getColumnCount()];
+                for (int i = 0; i < rowData.length; i++) {
+                    rowData[i] = buffer.get(rows[position], i + 1);
+                }
+                position++;
+                current = new OrderByResultSetRow(rowData, orderByColumns, nullsLowest);
+                return true;
+            }
+            Object[] rowData = run.read();
+            if (null == rowData) {
+                run.delete();
+                current = null;
+                return false;
+            }
+            current = new OrderByResultSetRow(rowData, orderByColumns, nullsLowest);
+            return true;
+        }
+        
+        @Override
+        public int compareTo(final RunCursor other) {
+            int result = current.compareTo(other.current);
+            if (0 != result) {
+                return result;
+            }
+            return index < other.index ? -1 : (index == other.index ? 0 : 1);
         }
-        return Optional.absent();
     }
 }
@@ -2,6 +2,7 @@ package io.anyway.sherlock.merger.resultset.memory;
 
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
+import io.anyway.sherlock.merger.resultset.memory.row.ColumnType;
 import io.anyway.sherlock.merger.resultset.memory.row.ResultSetRow;
 import io.anyway.sherlock.merger.util.ResultSetUtil;
 import io.anyway.sherlock.util.SQLUtil;
@@ -21,7 +22,9 @@ import java.sql.Statement;
 import java.sql.Time;
 import java.sql.Timestamp;
 import java.util.Calendar;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * 内存结果集抽象类.
@@ -38,8 +41,27 @@ public abstract class AbstractMemoryResultSet extends AbstractUnsupportedOperati
     
     private boolean wasNullFlag = false;
     
+    // 按调用方传入的列名缓存列索引, 预先放入原样、小写和大写的列名
+    private final Map<String, Integer> columnLabelIndexes = new HashMap<String, Integer>();
+    
+    // 每列的Java类型只解析一次, 取值时按类型分派
+    private final ColumnType[] columnTypes;
+    
     public AbstractMemoryResultSet(final List<ResultSet> resultSets) throws SQLException {
         super(resultSets);
+        ResultSetMetaData metaData = resultSets.get(0).getMetaData();
+        columnTypes = new ColumnType[metaData.getColumnCount()];
+        for (int i = 1; i <= metaData.getColumnCount(); i++) {
+            columnTypes[i - 1] = ColumnType.of(metaData.getColumnClassName(i));
+            String label = metaData.getColumnLabel(i);
+            if (null == label) {
+                continue;
+            }
+            Integer index = getColumnLabelIndexMap().get(label);
+            columnLabelIndexes.put(label, index);
+            columnLabelIndexes.put(label.toLowerCase(), index);
+            columnLabelIndexes.put(label.toUpperCase(), index);
+        }
     }
     
     @Override
@@ -68,20 +90,35 @@ public abstract class AbstractMemoryResultSet extends AbstractUnsupportedOperati
     
     @Override
     public int findColumn(final String columnLabel) throws SQLException {
-        String formattedColumnLabel = getColumnLabelIndexMap().containsKey(columnLabel) ? columnLabel : SQLUtil.getExactlyValue(columnLabel);
-        if (!getColumnLabelIndexMap().containsKey(formattedColumnLabel)) {
-            throw new SQLException(String.format("Column label %s does not exist", formattedColumnLabel));
+        Integer result = columnLabelIndexes.get(columnLabel);
+        if (null != result) {
+            return result;
         }
-        return getColumnLabelIndexMap().get(formattedColumnLabel);
+        result = getColumnLabelIndexMap().get(columnLabel);
+        if (null == result) {
+            String formattedColumnLabel = SQLUtil.getExactlyValue(columnLabel);
+            result = getColumnLabelIndexMap().get(formattedColumnLabel);
+            if (null == result) {
+                throw new SQLException(String.format("Column label %s does not exist", formattedColumnLabel));
+            }
+        }
+        columnLabelIndexes.put(columnLabel, result);
+        return result;
     }
     
-    @Override
-    public Object getObject(final int columnIndex) throws SQLException {
+    private ResultSetRow getCheckedRow(final int columnIndex) throws SQLException {
         Preconditions.checkState(!isClosed(), "Result set is closed");
         Preconditions.checkState(!beforeFirst, "Before start of result set");
         Preconditions.checkState(null != currentRow, "After end of result set");
-        Preconditions.checkArgument(currentRow.inRange(columnIndex), String.format("Column Index %d out of range", columnIndex));
-        Object result = currentRow.getCell(columnIndex);
+        if (!currentRow.inRange(columnIndex)) {
+            throw new IllegalArgumentException(String.format("Column Index %d out of range", columnIndex));
+        }
+        return currentRow;
+    }
+    
+    @Override
+    public Object getObject(final int columnIndex) throws SQLException {
+        Object result = getCheckedRow(columnIndex).getCell(columnIndex);
         wasNullFlag = null == result;
         return result;
     }
@@ -93,7 +130,11 @@ public abstract class AbstractMemoryResultSet extends AbstractUnsupportedOperati
     
     @Override
     public String getString(final int columnIndex) throws SQLException {
-        return (String) ResultSetUtil.convertValue(getObject(columnIndex), String.class);
+        Object cell = getObject(columnIndex);
+        if (ColumnType.STRING == columnTypes[columnIndex - 1] && cell instanceof String) {
+            return (String) cell;
+        }
+        return ResultSetUtil.toStringValue(cell);
     }
     
     @Override
@@ -117,11 +158,7 @@ public abstract class AbstractMemoryResultSet extends AbstractUnsupportedOperati
     
     @Override
     public byte getByte(final int columnIndex) throws SQLException {
-        Object cell = getObject(columnIndex);
-        if (wasNullFlag) {
-            return 0;
-        }
-        return (Byte) ResultSetUtil.convertValue(cell, byte.class);
+        return (byte) getLong(columnIndex);
     }
     
     @Override
@@ -131,11 +168,7 @@ public abstract class AbstractMemoryResultSet extends AbstractUnsupportedOperati
     
     @Override
     public short getShort(final int columnIndex) throws SQLException {
-        Object cell = getObject(columnIndex);
-        if (wasNullFlag) {
-            return 0;
-        }
-        return (Short) ResultSetUtil.convertValue(cell, short.class);
+        return (short) getLong(columnIndex);
     }
     
     @Override
@@ -145,11 +178,7 @@ public abstract class AbstractMemoryResultSet extends AbstractUnsupportedOperati
     
     @Override
     public int getInt(final int columnIndex) throws SQLException {
-        Object cell = getObject(columnIndex);
-        if (wasNullFlag) {
-            return 0;
-        }
-        return (Integer) ResultSetUtil.convertValue(cell, int.class);
+        return (int) getLong(columnIndex);
     }
     
     @Override
@@ -159,11 +188,24 @@ public abstract class AbstractMemoryResultSet extends AbstractUnsupportedOperati
     
     @Override
     public long getLong(final int columnIndex) throws SQLException {
-        Object cell = getObject(columnIndex);
+        ResultSetRow row = getCheckedRow(columnIndex);
+        wasNullFlag = row.isNull(columnIndex);
         if (wasNullFlag) {
             return 0;
         }
-        return (Long) ResultSetUtil.convertValue(cell, long.class);
+        switch (columnTypes[columnIndex - 1]) {
+            case LONG:
+            case INTEGER:
+            case SHORT:
+            case BYTE:
+            case DOUBLE:
+            case FLOAT:
+            case BIG_DECIMAL:
+                // 数值列由数据行直接读取基本类型, 其他列按值转换
+                return row.getLong(columnIndex);
+            default:
+                return ResultSetUtil.toLong(row.getCell(columnIndex));
+        }
     }
     
     @Override
@@ -173,11 +215,7 @@ public abstract class AbstractMemoryResultSet extends AbstractUnsupportedOperati
     
     @Override
     public float getFloat(final int columnIndex) throws SQLException {
-        Object cell = getObject(columnIndex);
-        if (wasNullFlag) {
-            return 0;
-        }
-        return (Float) ResultSetUtil.convertValue(cell, float.class);
+        return (float) getDouble(columnIndex);
     }
     
     @Override
@@ -187,11 +225,23 @@ public abstract class AbstractMemoryResultSet extends AbstractUnsupportedOperati
     
     @Override
     public double getDouble(final int columnIndex) throws SQLException {
-        Object cell = getObject(columnIndex);
+        ResultSetRow row = getCheckedRow(columnIndex);
+        wasNullFlag = row.isNull(columnIndex);
         if (wasNullFlag) {
             return 0;
         }
-        return (Double) ResultSetUtil.convertValue(cell, double.class);
+        switch (columnTypes[columnIndex - 1]) {
+            case LONG:
+            case INTEGER:
+            case SHORT:
+            case BYTE:
+            case DOUBLE:
+            case FLOAT:
+            case BIG_DECIMAL:
+                return row.getDouble(columnIndex);
+            default:
+                return ResultSetUtil.toDouble(row.getCell(columnIndex));
+        }
     }
     
     @Override
@@ -205,7 +255,7 @@ public abstract class AbstractMemoryResultSet extends AbstractUnsupportedOperati
         if (wasNullFlag) {
             return null;
         }
-        BigDecimal result = (BigDecimal) ResultSetUtil.convertValue(cell, BigDecimal.class);
+        BigDecimal result = ResultSetUtil.toBigDecimal(cell);
         return result.setScale(scale, BigDecimal.ROUND_HALF_UP);
     }
     
@@ -220,7 +270,7 @@ public abstract class AbstractMemoryResultSet extends AbstractUnsupportedOperati
         if (wasNullFlag) {
             return null;
         }
-        return (BigDecimal) ResultSetUtil.convertValue(cell, BigDecimal.class);
+        return ResultSetUtil.toBigDecimal(cell);
     }
     
     @Override
@@ -259,7 +309,7 @@ public abstract class AbstractMemoryResultSet extends AbstractUnsupportedOperati
         if (wasNullFlag) {
             return null;
         }
-        return (Date) ResultSetUtil.convertValue(cell, Date.class);
+        return ResultSetUtil.toDate(cell);
     }
     
     @Override
@@ -283,7 +333,7 @@ public abstract class AbstractMemoryResultSet extends AbstractUnsupportedOperati
         if (wasNullFlag) {
             return null;
         }
-        return (Time) ResultSetUtil.convertValue(cell, Time.class);
+        return ResultSetUtil.toTime(cell);
     }
     
     @Override
@@ -307,7 +357,7 @@ public abstract class AbstractMemoryResultSet extends AbstractUnsupportedOperati
         if (wasNullFlag) {
             return null;
         }
-        return (Timestamp) ResultSetUtil.convertValue(cell, Timestamp.class);
+        return ResultSetUtil.toTimestamp(cell);
     }
     
     @Override
@@ -0,0 +1,91 @@
+package io.anyway.sherlock.merger.resultset.memory;
+
+import com.google.common.base.Optional;
+import io.anyway.sherlock.merger.resultset.memory.row.ColumnarRowBuffer;
+import io.anyway.sherlock.merger.resultset.memory.row.ResultSetRow;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 读取全部数据后立即关闭的分片结果集.
+ * 多个执行单元共用一个连接时, 连接被下一个执行单元使用前先把前面的结果集缓存到内存中.
+ * 
+ * @author yangzz
+ */
+public final class MaterializedResultSet extends AbstractMemoryResultSet {
+    
+    private final Statement statement;
+    
+    private final ResultSetMetaData metaData;
+    
+    private final ColumnarRowBuffer rows;
+    
+    private int position;
+    
+    public MaterializedResultSet(final ResultSet resultSet) throws SQLException {
+        this(resultSet, false);
+    }
+    
+    private MaterializedResultSet(final ResultSet resultSet, final boolean currentRowOnly) throws SQLException {
+        super(Collections.singletonList(resultSet));
+        statement = resultSet.getStatement();
+        metaData = new MaterializedResultSetMetaData(resultSet.getMetaData());
+        rows = new ColumnarRowBuffer(metaData.getColumnCount());
+        rows.bind(metaData);
+        if (currentRowOnly) {
+            rows.add(resultSet);
+            return;
+        }
+        try {
+            while (resultSet.next()) {
+                rows.add(resultSet);
+            }
+        } finally {
+            resultSet.close();
+        }
+    }
+    
+    /**
+     * 只缓存结果集的当前行, 不移动也不关闭原结果集.
+     * 
+     * @param resultSet 结果集
+     * @return 只有一行的结果集
+     * @throws SQLException
+     */
+    public static MaterializedResultSet currentRow(final ResultSet resultSet) throws SQLException {
+        return new MaterializedResultSet(resultSet, true);
+    }
+    
+    @Override
+    protected void initRows(final List<ResultSet> resultSets) throws SQLException {
+        position = 0;
+    }
+    
+    @Override
+    protected Optional<? extends ResultSetRow> nextRow() throws SQLException {
+        if (position < rows.size()) {
+            return Optional.of(rows.getRow(position++));
+        }
+        return Optional.absent();
+    }
+    
+    @Override
+    public Statement getStatement() throws SQLException {
+        return statement;
+    }
+    
+    @Override
+    public ResultSetMetaData getMetaData() throws SQLException {
+        return metaData;
+    }
+    
+    @Override
+    public int getFetchSize() throws SQLException {
+        return rows.size();
+    }
+}
@@ -0,0 +1,200 @@
+package io.anyway.sherlock.merger.resultset.memory;
+
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+/**
+ * 分片结果集关闭后仍然可用的元数据快照.
+ * 
+ * @author yangzz
+ */
+public final class MaterializedResultSetMetaData implements ResultSetMetaData {
+    
+    private final int columnCount;
+    
+    private final String[] columnLabels;
+    
+    private final String[] columnNames;
+    
+    private final int[] columnTypes;
+    
+    private final String[] columnTypeNames;
+    
+    private final String[] columnClassNames;
+    
+    private final String[] tableNames;
+    
+    private final String[] schemaNames;
+    
+    private final String[] catalogNames;
+    
+    private final int[] precisions;
+    
+    private final int[] scales;
+    
+    private final int[] displaySizes;
+    
+    private final int[] nullables;
+    
+    private final boolean[] signeds;
+    
+    private final boolean[] autoIncrements;
+    
+    private final boolean[] caseSensitives;
+    
+    public MaterializedResultSetMetaData(final ResultSetMetaData metaData) throws SQLException {
+        columnCount = metaData.getColumnCount();
+        columnLabels = new String[columnCount];
+        columnNames = new String[columnCount];
+        columnTypes = new int[columnCount];
+        columnTypeNames = new String[columnCount];
+        columnClassNames = new String[columnCount];
+        tableNames = new String[columnCount];
+        schemaNames = new String[columnCount];
+        catalogNames = new String[columnCount];
+        precisions = new int[columnCount];
+        scales = new int[columnCount];
+        displaySizes = new int[columnCount];
+        nullables = new int[columnCount];
+        signeds = new boolean[columnCount];
+        autoIncrements = new boolean[columnCount];
+        caseSensitives = new boolean[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            int column = i + 1;
+            columnLabels[i] = metaData.getColumnLabel(column);
+            columnNames[i] = metaData.getColumnName(column);
+            columnTypes[i] = metaData.getColumnType(column);
+            columnTypeNames[i] = metaData.getColumnTypeName(column);
+            columnClassNames[i] = metaData.getColumnClassName(column);
+            tableNames[i] = metaData.getTableName(column);
+            schemaNames[i] = metaData.getSchemaName(column);
+            catalogNames[i] = metaData.getCatalogName(column);
+            precisions[i] = metaData.getPrecision(column);
+            scales[i] = metaData.getScale(column);
+            displaySizes[i] = metaData.getColumnDisplaySize(column);
+            nullables[i] = metaData.isNullable(column);
+            signeds[i] = metaData.isSigned(column);
+            autoIncrements[i] = metaData.isAutoIncrement(column);
+            caseSensitives[i] = metaData.isCaseSensitive(column);
+        }
+    }
+    
+    @Override
+    public int getColumnCount() throws SQLException {
+        return columnCount;
+    }
+    
+    @Override
+    public boolean isAutoIncrement(final int column) throws SQLException {
+        return autoIncrements[column - 1];
+    }
+    
+    @Override
+    public boolean isCaseSensitive(final int column) throws SQLException {
+        return caseSensitives[column - 1];
+    }
+    
+    @Override
+    public boolean isSearchable(final int column) throws SQLException {
+        return true;
+    }
+    
+    @Override
+    public boolean isCurrency(final int column) throws SQLException {
+        return false;
+    }
+    
+    @Override
+    public int isNullable(final int column) throws SQLException {
+        return nullables[column - 1];
+    }
+    
+    @Override
+    public boolean isSigned(final int column) throws SQLException {
+        return signeds[column - 1];
+    }
+    
+    @Override
+    public int getColumnDisplaySize(final int column) throws SQLException {
+        return displaySizes[column - 1];
+    }
+    
+    @Override
+    public String getColumnLabel(final int column) throws SQLException {
+        return columnLabels[column - 1];
+    }
+    
+    @Override
+    public String getColumnName(final int column) throws SQLException {
+        return columnNames[column - 1];
+    }
+    
+    @Override
+    public String getSchemaName(final int column) throws SQLException {
+        return schemaNames[column - 1];
+    }
+    
+    @Override
+    public int getPrecision(final int column) throws SQLException {
+        return precisions[column - 1];
+    }
+    
+    @Override
+    public int getScale(final int column) throws SQLException {
+        return scales[column - 1];
+    }
+    
+    @Override
+    public String getTableName(final int column) throws SQLException {
+        return tableNames[column - 1];
+    }
+    
+    @Override
+    public String getCatalogName(final int column) throws SQLException {
+        return catalogNames[column - 1];
+    }
+    
+    @Override
+    public int getColumnType(final int column) throws SQLException {
+        return columnTypes[column - 1];
+    }
+    
+    @Override
+    public String getColumnTypeName(final int column) throws SQLException {
+        return columnTypeNames[column - 1];
+    }
+    
+    @Override
+    public boolean isReadOnly(final int column) throws SQLException {
+        return true;
+    }
+    
+    @Override
+    public boolean isWritable(final int column) throws SQLException {
+        return false;
+    }
+    
+    @Override
+    public boolean isDefinitelyWritable(final int column) throws SQLException {
+        return false;
+    }
+    
+    @Override
+    public String getColumnClassName(final int column) throws SQLException {
+        return columnClassNames[column - 1];
+    }
+    
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T> T unwrap(final Class<T> iface) throws SQLException {
+        if (isWrapperFor(iface)) {
+            return (T) this;
+        }
+        throw new SQLException(String.format("[%s] cannot be unwrapped as [%s]", getClass().getName(), iface.getName()));
+    }
+    
+    @Override
+    public boolean isWrapperFor(final Class<?> iface) throws SQLException {
+        return iface.isInstance(this);
+    }
+}
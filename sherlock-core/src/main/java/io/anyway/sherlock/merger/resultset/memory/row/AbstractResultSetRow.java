@@ -1,9 +1,9 @@
 package io.anyway.sherlock.merger.resultset.memory.row;
 
 import com.google.common.base.Preconditions;
+import io.anyway.sherlock.merger.util.ResultSetUtil;
 
 import java.sql.ResultSet;
-import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 
 /**
@@ -17,10 +17,13 @@ public abstract class AbstractResultSetRow implements ResultSetRow {
         rowData = loadData(resultSet);
     }
     
+    protected AbstractResultSetRow(final Object[] rowData) {
+        this.rowData = rowData;
+    }
+    
     private Object[] loadData(final ResultSet resultSet) throws SQLException {
-        ResultSetMetaData resultSetMetaData = resultSet.getMetaData();
-        Object[] result = new Object[resultSetMetaData.getColumnCount()];
-        for (int i = 0; i < resultSetMetaData.getColumnCount(); i++) {
+        Object[] result = new Object[resultSet.getMetaData().getColumnCount()];
+        for (int i = 0; i < result.length; i++) {
             result[i] = resultSet.getObject(i + 1);
         }
         return result;
@@ -38,6 +41,21 @@ public abstract class AbstractResultSetRow implements ResultSetRow {
         return rowData[columnIndex - 1];
     }
     
+    @Override
+    public final boolean isNull(final int columnIndex) {
+        return null == getCell(columnIndex);
+    }
+    
+    @Override
+    public final long getLong(final int columnIndex) {
+        return ResultSetUtil.toLong(getCell(columnIndex));
+    }
+    
+    @Override
+    public final double getDouble(final int columnIndex) {
+        return ResultSetUtil.toDouble(getCell(columnIndex));
+    }
+    
     @Override
     public final boolean inRange(final int columnIndex) {
         return columnIndex > 0 && columnIndex < rowData.length + 1;
@@ -0,0 +1,61 @@
+package io.anyway.sherlock.merger.resultset.memory.row;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 结果集列的Java类型.
+ *
+ * <p>
+ * 根据元数据的列类名解析一次, 读取数据时按类型分派, 不再逐次比较类名.
+ * </p>
+ *
+ * @author yangzz
+ */
+public enum ColumnType {
+
+    LONG, INTEGER, SHORT, BYTE, DOUBLE, FLOAT, BIG_DECIMAL, STRING, OBJECT;
+
+    private static final Map<String, ColumnType> CLASS_NAMES = new HashMap<String, ColumnType>();
+
+    static {
+        CLASS_NAMES.put(Long.class.getName(), LONG);
+        CLASS_NAMES.put(Integer.class.getName(), INTEGER);
+        CLASS_NAMES.put(Short.class.getName(), SHORT);
+        CLASS_NAMES.put(Byte.class.getName(), BYTE);
+        CLASS_NAMES.put(Double.class.getName(), DOUBLE);
+        CLASS_NAMES.put(Float.class.getName(), FLOAT);
+        CLASS_NAMES.put(BigDecimal.class.getName(), BIG_DECIMAL);
+        CLASS_NAMES.put(String.class.getName(), STRING);
+    }
+
+    /**
+     * 根据元数据的列类名获取列类型.
+     *
+     * @param className 列类名, 取自{@code ResultSetMetaData.getColumnClassName}
+     * @return 列类型, 未知的类名返回OBJECT
+     */
+    public static ColumnType of(final String className) {
+        ColumnType result = null == className ? null : CLASS_NAMES.get(className);
+        return null == result ? OBJECT : result;
+    }
+
+    /**
+     * 判断是否是整数类型.
+     *
+     * @return 是否是整数类型
+     */
+    public boolean isIntegral() {
+        return LONG == this || INTEGER == this || SHORT == this || BYTE == this;
+    }
+
+    /**
+     * 判断是否是浮点数类型.
+     *
+     * @return 是否是浮点数类型
+     */
+    public boolean isFloating() {
+        return DOUBLE == this || FLOAT == this;
+    }
+}
@@ -0,0 +1,48 @@
+package io.anyway.sherlock.merger.resultset.memory.row;
+
+/**
+ * 按列存储的缓冲区中的一行数据.
+ * 
+ * @author yangzz
+ */
+public final class ColumnarResultSetRow implements ResultSetRow {
+    
+    private final ColumnarRowBuffer buffer;
+    
+    private final int row;
+    
+    ColumnarResultSetRow(final ColumnarRowBuffer buffer, final int row) {
+        this.buffer = buffer;
+        this.row = row;
+    }
+    
+    @Override
+    public void setCell(final int columnIndex, final Object value) {
+        buffer.set(row, columnIndex, value);
+    }
+    
+    @Override
+    public Object getCell(final int columnIndex) {
+        return buffer.get(row, columnIndex);
+    }
+    
+    @Override
+    public boolean isNull(final int columnIndex) {
+        return buffer.isNull(row, columnIndex);
+    }
+    
+    @Override
+    public long getLong(final int columnIndex) {
+        return buffer.getLong(row, columnIndex);
+    }
+    
+    @Override
+    public double getDouble(final int columnIndex) {
+        return buffer.getDouble(row, columnIndex);
+    }
+    
+    @Override
+    public boolean inRange(final int columnIndex) {
+        return columnIndex > 0 && columnIndex < buffer.getColumnCount() + 1;
+    }
+}
@@ -0,0 +1,718 @@
+package io.anyway.sherlock.merger.resultset.memory.row;
+
+import com.google.common.base.Preconditions;
+import io.anyway.sherlock.merger.resultset.spill.RowCodec;
+import io.anyway.sherlock.merger.util.ResultSetUtil;
+import io.anyway.sherlock.sqlparser.bean.OrderColumn;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 按列存储的内存数据行缓冲区.
+ * 
+ * <p>
+ * 每个分片结果集只解析一次元数据, 整数、浮点数和字符串列分别存放在long[]、double[]和char[]中, 其余类型保存原始对象.
+ * 数据行用序号表示, 排序时只对序号排序, 不移动数据.
+ * 各分片同一列的Java类型不一致时, 该列退化为按对象保存, 保证取出的值和驱动返回的类型相同.
+ * 数据行较多并且提供了排序线程池时按处理器个数分段并行排序, 调用线程排第一段, 再把相邻的有序段两两合并.
+ * </p>
+ * 
+ * @author yangzz
+ */
+public final class ColumnarRowBuffer {
+    
+    private static final int INITIAL_CAPACITY = 64;
+    
+    // 每段至少的数据行数, 行数太少时并行排序的调度开销比排序本身大
+    static final int MIN_PARALLEL_SORT_ROWS = 8192;
+    
+    private static final int PROCESSORS = Runtime.getRuntime().availableProcessors();
+    
+    private final Column[] columns;
+    
+    private int size;
+    
+    private int capacity = INITIAL_CAPACITY;
+    
+    public ColumnarRowBuffer(final int columnCount) {
+        columns = new Column[columnCount];
+    }
+    
+    /**
+     * 根据分片结果集的元数据确定各列的存储方式, 每个分片结果集读取数据前调用一次.
+     * 
+     * @param metaData 分片结果集元数据
+     * @throws SQLException SQL异常
+     */
+    public void bind(final ResultSetMetaData metaData) throws SQLException {
+        for (int i = 0; i < columns.length; i++) {
+            Column column = createColumn(ColumnType.of(metaData.getColumnClassName(i + 1)));
+            if (null == columns[i]) {
+                columns[i] = column;
+            } else if (!columns[i].isCompatible(column)) {
+                columns[i] = columns[i].toObjectColumn(size);
+            }
+        }
+    }
+    
+    private Column createColumn(final ColumnType type) {
+        switch (type) {
+            case LONG:
+            case INTEGER:
+            case SHORT:
+            case BYTE:
+                return new LongColumn(type, capacity);
+            case DOUBLE:
+            case FLOAT:
+                return new DoubleColumn(type, capacity);
+            case STRING:
+                return new StringColumn(capacity);
+            default:
+                return new ObjectColumn(capacity);
+        }
+    }
+    
+    /**
+     * 添加结果集的当前行.
+     * 
+     * @param resultSet 已绑定元数据的分片结果集
+     * @return 数据行序号
+     * @throws SQLException SQL异常
+     */
+    public int add(final ResultSet resultSet) throws SQLException {
+        Preconditions.checkState(columns.length == 0 || null != columns[0], "Columnar row buffer is not bound");
+        if (size == capacity) {
+            capacity = capacity * 2;
+            for (Column each : columns) {
+                each.grow(capacity);
+            }
+        }
+        for (int i = 0; i < columns.length; i++) {
+            columns[i].read(resultSet, i + 1, size);
+        }
+        return size++;
+    }
+    
+    /**
+     * 获取数据.
+     * 
+     * @param row 数据行序号
+     * @param columnIndex 列索引, 从1开始计数
+     * @return 数据
+     */
+    public Object get(final int row, final int columnIndex) {
+        return columns[columnIndex - 1].get(row);
+    }
+    
+    /**
+     * 判断数据是否为空.
+     * 
+     * @param row 数据行序号
+     * @param columnIndex 列索引, 从1开始计数
+     * @return 数据是否为空
+     */
+    public boolean isNull(final int row, final int columnIndex) {
+        return columns[columnIndex - 1].isNull(row);
+    }
+    
+    /**
+     * 以long类型获取数据, 整数列直接读取, 不装箱.
+     * 
+     * @param row 数据行序号
+     * @param columnIndex 列索引, 从1开始计数
+     * @return 数据, 为空时返回0
+     */
+    public long getLong(final int row, final int columnIndex) {
+        return columns[columnIndex - 1].getLong(row);
+    }
+    
+    /**
+     * 以double类型获取数据, 浮点数列直接读取, 不装箱.
+     * 
+     * @param row 数据行序号
+     * @param columnIndex 列索引, 从1开始计数
+     * @return 数据, 为空时返回0
+     */
+    public double getDouble(final int row, final int columnIndex) {
+        return columns[columnIndex - 1].getDouble(row);
+    }
+    
+    /**
+     * 修改数据, 修改后该列按对象保存.
+     * 
+     * @param row 数据行序号
+     * @param columnIndex 列索引, 从1开始计数
+     * @param value 数据
+     */
+    public void set(final int row, final int columnIndex, final Object value) {
+        if (!(columns[columnIndex - 1] instanceof ObjectColumn)) {
+            columns[columnIndex - 1] = columns[columnIndex - 1].toObjectColumn(size);
+        }
+        ((ObjectColumn) columns[columnIndex - 1]).values[row] = value;
+    }
+    
+    /**
+     * 获取数据行.
+     * 
+     * @param row 数据行序号
+     * @return 数据行
+     */
+    public ResultSetRow getRow(final int row) {
+        return new ColumnarResultSetRow(this, row);
+    }
+    
+    public int getColumnCount() {
+        return columns.length;
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * 估算已缓存数据占用的字节数.
+     * 
+     * @return 字节数
+     */
+    public long getEstimatedSize() {
+        long result = 0;
+        for (Column each : columns) {
+            if (null != each) {
+                result += each.bytes;
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * 清空数据, 保留各列的存储方式.
+     */
+    public void clear() {
+        for (int i = 0; i < columns.length; i++) {
+            if (null != columns[i]) {
+                columns[i] = columns[i].newEmpty(INITIAL_CAPACITY);
+            }
+        }
+        size = 0;
+        capacity = INITIAL_CAPACITY;
+    }
+    
+    /**
+     * 按排序项对数据行序号稳定排序, 空值按MySQL的规则最小.
+     * 
+     * @param orderByColumns 排序项
+     * @return 排好序的数据行序号
+     */
+    public int[] sort(final List<OrderColumn> orderByColumns) {
+        return sort(orderByColumns, null, true);
+    }
+    
+    /**
+     * 按排序项对数据行序号稳定排序, 数据行较多时使用排序线程池并行排序.
+     * 
+     * @param orderByColumns 排序项
+     * @param executor 排序线程池, 为null时只在调用线程中排序
+     * @param nullsLowest 空值是否最小, 和{@link ResultSetUtil#compareTo(Comparable, Comparable, OrderColumn.OrderType, boolean)}的规则一致
+     * @return 排好序的数据行序号
+     */
+    public int[] sort(final List<OrderColumn> orderByColumns, final ExecutorService executor, final boolean nullsLowest) {
+        int[] result = new int[size];
+        for (int i = 0; i < size; i++) {
+            result[i] = i;
+        }
+        if (orderByColumns.isEmpty()) {
+            return result;
+        }
+        Column[] sortColumns = new Column[orderByColumns.size()];
+        boolean[] descending = new boolean[sortColumns.length];
+        for (int i = 0; i < sortColumns.length; i++) {
+            sortColumns[i] = columns[orderByColumns.get(i).getColumnIndex() - 1];
+            descending[i] = OrderColumn.OrderType.DESC == orderByColumns.get(i).getOrderType();
+        }
+        RowComparator comparator = new RowComparator(sortColumns, descending, nullsLowest);
+        int parts = null == executor ? 1 : Math.min(PROCESSORS, size / MIN_PARALLEL_SORT_ROWS);
+        if (parts < 2) {
+            mergeSort(result.clone(), result, 0, size, comparator);
+            return result;
+        }
+        return parallelSort(result, parts, comparator, executor);
+    }
+    
+    private int[] parallelSort(final int[] rows, final int parts, final RowComparator comparator, final ExecutorService executor) {
+        final int[] bounds = new int[parts + 1];
+        for (int i = 0; i <= parts; i++) {
+            bounds[i] = (int) ((long) size * i / parts);
+        }
+        final int[] aux = rows.clone();
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(parts);
+        for (int i = 0; i < parts; i++) {
+            final int low = bounds[i];
+            final int high = bounds[i + 1];
+            tasks.add(new Callable<Void>() {
+                
+                @Override
+                public Void call() {
+                    mergeSort(aux, rows, low, high, comparator);
+                    return null;
+                }
+            });
+        }
+        invokeAll(tasks, executor);
+        // 相邻的有序段两两合并, 相同时取左边的段, 保证和整体排序的结果一致
+        int[] src = rows;
+        int[] dest = aux;
+        for (int width = 1; width < parts; width <<= 1) {
+            tasks.clear();
+            for (int i = 0; i < parts; i += width << 1) {
+                final int[] from = src;
+                final int[] to = dest;
+                final int low = bounds[i];
+                final int mid = bounds[Math.min(i + width, parts)];
+                final int high = bounds[Math.min(i + (width << 1), parts)];
+                tasks.add(new Callable<Void>() {
+                    
+                    @Override
+                    public Void call() {
+                        merge(from, to, low, mid, high, comparator);
+                        return null;
+                    }
+                });
+            }
+            invokeAll(tasks, executor);
+            int[] swap = src;
+            src = dest;
+            dest = swap;
+        }
+        return src;
+    }
+    
+    private static void invokeAll(final List<Callable<Void>> tasks, final ExecutorService executor) {
+        List<Future<Void>> futures = new ArrayList<Future<Void>>(tasks.size());
+        try {
+            for (int i = 1; i < tasks.size(); i++) {
+                try {
+                    futures.add(executor.submit(tasks.get(i)));
+                } catch (final RejectedExecutionException ex) {
+                    // 线程池已关闭时在调用线程中执行
+                    tasks.get(i).call();
+                }
+            }
+            tasks.get(0).call();
+            for (Future<Void> each : futures) {
+                each.get();
+            }
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while sorting rows", ex);
+        } catch (final ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new IllegalStateException(ex.getCause());
+        } catch (final RuntimeException ex) {
+            throw ex;
+        } catch (final Exception ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+    
+    private static void mergeSort(final int[] src, final int[] dest, final int low, final int high, final RowComparator comparator) {
+        int length = high - low;
+        if (length < 7) {
+            for (int i = low; i < high; i++) {
+                for (int j = i; j > low && comparator.compare(dest[j - 1], dest[j]) > 0; j--) {
+                    int swap = dest[j];
+                    dest[j] = dest[j - 1];
+                    dest[j - 1] = swap;
+                }
+            }
+            return;
+        }
+        int mid = (low + high) >>> 1;
+        mergeSort(dest, src, low, mid, comparator);
+        mergeSort(dest, src, mid, high, comparator);
+        if (comparator.compare(src[mid - 1], src[mid]) <= 0) {
+            System.arraycopy(src, low, dest, low, length);
+            return;
+        }
+        merge(src, dest, low, mid, high, comparator);
+    }
+    
+    private static void merge(final int[] src, final int[] dest, final int low, final int mid, final int high, final RowComparator comparator) {
+        for (int i = low, p = low, q = mid; i < high; i++) {
+            if (q >= high || p < mid && comparator.compare(src[p], src[q]) <= 0) {
+                dest[i] = src[p++];
+            } else {
+                dest[i] = src[q++];
+            }
+        }
+    }
+    
+    /**
+     * 按排序项比较两个数据行, 空值不交给各列比较.
+     */
+    private static final class RowComparator {
+        
+        private final Column[] sortColumns;
+        
+        private final boolean[] descending;
+        
+        private final boolean nullsLowest;
+        
+        RowComparator(final Column[] sortColumns, final boolean[] descending, final boolean nullsLowest) {
+            this.sortColumns = sortColumns;
+            this.descending = descending;
+            this.nullsLowest = nullsLowest;
+        }
+        
+        int compare(final int a, final int b) {
+            for (int i = 0; i < sortColumns.length; i++) {
+                int result = compare(sortColumns[i], a, b);
+                if (0 != result) {
+                    return descending[i] ? -result : result;
+                }
+            }
+            return 0;
+        }
+        
+        private int compare(final Column column, final int a, final int b) {
+            boolean nullA = column.isNull(a);
+            boolean nullB = column.isNull(b);
+            if (!nullA && !nullB) {
+                return column.compare(a, b);
+            }
+            if (nullA == nullB) {
+                return 0;
+            }
+            return nullA == nullsLowest ? -1 : 1;
+        }
+    }
+    
+    /**
+     * 单列数据.
+     */
+    private abstract static class Column {
+        
+        protected BitSet nulls = new BitSet();
+        
+        protected long bytes;
+        
+        abstract void read(ResultSet resultSet, int columnIndex, int row) throws SQLException;
+        
+        abstract Object get(int row);
+        
+        long getLong(final int row) {
+            return ResultSetUtil.toLong(get(row));
+        }
+        
+        double getDouble(final int row) {
+            return ResultSetUtil.toDouble(get(row));
+        }
+        
+        abstract int compare(int a, int b);
+        
+        abstract void grow(int capacity);
+        
+        abstract Column newEmpty(int capacity);
+        
+        abstract boolean isCompatible(Column other);
+        
+        boolean isNull(final int row) {
+            return nulls.get(row);
+        }
+        
+        final ObjectColumn toObjectColumn(final int size) {
+            ObjectColumn result = new ObjectColumn(capacityOf());
+            for (int i = 0; i < size; i++) {
+                Object value = get(i);
+                result.values[i] = value;
+                result.bytes += 8 + RowCodec.estimateSize(value);
+            }
+            return result;
+        }
+        
+        abstract int capacityOf();
+    }
+    
+    private static final class LongColumn extends Column {
+        
+        private final ColumnType type;
+        
+        private long[] values;
+        
+        LongColumn(final ColumnType type, final int capacity) {
+            this.type = type;
+            values = new long[capacity];
+        }
+        
+        @Override
+        void read(final ResultSet resultSet, final int columnIndex, final int row) throws SQLException {
+            values[row] = resultSet.getLong(columnIndex);
+            if (resultSet.wasNull()) {
+                nulls.set(row);
+            }
+            bytes += 8;
+        }
+        
+        @Override
+        Object get(final int row) {
+            if (nulls.get(row)) {
+                return null;
+            }
+            long value = values[row];
+            switch (type) {
+                case INTEGER:
+                    return (int) value;
+                case SHORT:
+                    return (short) value;
+                case BYTE:
+                    return (byte) value;
+                default:
+                    return value;
+            }
+        }
+        
+        @Override
+        long getLong(final int row) {
+            return values[row];
+        }
+        
+        @Override
+        double getDouble(final int row) {
+            return values[row];
+        }
+        
+        @Override
+        int compare(final int a, final int b) {
+            long x = values[a];
+            long y = values[b];
+            return x < y ? -1 : (x == y ? 0 : 1);
+        }
+        
+        @Override
+        void grow(final int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+        
+        @Override
+        Column newEmpty(final int capacity) {
+            return new LongColumn(type, capacity);
+        }
+        
+        @Override
+        boolean isCompatible(final Column other) {
+            return other instanceof LongColumn && type == ((LongColumn) other).type;
+        }
+        
+        @Override
+        int capacityOf() {
+            return values.length;
+        }
+    }
+    
+    private static final class DoubleColumn extends Column {
+        
+        private final ColumnType type;
+        
+        private double[] values;
+        
+        DoubleColumn(final ColumnType type, final int capacity) {
+            this.type = type;
+            values = new double[capacity];
+        }
+        
+        @Override
+        void read(final ResultSet resultSet, final int columnIndex, final int row) throws SQLException {
+            values[row] = resultSet.getDouble(columnIndex);
+            if (resultSet.wasNull()) {
+                nulls.set(row);
+            }
+            bytes += 8;
+        }
+        
+        @Override
+        Object get(final int row) {
+            if (nulls.get(row)) {
+                return null;
+            }
+            return ColumnType.FLOAT == type ? (Object) (float) values[row] : (Object) values[row];
+        }
+        
+        @Override
+        long getLong(final int row) {
+            return (long) values[row];
+        }
+        
+        @Override
+        double getDouble(final int row) {
+            return values[row];
+        }
+        
+        @Override
+        int compare(final int a, final int b) {
+            return Double.compare(values[a], values[b]);
+        }
+        
+        @Override
+        void grow(final int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+        
+        @Override
+        Column newEmpty(final int capacity) {
+            return new DoubleColumn(type, capacity);
+        }
+        
+        @Override
+        boolean isCompatible(final Column other) {
+            return other instanceof DoubleColumn && type == ((DoubleColumn) other).type;
+        }
+        
+        @Override
+        int capacityOf() {
+            return values.length;
+        }
+    }
+    
+    /**
+     * 字符串列, 所有字符连续存放, 第i行的字符范围为[offsets[i], offsets[i + 1]).
+     */
+    private static final class StringColumn extends Column {
+        
+        private char[] chars = new char[256];
+        
+        private int[] offsets;
+        
+        StringColumn(final int capacity) {
+            offsets = new int[capacity + 1];
+        }
+        
+        @Override
+        void read(final ResultSet resultSet, final int columnIndex, final int row) throws SQLException {
+            String value = resultSet.getString(columnIndex);
+            int start = offsets[row];
+            if (null == value) {
+                nulls.set(row);
+                offsets[row + 1] = start;
+                return;
+            }
+            int end = start + value.length();
+            if (end > chars.length) {
+                chars = Arrays.copyOf(chars, Math.max(end, chars.length * 2));
+            }
+            value.getChars(0, value.length(), chars, start);
+            offsets[row + 1] = end;
+            bytes += 4 + 2 * value.length();
+        }
+        
+        @Override
+        Object get(final int row) {
+            if (nulls.get(row)) {
+                return null;
+            }
+            return new String(chars, offsets[row], offsets[row + 1] - offsets[row]);
+        }
+        
+        @Override
+        int compare(final int a, final int b) {
+            // 和String.compareTo一致, 按UTF-16字符逐个比较
+            int i = offsets[a];
+            int j = offsets[b];
+            int endA = offsets[a + 1];
+            int endB = offsets[b + 1];
+            while (i < endA && j < endB) {
+                char x = chars[i++];
+                char y = chars[j++];
+                if (x != y) {
+                    return x - y;
+                }
+            }
+            return (endA - offsets[a]) - (endB - offsets[b]);
+        }
+        
+        @Override
+        void grow(final int capacity) {
+            offsets = Arrays.copyOf(offsets, capacity + 1);
+        }
+        
+        @Override
+        Column newEmpty(final int capacity) {
+            return new StringColumn(capacity);
+        }
+        
+        @Override
+        boolean isCompatible(final Column other) {
+            return other instanceof StringColumn;
+        }
+        
+        @Override
+        int capacityOf() {
+            return offsets.length - 1;
+        }
+    }
+    
+    private static final class ObjectColumn extends Column {
+        
+        private Object[] values;
+        
+        ObjectColumn(final int capacity) {
+            values = new Object[capacity];
+        }
+        
+        @Override
+        void read(final ResultSet resultSet, final int columnIndex, final int row) throws SQLException {
+            Object value = resultSet.getObject(columnIndex);
+            values[row] = value;
+            bytes += 8 + RowCodec.estimateSize(value);
+        }
+        
+        @Override
+        Object get(final int row) {
+            return values[row];
+        }
+        
+        @Override
+        boolean isNull(final int row) {
+            return null == values[row];
+        }
+        
+        @SuppressWarnings({ "rawtypes", "unchecked" })
+        @Override
+        int compare(final int a, final int b) {
+            Object x = values[a];
+            Preconditions.checkState(x instanceof Comparable, "Sharding-JDBC: order by value must extends Comparable");
+            return ((Comparable) x).compareTo(values[b]);
+        }
+        
+        @Override
+        void grow(final int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+        
+        @Override
+        Column newEmpty(final int capacity) {
+            return new ObjectColumn(capacity);
+        }
+        
+        @Override
+        boolean isCompatible(final Column other) {
+            return true;
+        }
+        
+        @Override
+        int capacityOf() {
+            return values.length;
+        }
+    }
+}
@@ -1,117 +1,111 @@
 package io.anyway.sherlock.merger.resultset.memory.row;
 
-import com.google.common.base.Function;
-import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
 import io.anyway.sherlock.merger.pipeline.coupling.aggregation.AggregationUnit;
 import io.anyway.sherlock.merger.pipeline.coupling.aggregation.AggregationUnitFactory;
 import io.anyway.sherlock.sqlparser.bean.AggregationColumn;
 import io.anyway.sherlock.sqlparser.bean.GroupColumn;
 
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 
 /**
  * 具有分组功能的数据行对象.
+ * 
+ * <p>
+ * 以分组的第一行数据为模板, 后续同组的数据行只累加到聚合单元中.
+ * </p>
  *
  * @author xiong.j
  */
 public final class GroupByResultSetRow extends AbstractResultSetRow {
     
-    private final ResultSet resultSet;
-    
     private final List<GroupColumn> groupByColumns;
     
-    private final Map<AggregationColumn, AggregationUnit> aggregationUnitMap;
-
-    private final static String AUTO_GEN_COL_COUNT = "auto_gen_col_count";
+    private final List<AggregationColumn> aggregationColumns;
+    
+    private final AggregationUnit[] aggregationUnits;
     
     public GroupByResultSetRow(final ResultSet resultSet, final List<GroupColumn> groupByColumns, final List<AggregationColumn> aggregationColumns) throws SQLException {
         super(resultSet);
-        this.resultSet = resultSet;
         this.groupByColumns = groupByColumns;
-        aggregationUnitMap = Maps.toMap(aggregationColumns, new Function<AggregationColumn, AggregationUnit>() {
-            
-            @Override
-            public AggregationUnit apply(final AggregationColumn input) {
-                return AggregationUnitFactory.create(input.getAggregationType());
-            }
-        });
+        this.aggregationColumns = aggregationColumns;
+        aggregationUnits = new AggregationUnit[aggregationColumns.size()];
+        if (aggregationUnits.length == 0) {
+            return;
+        }
+        ResultSetMetaData metaData = resultSet.getMetaData();
+        for (int i = 0; i < aggregationUnits.length; i++) {
+            aggregationUnits[i] = AggregationUnitFactory.create(aggregationColumns.get(i), metaData);
+        }
     }
     
     /**
      * 处理聚合函数结果集.
      * 
+     * @param resultSet 当前行属于本分组的结果集
      * @throws SQLException SQL异常
      */
-    public void aggregate() throws SQLException {
-        for (Map.Entry<AggregationColumn, AggregationUnit> each : aggregationUnitMap.entrySet()) {
-            each.getValue().merge(getAggregationValues(Collections.singletonList(each.getKey())));
-        }
-    }
-    
-    private List<Comparable<?>> getAggregationValues(final List<AggregationColumn> aggregationColumns) throws SQLException {
-        List<Comparable<?>> result = new ArrayList<Comparable<?>>(aggregationColumns.size());
-        boolean hasAvg = false;
-        for (AggregationColumn each : aggregationColumns) {
-            result.add((Comparable<?>) resultSet.getObject(each.getColumnIndex()));
-            if (AggregationColumn.AggregationType.AVG.equals(each.getAggregationType())) {
-                hasAvg = true;
-            }
+    public void aggregate(final ResultSet resultSet) throws SQLException {
+        for (AggregationUnit each : aggregationUnits) {
+            each.merge(resultSet);
         }
-        if (hasAvg) result.add((Comparable<?>) resultSet.getObject(AUTO_GEN_COL_COUNT));
-        return result;
     }
     
     /**
      * 生成结果.
      */
     public void generateResult() {
-        for (AggregationColumn each : aggregationUnitMap.keySet()) {
-            setCell(each.getColumnIndex(), aggregationUnitMap.get(each).getResult());
+        for (int i = 0; i < aggregationUnits.length; i++) {
+            setCell(aggregationColumns.get(i).getColumnIndex(), aggregationUnits[i].getResult());
         }
     }
     
     /**
-     * 获取分组值.
+     * 判断结果集当前行是否和本行属于同一分组.
      * 
-     * @return 分组值集合
+     * @param resultSet 结果集
+     * @return 是否同一分组
      * @throws SQLException SQL异常
      */
-    public List<Object> getGroupByValues() throws SQLException {
-        List<Object> result = new ArrayList<Object>(groupByColumns.size());
+    public boolean isSameGroup(final ResultSet resultSet) throws SQLException {
         for (GroupColumn each : groupByColumns) {
-            result.add(resultSet.getObject(each.getColumnIndex()));
+            Object cell = getCell(each.getColumnIndex());
+            Object value = resultSet.getObject(each.getColumnIndex());
+            if (cell == value) {
+                continue;
+            }
+            if (null == cell || null == value) {
+                return false;
+            }
+            if (cell instanceof byte[] && value instanceof byte[] ? !Arrays.equals((byte[]) cell, (byte[]) value) : !cell.equals(value)) {
+                return false;
+            }
         }
-        return result;
+        return true;
     }
     
     @Override
     public String toString() {
         StringBuilder result = new StringBuilder("GroupByKey is: ");
-        result.append(Lists.transform(groupByColumns, new Function<GroupColumn, Object>() {
-            
-            @Override
-            public Object apply(final GroupColumn input) {
-                return getCell(input.getColumnIndex());
-            }
-        }));
-        if (aggregationUnitMap.isEmpty()) {
+        List<Object> groupByValues = new ArrayList<Object>(groupByColumns.size());
+        for (GroupColumn each : groupByColumns) {
+            groupByValues.add(getCell(each.getColumnIndex()));
+        }
+        result.append(groupByValues);
+        if (aggregationColumns.isEmpty()) {
             return result.toString();
         }
-        result.append("; Aggregation result is: ").append(Lists.transform(new ArrayList<AggregationColumn>(aggregationUnitMap.keySet()), new Function<AggregationColumn, String>() {
-            
-            @Override
-            public String apply(final AggregationColumn input) {
-                Object value = getCell(input.getColumnIndex());
-                value = null == value ? "null" : value;
-                return String.format("{index:%d, type:%s, value:%s}", input.getColumnIndex(), input.getAggregationType(), value);
-            }
-        }));
+        List<String> aggregationValues = new ArrayList<String>(aggregationColumns.size());
+        for (AggregationColumn each : aggregationColumns) {
+            Object value = getCell(each.getColumnIndex());
+            value = null == value ? "null" : value;
+            aggregationValues.add(String.format("{index:%d, type:%s, value:%s}", each.getColumnIndex(), each.getAggregationType(), value));
+        }
+        result.append("; Aggregation result is: ").append(aggregationValues);
         return result.toString();
     }
 }
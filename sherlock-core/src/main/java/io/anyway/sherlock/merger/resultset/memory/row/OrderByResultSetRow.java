@@ -19,9 +19,19 @@ public final class OrderByResultSetRow extends AbstractResultSetRow implements C
     
     private final List<Comparable<?>> orderByValues;
     
-    public OrderByResultSetRow(final ResultSet resultSet, final List<OrderColumn> orderByColumns) throws SQLException {
+    private final boolean nullsLowest;
+    
+    public OrderByResultSetRow(final ResultSet resultSet, final List<OrderColumn> orderByColumns, final boolean nullsLowest) throws SQLException {
         super(resultSet);
         this.orderByColumns = orderByColumns;
+        this.nullsLowest = nullsLowest;
+        orderByValues = loadOrderByValues();
+    }
+    
+    public OrderByResultSetRow(final Object[] rowData, final List<OrderColumn> orderByColumns, final boolean nullsLowest) {
+        super(rowData);
+        this.orderByColumns = orderByColumns;
+        this.nullsLowest = nullsLowest;
         orderByValues = loadOrderByValues();
     }
     
@@ -29,7 +39,7 @@ public final class OrderByResultSetRow extends AbstractResultSetRow implements C
         List<Comparable<?>> result = new ArrayList<Comparable<?>>(orderByColumns.size());
         for (OrderColumn each : orderByColumns) {
             Object value = getCell(each.getColumnIndex());
-            Preconditions.checkState(value instanceof Comparable, "Sharding-JDBC: order by value must extends Comparable");
+            Preconditions.checkState(null == value || value instanceof Comparable, "Sharding-JDBC: order by value must extends Comparable");
             result.add((Comparable<?>) value);
         }
         return result;
@@ -39,7 +49,27 @@ public final class OrderByResultSetRow extends AbstractResultSetRow implements C
     public int compareTo(final OrderByResultSetRow otherOrderByValue) {
         for (int i = 0; i < orderByColumns.size(); i++) {
             OrderColumn thisOrderColumn = orderByColumns.get(i);
-            int result = ResultSetUtil.compareTo(orderByValues.get(i), otherOrderByValue.orderByValues.get(i), thisOrderColumn.getOrderType());
+            int result = ResultSetUtil.compareTo(orderByValues.get(i), otherOrderByValue.orderByValues.get(i), thisOrderColumn.getOrderType(), nullsLowest);
+            if (0 != result) {
+                return result;
+            }
+        }
+        return 0;
+    }
+    
+    /**
+     * 和结果集当前行的排序值比较, 不需要复制整行数据.
+     * 
+     * @param resultSet 结果集
+     * @return 负数，零和正数分别表示本行排在结果集当前行之前，相同和之后
+     * @throws SQLException
+     */
+    public int compareTo(final ResultSet resultSet) throws SQLException {
+        for (int i = 0; i < orderByColumns.size(); i++) {
+            OrderColumn thisOrderColumn = orderByColumns.get(i);
+            Object value = resultSet.getObject(thisOrderColumn.getColumnIndex());
+            Preconditions.checkState(null == value || value instanceof Comparable, "Sharding-JDBC: order by value must extends Comparable");
+            int result = ResultSetUtil.compareTo(orderByValues.get(i), (Comparable<?>) value, thisOrderColumn.getOrderType(), nullsLowest);
             if (0 != result) {
                 return result;
             }
@@ -24,6 +24,30 @@ public interface ResultSetRow {
      */
     Object getCell(int columnIndex);
     
+    /**
+     * 判断数据是否为空.
+     * 
+     * @param columnIndex 列索引, 与JDBC保持一致, 从1开始计数
+     * @return 数据是否为空
+     */
+    boolean isNull(int columnIndex);
+    
+    /**
+     * 以long类型访问数据行数据, 数据为空时返回0.
+     * 
+     * @param columnIndex 列索引, 与JDBC保持一致, 从1开始计数
+     * @return 数据行数据
+     */
+    long getLong(int columnIndex);
+    
+    /**
+     * 以double类型访问数据行数据, 数据为空时返回0.
+     * 
+     * @param columnIndex 列索引, 与JDBC保持一致, 从1开始计数
+     * @return 数据行数据
+     */
+    double getDouble(int columnIndex);
+    
     /**
      * 判断列索引是否在数据行范围.
      * 
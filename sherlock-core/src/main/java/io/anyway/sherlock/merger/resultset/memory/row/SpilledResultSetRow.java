@@ -0,0 +1,13 @@
+package io.anyway.sherlock.merger.resultset.memory.row;
+
+/**
+ * 从溢出文件读回的数据行.
+ * 
+ * @author yangzz
+ */
+public final class SpilledResultSetRow extends AbstractResultSetRow {
+    
+    public SpilledResultSetRow(final Object[] rowData) {
+        super(rowData);
+    }
+}
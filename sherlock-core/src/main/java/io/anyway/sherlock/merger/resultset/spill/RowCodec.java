@@ -0,0 +1,253 @@
+package io.anyway.sherlock.merger.resultset.spill;
+
+import com.google.common.base.Charsets;
+import io.anyway.sherlock.merger.resultset.memory.row.ResultSetRow;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+
+/**
+ * 溢出文件的紧凑二进制行格式.
+ * 
+ * <p>
+ * 每个值以一个字节的类型标记开头, 常见的JDBC类型直接按二进制写入, 其余可序列化对象使用Java序列化.
+ * </p>
+ * 
+ * @author yangzz
+ */
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+public final class RowCodec {
+    
+    private static final byte NULL = 0;
+    
+    private static final byte STRING = 1;
+    
+    private static final byte INTEGER = 2;
+    
+    private static final byte LONG = 3;
+    
+    private static final byte SHORT = 4;
+    
+    private static final byte BYTE = 5;
+    
+    private static final byte DOUBLE = 6;
+    
+    private static final byte FLOAT = 7;
+    
+    private static final byte BOOLEAN = 8;
+    
+    private static final byte BIG_DECIMAL = 9;
+    
+    private static final byte BIG_INTEGER = 10;
+    
+    private static final byte BYTES = 11;
+    
+    private static final byte TIMESTAMP = 12;
+    
+    private static final byte DATE = 13;
+    
+    private static final byte TIME = 14;
+    
+    private static final byte UTIL_DATE = 15;
+    
+    private static final byte SERIALIZED = 16;
+    
+    /**
+     * 写入单个值.
+     * 
+     * @param output 输出
+     * @param value 值
+     * @throws IOException IO异常
+     * @throws SQLException 值的类型无法写入
+     */
+    public static void writeValue(final DataOutput output, final Object value) throws IOException, SQLException {
+        if (null == value) {
+            output.writeByte(NULL);
+        } else if (value instanceof String) {
+            output.writeByte(STRING);
+            writeBytes(output, ((String) value).getBytes(Charsets.UTF_8));
+        } else if (value instanceof Integer) {
+            output.writeByte(INTEGER);
+            output.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            output.writeByte(LONG);
+            output.writeLong((Long) value);
+        } else if (value instanceof Short) {
+            output.writeByte(SHORT);
+            output.writeShort((Short) value);
+        } else if (value instanceof Byte) {
+            output.writeByte(BYTE);
+            output.writeByte((Byte) value);
+        } else if (value instanceof Double) {
+            output.writeByte(DOUBLE);
+            output.writeDouble((Double) value);
+        } else if (value instanceof Float) {
+            output.writeByte(FLOAT);
+            output.writeFloat((Float) value);
+        } else if (value instanceof Boolean) {
+            output.writeByte(BOOLEAN);
+            output.writeBoolean((Boolean) value);
+        } else if (value instanceof BigDecimal) {
+            output.writeByte(BIG_DECIMAL);
+            output.writeInt(((BigDecimal) value).scale());
+            writeBytes(output, ((BigDecimal) value).unscaledValue().toByteArray());
+        } else if (value instanceof BigInteger) {
+            output.writeByte(BIG_INTEGER);
+            writeBytes(output, ((BigInteger) value).toByteArray());
+        } else if (value instanceof byte[]) {
+            output.writeByte(BYTES);
+            writeBytes(output, (byte[]) value);
+        } else if (value instanceof Timestamp) {
+            output.writeByte(TIMESTAMP);
+            output.writeLong(((Timestamp) value).getTime());
+            output.writeInt(((Timestamp) value).getNanos());
+        } else if (value instanceof java.sql.Date) {
+            output.writeByte(DATE);
+            output.writeLong(((java.sql.Date) value).getTime());
+        } else if (value instanceof Time) {
+            output.writeByte(TIME);
+            output.writeLong(((Time) value).getTime());
+        } else if (value instanceof java.util.Date) {
+            output.writeByte(UTIL_DATE);
+            output.writeLong(((java.util.Date) value).getTime());
+        } else if (value instanceof Clob) {
+            // 大字段在结果集关闭后不可读, 直接取出内容
+            Clob clob = (Clob) value;
+            writeValue(output, clob.getSubString(1, (int) clob.length()));
+        } else if (value instanceof Blob) {
+            Blob blob = (Blob) value;
+            writeValue(output, blob.getBytes(1, (int) blob.length()));
+        } else if (value instanceof Serializable) {
+            output.writeByte(SERIALIZED);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream objectOutput = new ObjectOutputStream(bytes);
+            objectOutput.writeObject(value);
+            objectOutput.close();
+            writeBytes(output, bytes.toByteArray());
+        } else {
+            throw new SQLException(String.format("Unsupported spill value type: %s", value.getClass().getName()));
+        }
+    }
+    
+    /**
+     * 读取单个值.
+     * 
+     * @param input 输入
+     * @return 值
+     * @throws IOException IO异常
+     */
+    public static Object readValue(final DataInput input) throws IOException {
+        byte type = input.readByte();
+        switch (type) {
+            case NULL:
+                return null;
+            case STRING:
+                return new String(readBytes(input), Charsets.UTF_8);
+            case INTEGER:
+                return input.readInt();
+            case LONG:
+                return input.readLong();
+            case SHORT:
+                return input.readShort();
+            case BYTE:
+                return input.readByte();
+            case DOUBLE:
+                return input.readDouble();
+            case FLOAT:
+                return input.readFloat();
+            case BOOLEAN:
+                return input.readBoolean();
+            case BIG_DECIMAL:
+                int scale = input.readInt();
+                return new BigDecimal(new BigInteger(readBytes(input)), scale);
+            case BIG_INTEGER:
+                return new BigInteger(readBytes(input));
+            case BYTES:
+                return readBytes(input);
+            case TIMESTAMP:
+                Timestamp timestamp = new Timestamp(input.readLong());
+                timestamp.setNanos(input.readInt());
+                return timestamp;
+            case DATE:
+                return new java.sql.Date(input.readLong());
+            case TIME:
+                return new Time(input.readLong());
+            case UTIL_DATE:
+                return new java.util.Date(input.readLong());
+            case SERIALIZED:
+                ObjectInputStream objectInput = new ObjectInputStream(new ByteArrayInputStream(readBytes(input)));
+                try {
+                    return objectInput.readObject();
+                } catch (final ClassNotFoundException ex) {
+                    throw new IOException(ex.getMessage());
+                } finally {
+                    objectInput.close();
+                }
+            default:
+                throw new IOException(String.format("Unknown spill value type: %d", type));
+        }
+    }
+    
+    /**
+     * 估算值在堆中占用的字节数.
+     * 
+     * @param value 值
+     * @return 字节数
+     */
+    public static long estimateSize(final Object value) {
+        if (null == value) {
+            return 8;
+        }
+        if (value instanceof String) {
+            return 56 + 2L * ((String) value).length();
+        }
+        if (value instanceof byte[]) {
+            return 24 + ((byte[]) value).length;
+        }
+        if (value instanceof BigDecimal || value instanceof BigInteger) {
+            return 72;
+        }
+        return 32;
+    }
+    
+    /**
+     * 估算数据行在堆中占用的字节数.
+     * 
+     * @param row 数据行
+     * @param columnCount 列数
+     * @return 字节数
+     */
+    public static long estimateSize(final ResultSetRow row, final int columnCount) {
+        long result = 32 + 8L * columnCount;
+        for (int i = 1; i <= columnCount; i++) {
+            result += estimateSize(row.getCell(i));
+        }
+        return result;
+    }
+    
+    private static void writeBytes(final DataOutput output, final byte[] bytes) throws IOException {
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+    
+    private static byte[] readBytes(final DataInput input) throws IOException {
+        byte[] result = new byte[input.readInt()];
+        input.readFully(result);
+        return result;
+    }
+}
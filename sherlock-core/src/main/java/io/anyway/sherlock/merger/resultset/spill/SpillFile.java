@@ -0,0 +1,171 @@
+package io.anyway.sherlock.merger.resultset.spill;
+
+import io.anyway.sherlock.merger.resultset.memory.row.ResultSetRow;
+import io.anyway.sherlock.metrics.ShardingMetrics;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * 归并时超过内存预算而写入临时文件的数据行.
+ * 
+ * <p>
+ * 先顺序写入全部数据行, 调用{@link #finish()}后才能读取. 文件通过NIO通道读写, 使用后需要调用{@link #delete()}删除.
+ * </p>
+ * 
+ * @author yangzz
+ */
+@Slf4j
+public final class SpillFile {
+    
+    private static final int BUFFER_SIZE = 64 * 1024;
+    
+    private final File file;
+    
+    private final int columnCount;
+    
+    private DataOutputStream output;
+    
+    private DataInputStream input;
+    
+    private long rowCount;
+    
+    private SpillFile(final File file, final int columnCount, final DataOutputStream output) {
+        this.file = file;
+        this.columnCount = columnCount;
+        this.output = output;
+    }
+    
+    /**
+     * 创建临时文件.
+     * 
+     * @param columnCount 数据行的列数
+     * @return 溢出文件
+     * @throws SQLException 创建文件失败
+     */
+    public static SpillFile create(final int columnCount) throws SQLException {
+        try {
+            File file = File.createTempFile("sherlock-merge-", ".spill");
+            FileChannel channel = new FileOutputStream(file).getChannel();
+            log.debug("Create spill file: {}", file);
+            return new SpillFile(file, columnCount, new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE)));
+        } catch (final IOException ex) {
+            throw new SQLException("Create spill file error: " + ex.getMessage(), ex);
+        }
+    }
+    
+    /**
+     * 写入内存数据行.
+     * 
+     * @param row 数据行
+     * @throws SQLException 写入失败
+     */
+    public void write(final ResultSetRow row) throws SQLException {
+        try {
+            for (int i = 1; i <= columnCount; i++) {
+                RowCodec.writeValue(output, row.getCell(i));
+            }
+        } catch (final IOException ex) {
+            throw new SQLException("Write spill file error: " + ex.getMessage(), ex);
+        }
+        rowCount++;
+    }
+    
+    /**
+     * 写入结果集的当前行.
+     * 
+     * @param resultSet 结果集
+     * @throws SQLException 写入失败
+     */
+    public void write(final ResultSet resultSet) throws SQLException {
+        try {
+            for (int i = 1; i <= columnCount; i++) {
+                RowCodec.writeValue(output, resultSet.getObject(i));
+            }
+        } catch (final IOException ex) {
+            throw new SQLException("Write spill file error: " + ex.getMessage(), ex);
+        }
+        rowCount++;
+    }
+    
+    /**
+     * 结束写入, 统计溢出的字节数和文件数.
+     * 
+     * @throws SQLException 写入失败
+     */
+    public void finish() throws SQLException {
+        try {
+            output.close();
+        } catch (final IOException ex) {
+            throw new SQLException("Write spill file error: " + ex.getMessage(), ex);
+        } finally {
+            output = null;
+        }
+        ShardingMetrics.increment(ShardingMetrics.MERGE_SPILL_FILES);
+        ShardingMetrics.add(ShardingMetrics.MERGE_SPILL_BYTES, file.length());
+        log.debug("Spill {} rows, {} bytes to file: {}", rowCount, file.length(), file);
+    }
+    
+    /**
+     * 读取下一行.
+     * 
+     * @return 数据行, 读完时返回null
+     * @throws SQLException 读取失败
+     */
+    public Object[] read() throws SQLException {
+        try {
+            if (null == input) {
+                input = new DataInputStream(new BufferedInputStream(Channels.newInputStream(new FileInputStream(file).getChannel()), BUFFER_SIZE));
+            }
+            Object[] result = new Object[columnCount];
+            try {
+                result[0] = RowCodec.readValue(input);
+            } catch (final EOFException ex) {
+                return null;
+            }
+            for (int i = 1; i < columnCount; i++) {
+                result[i] = RowCodec.readValue(input);
+            }
+            return result;
+        } catch (final IOException ex) {
+            throw new SQLException("Read spill file error: " + ex.getMessage(), ex);
+        }
+    }
+    
+    public long getRowCount() {
+        return rowCount;
+    }
+    
+    /**
+     * 关闭并删除临时文件.
+     */
+    public void delete() {
+        try {
+            if (null != output) {
+                output.close();
+            }
+            if (null != input) {
+                input.close();
+            }
+        } catch (final IOException ex) {
+            log.warn("Close spill file error: {}", ex.getMessage());
+        }
+        output = null;
+        input = null;
+        if (file.exists() && !file.delete()) {
+            log.warn("Delete spill file failed: {}", file);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package io.anyway.sherlock.merger.resultset.spill;
+
+import com.google.common.base.Optional;
+import io.anyway.sherlock.merger.resultset.memory.AbstractMemoryResultSet;
+import io.anyway.sherlock.merger.resultset.memory.row.ResultSetRow;
+import io.anyway.sherlock.merger.resultset.memory.row.SpilledResultSetRow;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 逐行读取溢出文件的结果集.
+ * 
+ * <p>
+ * 列名和元数据沿用写入时的分片结果集, 关闭时只删除临时文件.
+ * </p>
+ * 
+ * @author yangzz
+ */
+public final class SpilledResultSet extends AbstractMemoryResultSet {
+    
+    private final SpillFile spillFile;
+    
+    public SpilledResultSet(final ResultSet template, final SpillFile spillFile) throws SQLException {
+        super(Collections.singletonList(template));
+        this.spillFile = spillFile;
+    }
+    
+    @Override
+    protected void initRows(final List<ResultSet> resultSets) throws SQLException {
+    }
+    
+    @Override
+    protected Optional<? extends ResultSetRow> nextRow() throws SQLException {
+        Object[] rowData = spillFile.read();
+        if (null == rowData) {
+            return Optional.absent();
+        }
+        return Optional.of(new SpilledResultSetRow(rowData));
+    }
+    
+    @Override
+    public void close() throws SQLException {
+        spillFile.delete();
+    }
+}
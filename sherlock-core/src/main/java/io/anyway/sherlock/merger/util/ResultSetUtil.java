@@ -1,6 +1,9 @@
 package io.anyway.sherlock.merger.util;
 
 import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.sql.Time;
 import java.sql.Timestamp;
 import java.util.Date;
@@ -9,6 +12,7 @@ import io.anyway.sherlock.exception.ShardingException;
 import io.anyway.sherlock.sqlparser.bean.OrderColumn;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 
 /**
  * 结果集工具类.
@@ -16,8 +20,28 @@ import lombok.RequiredArgsConstructor;
  * @author xiong.j
  */
 @RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+@Slf4j
 public final class ResultSetUtil {
     
+    /**
+     * 取消还在流式读取的分片查询.
+     * 
+     * <p>
+     * MySQL流式读取的结果集关闭时会读完剩余的行, 不再需要的结果集关闭前先取消查询.
+     * </p>
+     * 
+     * @param statement 分片Statement
+     */
+    public static void cancelStreaming(final Statement statement) {
+        try {
+            if (null != statement && !statement.isClosed() && Integer.MIN_VALUE == statement.getFetchSize()) {
+                statement.cancel();
+            }
+        } catch (final SQLException ex) {
+            log.warn("cancel streaming statement error: {}", ex.getMessage());
+        }
+    }
+    
     /**
      * 根据返回值类型返回特定类型的结果.
      * 
@@ -46,17 +70,17 @@ public final class ResultSetUtil {
     }
     
     private static Object convertNullValue(final Class<?> convertType) {
-        if ("byte".equals(convertType.getName())) {
+        if (byte.class == convertType) {
             return (byte) 0;
-        } else if ("short".equals(convertType.getName())) {
+        } else if (short.class == convertType) {
             return (short) 0;
-        } else if ("int".equals(convertType.getName())) {
+        } else if (int.class == convertType) {
             return 0;
-        } else if ("long".equals(convertType.getName())) {
+        } else if (long.class == convertType) {
             return 0L;
-        } else if ("double".equals(convertType.getName())) {
+        } else if (double.class == convertType) {
             return 0D;
-        } else if ("float".equals(convertType.getName())) {
+        } else if (float.class == convertType) {
             return 0F;
         } else {
             return null;
@@ -65,42 +89,148 @@ public final class ResultSetUtil {
     
     private static Object convertNumberValue(final Object value, final Class<?> convertType) {
         Number number = (Number) value;
-        if ("byte".equals(convertType.getName())) {
+        if (byte.class == convertType) {
             return number.byteValue();
-        } else if ("short".equals(convertType.getName())) {
+        } else if (short.class == convertType) {
             return number.shortValue();
-        } else if ("int".equals(convertType.getName())) {
+        } else if (int.class == convertType) {
             return number.intValue();
-        } else if ("long".equals(convertType.getName())) {
+        } else if (long.class == convertType) {
             return number.longValue();
-        } else if ("double".equals(convertType.getName())) {
+        } else if (double.class == convertType) {
             return number.doubleValue();
-        } else if ("float".equals(convertType.getName())) {
+        } else if (float.class == convertType) {
             return number.floatValue();
-        } else if ("java.math.BigDecimal".equals(convertType.getName())) {
-            return new BigDecimal(number.toString());
-        } else if ("java.lang.Object".equals(convertType.getName())) {
+        } else if (BigDecimal.class == convertType) {
+            return toBigDecimal(number);
+        } else if (Object.class == convertType) {
             return value;
-        } else if ("java.lang.String".equals(convertType.getName())) {
+        } else if (String.class == convertType) {
             return value.toString();
         } else {
             throw new ShardingException("Unsupported data type:%s", convertType);
         }
     }
     
+    private static BigDecimal toBigDecimal(final Number number) {
+        if (number instanceof Long || number instanceof Integer || number instanceof Short || number instanceof Byte) {
+            return BigDecimal.valueOf(number.longValue());
+        }
+        if (number instanceof BigInteger) {
+            return new BigDecimal((BigInteger) number);
+        }
+        return new BigDecimal(number.toString());
+    }
+    
     private static Object convertDateValue(final Object value, final Class<?> convertType) {
-        Date date = (Date) value;
-        if ("java.sql.Date".equals(convertType.getName())) {
-            return new java.sql.Date(date.getTime());
-        } else if ("java.sql.Time".equals(convertType.getName())) {
-            return new Time(date.getTime());
-        } else if ("java.sql.Timestamp".equals(convertType.getName())) {
-            return new Timestamp(date.getTime());
+        if (java.sql.Date.class == convertType) {
+            return toDate(value);
+        } else if (Time.class == convertType) {
+            return toTime(value);
+        } else if (Timestamp.class == convertType) {
+            return toTimestamp(value);
         } else {
             throw new ShardingException("Unsupported Date type:%s", convertType);
         }
     }
     
+    /**
+     * 转换为字符串, 目标类型固定, 不按目标类型逐个判断.
+     * 
+     * @param value 原始结果
+     * @return 字符串, 为空时返回null
+     */
+    public static String toStringValue(final Object value) {
+        return null == value ? null : value.toString();
+    }
+    
+    /**
+     * 转换为BigDecimal类型, 目标类型固定, 不按目标类型逐个判断.
+     * 
+     * @param value 原始结果
+     * @return BigDecimal类型的结果, 为空时返回null
+     */
+    public static BigDecimal toBigDecimal(final Object value) {
+        if (null == value || value instanceof BigDecimal) {
+            return (BigDecimal) value;
+        }
+        if (value instanceof Number) {
+            return toBigDecimal((Number) value);
+        }
+        return (BigDecimal) value;
+    }
+    
+    /**
+     * 转换为java.sql.Date类型.
+     * 
+     * @param value 原始结果
+     * @return java.sql.Date类型的结果, 为空时返回null
+     */
+    public static java.sql.Date toDate(final Object value) {
+        if (null == value || value instanceof java.sql.Date) {
+            return (java.sql.Date) value;
+        }
+        return new java.sql.Date(((Date) value).getTime());
+    }
+    
+    /**
+     * 转换为Time类型.
+     * 
+     * @param value 原始结果
+     * @return Time类型的结果, 为空时返回null
+     */
+    public static Time toTime(final Object value) {
+        if (null == value || value instanceof Time) {
+            return (Time) value;
+        }
+        return new Time(((Date) value).getTime());
+    }
+    
+    /**
+     * 转换为Timestamp类型.
+     * 
+     * @param value 原始结果
+     * @return Timestamp类型的结果, 为空时返回null
+     */
+    public static Timestamp toTimestamp(final Object value) {
+        if (null == value || value instanceof Timestamp) {
+            return (Timestamp) value;
+        }
+        return new Timestamp(((Date) value).getTime());
+    }
+    
+    /**
+     * 转换为long类型, 数值类型直接取值不装箱.
+     * 
+     * @param value 原始结果
+     * @return long类型的结果, 为空时返回0
+     */
+    public static long toLong(final Object value) {
+        if (null == value) {
+            return 0;
+        }
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        return (Long) convertValue(value, long.class);
+    }
+    
+    /**
+     * 转换为double类型, 数值类型直接取值不装箱.
+     * 
+     * @param value 原始结果
+     * @return double类型的结果, 为空时返回0
+     */
+    public static double toDouble(final Object value) {
+        if (null == value) {
+            return 0;
+        }
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        return (Double) convertValue(value, double.class);
+    }
+    
     /**
      * 根据排序类型比较大小.
      * 
@@ -113,4 +243,29 @@ public final class ResultSetUtil {
     public static int compareTo(final Comparable thisValue, final Comparable otherValue, final OrderColumn.OrderType orderType) {
         return OrderColumn.OrderType.ASC == orderType ? thisValue.compareTo(otherValue) : -thisValue.compareTo(otherValue);
     }
+    
+    /**
+     * 根据排序类型比较大小, 空值按数据库的默认顺序排列.
+     * 
+     * <p>
+     * MySQL中空值最小, 升序时排在最前; PostgreSQL和Oracle中空值最大, 升序时排在最后.
+     * </p>
+     * 
+     * @param thisValue 待比较的值
+     * @param otherValue 待比较的值
+     * @param orderType 排序类型
+     * @param nullsLowest 空值是否最小
+     * @return 负数，零和正数分别表示小于，等于和大于
+     */
+    @SuppressWarnings("rawtypes")
+    public static int compareTo(final Comparable thisValue, final Comparable otherValue, final OrderColumn.OrderType orderType, final boolean nullsLowest) {
+        if (null != thisValue && null != otherValue) {
+            return compareTo(thisValue, otherValue, orderType);
+        }
+        if (thisValue == otherValue) {
+            return 0;
+        }
+        int result = (null == thisValue) == nullsLowest ? -1 : 1;
+        return OrderColumn.OrderType.ASC == orderType ? result : -result;
+    }
 }
@@ -0,0 +1,71 @@
+package io.anyway.sherlock.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 分片执行过程中的计数指标，进程内累计，可通过snapshot导出到监控系统
+ * @author yangzz
+ *
+ */
+final public class ShardingMetrics {
+	
+	//Statement执行超过截止时间的次数
+	final public static String STATEMENT_TIMEOUT= "statement.timeout";
+	//被cancel的分片Statement数
+	final public static String STATEMENT_CANCELLED= "statement.cancelled";
+	//发起对冲读的次数，另外按分片数据源名称单独计数
+	final public static String HEDGE_ISSUED= "hedge.issued";
+	//对冲读先于原查询返回的次数
+	final public static String HEDGE_WON= "hedge.won";
+	//放弃对冲读的次数，包括超过对冲比例、没有可用的对冲线程或分片并发许可
+	final public static String HEDGE_SKIPPED= "hedge.skipped";
+	//执行单元超过分片连接预算而共用连接的查询数，另外按分片数据源名称单独计数
+	final public static String CONNECTION_BUDGET_EXCEEDED= "connection.budget.exceeded";
+	//共用连接时缓存到内存中的分片结果集数
+	final public static String RESULTSET_MATERIALIZED= "resultset.materialized";
+	//归并超过内存预算而写入的临时文件数，包括排序的有序段和分组的哈希分区
+	final public static String MERGE_SPILL_FILES= "merge.spill.files";
+	//归并写入临时文件的字节数
+	final public static String MERGE_SPILL_BYTES= "merge.spill.bytes";
+	
+	private ShardingMetrics(){}
+	
+	private static ConcurrentMap<String,AtomicLong> counters= new ConcurrentHashMap<String,AtomicLong>();
+	
+	public static long increment(String name){
+		return add(name,1);
+	}
+	
+	public static long add(String name,long delta){
+		AtomicLong counter= counters.get(name);
+		if(counter== null){
+			AtomicLong existing= counters.putIfAbsent(name, counter= new AtomicLong());
+			if(existing!= null){
+				counter= existing;
+			}
+		}
+		return counter.addAndGet(delta);
+	}
+	
+	public static long get(String name){
+		AtomicLong counter= counters.get(name);
+		return counter== null ? 0 : counter.get();
+	}
+	
+	public static Map<String,Long> snapshot(){
+		Map<String,Long> result= new TreeMap<String,Long>();
+		for(Map.Entry<String,AtomicLong> each: counters.entrySet()){
+			result.put(each.getKey(), each.getValue().get());
+		}
+		return Collections.unmodifiableMap(result);
+	}
+	
+	public static void clear(){
+		counters.clear();
+	}
+}
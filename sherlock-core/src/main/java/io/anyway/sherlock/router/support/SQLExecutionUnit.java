@@ -1,16 +1,25 @@
 package io.anyway.sherlock.router.support;
 
+import java.util.List;
+
 public class SQLExecutionUnit {
 
 	private String dataSourceName;
     
     private String shardingSql;
     
+    private List<Object> parameters;
+    
     public SQLExecutionUnit(String dataSourceName,String shardingSql){
     	this.dataSourceName= dataSourceName;
     	this.shardingSql= shardingSql;
     }
     
+    public SQLExecutionUnit(String dataSourceName,String shardingSql,List<Object> parameters){
+    	this(dataSourceName,shardingSql);
+    	this.parameters= parameters;
+    }
+    
     /**
      * 获取数据源名
      * @return String
@@ -27,9 +36,17 @@ public class SQLExecutionUnit {
     	return shardingSql;
     }
     
+    /**
+     * 获取执行单元自己的参数值，为空时使用整个语句的参数值
+     * @return List<Object>
+     */
+    public List<Object> getParameters(){
+    	return parameters;
+    }
+    
     @Override
     public String toString(){
-    	return "{dataSourceName= "+dataSourceName+",shardingSql="+shardingSql+"}";
+    	return "{dataSourceName= "+dataSourceName+",shardingSql="+shardingSql+(parameters== null? "": ",parameters="+parameters)+"}";
     }
     
 }
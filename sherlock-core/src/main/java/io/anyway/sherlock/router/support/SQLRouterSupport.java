@@ -3,7 +3,9 @@ package io.anyway.sherlock.router.support;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -18,7 +20,10 @@ import io.anyway.sherlock.router.database.DatabaseRouter;
 import io.anyway.sherlock.router.table.LogicTableRouter;
 import io.anyway.sherlock.sqlparser.SQLParseEngine;
 import io.anyway.sherlock.sqlparser.SQLParserFactory;
+import io.anyway.sherlock.sqlparser.bean.OrderColumn;
+import io.anyway.sherlock.sqlparser.bean.OrderColumn.OrderType;
 import io.anyway.sherlock.sqlparser.bean.SQLStatementType;
+import io.anyway.sherlock.sqlparser.bean.UnionBranch;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.util.CollectionUtils;
@@ -79,6 +84,10 @@ public class SQLRouterSupport implements SQLRouter {
 			if(logger.isInfoEnabled()){
 				logger.info("SQLParsedResult: "+sqlParsedResult);
 			}
+			//UNION的各个分支单独路由
+			if(!sqlParsedResult.getUnionBranches().isEmpty()){
+				return doUnionRoute(ctx,sqlParsedResult);
+			}
 			
 			//如果是写操作[INSERT | UPDATE | DELETE]
 			if(ctx.isDMLOperation()){
@@ -104,45 +113,117 @@ public class SQLRouterSupport implements SQLRouter {
 					return result;
 				}
 			}
-			Collection<String> databaseNames;
-			//判断租户传递过来的数据库分片是否存在，优先级最高
-			HintContext hintContext= HintContextHolder.getHintContext();
-			if(hintContext!= null){
-				databaseNames= Collections.singletonList(hintContext.getPartitionDBName());
-				if(logger.isInfoEnabled()){
-					logger.info("Tenant database name: " + hintContext.getPartitionDBName());
-				}
-			}
-			else{
-				//然后执行数据库路由
-				databaseNames= databaseRouter.doRoute(ctx);
-				if(logger.isInfoEnabled()){
-					logger.info("Sharding database Names: " + databaseNames);
-				}
+			return doShardingRoute(ctx);
+		}finally{
+			ExecuteHolder.clear();
+		}
+	}
+	
+	/*
+	 * 先进行数据库路由然后进行表路由
+	 */
+	private List<SQLExecutionUnit> doShardingRoute(final ExecuteContext ctx){
+		Collection<String> databaseNames;
+		//判断租户传递过来的数据库分片是否存在，优先级最高
+		HintContext hintContext= HintContextHolder.getHintContext();
+		if(hintContext!= null){
+			databaseNames= Collections.singletonList(hintContext.getPartitionDBName());
+			if(logger.isInfoEnabled()){
+				logger.info("Tenant database name: " + hintContext.getPartitionDBName());
 			}
-			
-			List<SQLExecutionUnit> result= new ArrayList<SQLExecutionUnit>();
-			for(String databaseName: databaseNames){
-				//最后执行表路由
-				Collection<String> sqls= tableRouter.doRoute(ctx,databaseName);
-				if(logger.isInfoEnabled()){
-					logger.info("Sharding table sqls: " + sqls);
-				}
-				for(String each: sqls){
-					result.add(new SQLExecutionUnit(databaseName,each));
-				}
+		}
+		else{
+			//然后执行数据库路由
+			databaseNames= databaseRouter.doRoute(ctx);
+			if(logger.isInfoEnabled()){
+				logger.info("Sharding database Names: " + databaseNames);
 			}
+		}
+		
+		List<SQLExecutionUnit> result= new ArrayList<SQLExecutionUnit>();
+		for(String databaseName: databaseNames){
+			//最后执行表路由
+			Collection<String> sqls= tableRouter.doRoute(ctx,databaseName);
 			if(logger.isInfoEnabled()){
-				String r="";
-				for(SQLExecutionUnit u: result){
-					r+= u.toString()+"\n";
+				logger.info("Sharding table sqls: " + sqls);
+			}
+			for(String each: sqls){
+				result.add(new SQLExecutionUnit(databaseName,each));
+			}
+		}
+		if(logger.isInfoEnabled()){
+			String r="";
+			for(SQLExecutionUnit u: result){
+				r+= u.toString()+"\n";
+			}
+			logger.info("SQLExecutionUnit result:\n\n" + r);
+		}
+		return result;
+	}
+	
+	/*
+	 * UNION的各个分支按自己的条件路由，同一个数据源上的执行单元用UNION [ALL]连成一条SQL，一次往返取回；
+	 * 整个语句的排序按列序号追加到每条SQL上，由归并做多路归并，LIMIT和分片之间的去重也在归并时处理
+	 */
+	private List<SQLExecutionUnit> doUnionRoute(final ExecuteContext ctx,final SQLParsedResult sqlParsedResult){
+		String logicSql= ctx.getLogicSql();
+		List<Object> parameters= ctx.getParameters();
+		//按路由的先后顺序保存每个数据源的执行单元
+		Map<String,List<SQLExecutionUnit>> units= new LinkedHashMap<String,List<SQLExecutionUnit>>();
+		try{
+			for(UnionBranch each: sqlParsedResult.getUnionBranches()){
+				//表路由缓存的是上一个分支的逻辑表
+				ExecuteHolder.clear();
+				((ExecuteContextSupport)ctx).setLogicSql(each.getSql());
+				((ExecuteContextSupport)ctx).setParameters(each.getParameters());
+				((ExecuteContextSupport)ctx).setSQLParsedResult(each.getParsedResult());
+				for(SQLExecutionUnit unit: doShardingRoute(ctx)){
+					List<SQLExecutionUnit> group= units.get(unit.getDataSourceName());
+					if(group== null){
+						units.put(unit.getDataSourceName(),group= new ArrayList<SQLExecutionUnit>());
+					}
+					group.add(new SQLExecutionUnit(unit.getDataSourceName(),unit.getShardingSql(),each.getParameters()));
 				}
-				logger.info("SQLExecutionUnit result:\n\n" + r);
 			}
-			return result;
 		}finally{
-			ExecuteHolder.clear();
+			//归并使用整个语句的元数据、排序和LIMIT
+			((ExecuteContextSupport)ctx).setLogicSql(logicSql);
+			((ExecuteContextSupport)ctx).setParameters(parameters);
+			((ExecuteContextSupport)ctx).setSQLParsedResult(sqlParsedResult);
+		}
+		String operator= sqlParsedResult.distinct()? " UNION ": " UNION ALL ";
+		String orderBy= getUnionOrderBy(sqlParsedResult);
+		List<SQLExecutionUnit> result= new ArrayList<SQLExecutionUnit>(units.size());
+		for(Map.Entry<String,List<SQLExecutionUnit>> entry: units.entrySet()){
+			StringBuilder sql= new StringBuilder();
+			List<Object> unitParameters= new ArrayList<Object>();
+			for(SQLExecutionUnit each: entry.getValue()){
+				if(sql.length()> 0){
+					sql.append(operator);
+				}
+				sql.append(each.getShardingSql());
+				unitParameters.addAll(each.getParameters());
+			}
+			result.add(new SQLExecutionUnit(entry.getKey(),sql.append(orderBy).toString(),unitParameters));
+		}
+		if(logger.isInfoEnabled()){
+			logger.info("Union SQLExecutionUnit result: " + result);
+		}
+		return result;
+	}
+	
+	private String getUnionOrderBy(final SQLParsedResult sqlParsedResult){
+		if(CollectionUtils.isEmpty(sqlParsedResult.getOrderColumns())){
+			return "";
+		}
+		StringBuilder result= new StringBuilder();
+		for(OrderColumn each: sqlParsedResult.getOrderColumns()){
+			result.append(result.length()== 0? " ORDER BY ": ", ").append(each.getColumnIndex());
+			if(OrderType.DESC== each.getOrderType()){
+				result.append(" DESC");
+			}
 		}
+		return result.toString();
 	}
 
 	private SQLStatementType parseStatementType4RW(final String sql){
@@ -10,8 +10,18 @@ public interface Constants {
 	final public static String POOL_SIZE= "pool-size";
 	final public static String TIME_OUT= "timeout";
 	final public static String READ_STRATEGY= "read-strategy";
+	final public static String HEDGE_PERCENTILE= "hedge-percentile";
+	final public static String HEDGE_MIN_DELAY= "hedge-min-delay";
+	final public static String HEDGE_MAX_RATIO= "hedge-max-ratio";
+	final public static String CONNECTION_BUDGET= "connection-budget";
 	final public static String DATABASE_ROUTER= "database-router";
 	final public static String SHARDING_CACHE= "sharding-cache";
+	final public static String PROCESSOR= "processor";
+	final public static String STREAMING_MERGE= "streaming-merge";
+	final public static String PARALLEL_COMMIT= "parallel-commit";
+	final public static String STREAMING_FETCH_SIZE= "streaming-fetch-size";
+	final public static String MERGE_MEMORY_BUDGET= "merge-memory-budget";
+	final public static String MERGE_SORT_THREADS= "merge-sort-threads";
 	final public static String DATA_SOURCE_NAME= "name";
 	final public static String DATA_SOURCE_REF= "ref";
 	final public static String DATA_SOURCE_WEIGHT= "weight";
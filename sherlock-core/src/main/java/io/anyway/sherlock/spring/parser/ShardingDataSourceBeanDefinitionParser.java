@@ -10,14 +10,24 @@ import static io.anyway.sherlock.spring.Constants.DATA_SOURCE_REF;
 import static io.anyway.sherlock.spring.Constants.DATA_SOURCE_WEIGHT;
 import static io.anyway.sherlock.spring.Constants.FOREIGN_KEY;
 import static io.anyway.sherlock.spring.Constants.GLOBAL_TABLE;
+import static io.anyway.sherlock.spring.Constants.HEDGE_MAX_RATIO;
+import static io.anyway.sherlock.spring.Constants.CONNECTION_BUDGET;
+import static io.anyway.sherlock.spring.Constants.HEDGE_MIN_DELAY;
+import static io.anyway.sherlock.spring.Constants.HEDGE_PERCENTILE;
 import static io.anyway.sherlock.spring.Constants.LOGIC_CHILD_TABLE;
 import static io.anyway.sherlock.spring.Constants.LOGIC_TABLE;
 import static io.anyway.sherlock.spring.Constants.MASTER_DATA_SOURCE;
+import static io.anyway.sherlock.spring.Constants.PARALLEL_COMMIT;
 import static io.anyway.sherlock.spring.Constants.POOL_SIZE;
 import static io.anyway.sherlock.spring.Constants.PRIMARY_KEY;
+import static io.anyway.sherlock.spring.Constants.PROCESSOR;
 import static io.anyway.sherlock.spring.Constants.READ_STRATEGY;
 import static io.anyway.sherlock.spring.Constants.SHARDING_CACHE;
 import static io.anyway.sherlock.spring.Constants.SLAVE_DATA_SOURCE;
+import static io.anyway.sherlock.spring.Constants.STREAMING_MERGE;
+import static io.anyway.sherlock.spring.Constants.STREAMING_FETCH_SIZE;
+import static io.anyway.sherlock.spring.Constants.MERGE_MEMORY_BUDGET;
+import static io.anyway.sherlock.spring.Constants.MERGE_SORT_THREADS;
 import static io.anyway.sherlock.spring.Constants.TABLES;
 import static io.anyway.sherlock.spring.Constants.TABLE_NAME;
 import static io.anyway.sherlock.spring.Constants.TABLE_POSTFIXES;
@@ -83,7 +93,33 @@ public class ShardingDataSourceBeanDefinitionParser extends AbstractBeanDefiniti
 		factory.addPropertyValue("globalTableRepository", globalTableRepositoryDefinition);
 		factory.addPropertyValue("logicTableRepository", logicTableRepositoryDefinition);
 		factory.addPropertyValue("sqlRouter", parseSQLRouter(element,parserContext));
-		factory.addPropertyValue("processor", parseExecutorProcessor());
+		String processor= element.getAttribute(PROCESSOR);
+		if(!StringUtils.isEmpty(processor)){
+			factory.addPropertyReference("processor", processor);
+		}
+		else{
+			factory.addPropertyValue("processor", parseExecutorProcessor());
+		}
+		String streamingMerge= element.getAttribute(STREAMING_MERGE);
+		if(!StringUtils.isEmpty(streamingMerge)){
+			factory.addPropertyValue("streamingMerge", Boolean.valueOf(streamingMerge));
+		}
+		String parallelCommit= element.getAttribute(PARALLEL_COMMIT);
+		if(!StringUtils.isEmpty(parallelCommit)){
+			factory.addPropertyValue("parallelCommit", Boolean.valueOf(parallelCommit));
+		}
+		String streamingFetchSize= element.getAttribute(STREAMING_FETCH_SIZE);
+		if(!StringUtils.isEmpty(streamingFetchSize)){
+			factory.addPropertyValue("streamingFetchSize", Integer.parseInt(streamingFetchSize));
+		}
+		String mergeMemoryBudget= element.getAttribute(MERGE_MEMORY_BUDGET);
+		if(!StringUtils.isEmpty(mergeMemoryBudget)){
+			factory.addPropertyValue("mergeMemoryBudget", Long.parseLong(mergeMemoryBudget));
+		}
+		String mergeSortThreads= element.getAttribute(MERGE_SORT_THREADS);
+		if(!StringUtils.isEmpty(mergeSortThreads)){
+			factory.addPropertyValue("mergeSortThreads", Integer.parseInt(mergeSortThreads));
+		}
 		
 		return factory.getBeanDefinition();
 	}
@@ -118,6 +154,22 @@ public class ShardingDataSourceBeanDefinitionParser extends AbstractBeanDefiniti
 		if(!StringUtils.isEmpty(readStrategy)){
 			factory.addPropertyValue("readStrategy", readStrategy);
 		}
+		String hedgePercentile= element.getAttribute(HEDGE_PERCENTILE);
+		if(!StringUtils.isEmpty(hedgePercentile)){
+			factory.addPropertyValue("hedgePercentile", Double.parseDouble(hedgePercentile));
+		}
+		String hedgeMinDelay= element.getAttribute(HEDGE_MIN_DELAY);
+		if(!StringUtils.isEmpty(hedgeMinDelay)){
+			factory.addPropertyValue("hedgeMinDelay", Long.parseLong(hedgeMinDelay));
+		}
+		String hedgeMaxRatio= element.getAttribute(HEDGE_MAX_RATIO);
+		if(!StringUtils.isEmpty(hedgeMaxRatio)){
+			factory.addPropertyValue("hedgeMaxRatio", Double.parseDouble(hedgeMaxRatio));
+		}
+		String connectionBudget= element.getAttribute(CONNECTION_BUDGET);
+		if(!StringUtils.isEmpty(connectionBudget)){
+			factory.addPropertyValue("connectionBudget", Integer.parseInt(connectionBudget));
+		}
 		
 		Element master= DomUtils.getChildElementByTagName(element, MASTER_DATA_SOURCE);
 		factory.addPropertyValue("masterDataSource", parseDataSourceDescriptor(master,parserContext));
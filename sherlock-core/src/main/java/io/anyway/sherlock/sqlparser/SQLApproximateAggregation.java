@@ -0,0 +1,152 @@
+package io.anyway.sherlock.sqlparser;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.alibaba.druid.sql.ast.SQLExpr;
+import com.alibaba.druid.sql.ast.expr.SQLAggregateExpr;
+import com.alibaba.druid.sql.ast.expr.SQLAggregateOption;
+import com.alibaba.druid.sql.ast.expr.SQLIdentifierExpr;
+import com.alibaba.druid.sql.ast.expr.SQLMethodInvokeExpr;
+import com.alibaba.druid.sql.ast.expr.SQLNumericLiteralExpr;
+import com.alibaba.druid.sql.ast.expr.SQLPropertyExpr;
+
+import io.anyway.sherlock.exception.SQLParserException;
+import io.anyway.sherlock.sqlparser.bean.AggregationColumn;
+import io.anyway.sherlock.sqlparser.bean.AggregationColumn.AggregationType;
+
+/**
+ * 近似聚合的识别，各方言的查询访问器负责把识别出的选择项改写为分片上的摘要表达式：
+ * <pre>
+ * APPROX_COUNT_DISTINCT(x)，或打开近似提示时的COUNT(DISTINCT x)：
+ *     分片返回 "去重计数:升序的最小k个哈希值列表"，合并时按KMV(k minimum values)估算去重数，
+ *     哈希值取MD5的前15个十六进制字符(60位)，定长便于发现被截断的哈希值，也避免32位哈希在去重数较大时冲突
+ * PERCENTILE_APPROX(x, p)：
+ *     分片返回 "行数:最多k个样本"，MySQL是随机样本，PostgreSQL是等间隔的k个分位点，合并时按行数加权求分位数
+ * </pre>
+ * 分片返回的个数少于min(行数或去重计数, k)说明被数据库截断了，合并时报错，不用不完整的摘要估算。
+ * 改写后的选择项只有一列，列序号不变，x只支持列名，避免重复输出参数占位符
+ * @author yangzz
+ *
+ */
+final public class SQLApproximateAggregation {
+
+	final public static String APPROX_COUNT_DISTINCT= "APPROX_COUNT_DISTINCT";
+
+	final public static String PERCENTILE_APPROX= "PERCENTILE_APPROX";
+
+	//每个分片最多返回的哈希值或样本个数，即KMV的k
+	final public static int SKETCH_SIZE= 1024;
+
+	//哈希值的十六进制字符数
+	final public static int HASH_LENGTH= 15;
+
+	//数值样本最长的字符数，DECIMAL(65,30)的65位数字加上符号和小数点
+	final public static int MAX_SAMPLE_LENGTH= 67;
+
+	//MySQL执行近似聚合前设置的group_concat_max_len，保证截断前至少有k+1个完整的样本或哈希值，默认的1024字节只能放下几十个
+	final public static int MYSQL_GROUP_CONCAT_MAX_LEN= (SKETCH_SIZE+ 1)* (MAX_SAMPLE_LENGTH+ 1);
+
+	private SQLApproximateAggregation(){}
+
+	/**
+	 * 判断选择项是否是近似聚合
+	 * @param expr 第一级选择项表达式
+	 * @param approximate 是否打开了近似提示
+	 * @return 近似聚合类型，不是近似聚合返回null
+	 */
+	public static AggregationType getAggregationType(SQLExpr expr,boolean approximate){
+		String methodName= getMethodName(expr);
+		if(methodName== null){
+			return null;
+		}
+		List<SQLExpr> arguments= getArguments(expr);
+		if(APPROX_COUNT_DISTINCT.equalsIgnoreCase(methodName)){
+			if(arguments.size()!= 1 || !isColumn(arguments.get(0))){
+				throw new SQLParserException("%s only support one column argument: %s", APPROX_COUNT_DISTINCT, expr);
+			}
+			return AggregationType.APPROX_COUNT_DISTINCT;
+		}
+		if(PERCENTILE_APPROX.equalsIgnoreCase(methodName)){
+			if(arguments.size()!= 2 || !isColumn(arguments.get(0))){
+				throw new SQLParserException("%s only support column and percentile arguments: %s", PERCENTILE_APPROX, expr);
+			}
+			getPercentile(expr);
+			return AggregationType.PERCENTILE_APPROX;
+		}
+		//COUNT(DISTINCT x)只在打开近似提示时改写，表达式参数保持原样
+		if(approximate && "COUNT".equalsIgnoreCase(methodName) && expr instanceof SQLAggregateExpr
+				&& SQLAggregateOption.DISTINCT== ((SQLAggregateExpr)expr).getOption()
+				&& arguments.size()== 1 && isColumn(arguments.get(0))){
+			return AggregationType.APPROX_COUNT_DISTINCT;
+		}
+		return null;
+	}
+
+	/**
+	 * 获取近似聚合的列参数
+	 * @param expr 近似聚合表达式
+	 * @return
+	 */
+	public static SQLExpr getArgument(SQLExpr expr){
+		return getArguments(expr).get(0);
+	}
+
+	/**
+	 * 获取PERCENTILE_APPROX的百分位，只支持数字常量
+	 * @param expr 近似聚合表达式
+	 * @return 百分位，取值范围[0,1]
+	 */
+	public static double getPercentile(SQLExpr expr){
+		SQLExpr percentile= getArguments(expr).get(1);
+		if(!(percentile instanceof SQLNumericLiteralExpr)){
+			throw new SQLParserException("%s percentile must be a numeric literal: %s", PERCENTILE_APPROX, expr);
+		}
+		double result= ((SQLNumericLiteralExpr)percentile).getNumber().doubleValue();
+		if(result< 0 || result> 1){
+			throw new SQLParserException("%s percentile must between 0 and 1: %s", PERCENTILE_APPROX, expr);
+		}
+		return result;
+	}
+
+	/**
+	 * 判断解析结果中是否有近似聚合
+	 * @param parsedResult SQL解析结果
+	 * @return
+	 */
+	public static boolean hasApproximateAggregation(SQLParsedResult parsedResult){
+		if(parsedResult== null){
+			return false;
+		}
+		for(AggregationColumn each: parsedResult.getAggregationColumns()){
+			if(each.getAggregationType().isApproximate()){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static String getMethodName(SQLExpr expr){
+		if(expr instanceof SQLAggregateExpr){
+			return ((SQLAggregateExpr)expr).getMethodName();
+		}
+		if(expr instanceof SQLMethodInvokeExpr && ((SQLMethodInvokeExpr)expr).getOwner()== null){
+			return ((SQLMethodInvokeExpr)expr).getMethodName();
+		}
+		return null;
+	}
+
+	private static List<SQLExpr> getArguments(SQLExpr expr){
+		if(expr instanceof SQLAggregateExpr){
+			return ((SQLAggregateExpr)expr).getArguments();
+		}
+		if(expr instanceof SQLMethodInvokeExpr){
+			return ((SQLMethodInvokeExpr)expr).getParameters();
+		}
+		return Collections.emptyList();
+	}
+
+	private static boolean isColumn(SQLExpr expr){
+		return expr instanceof SQLIdentifierExpr || expr instanceof SQLPropertyExpr;
+	}
+}
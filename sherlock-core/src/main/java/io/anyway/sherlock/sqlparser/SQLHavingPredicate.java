@@ -0,0 +1,507 @@
+package io.anyway.sherlock.sqlparser;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.alibaba.druid.sql.ast.SQLExpr;
+import com.alibaba.druid.sql.ast.expr.SQLAggregateExpr;
+import com.alibaba.druid.sql.ast.expr.SQLBetweenExpr;
+import com.alibaba.druid.sql.ast.expr.SQLBinaryOpExpr;
+import com.alibaba.druid.sql.ast.expr.SQLBinaryOperator;
+import com.alibaba.druid.sql.ast.expr.SQLCharExpr;
+import com.alibaba.druid.sql.ast.expr.SQLIdentifierExpr;
+import com.alibaba.druid.sql.ast.expr.SQLInListExpr;
+import com.alibaba.druid.sql.ast.expr.SQLMethodInvokeExpr;
+import com.alibaba.druid.sql.ast.expr.SQLNotExpr;
+import com.alibaba.druid.sql.ast.expr.SQLNullExpr;
+import com.alibaba.druid.sql.ast.expr.SQLNumericLiteralExpr;
+import com.alibaba.druid.sql.ast.expr.SQLPropertyExpr;
+import com.alibaba.druid.sql.ast.expr.SQLUnaryExpr;
+import com.alibaba.druid.sql.ast.expr.SQLUnaryOperator;
+import com.alibaba.druid.sql.ast.expr.SQLVariantRefExpr;
+import com.alibaba.druid.sql.ast.statement.SQLSelectItem;
+import com.alibaba.druid.sql.visitor.SQLASTVisitorAdapter;
+
+import io.anyway.sherlock.exception.SQLParserException;
+import io.anyway.sherlock.merger.util.ResultSetUtil;
+import io.anyway.sherlock.sqlparser.bean.AggregationColumn.AggregationType;
+
+/**
+ * 跨分片的HAVING条件，分片上的HAVING只能过滤各自的部分聚合值，需要在归并后按合并的聚合值过滤
+ * <pre>
+ * 解析时把HAVING编译成按列序号取值的表达式树，归并时每行只取值比较，不再遍历语法树
+ * 选择项中已有的聚合函数和别名直接引用该列，其他聚合函数追加为隐藏列：
+ * 原始SQL：select user_id, sum(amount) as total from t_order group by user_id having count(*) > 10
+ * 转换SQL：select user_id, sum(amount) as total, COUNT(*) AS auto_gen_col_having_3 from t_order group by user_id
+ * </pre>
+ * 比较和运算遵循SQL的三值逻辑，NULL参与比较的结果为未知，未知的行被过滤
+ * @author yangzz
+ *
+ */
+final public class SQLHavingPredicate {
+
+	private final Expression root;
+
+	//需要追加到选择项的聚合函数，和列引用一一对应
+	private final List<SQLExpr> attachedAggregations;
+
+	private final List<ColumnExpression> attachedColumns;
+
+	private final boolean parameterized;
+
+	private SQLHavingPredicate(Compiler compiler,Expression root){
+		this.root= root;
+		this.attachedAggregations= compiler.attachedAggregations;
+		this.attachedColumns= compiler.attachedColumns;
+		this.parameterized= compiler.parameterized;
+	}
+
+	/**
+	 * 编译第一级查询的HAVING条件
+	 * @param having HAVING条件
+	 * @param selectList 第一级选择项
+	 * @param parameters 参数列表
+	 * @param resolver 识别可以合并的聚合函数
+	 * @return 编译后的条件，没有引用聚合值时返回null，分片上直接过滤即可
+	 * @throws SQLParserException 有不支持的表达式
+	 */
+	public static SQLHavingPredicate compile(SQLExpr having,List<SQLSelectItem> selectList,List<Object> parameters,AggregationResolver resolver){
+		Compiler compiler= new Compiler(selectList,parameters,resolver);
+		Expression root= compiler.compile(having);
+		return compiler.aggregated ? new SQLHavingPredicate(compiler,root) : null;
+	}
+
+	/**
+	 * 获取需要追加到选择项的聚合函数
+	 * @return
+	 */
+	public List<SQLExpr> getAttachedAggregations() {
+		return attachedAggregations;
+	}
+
+	/**
+	 * 设置追加的聚合函数在结果集中的列序号
+	 * @param index 追加的聚合函数的序号
+	 * @param columnIndex 列序号
+	 */
+	public void setAttachedColumnIndex(int index,int columnIndex){
+		attachedColumns.get(index).columnIndex= columnIndex;
+	}
+
+	/**
+	 * 判断条件中是否有参数占位符，有则分片SQL仍需保留占位符以免参数错位
+	 * @return
+	 */
+	public boolean isParameterized() {
+		return parameterized;
+	}
+
+	/**
+	 * 判断表达式中是否有参数占位符，追加到选择项的表达式再输出一遍时占位符会多于参数
+	 * @param expr 表达式
+	 * @return 有占位符返回true
+	 */
+	public static boolean containsParameter(SQLExpr expr){
+		final boolean[] result= new boolean[1];
+		expr.accept(new SQLASTVisitorAdapter(){
+			@Override
+			public boolean visit(SQLVariantRefExpr x) {
+				result[0]= true;
+				return false;
+			}
+		});
+		return result[0];
+	}
+
+	/**
+	 * 判断结果集的当前行是否满足条件
+	 * @param resultSet 已合并聚合值的结果集
+	 * @return 条件为真返回true，为假或未知返回false
+	 * @throws SQLException
+	 */
+	public boolean evaluate(ResultSet resultSet) throws SQLException{
+		return Boolean.TRUE.equals(root.evaluate(resultSet));
+	}
+
+	/**
+	 * 识别可以合并的聚合函数，由各方言的查询访问器提供
+	 */
+	public interface AggregationResolver{
+
+		/**
+		 * @param expr 聚合表达式
+		 * @return 聚合类型，不能合并时返回null
+		 */
+		AggregationType getAggregationType(SQLExpr expr);
+	}
+
+	private static class Compiler{
+
+		private final List<SQLSelectItem> selectList;
+
+		private final List<Object> parameters;
+
+		private final AggregationResolver resolver;
+
+		private final List<SQLExpr> attachedAggregations= new ArrayList<SQLExpr>();
+
+		private final List<ColumnExpression> attachedColumns= new ArrayList<ColumnExpression>();
+
+		private boolean aggregated;
+
+		private boolean parameterized;
+
+		Compiler(List<SQLSelectItem> selectList,List<Object> parameters,AggregationResolver resolver){
+			this.selectList= selectList;
+			this.parameters= parameters;
+			this.resolver= resolver;
+		}
+
+		Expression compile(SQLExpr expr){
+			if(expr instanceof SQLBinaryOpExpr){
+				return compileBinary((SQLBinaryOpExpr)expr);
+			}
+			if(expr instanceof SQLNotExpr){
+				return new NotExpression(compile(((SQLNotExpr)expr).getExpr()));
+			}
+			if(expr instanceof SQLBetweenExpr){
+				SQLBetweenExpr between= (SQLBetweenExpr)expr;
+				Expression test= compile(between.getTestExpr());
+				Expression result= new LogicalExpression(true,
+						new ComparisonExpression(SQLBinaryOperator.GreaterThanOrEqual,test,compile(between.getBeginExpr())),
+						new ComparisonExpression(SQLBinaryOperator.LessThanOrEqual,test,compile(between.getEndExpr())));
+				return between.isNot() ? new NotExpression(result) : result;
+			}
+			if(expr instanceof SQLInListExpr){
+				SQLInListExpr in= (SQLInListExpr)expr;
+				Expression test= compile(in.getExpr());
+				Expression result= null;
+				for(SQLExpr each: in.getTargetList()){
+					Expression equality= new ComparisonExpression(SQLBinaryOperator.Equality,test,compile(each));
+					result= result== null ? equality : new LogicalExpression(false,result,equality);
+				}
+				if(result== null){
+					throw new SQLParserException("not support empty in list in having: %s", expr);
+				}
+				return in.isNot() ? new NotExpression(result) : result;
+			}
+			if(expr instanceof SQLUnaryExpr){
+				SQLUnaryExpr unary= (SQLUnaryExpr)expr;
+				if(SQLUnaryOperator.Negative== unary.getOperator()){
+					return new ArithmeticExpression(SQLBinaryOperator.Subtract,new ConstantExpression(BigDecimal.ZERO),compile(unary.getExpr()));
+				}
+				if(SQLUnaryOperator.Plus== unary.getOperator()){
+					return compile(unary.getExpr());
+				}
+				if(SQLUnaryOperator.Not== unary.getOperator() || SQLUnaryOperator.NOT== unary.getOperator()){
+					return new NotExpression(compile(unary.getExpr()));
+				}
+			}
+			if(expr instanceof SQLNumericLiteralExpr){
+				return new ConstantExpression(ResultSetUtil.convertValue(((SQLNumericLiteralExpr)expr).getNumber(), BigDecimal.class));
+			}
+			if(expr instanceof SQLCharExpr){
+				return new ConstantExpression(((SQLCharExpr)expr).getText());
+			}
+			if(expr instanceof SQLNullExpr){
+				return new ConstantExpression(null);
+			}
+			if(expr instanceof SQLVariantRefExpr){
+				parameterized= true;
+				Object value= parameters.get(((SQLVariantRefExpr)expr).getIndex());
+				return new ConstantExpression(value instanceof Number ? ResultSetUtil.convertValue(value, BigDecimal.class) : value);
+			}
+			if(expr instanceof SQLIdentifierExpr || expr instanceof SQLPropertyExpr){
+				return compileColumn(expr);
+			}
+			if(expr instanceof SQLAggregateExpr || expr instanceof SQLMethodInvokeExpr){
+				return compileAggregation(expr);
+			}
+			throw new SQLParserException("not support having expression: %s", expr);
+		}
+
+		private Expression compileBinary(SQLBinaryOpExpr expr){
+			SQLBinaryOperator operator= expr.getOperator();
+			switch(operator){
+				case BooleanAnd:
+				case BooleanOr:
+					return new LogicalExpression(SQLBinaryOperator.BooleanAnd== operator,compile(expr.getLeft()),compile(expr.getRight()));
+				case Is:
+				case IsNot:
+					if(!(expr.getRight() instanceof SQLNullExpr)){
+						throw new SQLParserException("not support having expression: %s", expr);
+					}
+					return new IsNullExpression(compile(expr.getLeft()),SQLBinaryOperator.IsNot== operator);
+				case Equality:
+				case NotEqual:
+				case LessThanOrGreater:
+				case GreaterThan:
+				case GreaterThanOrEqual:
+				case LessThan:
+				case LessThanOrEqual:
+					return new ComparisonExpression(operator,compile(expr.getLeft()),compile(expr.getRight()));
+				case Add:
+				case Subtract:
+				case Multiply:
+				case Divide:
+					return new ArithmeticExpression(operator,compile(expr.getLeft()),compile(expr.getRight()));
+				default:
+					throw new SQLParserException("not support having operator %s: %s", operator, expr);
+			}
+		}
+
+		//别名或列名引用选择项，MySQL允许HAVING引用选择项的别名
+		private Expression compileColumn(SQLExpr expr){
+			String name= expr instanceof SQLIdentifierExpr ? ((SQLIdentifierExpr)expr).getName() : ((SQLPropertyExpr)expr).getName();
+			for(int i=0;i<selectList.size();i++){
+				if(name.equalsIgnoreCase(selectList.get(i).getAlias())){
+					return selectColumn(i);
+				}
+			}
+			for(int i=0;i<selectList.size();i++){
+				SQLExpr each= selectList.get(i).getExpr();
+				if(each instanceof SQLIdentifierExpr && name.equalsIgnoreCase(((SQLIdentifierExpr)each).getName())
+						|| each instanceof SQLPropertyExpr && name.equalsIgnoreCase(((SQLPropertyExpr)each).getName())){
+					return selectColumn(i);
+				}
+			}
+			throw new SQLParserException("having column %s must be in select list", expr);
+		}
+
+		//和选择项相同的聚合函数直接引用该列，否则追加为隐藏列
+		private Expression compileAggregation(SQLExpr expr){
+			String expression= expr.toString();
+			for(int i=0;i<selectList.size();i++){
+				if(expression.equalsIgnoreCase(selectList.get(i).getExpr().toString())){
+					return selectColumn(i);
+				}
+			}
+			for(int i=0;i<attachedAggregations.size();i++){
+				if(expression.equalsIgnoreCase(attachedAggregations.get(i).toString())){
+					return attachedColumns.get(i);
+				}
+			}
+			AggregationType aggregationType= resolver.getAggregationType(expr);
+			if(aggregationType== null || aggregationType.isApproximate()){
+				throw new SQLParserException("not support having aggregation: %s", expr);
+			}
+			//追加到选择项的占位符会使参数错位
+			if(containsParameter(expr)){
+				throw new SQLParserException("not support parameter in having aggregation: %s", expr);
+			}
+			aggregated= true;
+			ColumnExpression result= new ColumnExpression(0);
+			attachedAggregations.add(expr);
+			attachedColumns.add(result);
+			return result;
+		}
+
+		private Expression selectColumn(int index){
+			if(resolver.getAggregationType(selectList.get(index).getExpr())!= null){
+				aggregated= true;
+			}
+			return new ColumnExpression(index + 1);
+		}
+	}
+
+	private interface Expression{
+
+		Object evaluate(ResultSet resultSet) throws SQLException;
+	}
+
+	private static class ColumnExpression implements Expression{
+
+		private int columnIndex;
+
+		ColumnExpression(int columnIndex){
+			this.columnIndex= columnIndex;
+		}
+
+		@Override
+		public Object evaluate(ResultSet resultSet) throws SQLException {
+			return resultSet.getObject(columnIndex);
+		}
+	}
+
+	private static class ConstantExpression implements Expression{
+
+		private final Object value;
+
+		ConstantExpression(Object value){
+			this.value= value;
+		}
+
+		@Override
+		public Object evaluate(ResultSet resultSet) {
+			return value;
+		}
+	}
+
+	private static class ArithmeticExpression implements Expression{
+
+		private final SQLBinaryOperator operator;
+
+		private final Expression left;
+
+		private final Expression right;
+
+		ArithmeticExpression(SQLBinaryOperator operator,Expression left,Expression right){
+			this.operator= operator;
+			this.left= left;
+			this.right= right;
+		}
+
+		@Override
+		public Object evaluate(ResultSet resultSet) throws SQLException {
+			Object leftValue= left.evaluate(resultSet);
+			Object rightValue= right.evaluate(resultSet);
+			if(leftValue== null || rightValue== null){
+				return null;
+			}
+			BigDecimal x= toDecimal(leftValue);
+			BigDecimal y= toDecimal(rightValue);
+			switch(operator){
+				case Add:
+					return x.add(y);
+				case Subtract:
+					return x.subtract(y);
+				case Multiply:
+					return x.multiply(y);
+				default:
+					//和数据库一样除数为0时结果为NULL
+					return y.signum()== 0 ? null : x.divide(y, MathContext.DECIMAL128);
+			}
+		}
+	}
+
+	private static class ComparisonExpression implements Expression{
+
+		private final SQLBinaryOperator operator;
+
+		private final Expression left;
+
+		private final Expression right;
+
+		ComparisonExpression(SQLBinaryOperator operator,Expression left,Expression right){
+			this.operator= operator;
+			this.left= left;
+			this.right= right;
+		}
+
+		@Override
+		public Object evaluate(ResultSet resultSet) throws SQLException {
+			Object leftValue= left.evaluate(resultSet);
+			Object rightValue= right.evaluate(resultSet);
+			if(leftValue== null || rightValue== null){
+				return null;
+			}
+			int result= compare(leftValue,rightValue);
+			switch(operator){
+				case Equality:
+					return result== 0;
+				case NotEqual:
+				case LessThanOrGreater:
+					return result!= 0;
+				case GreaterThan:
+					return result> 0;
+				case GreaterThanOrEqual:
+					return result>= 0;
+				case LessThan:
+					return result< 0;
+				default:
+					return result<= 0;
+			}
+		}
+	}
+
+	private static class LogicalExpression implements Expression{
+
+		private final boolean and;
+
+		private final Expression left;
+
+		private final Expression right;
+
+		LogicalExpression(boolean and,Expression left,Expression right){
+			this.and= and;
+			this.left= left;
+			this.right= right;
+		}
+
+		@Override
+		public Object evaluate(ResultSet resultSet) throws SQLException {
+			Boolean leftValue= toBoolean(left.evaluate(resultSet));
+			//AND遇到假、OR遇到真时不再计算右边
+			if(leftValue!= null && leftValue!= and){
+				return leftValue;
+			}
+			Boolean rightValue= toBoolean(right.evaluate(resultSet));
+			if(rightValue!= null && rightValue!= and){
+				return rightValue;
+			}
+			return leftValue== null || rightValue== null ? null : and;
+		}
+	}
+
+	private static class NotExpression implements Expression{
+
+		private final Expression expression;
+
+		NotExpression(Expression expression){
+			this.expression= expression;
+		}
+
+		@Override
+		public Object evaluate(ResultSet resultSet) throws SQLException {
+			Boolean value= toBoolean(expression.evaluate(resultSet));
+			return value== null ? null : !value;
+		}
+	}
+
+	private static class IsNullExpression implements Expression{
+
+		private final Expression expression;
+
+		private final boolean not;
+
+		IsNullExpression(Expression expression,boolean not){
+			this.expression= expression;
+			this.not= not;
+		}
+
+		@Override
+		public Object evaluate(ResultSet resultSet) throws SQLException {
+			return (expression.evaluate(resultSet)== null)!= not;
+		}
+	}
+
+	private static BigDecimal toDecimal(Object value){
+		if(value instanceof Number){
+			return (BigDecimal)ResultSetUtil.convertValue(value, BigDecimal.class);
+		}
+		return new BigDecimal(value.toString().trim());
+	}
+
+	private static Boolean toBoolean(Object value){
+		if(value== null || value instanceof Boolean){
+			return (Boolean)value;
+		}
+		return toDecimal(value).signum()!= 0;
+	}
+
+	//数字按数值比较，数字和字符串比较时按数值，其他类型不同时按字符串比较
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private static int compare(Object left,Object right){
+		if(left instanceof Number || right instanceof Number){
+			return toDecimal(left).compareTo(toDecimal(right));
+		}
+		if(left.getClass()== right.getClass() && left instanceof Comparable){
+			return ((Comparable)left).compareTo(right);
+		}
+		return left.toString().compareTo(right.toString());
+	}
+}
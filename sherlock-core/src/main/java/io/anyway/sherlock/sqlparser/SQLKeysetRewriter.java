@@ -0,0 +1,139 @@
+package io.anyway.sherlock.sqlparser;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.alibaba.druid.sql.ast.SQLExpr;
+import com.alibaba.druid.sql.ast.SQLOrderBy;
+import com.alibaba.druid.sql.ast.SQLOrderingSpecification;
+import com.alibaba.druid.sql.ast.SQLStatement;
+import com.alibaba.druid.sql.ast.expr.SQLBinaryOpExpr;
+import com.alibaba.druid.sql.ast.expr.SQLBinaryOperator;
+import com.alibaba.druid.sql.ast.expr.SQLCharExpr;
+import com.alibaba.druid.sql.ast.expr.SQLIdentifierExpr;
+import com.alibaba.druid.sql.ast.expr.SQLIntegerExpr;
+import com.alibaba.druid.sql.ast.expr.SQLNumberExpr;
+import com.alibaba.druid.sql.ast.expr.SQLNumericLiteralExpr;
+import com.alibaba.druid.sql.ast.expr.SQLPropertyExpr;
+import com.alibaba.druid.sql.ast.expr.SQLVariantRefExpr;
+import com.alibaba.druid.sql.ast.statement.SQLSelectOrderByItem;
+import com.alibaba.druid.sql.ast.statement.SQLSelectQuery;
+import com.alibaba.druid.sql.ast.statement.SQLSelectQueryBlock;
+import com.alibaba.druid.sql.ast.statement.SQLSelectStatement;
+import com.alibaba.druid.sql.dialect.mysql.ast.statement.MySqlSelectQueryBlock;
+import com.alibaba.druid.sql.dialect.postgresql.ast.stmt.PGSelectQueryBlock;
+
+/**
+ * 深分页改写，把 order by key limit offset, count 改为 where key > 上一页最后的键值 order by key limit 0, count，
+ * 每个分片只返回一页的数据而不是offset+count行
+ * @author yangzz
+ *
+ */
+final public class SQLKeysetRewriter {
+	
+	private static Log logger = LogFactory.getLog(SQLKeysetRewriter.class);
+	
+	private SQLKeysetRewriter(){}
+	
+	/**
+	 * 只有一个排序列并且有limit的单表查询才改写
+	 * @param sqlStatement SQL语法树
+	 * @param parameters 本次执行的参数副本，占位符的偏移量会被改为0，不能传入PreparedStatement上设置的参数
+	 * @param lastKey 上一页最后一行的排序键值
+	 * @return 是否改写
+	 */
+	public static boolean rewrite(SQLStatement sqlStatement,List<Object> parameters,Object lastKey){
+		if(lastKey== null || !(sqlStatement instanceof SQLSelectStatement)){
+			return false;
+		}
+		SQLSelectQuery query= ((SQLSelectStatement)sqlStatement).getSelect().getQuery();
+		SQLOrderBy orderBy;
+		SQLExpr offset;
+		if(query instanceof MySqlSelectQueryBlock){
+			MySqlSelectQueryBlock block= (MySqlSelectQueryBlock)query;
+			if(block.getLimit()== null){
+				return false;
+			}
+			orderBy= block.getOrderBy();
+			offset= block.getLimit().getOffset();
+		}
+		else if(query instanceof PGSelectQueryBlock){
+			PGSelectQueryBlock block= (PGSelectQueryBlock)query;
+			if(block.getLimit()== null){
+				return false;
+			}
+			orderBy= block.getOrderBy();
+			offset= block.getLimit().getOffset();
+		}
+		else{
+			return false;
+		}
+		if(orderBy== null || orderBy.getItems().size()!= 1){
+			return false;
+		}
+		SQLSelectOrderByItem item= orderBy.getItems().get(0);
+		SQLExpr column= copyColumn(item.getExpr());
+		SQLExpr value= toSQLExpr(lastKey);
+		if(column== null || value== null){
+			return false;
+		}
+		SQLBinaryOperator operator= item.getType()== SQLOrderingSpecification.DESC ? SQLBinaryOperator.LessThan : SQLBinaryOperator.GreaterThan;
+		SQLExpr seek= new SQLBinaryOpExpr(column, operator, value);
+		SQLSelectQueryBlock block= (SQLSelectQueryBlock)query;
+		block.setWhere(block.getWhere()== null ? seek : new SQLBinaryOpExpr(block.getWhere(), SQLBinaryOperator.BooleanAnd, seek));
+		//已经按排序键定位，不再需要跳过offset行
+		if(offset instanceof SQLNumericLiteralExpr){
+			SQLExpr zero= new SQLIntegerExpr(0);
+			if(query instanceof MySqlSelectQueryBlock){
+				((MySqlSelectQueryBlock)query).getLimit().setOffset(zero);
+			}
+			else{
+				((PGSelectQueryBlock)query).getLimit().setOffset(zero);
+			}
+		}
+		else if(offset instanceof SQLVariantRefExpr){
+			parameters.set(((SQLVariantRefExpr)offset).getIndex(), 0);
+		}
+		if(logger.isInfoEnabled()){
+			logger.info("keyset pagination: "+seek);
+		}
+		return true;
+	}
+	
+	private static SQLExpr copyColumn(SQLExpr expr){
+		if(expr instanceof SQLIdentifierExpr){
+			return new SQLIdentifierExpr(((SQLIdentifierExpr)expr).getName());
+		}
+		if(expr instanceof SQLPropertyExpr && ((SQLPropertyExpr)expr).getOwner() instanceof SQLIdentifierExpr){
+			SQLPropertyExpr property= (SQLPropertyExpr)expr;
+			return new SQLPropertyExpr(new SQLIdentifierExpr(((SQLIdentifierExpr)property.getOwner()).getName()), property.getName());
+		}
+		//按序号或表达式排序时无法改写
+		return null;
+	}
+	
+	private static SQLExpr toSQLExpr(Object value){
+		if(value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte || value instanceof BigInteger){
+			return new SQLIntegerExpr((Number)value);
+		}
+		if(value instanceof BigDecimal){
+			return new SQLNumberExpr((BigDecimal)value);
+		}
+		if(value instanceof Number){
+			return new SQLNumberExpr(new BigDecimal(value.toString()));
+		}
+		if(value instanceof String){
+			return new SQLCharExpr((String)value);
+		}
+		if(value instanceof Date){
+			return new SQLCharExpr(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS").format((Date)value));
+		}
+		return null;
+	}
+}
@@ -3,6 +3,7 @@ package io.anyway.sherlock.sqlparser;
 import java.util.List;
 
 import io.anyway.sherlock.exception.SQLParserException;
+import io.anyway.sherlock.hint.PaginationHintHolder;
 import io.anyway.sherlock.sqlparser.bean.SQLStatementType;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -40,7 +41,9 @@ public final class SQLParseEngine {
     public SQLParsedResult parse() {
         Preconditions.checkArgument(visitor instanceof SQLVisitor);
         SQLVisitor sqlVisitor = (SQLVisitor) visitor;
-        visitor.setParameters(parameters);       
+        visitor.setParameters(parameters);
+        //深分页按上一页最后的排序键定位
+        SQLKeysetRewriter.rewrite(sqlStatement, parameters, PaginationHintHolder.getLastKey());
         sqlStatement.accept(visitor);
         SQLParsedResult result;
         if(sqlVisitor.getSQLResult().isHasOrCondition()){
@@ -50,7 +53,8 @@ public final class SQLParseEngine {
         	result = sqlVisitor.getSQLResult();
         	result.getConditions().add(result.getCurCondition());
         }
-        
+        //UNION的各个分支单独路由
+        SQLUnionSplitter.split(sqlStatement, result, sqlVisitor.getDatabaseType(), parameters);
         return result;
     }
     
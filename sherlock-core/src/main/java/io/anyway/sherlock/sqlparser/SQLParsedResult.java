@@ -27,6 +27,7 @@ import io.anyway.sherlock.sqlparser.bean.ConditionContext;
 import io.anyway.sherlock.sqlparser.bean.GroupColumn;
 import io.anyway.sherlock.sqlparser.bean.OrderColumn;
 import io.anyway.sherlock.sqlparser.bean.Table;
+import io.anyway.sherlock.sqlparser.bean.UnionBranch;
 
 public class SQLParsedResult {
 
@@ -45,12 +46,18 @@ public class SQLParsedResult {
 	private List<AggregationColumn> aggregationColumns= Collections.<AggregationColumn>emptyList();
 	//分组列
 	private List<GroupColumn> groupColumns= Collections.<GroupColumn>emptyList();
+	
+	private List<OrderColumn> groupOrderColumns= Collections.<OrderColumn>emptyList();
 	//多个条件上下文他们是or的关系ConditionContext or ConditionContext,里面的条件项是and关系 Condition and Condition
 	private List<ConditionContext> conditionContexts = new ArrayList<ConditionContext>();
 	//rownum alias recording
 	private HashSet<String> rownumAlias = new HashSet<String>();
 	//查询大小
 	private Limit limit;
+	//归并后按合并的聚合值过滤的HAVING条件
+	private SQLHavingPredicate havingPredicate;
+	//UNION的各个分支，为空时整个语句一起路由
+	private List<UnionBranch> unionBranches= Collections.<UnionBranch>emptyList();
 	
     private boolean hasOrCondition = false;
 
@@ -256,6 +263,38 @@ public class SQLParsedResult {
     	return groupColumns;
     }
     
+    /**
+     * 分片结果已按分组列排序时记录排序的列和方向，归并时可以边归并边聚合
+     * @param groupOrderColumns
+     */
+    public void setGroupOrderColumns(List<OrderColumn> groupOrderColumns){
+    	this.groupOrderColumns= groupOrderColumns;
+    }
+    
+    public List<OrderColumn> getGroupOrderColumns(){
+    	return groupOrderColumns;
+    }
+    
+    /**
+     * 判断排序列和分组列是否是相同的列，是则分片结果已按分组列排序
+     * @return
+     */
+    public boolean isOrderedByGroupColumns(){
+    	if(CollectionUtils.isEmpty(groupColumns) || groupColumns.size()!= orderColumns.size()){
+    		return false;
+    	}
+    	Set<Integer> groupIndexes= new HashSet<Integer>();
+    	for(GroupColumn each: groupColumns){
+    		groupIndexes.add(each.getColumnIndex());
+    	}
+    	for(OrderColumn each: orderColumns){
+    		if(!groupIndexes.remove(each.getColumnIndex())){
+    			return false;
+    		}
+    	}
+    	return groupIndexes.isEmpty();
+    }
+    
     public void setLimit(Limit limit){
     	this.limit= limit;
     }
@@ -264,6 +303,30 @@ public class SQLParsedResult {
     	return limit;
     }
     
+    /**
+     * HAVING引用了聚合值时从分片SQL中提出，归并后再按合并的聚合值过滤
+     * @param havingPredicate
+     */
+    public void setHavingPredicate(SQLHavingPredicate havingPredicate){
+    	this.havingPredicate= havingPredicate;
+    }
+    
+    public SQLHavingPredicate getHavingPredicate(){
+    	return havingPredicate;
+    }
+    
+    /**
+     * UNION的各个分支单独路由，合并时使用整个语句的元数据、排序和LIMIT
+     * @param unionBranches
+     */
+    public void setUnionBranches(List<UnionBranch> unionBranches){
+    	this.unionBranches= unionBranches;
+    }
+    
+    public List<UnionBranch> getUnionBranches(){
+    	return unionBranches;
+    }
+    
     public void markDistinct(){
     	this.distinct= true;
     }
@@ -281,7 +344,10 @@ public class SQLParsedResult {
 				+ "aggregationColumns="+aggregationColumns+",\n"
 				+ "orderColumns="+orderColumns+",\n"
 				+ "groupColumns="+groupColumns+",\n"
+				+ "groupOrderColumns="+groupOrderColumns+",\n"
+				+ "having="+(havingPredicate!= null)+",\n"
 				+ "limit="+limit+",\n"
+				+ "unionBranches="+unionBranches+",\n"
 				+ "sql="+sqlBuilder+"\n}";
 	}
 
@@ -16,7 +16,9 @@ import com.alibaba.druid.sql.ast.statement.SQLUpdateStatement;
 import com.alibaba.druid.sql.dialect.mysql.parser.MySqlStatementParser;
 import com.alibaba.druid.sql.dialect.oracle.parser.OracleStatementParser;
 import com.alibaba.druid.sql.dialect.postgresql.parser.PGSQLStatementParser;
+import com.alibaba.druid.sql.parser.Lexer;
 import com.alibaba.druid.sql.parser.SQLStatementParser;
+import com.alibaba.druid.sql.parser.Token;
 import com.alibaba.druid.sql.visitor.SQLASTOutputVisitor;
 
 public final class SQLParserFactory {
@@ -33,7 +35,16 @@ public final class SQLParserFactory {
      */
     public static SQLParseEngine create(DatabaseType databaseType, final String sql, final List<Object> parameters) throws SQLParserException {
     	logger.debug("Logic SQL: "+ sql);
-        SQLStatement sqlStatement = getSQLStatementParser(databaseType,sql).parseStatement();
+        SQLStatementParser parser= getSQLStatementParser(databaseType,sql);
+        SQLStatement sqlStatement = parser.parseStatement();
+        //解析器遇到不认识的子句会提前结束，剩下的部分不能忽略，否则改写后的SQL会丢掉这部分，比如PostgreSQL的UNION后面的LIMIT
+        Lexer lexer= parser.getLexer();
+        if(lexer.token()== Token.SEMI){
+        	lexer.nextToken();
+        }
+        if(lexer.token()!= Token.EOF){
+        	throw new SQLParserException("Unsupported SQL, cannot parse from token %s: [%s]", lexer.token(), sql);
+        }
         
         logger.debug("Get "+ sqlStatement.getClass().getName()+" SQL Statement");
         SQLASTOutputVisitor visitor= getSQLVisitor(databaseType,sqlStatement);
@@ -44,7 +55,7 @@ public final class SQLParserFactory {
         return new SQLParseEngine(sqlStatement,parameters, visitor);
     }
     
-    private static SQLStatementParser getSQLStatementParser(DatabaseType databaseType,final String sql) {
+    static SQLStatementParser getSQLStatementParser(DatabaseType databaseType,final String sql) {
         switch (databaseType) {
             case MySQL: 
                 return new MySqlStatementParser(sql);
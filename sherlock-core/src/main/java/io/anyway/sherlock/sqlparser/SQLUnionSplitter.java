@@ -0,0 +1,168 @@
+package io.anyway.sherlock.sqlparser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.util.CollectionUtils;
+
+import com.alibaba.druid.sql.SQLUtils;
+import com.alibaba.druid.sql.ast.SQLStatement;
+import com.alibaba.druid.sql.ast.statement.SQLSelectQuery;
+import com.alibaba.druid.sql.ast.statement.SQLSelectQueryBlock;
+import com.alibaba.druid.sql.ast.statement.SQLSelectStatement;
+import com.alibaba.druid.sql.ast.statement.SQLUnionOperator;
+import com.alibaba.druid.sql.ast.statement.SQLUnionQuery;
+import com.alibaba.druid.sql.dialect.mysql.ast.statement.MySqlUnionQuery;
+import com.alibaba.druid.sql.parser.Lexer;
+import com.alibaba.druid.sql.parser.Token;
+
+import io.anyway.sherlock.datasource.DatabaseType;
+import io.anyway.sherlock.exception.SQLParserException;
+import io.anyway.sherlock.sqlparser.bean.UnionBranch;
+
+/**
+ * 拆分UNION语句，各个分支按自己的条件单独路由：
+ * <pre>
+ * (select ... from t_order where ...) union all (select ... from t_refund where ...)
+ * </pre>
+ * 只拆分由同一种UNION或UNION ALL连接的简单查询，分支不能有聚合、分组、去重、排序和LIMIT，
+ * 整个语句的排序和LIMIT在归并时处理，其他情况仍然整个语句一起路由
+ * @author yangzz
+ *
+ */
+final public class SQLUnionSplitter {
+
+	private static Log logger = LogFactory.getLog(SQLUnionSplitter.class);
+
+	private SQLUnionSplitter(){}
+
+	/**
+	 * 拆分UNION的各个分支，拆分成功时设置到解析结果中
+	 * @param sqlStatement SQL语法树
+	 * @param parsedResult 整个语句的解析结果，元数据来自第一个分支
+	 * @param databaseType 数据库类型
+	 * @param parameters SQL中参数的值
+	 */
+	public static void split(SQLStatement sqlStatement,SQLParsedResult parsedResult,DatabaseType databaseType,List<Object> parameters){
+		if(!(sqlStatement instanceof SQLSelectStatement)){
+			return;
+		}
+		SQLSelectQuery query= ((SQLSelectStatement)sqlStatement).getSelect().getQuery();
+		if(!(query instanceof SQLUnionQuery)){
+			return;
+		}
+		SQLUnionOperator operator= ((SQLUnionQuery)query).getOperator();
+		SQLUnionOperator lastOperator= getLastOperator((SQLUnionQuery)query);
+		boolean distinct= SQLUnionOperator.UNION== lastOperator || SQLUnionOperator.DISTINCT== lastOperator;
+		//最后一个操作符是UNION时合并后的结果需要去重，整个语句一起路由时也一样
+		if(distinct){
+			parsedResult.markDistinct();
+		}
+		if(!distinct && SQLUnionOperator.UNION_ALL!= lastOperator){
+			return;
+		}
+		List<SQLSelectQueryBlock> blocks= new ArrayList<SQLSelectQueryBlock>();
+		if(!flatten(query,operator,true,blocks)){
+			logger.warn("union operators are mixed or nested union has order by, route as a whole: "+sqlStatement);
+			return;
+		}
+		String dbType= databaseType.name().toLowerCase();
+		List<UnionBranch> branches= new ArrayList<UnionBranch>(blocks.size());
+		int offset= 0;
+		for(SQLSelectQueryBlock each: blocks){
+			String sql= SQLUtils.toSQLString(each,dbType);
+			//各个分支按顺序出现在语句中，占位符的值是连续的一段
+			int count= countPlaceholders(databaseType,sql);
+			if(offset+ count> (parameters== null? 0: parameters.size())){
+				logger.warn("parameters are not enough for union branch: "+sql);
+				return;
+			}
+			List<Object> branchParameters= new ArrayList<Object>(count);
+			if(count> 0){
+				branchParameters.addAll(parameters.subList(offset,offset+ count));
+			}
+			offset+= count;
+			SQLParsedResult branchResult;
+			try{
+				branchResult= SQLParserFactory.create(databaseType,sql,branchParameters).parse();
+			}catch(SQLParserException e){
+				logger.warn("parse union branch error, route as a whole: "+sql,e);
+				return;
+			}
+			if(!isPlainSelect(branchResult,distinct)){
+				logger.warn("union branch is not a plain select, route as a whole: "+sql);
+				return;
+			}
+			branches.add(new UnionBranch(sql,branchParameters,branchResult));
+		}
+		//分支之外还有参数却没有解析出整个语句的LIMIT，说明有无法识别的子句
+		if(parameters!= null && offset< parameters.size() && parsedResult.getLimit()== null){
+			logger.warn("union has unrecognized parameters, route as a whole: "+sqlStatement);
+			return;
+		}
+		parsedResult.setUnionBranches(branches);
+		if(logger.isInfoEnabled()){
+			logger.info("split union into branches: "+branches);
+		}
+	}
+
+	/*
+	 * 按从左到右的顺序展开，嵌套的UNION必须是相同的操作符；
+	 * 语句末尾的排序和LIMIT被解析到最右边的UNION上，属于整个语句，其他嵌套的UNION不能有自己的排序和LIMIT
+	 */
+	private static boolean flatten(SQLSelectQuery query,SQLUnionOperator operator,boolean last,List<SQLSelectQueryBlock> blocks){
+		if(query instanceof SQLSelectQueryBlock){
+			blocks.add((SQLSelectQueryBlock)query);
+			return true;
+		}
+		if(!(query instanceof SQLUnionQuery)){
+			return false;
+		}
+		SQLUnionQuery union= (SQLUnionQuery)query;
+		if(union.getOperator()!= operator){
+			return false;
+		}
+		if(!last && (union.getOrderBy()!= null || union instanceof MySqlUnionQuery && ((MySqlUnionQuery)union).getLimit()!= null)){
+			return false;
+		}
+		return flatten(union.getLeft(),operator,false,blocks) && flatten(union.getRight(),operator,last,blocks);
+	}
+
+	/*
+	 * 语法树把没有括号的UNION按右结合展开，分片上的SQL按书写顺序从左到右结合，
+	 * 整个结果是否去重取决于书写顺序上的最后一个操作符，即沿右子树找到的最后一个UNION
+	 */
+	private static SQLUnionOperator getLastOperator(SQLUnionQuery query){
+		SQLUnionQuery result= query;
+		while(result.getRight() instanceof SQLUnionQuery){
+			result= (SQLUnionQuery)result.getRight();
+		}
+		return result.getOperator();
+	}
+
+	/*
+	 * 分支没有需要归并处理的聚合、分组、排序和LIMIT，UNION去重时分支可以有自己的DISTINCT
+	 */
+	private static boolean isPlainSelect(SQLParsedResult branchResult,boolean distinct){
+		return CollectionUtils.isEmpty(branchResult.getAggregationColumns())
+				&& CollectionUtils.isEmpty(branchResult.getGroupColumns())
+				&& CollectionUtils.isEmpty(branchResult.getOrderColumns())
+				&& branchResult.getLimit()== null
+				&& branchResult.getHavingPredicate()== null
+				&& (distinct || !branchResult.distinct());
+	}
+
+	private static int countPlaceholders(DatabaseType databaseType,String sql){
+		Lexer lexer= SQLParserFactory.getSQLStatementParser(databaseType,sql).getLexer();
+		int result= 0;
+		while(lexer.token()!= Token.EOF){
+			if(lexer.token()== Token.QUES){
+				result++;
+			}
+			lexer.nextToken();
+		}
+		return result;
+	}
+}
@@ -3,7 +3,21 @@ package io.anyway.sherlock.sqlparser.bean;
 public class AggregationColumn  implements IndexColumn{
 
 	public enum AggregationType {
-        MAX, MIN, SUM, COUNT, AVG;
+        MAX, MIN, SUM, COUNT, AVG, 
+        //近似去重计数，分片返回去重计数和最小的若干个哈希值
+        APPROX_COUNT_DISTINCT, 
+        //近似百分位数，分片返回行数和最多k个样本
+        PERCENTILE_APPROX, 
+        //总体和样本的标准差、方差，分片返回行数、和与平方和
+        STDDEV_POP, STDDEV_SAMP, VAR_POP, VAR_SAMP;
+        
+        public boolean isApproximate(){
+        	return this== APPROX_COUNT_DISTINCT || this== PERCENTILE_APPROX;
+        }
+        
+        public boolean isStatistic(){
+        	return this== STDDEV_POP || this== STDDEV_SAMP || this== VAR_POP || this== VAR_SAMP;
+        }
     }
 	
 	private String expression;
@@ -11,6 +25,14 @@ public class AggregationColumn  implements IndexColumn{
 	private int columnIndex;
 	
 	private AggregationType aggregationType;
+	
+	private double percentile;
+	
+	private int sumIndex;
+	
+	private int countIndex;
+	
+	private int sumOfSquaresIndex;
 
 	public AggregationColumn(String expression,int columnIndex,AggregationType aggregationType){
 		this.expression= expression;
@@ -18,6 +40,11 @@ public class AggregationColumn  implements IndexColumn{
 		this.aggregationType= aggregationType;
 	}
 	
+	public AggregationColumn(String expression,int columnIndex,AggregationType aggregationType,double percentile){
+		this(expression,columnIndex,aggregationType);
+		this.percentile= percentile;
+	}
+	
 	public AggregationType getAggregationType(){
 		return aggregationType;
 	} 
@@ -30,6 +57,50 @@ public class AggregationColumn  implements IndexColumn{
 		return columnIndex;
 	}
 	
+	/**
+	 * PERCENTILE_APPROX的百分位，取值范围[0,1]
+	 * @return
+	 */
+	public double getPercentile(){
+		return percentile;
+	}
+	
+	/**
+	 * AVG、STDDEV和VARIANCE在分片上追加的SUM列序号
+	 * @return
+	 */
+	public int getSumIndex(){
+		return sumIndex;
+	}
+	
+	public void setSumIndex(int sumIndex){
+		this.sumIndex= sumIndex;
+	}
+	
+	/**
+	 * AVG、STDDEV和VARIANCE在分片上追加的COUNT列序号
+	 * @return
+	 */
+	public int getCountIndex(){
+		return countIndex;
+	}
+	
+	public void setCountIndex(int countIndex){
+		this.countIndex= countIndex;
+	}
+	
+	/**
+	 * STDDEV和VARIANCE在分片上追加的平方和列序号
+	 * @return
+	 */
+	public int getSumOfSquaresIndex(){
+		return sumOfSquaresIndex;
+	}
+	
+	public void setSumOfSquaresIndex(int sumOfSquaresIndex){
+		this.sumOfSquaresIndex= sumOfSquaresIndex;
+	}
+	
 	
 	@Override
 	public String toString(){
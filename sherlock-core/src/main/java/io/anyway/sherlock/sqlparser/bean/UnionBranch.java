@@ -0,0 +1,54 @@
+package io.anyway.sherlock.sqlparser.bean;
+
+import java.util.List;
+
+import io.anyway.sherlock.sqlparser.SQLParsedResult;
+
+/**
+ * UNION的一个分支，单独解析和路由
+ * @author yangzz
+ *
+ */
+public class UnionBranch {
+
+	private String sql;
+
+	private List<Object> parameters;
+
+	private SQLParsedResult parsedResult;
+
+	public UnionBranch(String sql,List<Object> parameters,SQLParsedResult parsedResult){
+		this.sql= sql;
+		this.parameters= parameters;
+		this.parsedResult= parsedResult;
+	}
+
+	/**
+	 * 获取分支的逻辑SQL
+	 * @return String
+	 */
+	public String getSql(){
+		return sql;
+	}
+
+	/**
+	 * 获取分支中参数的值，按占位符在分支中出现的顺序
+	 * @return List<Object>
+	 */
+	public List<Object> getParameters(){
+		return parameters;
+	}
+
+	/**
+	 * 获取分支的解析结果
+	 * @return SQLParsedResult
+	 */
+	public SQLParsedResult getParsedResult(){
+		return parsedResult;
+	}
+
+	@Override
+	public String toString(){
+		return "{sql="+sql+",parameters="+parameters+"}";
+	}
+}
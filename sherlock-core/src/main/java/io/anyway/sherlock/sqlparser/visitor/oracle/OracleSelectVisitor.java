@@ -1,9 +1,12 @@
 package io.anyway.sherlock.sqlparser.visitor.oracle;
 
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import io.anyway.sherlock.exception.SQLParserException;
+import io.anyway.sherlock.sqlparser.SQLHavingPredicate;
 import org.springframework.util.CollectionUtils;
 import org.springframework.util.StringUtils;
 
@@ -11,14 +14,18 @@ import com.alibaba.druid.sql.ast.SQLExpr;
 import com.alibaba.druid.sql.ast.SQLOrderBy;
 import com.alibaba.druid.sql.ast.SQLSetQuantifier;
 import com.alibaba.druid.sql.ast.expr.SQLAggregateExpr;
+import com.alibaba.druid.sql.ast.expr.SQLAggregateOption;
 import com.alibaba.druid.sql.ast.expr.SQLAllColumnExpr;
 import com.alibaba.druid.sql.ast.expr.SQLIdentifierExpr;
 import com.alibaba.druid.sql.ast.expr.SQLIntegerExpr;
+import com.alibaba.druid.sql.ast.expr.SQLMethodInvokeExpr;
 import com.alibaba.druid.sql.ast.expr.SQLPropertyExpr;
 import com.alibaba.druid.sql.ast.statement.SQLExprTableSource;
+import com.alibaba.druid.sql.ast.statement.SQLSelect;
 import com.alibaba.druid.sql.ast.statement.SQLSelectGroupByClause;
 import com.alibaba.druid.sql.ast.statement.SQLSelectItem;
 import com.alibaba.druid.sql.ast.statement.SQLSelectOrderByItem;
+import com.alibaba.druid.sql.ast.statement.SQLUnionQuery;
 import com.alibaba.druid.sql.dialect.oracle.ast.stmt.OracleSelectQueryBlock;
 import com.alibaba.druid.sql.dialect.oracle.visitor.OracleOutputVisitor;
 import com.google.common.base.Optional;
@@ -38,16 +45,42 @@ public class OracleSelectVisitor extends AbstractOracleVisitor {
 	
 	final private static String AUTO_GEN_COL= "auto_gen_col_";
 	
-	final private static String AUTO_GEN_COL_COUNT= AUTO_GEN_COL + "count";
+	final private static String AUTO_GEN_COL_COUNT= AUTO_GEN_COL + "count_";
+	
+	final private static String AUTO_GEN_COL_SUM= AUTO_GEN_COL + "sum_";
+	
+	final private static String AUTO_GEN_COL_SQUARES= AUTO_GEN_COL + "squares_";
+	
+	final private static String AUTO_GEN_COL_HAVING= AUTO_GEN_COL + "having_";
+	
+	//分片结果不能直接合并的统计函数，改为追加行数、和与平方和列
+	final private static Map<String,AggregationType> STATISTIC_FUNCTIONS= new HashMap<String,AggregationType>();
+	
+	static{
+		//STDDEV和VARIANCE是样本标准差和方差
+		STATISTIC_FUNCTIONS.put("STDDEV", AggregationType.STDDEV_SAMP);
+		STATISTIC_FUNCTIONS.put("VARIANCE", AggregationType.VAR_SAMP);
+		STATISTIC_FUNCTIONS.put("STDDEV_POP", AggregationType.STDDEV_POP);
+		STATISTIC_FUNCTIONS.put("STDDEV_SAMP", AggregationType.STDDEV_SAMP);
+		STATISTIC_FUNCTIONS.put("VAR_POP", AggregationType.VAR_POP);
+		STATISTIC_FUNCTIONS.put("VAR_SAMP", AggregationType.VAR_SAMP);
+	}
 	
 	private int selectLayer= 0;
 	
 	private boolean finishCollectMetadata= false;
 	
-	private boolean attachCountExpression= false;
+	//第一级SELECT追加的中间结果列数
+	private int partialColumnCount= 0;
 	
 	private List<String> missOrderbyColumns;
 	
+	//第一级SELECT的HAVING条件，UNION的查询不处理
+	private SQLExpr masterHaving;
+	
+	//引用了聚合值的HAVING条件，从分片SQL中提出，归并后再过滤
+	private SQLHavingPredicate havingPredicate;
+	
     @Override
     public boolean visit(final OracleSelectQueryBlock x) {
     	selectLayer++;
@@ -56,6 +89,7 @@ public class OracleSelectVisitor extends AbstractOracleVisitor {
             setCurrentTable(tableExpr.getExpr().toString(), Optional.fromNullable(tableExpr.getAlias()));
         }
         if(isEnableCollectMetadata()){
+        	masterHaving= x.getGroupBy()!= null && !(x.getParent() instanceof SQLUnionQuery) ? x.getGroupBy().getHaving() : null;
         	if(SQLSetQuantifier.DISTINCT==x.getDistionOption()){
         		parseResult.markDistinct();
         	}
@@ -108,36 +142,41 @@ public class OracleSelectVisitor extends AbstractOracleVisitor {
         	return;
         }
         int columnIndex= 0;
+        int partialColumns= 0;
         for(SQLSelectItem each: selectList){
         	columnIndex++;
         	String alias= each.getAlias();
         	SQLExpr expr= each.getExpr();
-        	if(expr instanceof SQLAggregateExpr){
-        		SQLAggregateExpr x= (SQLAggregateExpr)expr;
+        	if(expr instanceof SQLAggregateExpr || expr instanceof SQLMethodInvokeExpr){
         		StringBuilder expression = new StringBuilder();
-        		x.accept(new OracleOutputVisitor(expression));
-        		try{
-
-	        		AggregationType aggregationType = AggregationType.valueOf(x.getMethodName().toUpperCase());
+        		expr.accept(new OracleOutputVisitor(expression));
+        		//如果不是可合并的聚合函数直接跳过不做处理
+        		AggregationType aggregationType= getAggregationType(expr);
+        		if(aggregationType== null){
+        			if(isDistinctAggregation(expr)){
+        				logger.warn(expression.toString()+" with DISTINCT cannot be merged from partial columns, will return the value of each shard");
+        			}
+        			else if(logger.isInfoEnabled()){
+            			logger.info(expression.toString()+" expression not in (MAX、MIN、COUNT、SUM、AVG、STDDEV and VARIANCE)");
+            		}
+        		}
+        		else{
+	        		//解析过一遍就不在解析，此段逻辑主要处理如下场景
+	        		//(select avg(salary) from emp where userid<500) union (select avg(salary) from emp where userid>100)
+	        		//解析完第一个select的元数据就不在解析，但是对于union后面的select语句，avg聚合字段也要追加中间结果列
+	        		AggregationColumn aggregationColumn= null;
 	        		if(isEnableCollectMetadata()){
-		        		AggregationColumn aggregationColumn= new AggregationColumn(expression.toString(),columnIndex,aggregationType);
+		        		aggregationColumn= new AggregationColumn(expression.toString(),columnIndex,aggregationType);
 		        		parseResult.addAggregationColumn(aggregationColumn);
 		        		if(logger.isInfoEnabled()){
 		        			logger.info("AggregationColumn: "+aggregationColumn);
 		        		}
 	        		}
-
-	        		if(AggregationType.AVG.equals(aggregationType) && !attachCountExpression){
-	        			print(", COUNT(1) AS " + AUTO_GEN_COL_COUNT);
-	        			attachCountExpression= true;
-	        			if(logger.isInfoEnabled()){
-	            			logger.info("auto create count(1) AS "+AUTO_GEN_COL_COUNT);
-	            		}
-	        		}
-        		}catch(IllegalArgumentException ex){
-        			if(logger.isInfoEnabled()){
-            			logger.info(expression.toString()+" expression not in (MAX銆丮IN銆丆OUNT銆丼UM and AVG)");
-            		}
+	        		//每个AVG追加各自的SUM和COUNT，STDDEV和VARIANCE再追加平方和，合并时按列序号读取
+	        		//原始SQL：select avg(salary) as avg_salary, stddev(bonus) as std_bonus from user
+	        	    //转换SQL：select avg(salary) as avg_salary, stddev(bonus) as std_bonus, SUM(salary) AS auto_gen_col_sum_1, COUNT(salary) AS auto_gen_col_count_1,
+	        		//        SUM(bonus) AS auto_gen_col_sum_2, COUNT(bonus) AS auto_gen_col_count_2, SUM(bonus * bonus) AS auto_gen_col_squares_2 from user
+	        		partialColumns+= attachPartialColumns(expr,aggregationType,columnIndex,selectList.size()+partialColumns,aggregationColumn);
         		}
         	}
         	
@@ -167,9 +206,137 @@ public class OracleSelectVisitor extends AbstractOracleVisitor {
         	}
         }
         
+    	if(isEnableCollectMetadata()){
+    		if(masterHaving!= null){
+    			partialColumns+= attachHavingColumns(selectList,selectList.size()+partialColumns);
+    		}
+    		partialColumnCount= partialColumns;
+    	}
     	parseResult.getSqlBuilder().appendToken("select_missing_columns", false);
     }
     
+    /*
+     * 识别可以合并的聚合函数，统计函数只支持一个参数
+     */
+    private static AggregationType getAggregationType(SQLExpr expr){
+    	String methodName;
+    	List<SQLExpr> arguments;
+    	if(expr instanceof SQLAggregateExpr){
+    		methodName= ((SQLAggregateExpr)expr).getMethodName();
+    		arguments= ((SQLAggregateExpr)expr).getArguments();
+    	}
+    	else if(expr instanceof SQLMethodInvokeExpr && ((SQLMethodInvokeExpr)expr).getOwner()== null){
+    		methodName= ((SQLMethodInvokeExpr)expr).getMethodName();
+    		arguments= ((SQLMethodInvokeExpr)expr).getParameters();
+    	}
+    	else{
+    		return null;
+    	}
+    	AggregationType result= STATISTIC_FUNCTIONS.get(methodName.toUpperCase());
+    	if(result!= null){
+    		return arguments.size()== 1 && !isDistinctAggregation(expr) ? result : null;
+    	}
+    	if(!(expr instanceof SQLAggregateExpr)){
+    		return null;
+    	}
+    	try{
+    		result= AggregationType.valueOf(methodName.toUpperCase());
+    	}catch(IllegalArgumentException ex){
+    		return null;
+    	}
+    	if(result.isApproximate() || result.isStatistic()){
+    		return null;
+    	}
+    	//各分片的去重集合可能重叠，DISTINCT的SUM和COUNT不能合并出平均值
+    	return AggregationType.AVG.equals(result) && isDistinctAggregation(expr) ? null : result;
+    }
+    
+    private static boolean isDistinctAggregation(SQLExpr expr){
+    	return expr instanceof SQLAggregateExpr && SQLAggregateOption.DISTINCT== ((SQLAggregateExpr)expr).getOption();
+    }
+    
+    /*
+     * AVG追加SUM和COUNT列，STDDEV和VARIANCE再追加平方和列，列名带上原选择项的序号，COUNT和AVG一样忽略NULL值
+     * @param lastIndex 已输出的最后一列的序号
+     * @return 追加的列数
+     */
+    private int attachPartialColumns(SQLExpr expr,AggregationType aggregationType,int columnIndex,int lastIndex,AggregationColumn aggregationColumn){
+    	if(!AggregationType.AVG.equals(aggregationType) && !aggregationType.isStatistic()){
+    		return 0;
+    	}
+    	SQLExpr argument= expr instanceof SQLAggregateExpr ? ((SQLAggregateExpr)expr).getArguments().get(0) : ((SQLMethodInvokeExpr)expr).getParameters().get(0);
+    	//追加的列会把参数的占位符再输出一遍，参数列表没有对应的值
+    	if(SQLHavingPredicate.containsParameter(argument)){
+    		throw new SQLParserException("not support parameter in %s argument: %s", aggregationType, expr);
+    	}
+    	print(", SUM(");
+    	argument.accept(this);
+    	print(") AS " + AUTO_GEN_COL_SUM + columnIndex + ", COUNT(");
+    	argument.accept(this);
+    	print(") AS " + AUTO_GEN_COL_COUNT + columnIndex);
+    	if(aggregationColumn!= null){
+    		aggregationColumn.setSumIndex(lastIndex + 1);
+    		aggregationColumn.setCountIndex(lastIndex + 2);
+    	}
+    	if(AggregationType.AVG.equals(aggregationType)){
+    		return 2;
+    	}
+    	print(", SUM(");
+    	argument.accept(this);
+    	print(" * ");
+    	argument.accept(this);
+    	print(") AS " + AUTO_GEN_COL_SQUARES + columnIndex);
+    	if(aggregationColumn!= null){
+    		aggregationColumn.setSumOfSquaresIndex(lastIndex + 3);
+    	}
+    	return 3;
+    }
+    
+    /*
+     * 编译HAVING条件，引用了聚合值时归并后再过滤，不在选择项里的聚合函数追加为隐藏列
+     * 原始SQL：select user_id, sum(amount) as total from t_order group by user_id having count(*) > 10
+     * 转换SQL：select user_id, sum(amount) as total, COUNT(*) AS auto_gen_col_having_3 from t_order group by user_id
+     * @param lastIndex 已输出的最后一列的序号
+     * @return 追加的列数
+     */
+    private int attachHavingColumns(List<SQLSelectItem> selectList,int lastIndex){
+    	try{
+    		havingPredicate= SQLHavingPredicate.compile(masterHaving,selectList,getParameters(),new SQLHavingPredicate.AggregationResolver(){
+    			@Override
+    			public AggregationType getAggregationType(SQLExpr expr) {
+    				return OracleSelectVisitor.getAggregationType(expr);
+    			}
+    		});
+    	}catch(SQLParserException e){
+    		logger.warn("having ["+masterHaving+"] will be evaluated on each shard: "+e.getMessage());
+    		return 0;
+    	}
+    	if(havingPredicate== null){
+    		return 0;
+    	}
+    	parseResult.setHavingPredicate(havingPredicate);
+    	int result= 0;
+    	List<SQLExpr> aggregations= havingPredicate.getAttachedAggregations();
+    	for(int i=0;i<aggregations.size();i++){
+    		SQLExpr expr= aggregations.get(i);
+    		int columnIndex= lastIndex + result + 1;
+    		print(", ");
+    		expr.accept(this);
+    		print(" AS " + AUTO_GEN_COL_HAVING + columnIndex);
+    		StringBuilder expression = new StringBuilder();
+    		expr.accept(new OracleOutputVisitor(expression));
+    		AggregationType aggregationType= getAggregationType(expr);
+    		AggregationColumn aggregationColumn= new AggregationColumn(expression.toString(),columnIndex,aggregationType);
+    		parseResult.addAggregationColumn(aggregationColumn);
+    		havingPredicate.setAttachedColumnIndex(i, columnIndex);
+    		if(logger.isInfoEnabled()){
+    			logger.info("having AggregationColumn: "+aggregationColumn);
+    		}
+    		result+= 1 + attachPartialColumns(expr,aggregationType,columnIndex,columnIndex,aggregationColumn);
+    	}
+    	return result;
+    }
+    
     @Override
     public boolean visit(SQLSelectGroupByClause x){
     	if(!isEnableCollectMetadata()){
@@ -195,12 +362,36 @@ public class OracleSelectVisitor extends AbstractOracleVisitor {
 				}
     		}
     	}
+    	if(havingPredicate!= null && x.getHaving()== masterHaving){
+    		return visitWithoutHaving(x);
+    	}
     	return super.visit(x);
     }
     
+    /*
+     * 分片SQL去掉已提出的HAVING，条件中有参数占位符时保留为恒真的条件，避免后面的参数错位
+     */
+    private boolean visitWithoutHaving(SQLSelectGroupByClause x){
+    	SQLExpr having= x.getHaving();
+    	x.setHaving(null);
+    	try{
+    		super.visit(x);
+    	}finally{
+    		x.setHaving(having);
+    	}
+    	if(havingPredicate.isParameterized()){
+    		print(" HAVING 1 = 1 OR (");
+    		having.accept(this);
+    		print(")");
+    	}
+    	return false;
+    }
+    
 
     @Override
     public boolean visit(SQLOrderBy x) {
+    	//UNION整体的排序挂在外层的SELECT上
+    	boolean unionOrderBy= x.getParent() instanceof SQLSelect && ((SQLSelect)x.getParent()).getQuery() instanceof SQLUnionQuery;
     	for (SQLSelectOrderByItem each : x.getItems()) {
             SQLExpr expr = each.getExpr();
             OrderType orderType= each.getType()== null? OrderType.ASC: ("DESC".equalsIgnoreCase(each.getType().toString())? OrderType.DESC : OrderType.ASC);
@@ -234,9 +425,13 @@ public class OracleSelectVisitor extends AbstractOracleVisitor {
             			logger.info("order column ["+columnName+"] index is: "+index);
             		}
             	}
+            	else if(unionOrderBy){
+            		//UNION的各个分支不能单独追加选择项
+            		logger.warn("union order column ["+columnName+"] is not in metadatacolumns: "+parseResult.getMetadataColumns());
+            	}
             	else{
             		if(CollectionUtils.isEmpty(parseResult.getGroupColumns())){
-	            		index= parseResult.getMetadataColumns().size() + (attachCountExpression?1:0);
+	            		index= parseResult.getMetadataColumns().size() + partialColumnCount;
 	            		if(StringUtils.isEmpty(missOrderbyColumns)){
 	            			missOrderbyColumns= new LinkedList<String>();
 	            		}
@@ -1,20 +1,32 @@
 package io.anyway.sherlock.sqlparser.visitor.pgsql;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import io.anyway.sherlock.exception.SQLParserException;
+import io.anyway.sherlock.hint.ApproximateHintHolder;
+import io.anyway.sherlock.hint.GroupByHintHolder;
 import io.anyway.sherlock.merger.Limit;
+import io.anyway.sherlock.sqlparser.SQLApproximateAggregation;
+import io.anyway.sherlock.sqlparser.SQLHavingPredicate;
 import org.springframework.util.CollectionUtils;
 import org.springframework.util.StringUtils;
 
 import com.alibaba.druid.sql.ast.SQLExpr;
+import com.alibaba.druid.sql.ast.SQLObject;
 import com.alibaba.druid.sql.ast.SQLOrderBy;
 import com.alibaba.druid.sql.ast.SQLSetQuantifier;
 import com.alibaba.druid.sql.ast.expr.SQLAggregateExpr;
+import com.alibaba.druid.sql.ast.expr.SQLAggregateOption;
 import com.alibaba.druid.sql.ast.expr.SQLAllColumnExpr;
 import com.alibaba.druid.sql.ast.expr.SQLIdentifierExpr;
 import com.alibaba.druid.sql.ast.expr.SQLIntegerExpr;
+import com.alibaba.druid.sql.ast.expr.SQLMethodInvokeExpr;
 import com.alibaba.druid.sql.ast.expr.SQLNumericLiteralExpr;
 import com.alibaba.druid.sql.ast.expr.SQLPropertyExpr;
 import com.alibaba.druid.sql.ast.expr.SQLVariantRefExpr;
@@ -22,6 +34,7 @@ import com.alibaba.druid.sql.ast.statement.SQLExprTableSource;
 import com.alibaba.druid.sql.ast.statement.SQLSelectGroupByClause;
 import com.alibaba.druid.sql.ast.statement.SQLSelectItem;
 import com.alibaba.druid.sql.ast.statement.SQLSelectOrderByItem;
+import com.alibaba.druid.sql.ast.statement.SQLUnionQuery;
 import com.alibaba.druid.sql.dialect.postgresql.ast.stmt.PGSelectQueryBlock;
 import com.alibaba.druid.sql.dialect.postgresql.ast.stmt.PGSelectQueryBlock.PGLimit;
 import com.alibaba.druid.sql.dialect.postgresql.visitor.PGOutputVisitor;
@@ -42,16 +55,50 @@ public class PGSQLSelectVisitor extends AbstractPGSQLVisitor {
 	
 	final private static String AUTO_GEN_COL= "auto_gen_col_";
 	
-	final private static String AUTO_GEN_COL_COUNT= AUTO_GEN_COL + "count";
+	final private static String AUTO_GEN_COL_COUNT= AUTO_GEN_COL + "count_";
+	
+	final private static String AUTO_GEN_COL_SUM= AUTO_GEN_COL + "sum_";
+	
+	final private static String AUTO_GEN_COL_SQUARES= AUTO_GEN_COL + "squares_";
+	
+	final private static String AUTO_GEN_COL_HAVING= AUTO_GEN_COL + "having_";
+	
+	//分片结果不能直接合并的统计函数，改为追加行数、和与平方和列
+	final private static Map<String,AggregationType> STATISTIC_FUNCTIONS= new HashMap<String,AggregationType>();
+	
+	static{
+		//STDDEV和VARIANCE是样本标准差和方差
+		STATISTIC_FUNCTIONS.put("STDDEV", AggregationType.STDDEV_SAMP);
+		STATISTIC_FUNCTIONS.put("VARIANCE", AggregationType.VAR_SAMP);
+		STATISTIC_FUNCTIONS.put("STDDEV_POP", AggregationType.STDDEV_POP);
+		STATISTIC_FUNCTIONS.put("STDDEV_SAMP", AggregationType.STDDEV_SAMP);
+		STATISTIC_FUNCTIONS.put("VAR_POP", AggregationType.VAR_POP);
+		STATISTIC_FUNCTIONS.put("VAR_SAMP", AggregationType.VAR_SAMP);
+	}
 	
 	private int selectLayer= 0;
 	
 	private boolean finishCollectMetadata= false;
 	
-	private boolean attachCountExpression= false;
+	//第一级SELECT追加的中间结果列数
+	private int partialColumnCount= 0;
 	
 	private List<String> missOrderbyColumns;
 	
+	private boolean masterOrderBy= false;
+	
+	//主查询是UNION的分支
+	private boolean masterUnion= false;
+	
+	//第一级SELECT的HAVING条件，UNION的查询不处理
+	private SQLExpr masterHaving;
+	
+	//引用了聚合值的HAVING条件，从分片SQL中提出，归并后再过滤
+	private SQLHavingPredicate havingPredicate;
+	
+	//需要改写为分片摘要表达式的近似聚合选择项，按对象本身判断，不受子查询中相同表达式的影响
+	private Set<SQLExpr> approximateExprs= Collections.newSetFromMap(new IdentityHashMap<SQLExpr,Boolean>());
+	
     //遍历表名
     @Override
     public boolean visit(final PGSelectQueryBlock x) {
@@ -62,6 +109,9 @@ public class PGSQLSelectVisitor extends AbstractPGSQLVisitor {
         }
         //处理distinct
         if(isEnableCollectMetadata()){
+        	masterOrderBy= x.getOrderBy()!= null;
+        	masterUnion= x.getParent() instanceof SQLUnionQuery;
+        	masterHaving= x.getGroupBy()!= null && !(x.getParent() instanceof SQLUnionQuery) ? x.getGroupBy().getHaving() : null;
         	if(SQLSetQuantifier.DISTINCT==x.getDistionOption()){
         		parseResult.markDistinct();
         	}
@@ -73,6 +123,10 @@ public class PGSQLSelectVisitor extends AbstractPGSQLVisitor {
     public void endVisit(final PGSelectQueryBlock x) {
     	//把缺失的orderby列补上,union太复杂暂时不支持
     	if(isMasterSelect()){
+	    	//排序列就是分组列时分片结果已按分组列排序
+	    	if(isEnableCollectMetadata() && CollectionUtils.isEmpty(parseResult.getGroupOrderColumns()) && parseResult.isOrderedByGroupColumns()){
+	    		parseResult.setGroupOrderColumns(parseResult.getOrderColumns());
+	    	}
 	    	if(!CollectionUtils.isEmpty(missOrderbyColumns)){
 	    		String orderby_columns="";
 	    		for(String columnName: missOrderbyColumns){
@@ -106,54 +160,84 @@ public class PGSQLSelectVisitor extends AbstractPGSQLVisitor {
     	return selectLayer == 1;
     }
     
+    /*
+     * UNION整体的ORDER BY或LIMIT，作用于所有分支合并后的结果
+     */
+    private boolean isUnionClause(SQLObject x){
+    	return selectLayer == 0 && x.getParent() instanceof SQLUnionQuery;
+    }
+    
     /*
      * 只遍历第一级SELECT选择项，收集Metadata信息，同时收集MAX、MIN、COUNT、SUM和AVG操作；建议子查询和表达式使用alias别名
      */
     @Override
     protected void printSelectList(List<SQLSelectItem> selectList) {
+        //UNION后面的查询也要改写，否则合并时各分片返回的列内容不一致
+        if(isMasterSelect()){
+        	for(SQLSelectItem each: selectList){
+        		if(SQLApproximateAggregation.getAggregationType(each.getExpr(), ApproximateHintHolder.isApproximate())!= null){
+        			approximateExprs.add(each.getExpr());
+        		}
+        	}
+        }
         super.printSelectList(selectList);
         //如果是嵌套子查询直接滤过
         if(!isMasterSelect()){
         	return;
         }
         int columnIndex= 0;
+        int partialColumns= 0;
         //遍历第一级SELECT选择项
         for(SQLSelectItem each: selectList){
         	columnIndex++;
         	String alias= each.getAlias();
         	SQLExpr expr= each.getExpr();
+        	//近似聚合
+        	if(approximateExprs.contains(expr)){
+        		if(isEnableCollectMetadata()){
+        			StringBuilder expression = new StringBuilder();
+        			expr.accept(new PGOutputVisitor(expression));
+        			AggregationType aggregationType= SQLApproximateAggregation.getAggregationType(expr, true);
+        			AggregationColumn aggregationColumn= AggregationType.PERCENTILE_APPROX.equals(aggregationType)
+        					? new AggregationColumn(expression.toString(),columnIndex,aggregationType,SQLApproximateAggregation.getPercentile(expr))
+        					: new AggregationColumn(expression.toString(),columnIndex,aggregationType);
+        			parseResult.addAggregationColumn(aggregationColumn);
+        			if(logger.isInfoEnabled()){
+        				logger.info("approximate AggregationColumn: "+aggregationColumn);
+        			}
+        		}
+        	}
         	//如果是表达式
-        	if(expr instanceof SQLAggregateExpr){
-        		SQLAggregateExpr x= (SQLAggregateExpr)expr;
+        	else if(expr instanceof SQLAggregateExpr || expr instanceof SQLMethodInvokeExpr){
         		StringBuilder expression = new StringBuilder();
-        		x.accept(new PGOutputVisitor(expression));
-        		try{
-        			//如果不是AggregationType枚举中的内容，抛异常直接跳过不做处理
-	        		AggregationType aggregationType = AggregationType.valueOf(x.getMethodName().toUpperCase());
+        		expr.accept(new PGOutputVisitor(expression));
+        		//如果不是可合并的聚合函数直接跳过不做处理
+        		AggregationType aggregationType= getAggregationType(expr);
+        		if(aggregationType== null){
+        			if(isDistinctAggregation(expr)){
+        				logger.warn(expression.toString()+" with DISTINCT cannot be merged from partial columns, will return the value of each shard");
+        			}
+        			else if(logger.isInfoEnabled()){
+            			logger.info(expression.toString()+" expression not in (MAX、MIN、COUNT、SUM、AVG、STDDEV and VARIANCE)");
+            		}
+        		}
+        		else{
 	        		//解析过一遍就不在解析，此段逻辑主要处理如下场景
 	        		//(select avg(salary) from emp where userid<500) union (select avg(salary) from emp where userid>100)
-	        		//解析完第一个select的元数据就不在解析，但是对于union后面的select语句，avg聚合字段也要追加 count(1)列
+	        		//解析完第一个select的元数据就不在解析，但是对于union后面的select语句，avg聚合字段也要追加中间结果列
+	        		AggregationColumn aggregationColumn= null;
 	        		if(isEnableCollectMetadata()){
-		        		AggregationColumn aggregationColumn= new AggregationColumn(expression.toString(),columnIndex,aggregationType);
+		        		aggregationColumn= new AggregationColumn(expression.toString(),columnIndex,aggregationType);
 		        		parseResult.addAggregationColumn(aggregationColumn);
 		        		if(logger.isInfoEnabled()){
 		        			logger.info("AggregationColumn: "+aggregationColumn);
 		        		}
 	        		}
-	        		//在有表达式的SQLSelectItem后面加上只追加一个COUNT(1) 即可，然后通过(avg1*count1+avg2*count2)/(count1+count2)求最终平均值
-	        		//原始SQL：select avg(salary) as avg_salary, (select avg(bonus) from user) from user  
-	        	    //转换SQL：select avg(salary) as avg_salary, (select avg(bonus) from user), count(1) as auto_gen_col_count from user
-	        		if(AggregationType.AVG.equals(aggregationType) && !attachCountExpression){
-	        			print(", COUNT(1) AS " + AUTO_GEN_COL_COUNT);
-	        			attachCountExpression= true;
-	        			if(logger.isInfoEnabled()){
-	            			logger.info("auto create count(1) AS "+AUTO_GEN_COL_COUNT);
-	            		}
-	        		}
-        		}catch(IllegalArgumentException ex){
-        			if(logger.isInfoEnabled()){
-            			logger.info(expression.toString()+" expression not in (MAX、MIN、COUNT、SUM and AVG)");
-            		}
+	        		//每个AVG追加各自的SUM和COUNT，STDDEV和VARIANCE再追加平方和，合并时按列序号读取
+	        		//原始SQL：select avg(salary) as avg_salary, stddev(bonus) as std_bonus from user
+	        	    //转换SQL：select avg(salary) as avg_salary, stddev(bonus) as std_bonus, SUM(salary) AS auto_gen_col_sum_1, COUNT(salary) AS auto_gen_col_count_1,
+	        		//        SUM(bonus) AS auto_gen_col_sum_2, COUNT(bonus) AS auto_gen_col_count_2, SUM(bonus * bonus) AS auto_gen_col_squares_2 from user
+	        		partialColumns+= attachPartialColumns(expr,aggregationType,columnIndex,selectList.size()+partialColumns,aggregationColumn);
         		}
         	}
         	
@@ -190,9 +274,189 @@ public class PGSQLSelectVisitor extends AbstractPGSQLVisitor {
     	 * 如 select name from emp order by deptno，需要把deptno 追加到select选项中
     	 * 最终sql：select name ,deptno from emp order by deptno
     	 */
+    	if(isEnableCollectMetadata()){
+    		if(masterHaving!= null){
+    			partialColumns+= attachHavingColumns(selectList,selectList.size()+partialColumns);
+    		}
+    		partialColumnCount= partialColumns;
+    	}
     	parseResult.getSqlBuilder().appendToken("select_missing_columns", false);
     }
     
+    /*
+     * 识别可以合并的聚合函数，统计函数只支持一个参数
+     */
+    private static AggregationType getAggregationType(SQLExpr expr){
+    	String methodName;
+    	List<SQLExpr> arguments;
+    	if(expr instanceof SQLAggregateExpr){
+    		methodName= ((SQLAggregateExpr)expr).getMethodName();
+    		arguments= ((SQLAggregateExpr)expr).getArguments();
+    	}
+    	else if(expr instanceof SQLMethodInvokeExpr && ((SQLMethodInvokeExpr)expr).getOwner()== null){
+    		methodName= ((SQLMethodInvokeExpr)expr).getMethodName();
+    		arguments= ((SQLMethodInvokeExpr)expr).getParameters();
+    	}
+    	else{
+    		return null;
+    	}
+    	AggregationType result= STATISTIC_FUNCTIONS.get(methodName.toUpperCase());
+    	if(result!= null){
+    		return arguments.size()== 1 && !isDistinctAggregation(expr) ? result : null;
+    	}
+    	if(!(expr instanceof SQLAggregateExpr)){
+    		return null;
+    	}
+    	try{
+    		result= AggregationType.valueOf(methodName.toUpperCase());
+    	}catch(IllegalArgumentException ex){
+    		return null;
+    	}
+    	if(result.isApproximate() || result.isStatistic()){
+    		return null;
+    	}
+    	//各分片的去重集合可能重叠，DISTINCT的SUM和COUNT不能合并出平均值
+    	return AggregationType.AVG.equals(result) && isDistinctAggregation(expr) ? null : result;
+    }
+    
+    private static boolean isDistinctAggregation(SQLExpr expr){
+    	return expr instanceof SQLAggregateExpr && SQLAggregateOption.DISTINCT== ((SQLAggregateExpr)expr).getOption();
+    }
+    
+    /*
+     * AVG追加SUM和COUNT列，STDDEV和VARIANCE再追加平方和列，列名带上原选择项的序号，COUNT和AVG一样忽略NULL值
+     * @param lastIndex 已输出的最后一列的序号
+     * @return 追加的列数
+     */
+    private int attachPartialColumns(SQLExpr expr,AggregationType aggregationType,int columnIndex,int lastIndex,AggregationColumn aggregationColumn){
+    	if(!AggregationType.AVG.equals(aggregationType) && !aggregationType.isStatistic()){
+    		return 0;
+    	}
+    	SQLExpr argument= expr instanceof SQLAggregateExpr ? ((SQLAggregateExpr)expr).getArguments().get(0) : ((SQLMethodInvokeExpr)expr).getParameters().get(0);
+    	//追加的列会把参数的占位符再输出一遍，参数列表没有对应的值
+    	if(SQLHavingPredicate.containsParameter(argument)){
+    		throw new SQLParserException("not support parameter in %s argument: %s", aggregationType, expr);
+    	}
+    	print(", SUM(");
+    	argument.accept(this);
+    	print(") AS " + AUTO_GEN_COL_SUM + columnIndex + ", COUNT(");
+    	argument.accept(this);
+    	print(") AS " + AUTO_GEN_COL_COUNT + columnIndex);
+    	if(aggregationColumn!= null){
+    		aggregationColumn.setSumIndex(lastIndex + 1);
+    		aggregationColumn.setCountIndex(lastIndex + 2);
+    	}
+    	if(AggregationType.AVG.equals(aggregationType)){
+    		return 2;
+    	}
+    	//整数相乘可能溢出，转为NUMERIC计算平方
+    	print(", SUM(CAST(");
+    	argument.accept(this);
+    	print(" AS NUMERIC) * ");
+    	argument.accept(this);
+    	print(") AS " + AUTO_GEN_COL_SQUARES + columnIndex);
+    	if(aggregationColumn!= null){
+    		aggregationColumn.setSumOfSquaresIndex(lastIndex + 3);
+    	}
+    	return 3;
+    }
+    
+    /*
+     * 编译HAVING条件，引用了聚合值时归并后再过滤，不在选择项里的聚合函数追加为隐藏列
+     * 原始SQL：select user_id, sum(amount) as total from t_order group by user_id having count(*) > 10
+     * 转换SQL：select user_id, sum(amount) as total, COUNT(*) AS auto_gen_col_having_3 from t_order group by user_id
+     * @param lastIndex 已输出的最后一列的序号
+     * @return 追加的列数
+     */
+    private int attachHavingColumns(List<SQLSelectItem> selectList,int lastIndex){
+    	try{
+    		havingPredicate= SQLHavingPredicate.compile(masterHaving,selectList,getParameters(),new SQLHavingPredicate.AggregationResolver(){
+    			@Override
+    			public AggregationType getAggregationType(SQLExpr expr) {
+    				AggregationType result= SQLApproximateAggregation.getAggregationType(expr, ApproximateHintHolder.isApproximate());
+    				return result!= null ? result : PGSQLSelectVisitor.getAggregationType(expr);
+    			}
+    		});
+    	}catch(SQLParserException e){
+    		logger.warn("having ["+masterHaving+"] will be evaluated on each shard: "+e.getMessage());
+    		return 0;
+    	}
+    	if(havingPredicate== null){
+    		return 0;
+    	}
+    	parseResult.setHavingPredicate(havingPredicate);
+    	int result= 0;
+    	List<SQLExpr> aggregations= havingPredicate.getAttachedAggregations();
+    	for(int i=0;i<aggregations.size();i++){
+    		SQLExpr expr= aggregations.get(i);
+    		int columnIndex= lastIndex + result + 1;
+    		print(", ");
+    		expr.accept(this);
+    		print(" AS " + AUTO_GEN_COL_HAVING + columnIndex);
+    		StringBuilder expression = new StringBuilder();
+    		expr.accept(new PGOutputVisitor(expression));
+    		AggregationType aggregationType= getAggregationType(expr);
+    		AggregationColumn aggregationColumn= new AggregationColumn(expression.toString(),columnIndex,aggregationType);
+    		parseResult.addAggregationColumn(aggregationColumn);
+    		havingPredicate.setAttachedColumnIndex(i, columnIndex);
+    		if(logger.isInfoEnabled()){
+    			logger.info("having AggregationColumn: "+aggregationColumn);
+    		}
+    		result+= 1 + attachPartialColumns(expr,aggregationType,columnIndex,columnIndex,aggregationColumn);
+    	}
+    	return result;
+    }
+    
+    //近似聚合的选择项输出分片摘要表达式
+    @Override
+    public boolean visit(SQLAggregateExpr x){
+    	if(approximateExprs.contains(x)){
+    		printApproximateAggregation(x);
+    		return false;
+    	}
+    	return super.visit(x);
+    }
+    
+    @Override
+    public boolean visit(SQLMethodInvokeExpr x){
+    	if(approximateExprs.contains(x)){
+    		printApproximateAggregation(x);
+    		return false;
+    	}
+    	return super.visit(x);
+    }
+    
+    /*
+     * 近似去重：分片上去重计数加上升序的前k个哈希值，哈希值取MD5的前15个十六进制字符，和MySQL一致
+     * 近似分位数：分片上的行数加上PERCENTILE_DISC求出的0到1之间等间隔的k个分位点，按值排序一次，不需要随机数
+     */
+    private void printApproximateAggregation(SQLExpr x){
+    	SQLExpr column= SQLApproximateAggregation.getArgument(x);
+    	int size= SQLApproximateAggregation.SKETCH_SIZE;
+    	if(AggregationType.APPROX_COUNT_DISTINCT.equals(SQLApproximateAggregation.getAggregationType(x, true))){
+    		print("(CAST(COUNT(DISTINCT ");
+    		column.accept(this);
+    		print(") AS TEXT) || ':' || COALESCE(ARRAY_TO_STRING((ARRAY_AGG(DISTINCT ");
+    		printHash(column);
+    		print(" ORDER BY ");
+    		printHash(column);
+    		print("))[1:" + size + "], ','), ''))");
+    	}
+    	else{
+    		print("(CAST(COUNT(");
+    		column.accept(this);
+    		print(") AS TEXT) || ':' || COALESCE(ARRAY_TO_STRING(PERCENTILE_DISC(ARRAY(SELECT CAST(GENERATE_SERIES(0, " + (size- 1) + ") AS FLOAT8) / " + (size- 1) + ")) WITHIN GROUP (ORDER BY ");
+    		column.accept(this);
+    		print("), ','), ''))");
+    	}
+    }
+    
+    private void printHash(SQLExpr column){
+    	print("LEFT(MD5(CAST(");
+    	column.accept(this);
+    	print(" AS TEXT)), " + SQLApproximateAggregation.HASH_LENGTH + ")");
+    }
+    
     //解析Groupby节点
     @Override
     public boolean visit(SQLSelectGroupByClause x){
@@ -221,17 +485,75 @@ public class PGSQLSelectVisitor extends AbstractPGSQLVisitor {
 				}
     		}
     	}
+    	if(havingPredicate!= null && x.getHaving()== masterHaving){
+    		return visitWithoutHaving(x);
+    	}
     	return super.visit(x);
     }
     
+    /*
+     * 分片SQL去掉已提出的HAVING，条件中有参数占位符时保留为恒真的条件，避免后面的参数错位
+     */
+    private boolean visitWithoutHaving(SQLSelectGroupByClause x){
+    	SQLExpr having= x.getHaving();
+    	x.setHaving(null);
+    	try{
+    		super.visit(x);
+    	}finally{
+    		x.setHaving(having);
+    	}
+    	if(havingPredicate.isParameterized()){
+    		print(" HAVING 1 = 1 OR (");
+    		having.accept(this);
+    		print(")");
+    	}
+    	return false;
+    }
+    
+    /*
+     * 没有orderby时按分组列排序，分片结果按分组列有序后可以边归并边聚合
+     * 原始SQL：select user_id, count(1) as c from t_order group by user_id
+     * 转换SQL：select user_id, count(1) as c from t_order group by user_id ORDER BY user_id
+     */
+    @Override
+    public void endVisit(SQLSelectGroupByClause x){
+    	if(!isEnableCollectMetadata() || masterOrderBy){
+    		return;
+    	}
+    	//只有HAVING没有分组列时没有可排序的列，不能输出空的ORDER BY；UNION的分支不能单独排序
+    	if(x.getItems().isEmpty() || masterUnion){
+    		return;
+    	}
+    	//有分组列不在选择项里时无法按分组列归并，提示了哈希分组时分组列的顺序和Java不一致，都不追加排序
+    	if(parseResult.getGroupColumns().size()!= x.getItems().size() || GroupByHintHolder.isHashGrouping()){
+    		return;
+    	}
+    	print(" ORDER BY ");
+    	for(int i=0;i<x.getItems().size();i++){
+    		if(i> 0){
+    			print(", ");
+    		}
+    		x.getItems().get(i).accept(this);
+    	}
+    	List<OrderColumn> groupOrderColumns= new LinkedList<OrderColumn>();
+    	for(GroupColumn each: parseResult.getGroupColumns()){
+    		groupOrderColumns.add(new OrderColumn(each.getColumnName(),OrderType.ASC,each.getColumnIndex()));
+    	}
+    	parseResult.setGroupOrderColumns(groupOrderColumns);
+    	if(logger.isDebugEnabled()){
+    		logger.debug("append group columns as order by: "+groupOrderColumns);
+    	}
+    }
+    
     /*
      * 遍历orderby内容
      */
     @Override
     public boolean visit(SQLOrderBy x) {
-    	//如果嵌套子查询或第一个SQL解析完毕
-    	if(!isEnableCollectMetadata()){
-    		return visit(x);
+    	//如果嵌套子查询或第一个SQL解析完毕，UNION整体的排序按第一个SELECT的元数据收集
+    	boolean unionOrderBy= isUnionClause(x);
+    	if(!isEnableCollectMetadata() && !unionOrderBy){
+    		return super.visit(x);
     	}
     	for (SQLSelectOrderByItem each : x.getItems()) {
             SQLExpr expr = each.getExpr();
@@ -268,10 +590,14 @@ public class PGSQLSelectVisitor extends AbstractPGSQLVisitor {
             			logger.info("order column ["+columnName+"] index is: "+index);
             		}
             	}
+            	else if(unionOrderBy){
+            		//UNION的各个分支不能单独追加选择项
+            		logger.warn("union order column ["+columnName+"] is not in metadatacolumns: "+parseResult.getMetadataColumns());
+            	}
             	else{
             		//只有当grouby为空的时候才能追加orderby否则sql执行会出粗
             		if(CollectionUtils.isEmpty(parseResult.getGroupColumns())){
-	            		index= parseResult.getMetadataColumns().size() + (attachCountExpression?1:0);
+	            		index= parseResult.getMetadataColumns().size() + partialColumnCount;
 	            		if(StringUtils.isEmpty(missOrderbyColumns)){
 	            			missOrderbyColumns= new LinkedList<String>();
 	            		}
@@ -300,6 +626,9 @@ public class PGSQLSelectVisitor extends AbstractPGSQLVisitor {
     	if(!isEnableCollectMetadata()){
     		return super.visit(x); 
     	}
+    	if(havingPredicate!= null){
+    		return visitWithoutLimit(x);
+    	}
     	//第一次解析
         int offset = 0;
         String offsetFragment= "";
@@ -331,5 +660,40 @@ public class PGSQLSelectVisitor extends AbstractPGSQLVisitor {
 		}
         return false;
     }
+    
+    /*
+     * HAVING提出到归并后过滤时，分片的前N组可能都不满足条件，分片不能分页，归并过滤后再分页
+     * 行数输出为ALL，有参数占位符时保留占位符，偏移量设为0，行数设为不限制，避免后面的参数错位
+     */
+    private boolean visitWithoutLimit(PGLimit x){
+    	SQLExpr offsetExpr= x.getOffset();
+    	SQLExpr rowCountExpr= x.getRowCount();
+    	int offset= 0;
+    	String offsetFragment= "";
+    	if(offsetExpr instanceof SQLNumericLiteralExpr){
+    		offset= ((SQLNumericLiteralExpr) offsetExpr).getNumber().intValue();
+    	}
+    	else if(offsetExpr instanceof SQLVariantRefExpr){
+    		offset= ((Number) getParameters().get(((SQLVariantRefExpr) offsetExpr).getIndex())).intValue();
+    		getParameters().set(((SQLVariantRefExpr) offsetExpr).getIndex(), 0);
+    		offsetFragment= " OFFSET ?";
+    	}
+    	int rowCount;
+    	if(rowCountExpr instanceof SQLNumericLiteralExpr){
+    		rowCount= ((SQLNumericLiteralExpr) rowCountExpr).getNumber().intValue();
+    		print("ALL");
+    	}
+    	else{
+    		rowCount= ((Number) getParameters().get(((SQLVariantRefExpr) rowCountExpr).getIndex())).intValue();
+    		getParameters().set(((SQLVariantRefExpr) rowCountExpr).getIndex(), Long.MAX_VALUE);
+    		print("?");
+    	}
+    	print(offsetFragment);
+    	parseResult.setLimit(new Limit(offset, rowCount));
+    	if(logger.isInfoEnabled()){
+    		logger.info("Limit [offset: "+offset+",rowCount: "+rowCount+"] is applied after having");
+    	}
+    	return false;
+    }
 
 }
@@ -0,0 +1,119 @@
+package io.anyway.sherlock.testcase;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+/**
+ * 测试用的数据源，连接只保存自动提交和只读状态，并按"数据源名称.方法名(参数)"记录调用
+ * @author yangzz
+ *
+ */
+final public class StubDataSources {
+
+	private StubDataSources(){}
+
+	/**
+	 * 创建数据源
+	 * @param name 数据源名称
+	 * @param calls 记录连接上的调用，多个线程同时写入，需要是线程安全的列表
+	 * @return DataSource
+	 */
+	public static DataSource create(String name,List<String> calls){
+		return create(name,calls,null);
+	}
+
+	/**
+	 * 创建数据源，提交时等待其他连接也开始提交
+	 * @param name 数据源名称
+	 * @param calls 记录连接上的调用
+	 * @param commitBarrier 提交时计数减一并等待归零，等待超时记录为"数据源名称.commit(alone)"
+	 * @return DataSource
+	 */
+	public static DataSource create(final String name,final List<String> calls,final CountDownLatch commitBarrier){
+		return (DataSource)Proxy.newProxyInstance(StubDataSources.class.getClassLoader(),new Class<?>[]{DataSource.class},new InvocationHandler(){
+			@Override
+			public Object invoke(Object proxy,Method method,Object[] args){
+				if("getConnection".equals(method.getName())){
+					calls.add(name+ ".open");
+					return connection(name,calls,commitBarrier);
+				}
+				if("toString".equals(method.getName())){
+					return name;
+				}
+				if("hashCode".equals(method.getName())){
+					return System.identityHashCode(proxy);
+				}
+				if("equals".equals(method.getName())){
+					return proxy== args[0];
+				}
+				Class<?> type= method.getReturnType();
+				return int.class== type ? (Object)0 : null;
+			}
+		});
+	}
+
+	private static Connection connection(final String name,final List<String> calls,final CountDownLatch commitBarrier){
+		return (Connection)Proxy.newProxyInstance(StubDataSources.class.getClassLoader(),new Class<?>[]{Connection.class},new InvocationHandler(){
+
+			private volatile boolean autoCommit= true;
+
+			private volatile boolean readOnly;
+
+			private volatile boolean closed;
+
+			@Override
+			public Object invoke(Object proxy,Method method,Object[] args) throws InterruptedException{
+				String methodName= method.getName();
+				if("hashCode".equals(methodName)){
+					return System.identityHashCode(proxy);
+				}
+				if("equals".equals(methodName)){
+					return proxy== args[0];
+				}
+				if("toString".equals(methodName)){
+					return name;
+				}
+				//读取状态由驱动在本地完成，不记录
+				if("getAutoCommit".equals(methodName)){
+					return autoCommit;
+				}
+				if("isReadOnly".equals(methodName)){
+					return readOnly;
+				}
+				if("isClosed".equals(methodName)){
+					return closed;
+				}
+				if("setAutoCommit".equals(methodName)){
+					autoCommit= (Boolean)args[0];
+				}
+				else if("setReadOnly".equals(methodName)){
+					readOnly= (Boolean)args[0];
+				}
+				else if("close".equals(methodName)){
+					closed= true;
+				}
+				else if("commit".equals(methodName) && commitBarrier!= null){
+					commitBarrier.countDown();
+					if(!commitBarrier.await(5,TimeUnit.SECONDS)){
+						calls.add(name+ ".commit(alone)");
+						return null;
+					}
+				}
+				calls.add(name+ "."+ methodName+ (args== null ? "" : Arrays.toString(args).replace('[','(').replace(']',')')));
+				Class<?> type= method.getReturnType();
+				if(boolean.class== type){
+					return Boolean.FALSE;
+				}
+				return int.class== type ? (Object)0 : null;
+			}
+		});
+	}
+}
@@ -0,0 +1,141 @@
+package io.anyway.sherlock.testcase;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import io.anyway.sherlock.datasource.DatabaseType;
+import io.anyway.sherlock.datasource.PartitionDataSource;
+import io.anyway.sherlock.datasource.ShardingDataSourceRepository;
+import io.anyway.sherlock.executor.ExecuteContext;
+import io.anyway.sherlock.jdbc.ShardingConnection;
+import io.anyway.sherlock.jdbc.ShardingDataSource;
+import io.anyway.sherlock.sqlparser.SQLParsedResult;
+
+/**
+ * 测试用的执行上下文，只提供归并用到的解析结果、数据库类型和连接
+ * @author yangzz
+ *
+ */
+final public class StubExecuteContexts {
+
+	private StubExecuteContexts(){}
+
+	/**
+	 * 创建执行上下文
+	 * @param parsedResult SQL解析结果
+	 * @param databaseType 数据库类型
+	 * @param shardingDataSource 提供归并内存预算等配置，可以为null
+	 * @return ExecuteContext
+	 */
+	public static ExecuteContext of(final SQLParsedResult parsedResult,final DatabaseType databaseType,ShardingDataSource shardingDataSource){
+		return of(null,parsedResult,databaseType,shardingDataSource);
+	}
+
+	/**
+	 * 创建带逻辑SQL的执行上下文
+	 * @param logicSql 逻辑SQL
+	 * @param parsedResult SQL解析结果
+	 * @param databaseType 数据库类型
+	 * @param shardingDataSource 提供归并内存预算等配置，可以为null
+	 * @return ExecuteContext
+	 */
+	public static ExecuteContext of(final String logicSql,final SQLParsedResult parsedResult,final DatabaseType databaseType,ShardingDataSource shardingDataSource){
+		final ShardingConnection connection= shardingDataSource== null ? null : new ShardingConnection(shardingDataSource);
+		return (ExecuteContext)Proxy.newProxyInstance(StubExecuteContexts.class.getClassLoader(),new Class<?>[]{ExecuteContext.class},new InvocationHandler(){
+			@Override
+			public Object invoke(Object proxy,Method method,Object[] args){
+				String name= method.getName();
+				if("getLogicSql".equals(name)){
+					return logicSql;
+				}
+				if("getSQLParsedResult".equals(name)){
+					return parsedResult;
+				}
+				if("getDatabaseType".equals(name)){
+					return databaseType;
+				}
+				if("getShardingConnection".equals(name)){
+					return connection;
+				}
+				if("isSimplyDQLOperation".equals(name)){
+					return true;
+				}
+				if("hashCode".equals(name)){
+					return System.identityHashCode(proxy);
+				}
+				if("equals".equals(name)){
+					return proxy== args[0];
+				}
+				if("toString".equals(name)){
+					return "StubExecuteContext";
+				}
+				Class<?> type= method.getReturnType();
+				return boolean.class== type ? Boolean.FALSE : null;
+			}
+		});
+	}
+
+	/**
+	 * 创建执行上下文，用于执行器测试
+	 * @param repository 提供分片数据源
+	 * @param simplyDQL 是否是不带事务的查询语句
+	 * @param deadline 截止时间的毫秒数，0表示没有设置
+	 * @return ExecuteContext
+	 */
+	public static ExecuteContext of(final ShardingDataSourceRepository repository,final boolean simplyDQL,final long deadline){
+		return (ExecuteContext)Proxy.newProxyInstance(StubExecuteContexts.class.getClassLoader(),new Class<?>[]{ExecuteContext.class},new InvocationHandler(){
+			@Override
+			public Object invoke(Object proxy,Method method,Object[] args){
+				String name= method.getName();
+				if("getShardingDataSourceRepository".equals(name)){
+					return repository;
+				}
+				if("isSimplyDQLOperation".equals(name)){
+					return simplyDQL;
+				}
+				if("isDMLOperation".equals(name)){
+					return !simplyDQL;
+				}
+				if("getDeadline".equals(name)){
+					return deadline;
+				}
+				if("getLogicSql".equals(name)){
+					return "StubSql";
+				}
+				if("hashCode".equals(name)){
+					return System.identityHashCode(proxy);
+				}
+				if("equals".equals(name)){
+					return proxy== args[0];
+				}
+				if("toString".equals(name)){
+					return "StubExecuteContext";
+				}
+				Class<?> type= method.getReturnType();
+				return boolean.class== type ? Boolean.FALSE : null;
+			}
+		});
+	}
+
+	/**
+	 * 创建只包含指定分片数据源的仓库
+	 * @param partitions 分片数据源
+	 * @return ShardingDataSourceRepository
+	 */
+	public static ShardingDataSourceRepository repository(final PartitionDataSource... partitions){
+		return (ShardingDataSourceRepository)Proxy.newProxyInstance(StubExecuteContexts.class.getClassLoader(),new Class<?>[]{ShardingDataSourceRepository.class},new InvocationHandler(){
+			@Override
+			public Object invoke(Object proxy,Method method,Object[] args){
+				if("getPartitionDataSource".equals(method.getName())){
+					for(PartitionDataSource each: partitions){
+						if(each.getName().equals(args[0])){
+							return each;
+						}
+					}
+				}
+				return null;
+			}
+		});
+	}
+}
@@ -0,0 +1,50 @@
+package io.anyway.sherlock.testcase;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import io.anyway.sherlock.datasource.support.PartitionDataSourceSupport;
+
+/**
+ * 测试用的分片数据源，不依赖Spring容器创建线程池
+ * @author yangzz
+ *
+ */
+public class StubPartitionDataSource extends PartitionDataSourceSupport {
+
+	private final ExecutorService executorService;
+
+	private final ThreadPoolExecutor hedgeExecutorService;
+
+	/**
+	 * @param name 分片名称
+	 * @param threads 执行线程数
+	 * @param hedgeThreads 对冲线程数，不排队
+	 */
+	public StubPartitionDataSource(String name,int threads,int hedgeThreads){
+		setName(name);
+		executorService= Executors.newFixedThreadPool(threads);
+		hedgeExecutorService= new ThreadPoolExecutor(hedgeThreads,hedgeThreads,60,TimeUnit.SECONDS,new SynchronousQueue<Runnable>());
+	}
+
+	@Override
+	public ExecutorService getExecutorService(){
+		return executorService;
+	}
+
+	@Override
+	public ExecutorService getHedgeExecutorService(){
+		return hedgeExecutorService;
+	}
+
+	/**
+	 * 关闭线程池
+	 */
+	public void shutdown(){
+		executorService.shutdownNow();
+		hedgeExecutorService.shutdownNow();
+	}
+}
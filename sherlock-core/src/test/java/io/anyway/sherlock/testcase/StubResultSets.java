@@ -0,0 +1,203 @@
+package io.anyway.sherlock.testcase;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+
+/**
+ * 测试用的内存结果集，按行数组返回数据，只实现归并用到的方法
+ * @author yangzz
+ *
+ */
+final public class StubResultSets {
+
+	private StubResultSets(){}
+
+	/**
+	 * 创建结果集
+	 * @param labels 列名
+	 * @param types 列类型，取值为java.sql.Types
+	 * @param rows 行数据，null表示SQL的NULL
+	 * @return ResultSet
+	 */
+	public static ResultSet of(final String[] labels,final int[] types,final Object[][] rows){
+		return of(null,labels,types,rows);
+	}
+
+	/**
+	 * 创建分片Statement返回的结果集
+	 * @param statement getStatement返回的Statement
+	 * @param labels 列名
+	 * @param types 列类型，取值为java.sql.Types
+	 * @param rows 行数据，null表示SQL的NULL
+	 * @return ResultSet
+	 */
+	public static ResultSet of(final Statement statement,final String[] labels,final int[] types,final Object[][] rows){
+		final ResultSetMetaData metaData= (ResultSetMetaData)Proxy.newProxyInstance(StubResultSets.class.getClassLoader(),new Class<?>[]{ResultSetMetaData.class},new InvocationHandler(){
+			@Override
+			public Object invoke(Object proxy,Method method,Object[] args){
+				String name= method.getName();
+				if("getColumnCount".equals(name)){
+					return labels.length;
+				}
+				if("getColumnLabel".equals(name) || "getColumnName".equals(name)){
+					return labels[(Integer)args[0]-1];
+				}
+				if("getColumnType".equals(name)){
+					return types[(Integer)args[0]-1];
+				}
+				if("getColumnClassName".equals(name)){
+					return getClassName(types[(Integer)args[0]-1]);
+				}
+				if("isNullable".equals(name)){
+					return ResultSetMetaData.columnNullable;
+				}
+				if("getPrecision".equals(name) || "getScale".equals(name) || "getColumnDisplaySize".equals(name)){
+					return 0;
+				}
+				if(name.startsWith("is")){
+					return false;
+				}
+				if(name.startsWith("get")){
+					return "";
+				}
+				return null;
+			}
+		});
+		return (ResultSet)Proxy.newProxyInstance(StubResultSets.class.getClassLoader(),new Class<?>[]{ResultSet.class},new InvocationHandler(){
+
+			private int cursor= -1;
+
+			private boolean wasNull;
+
+			private boolean closed;
+
+			@Override
+			public Object invoke(Object proxy,Method method,Object[] args) throws SQLException{
+				String name= method.getName();
+				if("next".equals(name)){
+					if(closed){
+						throw new SQLException("result set is closed");
+					}
+					if(cursor< rows.length){
+						cursor++;
+					}
+					return cursor< rows.length;
+				}
+				if("getMetaData".equals(name)){
+					return metaData;
+				}
+				if("findColumn".equals(name)){
+					return findColumn((String)args[0]);
+				}
+				if("wasNull".equals(name)){
+					return wasNull;
+				}
+				if("close".equals(name)){
+					closed= true;
+					return null;
+				}
+				if("isClosed".equals(name)){
+					return closed;
+				}
+				if("getStatement".equals(name)){
+					return statement;
+				}
+				if("getFetchSize".equals(name) || "getRow".equals(name)){
+					return 0;
+				}
+				if("hashCode".equals(name)){
+					return System.identityHashCode(proxy);
+				}
+				if("equals".equals(name)){
+					return proxy== args[0];
+				}
+				if("toString".equals(name)){
+					return "StubResultSet"+java.util.Arrays.toString(labels);
+				}
+				if(name.startsWith("get") && args!= null && args.length== 1){
+					return convert(method.getReturnType(),getValue(args[0]));
+				}
+				return null;
+			}
+
+			private Object getValue(Object column) throws SQLException{
+				if(cursor< 0 || cursor>= rows.length){
+					throw new SQLException("cursor is not on a row");
+				}
+				int index= column instanceof Integer ? (Integer)column : findColumn((String)column);
+				Object result= rows[cursor][index-1];
+				wasNull= result== null;
+				return result;
+			}
+
+			private int findColumn(String label) throws SQLException{
+				for(int i=0;i<labels.length;i++){
+					if(labels[i].equalsIgnoreCase(label)){
+						return i+1;
+					}
+				}
+				throw new SQLException("column not found: "+label);
+			}
+		});
+	}
+
+	private static Object convert(Class<?> type,Object value){
+		if(Object.class== type){
+			return value;
+		}
+		if(String.class== type){
+			return value== null ? null : value.toString();
+		}
+		if(BigDecimal.class== type){
+			return value== null ? null : new BigDecimal(value.toString());
+		}
+		if(boolean.class== type){
+			return value!= null && Boolean.TRUE.equals(value);
+		}
+		Number number= value== null ? Integer.valueOf(0) : (Number)value;
+		if(int.class== type){
+			return number.intValue();
+		}
+		if(long.class== type){
+			return number.longValue();
+		}
+		if(double.class== type){
+			return number.doubleValue();
+		}
+		if(float.class== type){
+			return number.floatValue();
+		}
+		if(short.class== type){
+			return number.shortValue();
+		}
+		if(byte.class== type){
+			return number.byteValue();
+		}
+		return value;
+	}
+
+	private static String getClassName(int type){
+		switch(type){
+			case Types.BIGINT:
+				return Long.class.getName();
+			case Types.INTEGER:
+				return Integer.class.getName();
+			case Types.DOUBLE:
+				return Double.class.getName();
+			case Types.DECIMAL:
+			case Types.NUMERIC:
+				return BigDecimal.class.getName();
+			case Types.VARCHAR:
+				return String.class.getName();
+			default:
+				return Object.class.getName();
+		}
+	}
+}
@@ -0,0 +1,131 @@
+package io.anyway.sherlock.testcase;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Statement;
+
+/**
+ * 测试用的Statement，只记录执行器用到的设置和cancel操作
+ * @author yangzz
+ *
+ */
+final public class StubStatements {
+
+	private StubStatements(){}
+
+	/**
+	 * 在新的连接上创建Statement
+	 * @return Statement
+	 */
+	public static Statement create(){
+		return create(connection());
+	}
+
+	/**
+	 * 在指定连接上创建Statement
+	 * @param connection 连接
+	 * @return Statement
+	 */
+	public static Statement create(Connection connection){
+		return (Statement)Proxy.newProxyInstance(StubStatements.class.getClassLoader(),new Class<?>[]{Statement.class},new StatementHandler(connection));
+	}
+
+	/**
+	 * 创建只支持比较的连接
+	 * @return Connection
+	 */
+	public static Connection connection(){
+		return (Connection)Proxy.newProxyInstance(StubStatements.class.getClassLoader(),new Class<?>[]{Connection.class},new InvocationHandler(){
+			@Override
+			public Object invoke(Object proxy,Method method,Object[] args){
+				String name= method.getName();
+				if("hashCode".equals(name)){
+					return System.identityHashCode(proxy);
+				}
+				if("equals".equals(name)){
+					return proxy== args[0];
+				}
+				if("toString".equals(name)){
+					return "StubConnection";
+				}
+				Class<?> type= method.getReturnType();
+				return boolean.class== type ? Boolean.FALSE : null;
+			}
+		});
+	}
+
+	/**
+	 * Statement是否被cancel过
+	 * @param statement 由本类创建的Statement
+	 * @return true | false
+	 */
+	public static boolean isCancelled(Statement statement){
+		return ((StatementHandler)Proxy.getInvocationHandler(statement)).cancelled;
+	}
+
+	/**
+	 * 获取执行器设置的queryTimeout
+	 * @param statement 由本类创建的Statement
+	 * @return 秒数
+	 */
+	public static int getQueryTimeout(Statement statement){
+		return ((StatementHandler)Proxy.getInvocationHandler(statement)).queryTimeout;
+	}
+
+	private static class StatementHandler implements InvocationHandler{
+
+		private final Connection connection;
+
+		private volatile boolean cancelled;
+
+		private volatile int queryTimeout;
+
+		private volatile int fetchSize;
+
+		StatementHandler(Connection connection){
+			this.connection= connection;
+		}
+
+		@Override
+		public Object invoke(Object proxy,Method method,Object[] args){
+			String name= method.getName();
+			if("getConnection".equals(name)){
+				return connection;
+			}
+			if("cancel".equals(name)){
+				cancelled= true;
+				return null;
+			}
+			if("setQueryTimeout".equals(name)){
+				queryTimeout= (Integer)args[0];
+				return null;
+			}
+			if("getQueryTimeout".equals(name)){
+				return queryTimeout;
+			}
+			if("setFetchSize".equals(name)){
+				fetchSize= (Integer)args[0];
+				return null;
+			}
+			if("getFetchSize".equals(name)){
+				return fetchSize;
+			}
+			if("hashCode".equals(name)){
+				return System.identityHashCode(proxy);
+			}
+			if("equals".equals(name)){
+				return proxy== args[0];
+			}
+			if("toString".equals(name)){
+				return "StubStatement";
+			}
+			Class<?> type= method.getReturnType();
+			if(int.class== type){
+				return 0;
+			}
+			return boolean.class== type ? Boolean.FALSE : null;
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package io.anyway.sherlock.testcase.executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.anyway.sherlock.executor.ExecuteCompletion;
+import io.anyway.sherlock.executor.ExecuteContext;
+import io.anyway.sherlock.executor.ExecuteStatementCallback;
+import io.anyway.sherlock.executor.support.ExecuteProcessorSupport;
+import io.anyway.sherlock.executor.support.ExecuteStatementWrapper;
+import io.anyway.sherlock.metrics.ShardingMetrics;
+import io.anyway.sherlock.router.support.SQLExecutionUnit;
+import io.anyway.sherlock.testcase.StubExecuteContexts;
+import io.anyway.sherlock.testcase.StubPartitionDataSource;
+import io.anyway.sherlock.testcase.StubStatements;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CompletionOrderTest {
+
+    private StubPartitionDataSource first;
+
+    private StubPartitionDataSource second;
+
+    private ExecuteContext ctx;
+
+    @Before
+    public void setUp() {
+        first = new StubPartitionDataSource("ds_0", 1, 1);
+        second = new StubPartitionDataSource("ds_1", 1, 1);
+        ctx = StubExecuteContexts.of(StubExecuteContexts.repository(first, second), true, 0);
+    }
+
+    @After
+    public void tearDown() {
+        first.shutdown();
+        second.shutdown();
+    }
+
+    @Test
+    public void fastShardIsReadFirst() throws SQLException {
+        List<ExecuteStatementWrapper<Statement>> wrappers = wrappers("ds_0:300", "ds_1:0");
+        ExecuteCompletion<String> completion = new ExecuteProcessorSupport().executeStreaming(ctx, wrappers, new SleepingCallback());
+        assertTrue(completion.hasNext());
+        assertEquals("ds_1:0", completion.next());
+        assertEquals("ds_0:300", completion.next());
+        assertFalse(completion.hasNext());
+    }
+
+    @Test
+    public void cancelUnfinishedShards() throws SQLException {
+        List<ExecuteStatementWrapper<Statement>> wrappers = wrappers("ds_0:5000", "ds_1:0");
+        long cancelled = ShardingMetrics.get(ShardingMetrics.STATEMENT_CANCELLED);
+        ExecuteCompletion<String> completion = new ExecuteProcessorSupport().executeStreaming(ctx, wrappers, new SleepingCallback());
+        assertEquals("ds_1:0", completion.next());
+        // 慢的分片还在执行, 没有已完成但未读取的结果
+        assertTrue(completion.cancel().isEmpty());
+        assertFalse(completion.hasNext());
+        assertTrue(StubStatements.isCancelled(wrappers.get(0).getStatement()));
+        assertFalse(StubStatements.isCancelled(wrappers.get(1).getStatement()));
+        assertEquals(cancelled + 1, ShardingMetrics.get(ShardingMetrics.STATEMENT_CANCELLED));
+    }
+
+    @Test
+    public void failedShardCancelsOthers() throws SQLException {
+        List<ExecuteStatementWrapper<Statement>> wrappers = wrappers("ds_0:5000", "ds_1:fail");
+        ExecuteCompletion<String> completion = new ExecuteProcessorSupport().executeStreaming(ctx, wrappers, new SleepingCallback());
+        try {
+            completion.next();
+            fail("failed shard should be reported");
+        } catch (final SQLException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().contains("ds_1:fail"));
+        }
+        assertFalse(completion.hasNext());
+        assertTrue(StubStatements.isCancelled(wrappers.get(0).getStatement()));
+    }
+
+    // 执行单元的SQL为"分片:毫秒数", 毫秒数为fail时执行失败
+    private static List<ExecuteStatementWrapper<Statement>> wrappers(final String... sqls) {
+        List<ExecuteStatementWrapper<Statement>> result = new ArrayList<ExecuteStatementWrapper<Statement>>(sqls.length);
+        for (String each : sqls) {
+            result.add(new ExecuteStatementWrapper<Statement>(new SQLExecutionUnit(each.substring(0, each.indexOf(':')), each), StubStatements.create()));
+        }
+        return result;
+    }
+
+    private static class SleepingCallback implements ExecuteStatementCallback<Statement, String> {
+
+        @Override
+        public String execute(final String actualSql, final Statement statement) throws SQLException {
+            String millis = actualSql.substring(actualSql.indexOf(':') + 1);
+            if ("fail".equals(millis)) {
+                throw new SQLException("execute error: " + actualSql);
+            }
+            try {
+                TimeUnit.MILLISECONDS.sleep(Long.parseLong(millis));
+            } catch (final InterruptedException ex) {
+                throw new SQLException("cancelled: " + actualSql);
+            }
+            return actualSql;
+        }
+    }
+}
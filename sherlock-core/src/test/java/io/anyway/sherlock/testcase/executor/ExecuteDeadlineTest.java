@@ -0,0 +1,130 @@
+package io.anyway.sherlock.testcase.executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.anyway.sherlock.executor.ExecuteContext;
+import io.anyway.sherlock.executor.ExecuteStatementCallback;
+import io.anyway.sherlock.executor.support.ExecuteProcessorSupport;
+import io.anyway.sherlock.executor.support.ExecuteStatementWrapper;
+import io.anyway.sherlock.metrics.ShardingMetrics;
+import io.anyway.sherlock.router.support.SQLExecutionUnit;
+import io.anyway.sherlock.testcase.StubExecuteContexts;
+import io.anyway.sherlock.testcase.StubPartitionDataSource;
+import io.anyway.sherlock.testcase.StubStatements;
+
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ExecuteDeadlineTest {
+
+    private StubPartitionDataSource first;
+
+    private StubPartitionDataSource second;
+
+    private final AtomicInteger executed = new AtomicInteger();
+
+    @Before
+    public void setUp() {
+        first = new StubPartitionDataSource("ds_0", 1, 1);
+        second = new StubPartitionDataSource("ds_1", 1, 1);
+    }
+
+    @After
+    public void tearDown() {
+        first.shutdown();
+        second.shutdown();
+    }
+
+    @Test
+    public void queryTimeoutFromRemainingTime() throws SQLException {
+        ExecuteContext ctx = context(System.currentTimeMillis() + 2500);
+        Statement statement = StubStatements.create();
+        assertEquals(Collections.singletonList("ds_0"), new ExecuteProcessorSupport().execute(ctx, wrappers(statement), new SleepingCallback(0)));
+        // 剩余时间向上取整为秒
+        assertEquals(3, StubStatements.getQueryTimeout(statement));
+    }
+
+    @Test
+    public void expiredDeadlineSkipsExecution() throws SQLException {
+        long timeout = ShardingMetrics.get(ShardingMetrics.STATEMENT_TIMEOUT);
+        try {
+            new ExecuteProcessorSupport().execute(context(System.currentTimeMillis() - 1), wrappers(StubStatements.create()), new SleepingCallback(0));
+            fail("expired deadline should time out");
+        } catch (final SQLTimeoutException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().startsWith("Execute timeout before sql"));
+        }
+        assertEquals(0, executed.get());
+        assertEquals(timeout + 1, ShardingMetrics.get(ShardingMetrics.STATEMENT_TIMEOUT));
+    }
+
+    @Test
+    public void sharedDeadlineCancelsSlowShards() throws SQLException {
+        Statement fast = StubStatements.create();
+        Statement slow = StubStatements.create();
+        List<ExecuteStatementWrapper<Statement>> wrappers = Arrays.asList(
+                new ExecuteStatementWrapper<Statement>(new SQLExecutionUnit("ds_0", "ds_0"), fast),
+                new ExecuteStatementWrapper<Statement>(new SQLExecutionUnit("ds_1", "ds_1"), slow));
+        long timeout = ShardingMetrics.get(ShardingMetrics.STATEMENT_TIMEOUT);
+        long begin = System.currentTimeMillis();
+        try {
+            new ExecuteProcessorSupport().execute(context(begin + 200), wrappers, new SleepingCallback(5000));
+            fail("slow shard should time out");
+        } catch (final SQLTimeoutException ex) {
+            assertTrue(System.currentTimeMillis() - begin < 2000);
+        }
+        assertTrue(StubStatements.isCancelled(slow));
+        assertEquals(timeout + 1, ShardingMetrics.get(ShardingMetrics.STATEMENT_TIMEOUT));
+    }
+
+    @Test
+    public void processorTimeoutBoundsDeadline() throws SQLException {
+        ExecuteProcessorSupport processor = new ExecuteProcessorSupport();
+        processor.setTimeout(1);
+        Statement statement = StubStatements.create();
+        processor.execute(context(System.currentTimeMillis() + 60000), wrappers(statement), new SleepingCallback(0));
+        assertEquals(1, StubStatements.getQueryTimeout(statement));
+    }
+
+    private ExecuteContext context(final long deadline) {
+        return StubExecuteContexts.of(StubExecuteContexts.repository(first, second), true, deadline);
+    }
+
+    private static List<ExecuteStatementWrapper<Statement>> wrappers(final Statement statement) {
+        return Collections.singletonList(new ExecuteStatementWrapper<Statement>(new SQLExecutionUnit("ds_0", "ds_0"), statement));
+    }
+
+    // ds_1的查询按指定毫秒数执行, 其余立即返回
+    private class SleepingCallback implements ExecuteStatementCallback<Statement, String> {
+
+        private final long millis;
+
+        SleepingCallback(final long millis) {
+            this.millis = millis;
+        }
+
+        @Override
+        public String execute(final String actualSql, final Statement statement) throws SQLException {
+            executed.incrementAndGet();
+            if ("ds_1".equals(actualSql)) {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(millis);
+                } catch (final InterruptedException ex) {
+                    throw new SQLException("cancelled: " + actualSql);
+                }
+            }
+            return actualSql;
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package io.anyway.sherlock.testcase.executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.anyway.sherlock.executor.ExecuteContext;
+import io.anyway.sherlock.executor.ExecuteStatementCallback;
+import io.anyway.sherlock.executor.HedgeStatementCreator;
+import io.anyway.sherlock.executor.support.ExecuteProcessorSupport;
+import io.anyway.sherlock.executor.support.ExecuteStatementWrapper;
+import io.anyway.sherlock.metrics.ShardingMetrics;
+import io.anyway.sherlock.router.support.SQLExecutionUnit;
+import io.anyway.sherlock.testcase.StubExecuteContexts;
+import io.anyway.sherlock.testcase.StubPartitionDataSource;
+import io.anyway.sherlock.testcase.StubStatements;
+
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HedgedReadTest {
+
+    private StubPartitionDataSource partition;
+
+    private ExecuteContext ctx;
+
+    private Statement primary;
+
+    private final AtomicInteger created = new AtomicInteger();
+
+    @Before
+    public void setUp() {
+        partition = new StubPartitionDataSource("ds_0", 2, 1);
+        partition.setHedgePercentile(50);
+        partition.setHedgeMinDelay(20);
+        partition.setHedgeMaxRatio(0.1);
+        // 40次读操作允许4次对冲
+        for (int i = 0; i < 40; i++) {
+            partition.recordReadLatency(1);
+        }
+        ctx = StubExecuteContexts.of(StubExecuteContexts.repository(partition), true, 0);
+        primary = StubStatements.create();
+    }
+
+    @After
+    public void tearDown() {
+        partition.shutdown();
+    }
+
+    @Test
+    public void reserveHedgeWithinRatio() {
+        long skipped = ShardingMetrics.get(ShardingMetrics.HEDGE_SKIPPED);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(partition.reserveHedge());
+        }
+        assertFalse(partition.reserveHedge());
+        assertEquals(skipped + 1, ShardingMetrics.get(ShardingMetrics.HEDGE_SKIPPED));
+        partition.releaseHedge();
+        assertTrue(partition.reserveHedge());
+    }
+
+    @Test
+    public void hedgeWinsAndCancelsPrimary() throws SQLException {
+        long issued = ShardingMetrics.get(ShardingMetrics.HEDGE_ISSUED);
+        long issuedOnPartition = ShardingMetrics.get(ShardingMetrics.HEDGE_ISSUED + ".ds_0");
+        long won = ShardingMetrics.get(ShardingMetrics.HEDGE_WON);
+        assertEquals(Collections.singletonList("hedge"), execute(2000));
+        assertEquals(1, created.get());
+        assertTrue(StubStatements.isCancelled(primary));
+        assertEquals(issued + 1, ShardingMetrics.get(ShardingMetrics.HEDGE_ISSUED));
+        assertEquals(issuedOnPartition + 1, ShardingMetrics.get(ShardingMetrics.HEDGE_ISSUED + ".ds_0"));
+        assertEquals(won + 1, ShardingMetrics.get(ShardingMetrics.HEDGE_WON));
+    }
+
+    @Test
+    public void rejectedHedgeIsNotIssued() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        // 占满对冲线程池
+        partition.getHedgeExecutorService().submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    release.await();
+                } catch (final InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        long issued = ShardingMetrics.get(ShardingMetrics.HEDGE_ISSUED);
+        long skipped = ShardingMetrics.get(ShardingMetrics.HEDGE_SKIPPED);
+        try {
+            assertEquals(Collections.singletonList("primary"), execute(200));
+        } finally {
+            release.countDown();
+        }
+        // 没有空闲的对冲线程时不创建对冲Statement, 也不占用对冲比例
+        assertEquals(0, created.get());
+        assertEquals(issued, ShardingMetrics.get(ShardingMetrics.HEDGE_ISSUED));
+        assertEquals(skipped + 1, ShardingMetrics.get(ShardingMetrics.HEDGE_SKIPPED));
+        for (int i = 0; i < 4; i++) {
+            assertTrue(partition.reserveHedge());
+        }
+    }
+
+    @Test
+    public void noHedgeDataSourceReleasesReservation() throws SQLException {
+        long issued = ShardingMetrics.get(ShardingMetrics.HEDGE_ISSUED);
+        ExecuteStatementWrapper<Statement> wrapper = new ExecuteStatementWrapper<Statement>(new SQLExecutionUnit("ds_0", "select 1"), primary);
+        wrapper.setHedgeCreator(new HedgeStatementCreator<Statement>() {
+            @Override
+            public Statement createHedgeStatement() {
+                created.incrementAndGet();
+                return null;
+            }
+        });
+        assertEquals(Collections.singletonList("primary"), new ExecuteProcessorSupport().execute(ctx, Collections.singletonList(wrapper), new SlowPrimary(100)));
+        assertEquals(1, created.get());
+        assertEquals(issued, ShardingMetrics.get(ShardingMetrics.HEDGE_ISSUED));
+        for (int i = 0; i < 4; i++) {
+            assertTrue(partition.reserveHedge());
+        }
+    }
+
+    @Test
+    public void primaryFailureWithoutHedgeDataSource() {
+        ExecuteStatementWrapper<Statement> wrapper = new ExecuteStatementWrapper<Statement>(new SQLExecutionUnit("ds_0", "select 1"), primary);
+        wrapper.setHedgeCreator(new HedgeStatementCreator<Statement>() {
+            @Override
+            public Statement createHedgeStatement() {
+                created.incrementAndGet();
+                return null;
+            }
+        });
+        ExecuteContext deadlineCtx = StubExecuteContexts.of(StubExecuteContexts.repository(partition), true, System.currentTimeMillis() + 5000);
+        long begin = System.currentTimeMillis();
+        try {
+            new ExecuteProcessorSupport().execute(deadlineCtx, Collections.singletonList(wrapper), new ExecuteStatementCallback<Statement, String>() {
+                @Override
+                public String execute(final String actualSql, final Statement statement) throws SQLException {
+                    try {
+                        TimeUnit.MILLISECONDS.sleep(100);
+                    } catch (final InterruptedException ex) {
+                        throw new SQLException("cancelled");
+                    }
+                    throw new SQLException("primary failed");
+                }
+            });
+            fail("primary failure should be thrown");
+        } catch (final SQLException ex) {
+            // 没有创建出对冲Statement时, 原查询的错误直接返回, 不等到截止时间
+            assertFalse(ex instanceof SQLTimeoutException);
+            assertTrue(ex.getMessage(), ex.getMessage().endsWith("primary failed"));
+        }
+        assertEquals(1, created.get());
+        assertTrue(System.currentTimeMillis() - begin < 2000);
+    }
+
+    private List<String> execute(final long primaryMillis) throws SQLException {
+        ExecuteStatementWrapper<Statement> wrapper = new ExecuteStatementWrapper<Statement>(new SQLExecutionUnit("ds_0", "select 1"), primary);
+        wrapper.setHedgeCreator(new HedgeStatementCreator<Statement>() {
+            @Override
+            public Statement createHedgeStatement() {
+                created.incrementAndGet();
+                return StubStatements.create();
+            }
+        });
+        return new ExecuteProcessorSupport().execute(ctx, Collections.singletonList(wrapper), new SlowPrimary(primaryMillis));
+    }
+
+    private class SlowPrimary implements ExecuteStatementCallback<Statement, String> {
+
+        private final long millis;
+
+        SlowPrimary(final long millis) {
+            this.millis = millis;
+        }
+
+        @Override
+        public String execute(final String actualSql, final Statement statement) throws SQLException {
+            if (statement != primary) {
+                return "hedge";
+            }
+            try {
+                TimeUnit.MILLISECONDS.sleep(millis);
+            } catch (final InterruptedException ex) {
+                throw new SQLException("cancelled");
+            }
+            return "primary";
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package io.anyway.sherlock.testcase.executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import io.anyway.sherlock.executor.ExecuteContext;
+import io.anyway.sherlock.executor.ExecuteStatementCallback;
+import io.anyway.sherlock.executor.HedgeStatementCreator;
+import io.anyway.sherlock.executor.support.ExecuteProcessorSupport;
+import io.anyway.sherlock.executor.support.ExecuteStatementWrapper;
+import io.anyway.sherlock.merger.resultset.memory.MaterializedResultSet;
+import io.anyway.sherlock.metrics.ShardingMetrics;
+import io.anyway.sherlock.router.support.SQLExecutionUnit;
+import io.anyway.sherlock.testcase.StubExecuteContexts;
+import io.anyway.sherlock.testcase.StubPartitionDataSource;
+import io.anyway.sherlock.testcase.StubResultSets;
+import io.anyway.sherlock.testcase.StubStatements;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SharedConnectionTest {
+
+    private StubPartitionDataSource partition;
+
+    private ExecuteContext ctx;
+
+    private final AtomicInteger active = new AtomicInteger();
+
+    private final AtomicInteger maxActive = new AtomicInteger();
+
+    @Before
+    public void setUp() {
+        partition = new StubPartitionDataSource("ds_0", 4, 1);
+        ctx = StubExecuteContexts.of(StubExecuteContexts.repository(partition), true, 0);
+    }
+
+    @After
+    public void tearDown() {
+        partition.shutdown();
+    }
+
+    @Test
+    public void materializeAllButLastOnSharedConnection() throws SQLException {
+        // 超出连接预算的三个执行单元共用一个连接
+        Connection connection = StubStatements.connection();
+        List<ExecuteStatementWrapper<Statement>> wrappers = new ArrayList<ExecuteStatementWrapper<Statement>>();
+        for (int i = 0; i < 3; i++) {
+            wrappers.add(new ExecuteStatementWrapper<Statement>(new SQLExecutionUnit("ds_0", "t_order_" + i), StubStatements.create(connection)));
+        }
+        long materialized = ShardingMetrics.get(ShardingMetrics.RESULTSET_MATERIALIZED);
+        List<ResultSet> result = new ExecuteProcessorSupport().execute(ctx, wrappers, new QueryCallback());
+        assertEquals(1, maxActive.get());
+        assertEquals(materialized + 2, ShardingMetrics.get(ShardingMetrics.RESULTSET_MATERIALIZED));
+        assertTrue(result.get(0) instanceof MaterializedResultSet);
+        assertTrue(result.get(1) instanceof MaterializedResultSet);
+        assertFalse(result.get(2) instanceof MaterializedResultSet);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(result.get(i).next());
+            assertEquals("t_order_" + i, result.get(i).getString(1));
+        }
+    }
+
+    @Test
+    public void separateConnectionsRunConcurrently() throws SQLException {
+        List<ExecuteStatementWrapper<Statement>> wrappers = new ArrayList<ExecuteStatementWrapper<Statement>>();
+        for (int i = 0; i < 2; i++) {
+            wrappers.add(new ExecuteStatementWrapper<Statement>(new SQLExecutionUnit("ds_0", "t_order_" + i), StubStatements.create()));
+        }
+        long materialized = ShardingMetrics.get(ShardingMetrics.RESULTSET_MATERIALIZED);
+        List<ResultSet> result = new ExecuteProcessorSupport().execute(ctx, wrappers, new QueryCallback());
+        assertEquals(2, maxActive.get());
+        assertEquals(materialized, ShardingMetrics.get(ShardingMetrics.RESULTSET_MATERIALIZED));
+        assertFalse(result.get(0) instanceof MaterializedResultSet);
+    }
+
+    @Test
+    public void noHedgeOnSharedConnection() throws SQLException {
+        partition.setHedgePercentile(50);
+        partition.setHedgeMinDelay(1);
+        for (int i = 0; i < 40; i++) {
+            partition.recordReadLatency(1);
+        }
+        Connection connection = StubStatements.connection();
+        final AtomicInteger hedges = new AtomicInteger();
+        List<ExecuteStatementWrapper<Statement>> wrappers = new ArrayList<ExecuteStatementWrapper<Statement>>();
+        for (int i = 0; i < 2; i++) {
+            ExecuteStatementWrapper<Statement> each = new ExecuteStatementWrapper<Statement>(new SQLExecutionUnit("ds_0", "t_order_" + i), StubStatements.create(connection));
+            each.setHedgeCreator(new HedgeStatementCreator<Statement>() {
+                @Override
+                public Statement createHedgeStatement() {
+                    hedges.incrementAndGet();
+                    return StubStatements.create();
+                }
+            });
+            wrappers.add(each);
+        }
+        new ExecuteProcessorSupport().execute(ctx, wrappers, new QueryCallback());
+        assertEquals(0, hedges.get());
+        assertEquals(1, maxActive.get());
+    }
+
+    // 每个执行单元返回一行, 值为执行的SQL
+    private class QueryCallback implements ExecuteStatementCallback<Statement, ResultSet> {
+
+        @Override
+        public ResultSet execute(final String actualSql, final Statement statement) throws SQLException {
+            int current = active.incrementAndGet();
+            synchronized (maxActive) {
+                maxActive.set(Math.max(maxActive.get(), current));
+            }
+            try {
+                TimeUnit.MILLISECONDS.sleep(50);
+            } catch (final InterruptedException ex) {
+                throw new SQLException("cancelled: " + actualSql);
+            } finally {
+                active.decrementAndGet();
+            }
+            return StubResultSets.of(new String[] {"sql"}, new int[] {Types.VARCHAR}, new Object[][] {{actualSql}});
+        }
+    }
+}
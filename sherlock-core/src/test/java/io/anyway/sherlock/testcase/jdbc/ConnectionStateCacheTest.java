@@ -0,0 +1,86 @@
+package io.anyway.sherlock.testcase.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import io.anyway.sherlock.executor.support.ExecuteProcessorSupport;
+import io.anyway.sherlock.jdbc.ShardingConnection;
+import io.anyway.sherlock.jdbc.ShardingDataSource;
+import io.anyway.sherlock.testcase.StubDataSources;
+import io.anyway.sherlock.testcase.StubExecuteContexts;
+import io.anyway.sherlock.testcase.StubPartitionDataSource;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ConnectionStateCacheTest {
+
+    private final List<String> calls = Collections.synchronizedList(new ArrayList<String>());
+
+    private StubPartitionDataSource first;
+
+    private StubPartitionDataSource second;
+
+    private ShardingConnection connection;
+
+    @Before
+    public void setUp() throws SQLException {
+        first = new StubPartitionDataSource("ds_0", 1, 1);
+        second = new StubPartitionDataSource("ds_1", 1, 1);
+        first.setMasterDataSource(StubDataSources.create("ds_0", calls));
+        second.setMasterDataSource(StubDataSources.create("ds_1", calls));
+        // 延迟获取的代理初始化时会打开一个连接探测默认状态
+        calls.clear();
+        ShardingDataSource shardingDataSource = new ShardingDataSource();
+        shardingDataSource.setShardingDataSourceRepository(StubExecuteContexts.repository(first, second));
+        shardingDataSource.setProcessor(new ExecuteProcessorSupport());
+        connection = (ShardingConnection) shardingDataSource.getConnection();
+        connection.setAutoCommit(false);
+        // 分片数据源是延迟获取的代理, 创建Statement时才获取实际连接
+        connection.getConnection("ds_0").createStatement();
+        connection.getConnection("ds_1").createStatement();
+    }
+
+    @After
+    public void tearDown() {
+        first.shutdown();
+        second.shutdown();
+    }
+
+    @Test
+    public void openWithCurrentState() {
+        assertEquals(Arrays.asList("ds_0.open", "ds_0.setAutoCommit(false)", "ds_0.createStatement", "ds_1.open", "ds_1.setAutoCommit(false)", "ds_1.createStatement"),
+                calls);
+    }
+
+    @Test
+    public void skipUnchangedState() throws SQLException {
+        calls.clear();
+        connection.setAutoCommit(false);
+        connection.setReadOnly(false);
+        assertTrue(calls.toString(), calls.isEmpty());
+        connection.setReadOnly(true);
+        assertEquals(Arrays.asList("ds_0.setReadOnly(true)", "ds_1.setReadOnly(true)"), calls);
+        calls.clear();
+        connection.setReadOnly(true);
+        assertTrue(calls.toString(), calls.isEmpty());
+        connection.setAutoCommit(true);
+        assertEquals(Arrays.asList("ds_0.setAutoCommit(true)", "ds_1.setAutoCommit(true)"), calls);
+    }
+
+    @Test
+    public void forgetStateAfterClose() throws SQLException {
+        connection.close();
+        calls.clear();
+        connection.setAutoCommit(true);
+        connection.setReadOnly(true);
+        assertTrue(calls.toString(), calls.isEmpty());
+    }
+}
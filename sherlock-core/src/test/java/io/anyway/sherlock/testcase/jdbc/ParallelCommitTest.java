@@ -0,0 +1,98 @@
+package io.anyway.sherlock.testcase.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import io.anyway.sherlock.executor.support.ExecuteProcessorSupport;
+import io.anyway.sherlock.jdbc.ShardingConnection;
+import io.anyway.sherlock.jdbc.ShardingDataSource;
+import io.anyway.sherlock.testcase.StubDataSources;
+import io.anyway.sherlock.testcase.StubExecuteContexts;
+import io.anyway.sherlock.testcase.StubPartitionDataSource;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ParallelCommitTest {
+
+    private final List<String> calls = Collections.synchronizedList(new ArrayList<String>());
+
+    private StubPartitionDataSource first;
+
+    private StubPartitionDataSource second;
+
+    private ShardingDataSource shardingDataSource;
+
+    @Before
+    public void setUp() {
+        first = new StubPartitionDataSource("ds_0", 1, 1);
+        second = new StubPartitionDataSource("ds_1", 1, 1);
+        shardingDataSource = new ShardingDataSource();
+        shardingDataSource.setShardingDataSourceRepository(StubExecuteContexts.repository(first, second));
+        shardingDataSource.setProcessor(new ExecuteProcessorSupport());
+    }
+
+    @After
+    public void tearDown() {
+        first.shutdown();
+        second.shutdown();
+    }
+
+    @Test
+    public void commitInAcquisitionOrderByDefault() throws SQLException {
+        first.setMasterDataSource(StubDataSources.create("ds_0", calls));
+        second.setMasterDataSource(StubDataSources.create("ds_1", calls));
+        ShardingConnection connection = openTransaction("ds_1", "ds_0");
+        connection.commit();
+        assertEquals(Arrays.asList("ds_1.commit", "ds_0.commit"), calls);
+    }
+
+    @Test
+    public void commitAllPartitionsConcurrently() throws SQLException {
+        // 两个连接都开始提交后才能返回, 依次提交时第一个连接会等待超时
+        CountDownLatch barrier = new CountDownLatch(2);
+        first.setMasterDataSource(StubDataSources.create("ds_0", calls, barrier));
+        second.setMasterDataSource(StubDataSources.create("ds_1", calls, barrier));
+        shardingDataSource.setParallelCommit(true);
+        ShardingConnection connection = openTransaction("ds_0", "ds_1");
+        connection.commit();
+        assertEquals(2, calls.size());
+        assertTrue(calls.containsAll(Arrays.asList("ds_0.commit", "ds_1.commit")));
+    }
+
+    @Test
+    public void closeAllPartitionsConcurrently() throws SQLException {
+        first.setMasterDataSource(StubDataSources.create("ds_0", calls));
+        second.setMasterDataSource(StubDataSources.create("ds_1", calls));
+        shardingDataSource.setParallelCommit(true);
+        ShardingConnection connection = openTransaction("ds_0", "ds_1");
+        connection.rollback();
+        connection.close();
+        assertTrue(connection.isClosed());
+        assertTrue(calls.containsAll(Arrays.asList("ds_0.rollback", "ds_1.rollback", "ds_0.close", "ds_1.close")));
+        // 关闭后不再持有实际连接
+        calls.clear();
+        connection.commit();
+        assertFalse(calls.contains("ds_0.commit"));
+    }
+
+    private ShardingConnection openTransaction(final String... dataSourceNames) throws SQLException {
+        ShardingConnection result = (ShardingConnection) shardingDataSource.getConnection();
+        result.setAutoCommit(false);
+        for (String each : dataSourceNames) {
+            // 分片数据源是延迟获取的代理, 创建Statement时才获取实际连接
+            result.getConnection(each).createStatement();
+        }
+        calls.clear();
+        return result;
+    }
+}
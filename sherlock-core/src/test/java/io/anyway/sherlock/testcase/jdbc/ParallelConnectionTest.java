@@ -0,0 +1,167 @@
+package io.anyway.sherlock.testcase.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.anyway.sherlock.datasource.support.WeightDataSourceProxy;
+import io.anyway.sherlock.executor.support.ExecuteContextSupport;
+import io.anyway.sherlock.executor.support.ExecuteProcessorSupport;
+import io.anyway.sherlock.jdbc.ShardingConnection;
+import io.anyway.sherlock.jdbc.ShardingDataSource;
+import io.anyway.sherlock.metrics.ShardingMetrics;
+import io.anyway.sherlock.sqlparser.bean.SQLStatementType;
+import io.anyway.sherlock.testcase.StubDataSources;
+import io.anyway.sherlock.testcase.StubExecuteContexts;
+import io.anyway.sherlock.testcase.StubPartitionDataSource;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ParallelConnectionTest {
+
+    private final List<String> calls = Collections.synchronizedList(new ArrayList<String>());
+
+    private StubPartitionDataSource first;
+
+    private StubPartitionDataSource second;
+
+    private ShardingConnection connection;
+
+    // 为true时按各数据源的设置延迟或失败, 初始化探测默认状态时不受影响
+    private volatile boolean armed;
+
+    @Before
+    public void setUp() throws SQLException {
+        first = new StubPartitionDataSource("ds_0", 2, 1);
+        second = new StubPartitionDataSource("ds_1", 2, 1);
+        ShardingDataSource shardingDataSource = new ShardingDataSource();
+        shardingDataSource.setShardingDataSourceRepository(StubExecuteContexts.repository(first, second));
+        shardingDataSource.setProcessor(new ExecuteProcessorSupport());
+        connection = (ShardingConnection) shardingDataSource.getConnection();
+    }
+
+    @After
+    public void tearDown() {
+        first.shutdown();
+        second.shutdown();
+    }
+
+    @Test
+    public void releaseOpenedConnectionsOnFailure() throws Exception {
+        first.setMasterDataSource(direct("ds_0", 0, false));
+        second.setMasterDataSource(direct("ds_1", 100, true));
+        arm();
+        try {
+            getConnections("ds_0", "ds_1");
+            fail("failed checkout should be reported");
+        } catch (final SQLException ex) {
+            assertEquals("ds_1 is down", ex.getMessage());
+        }
+        // 先获取到的连接已关闭, 也没有记录为事务连接
+        assertEquals(Arrays.asList("ds_0.open", "ds_0.close"), calls);
+        assertNull(((ExecuteContextSupport) connection.getExecuteContext()).getTranOrUpdateConnection("ds_0"));
+    }
+
+    @Test
+    public void releaseOpenedConnectionsOnTimeout() throws Exception {
+        first.setMasterDataSource(direct("ds_0", 0, false));
+        second.setMasterDataSource(direct("ds_1", 2000, false));
+        arm();
+        ((ExecuteContextSupport) connection.getExecuteContext()).setDeadline(System.currentTimeMillis() + 200);
+        long begin = System.currentTimeMillis();
+        try {
+            getConnections("ds_0", "ds_1");
+            fail("slow checkout should time out");
+        } catch (final SQLTimeoutException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().contains("get partition connections timeout"));
+        }
+        assertTrue(System.currentTimeMillis() - begin < 1000);
+        assertEquals(Arrays.asList("ds_0.open", "ds_0.close"), calls);
+        // 慢的分片被中断, 之后不会再留下打开的连接
+        TimeUnit.MILLISECONDS.sleep(300);
+        assertEquals(Arrays.asList("ds_0.open", "ds_0.close"), calls);
+    }
+
+    @Test
+    public void shareConnectionsBeyondBudget() throws Exception {
+        first.setMasterDataSource(direct("ds_0", 0, false));
+        second.setMasterDataSource(direct("ds_1", 0, false));
+        first.setConnectionBudget(1);
+        second.setConnectionBudget(2);
+        arm();
+        ((ExecuteContextSupport) connection.getExecuteContext()).setStatementType(SQLStatementType.SELECT);
+        long exceeded = ShardingMetrics.get(ShardingMetrics.CONNECTION_BUDGET_EXCEEDED + ".ds_0");
+        List<Connection> result = getConnections("ds_0", "ds_1", "ds_0", "ds_1", "ds_0", "ds_1", "ds_1");
+        // 预算为1时所有执行单元共用一个连接, 预算为2时轮流共用两个连接
+        assertSame(result.get(0), result.get(2));
+        assertSame(result.get(0), result.get(4));
+        assertNotSame(result.get(1), result.get(3));
+        assertSame(result.get(1), result.get(5));
+        assertSame(result.get(3), result.get(6));
+        assertEquals(exceeded + 1, ShardingMetrics.get(ShardingMetrics.CONNECTION_BUDGET_EXCEEDED + ".ds_0"));
+        assertEquals(3, calls.size());
+        assertEquals(1, Collections.frequency(calls, "ds_0.open"));
+        assertEquals(2, Collections.frequency(calls, "ds_1.open"));
+    }
+
+    private void arm() {
+        // 初始化时探测默认状态打开的连接不计入
+        calls.clear();
+        armed = true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Connection> getConnections(final String... dataSourceNames) throws Exception {
+        Method method = ShardingConnection.class.getDeclaredMethod("getConnections", List.class);
+        method.setAccessible(true);
+        try {
+            return (List<Connection>) method.invoke(connection, Arrays.asList(dataSourceNames));
+        } catch (final InvocationTargetException ex) {
+            throw (Exception) ex.getCause();
+        }
+    }
+
+    // 获取连接时就访问目标数据源, 和连接池一样可能等待或失败
+    private DataSource direct(final String name, final long delay, final boolean down) {
+        final DataSource target = StubDataSources.create(name, calls);
+        return new WeightDataSourceProxy((DataSource) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {DataSource.class}, new InvocationHandler() {
+
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+                if (armed && "getConnection".equals(method.getName())) {
+                    TimeUnit.MILLISECONDS.sleep(delay);
+                    if (down) {
+                        throw new SQLException(name + " is down");
+                    }
+                }
+                return method.invoke(target, args);
+            }
+        })) {
+
+            @Override
+            public Connection getConnection() throws SQLException {
+                return getTargetDataSource().getConnection();
+            }
+        };
+    }
+}
@@ -0,0 +1,132 @@
+package io.anyway.sherlock.testcase.merger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import io.anyway.sherlock.merger.pipeline.coupling.aggregation.AggregationUnit;
+import io.anyway.sherlock.merger.pipeline.coupling.aggregation.ApproximateCountDistinctAggregationUnit;
+import io.anyway.sherlock.merger.pipeline.coupling.aggregation.PercentileAggregationUnit;
+import io.anyway.sherlock.sqlparser.SQLApproximateAggregation;
+import io.anyway.sherlock.testcase.StubResultSets;
+
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ApproximateAggregationUnitTest {
+
+    @Test
+    public void countDistinctWithoutTruncation() throws SQLException {
+        assertEquals(4L, merge(new ApproximateCountDistinctAggregationUnit(1), "3:" + hex(1) + "," + hex(2) + "," + hex(3), "2:" + hex(3) + "," + hex(4), null));
+        assertEquals(0L, merge(new ApproximateCountDistinctAggregationUnit(1), "0:"));
+        assertNull(merge(new ApproximateCountDistinctAggregationUnit(1), (String) null));
+    }
+
+    @Test
+    public void estimateCountDistinct() throws SQLException, NoSuchAlgorithmException {
+        // 三个分片各10万个值, 相邻分片重叠一半, 实际去重数为20万
+        String[] sketches = new String[3];
+        for (int shard = 0; shard < sketches.length; shard++) {
+            List<Long> hashes = new ArrayList<Long>();
+            for (int i = shard * 50000; i < shard * 50000 + 100000; i++) {
+                hashes.add(hash(String.valueOf(i)));
+            }
+            sketches[shard] = countDistinctSketch(hashes);
+        }
+        long result = (Long) merge(new ApproximateCountDistinctAggregationUnit(1), sketches);
+        assertTrue("estimate " + result, Math.abs(result - 200000) < 200000 * 0.1);
+    }
+
+    @Test(expected = SQLException.class)
+    public void invalidCountDistinctSketch() throws SQLException {
+        merge(new ApproximateCountDistinctAggregationUnit(1), "1,2,3");
+    }
+
+    @Test(expected = SQLException.class)
+    public void truncatedCountDistinctSketch() throws SQLException {
+        // 去重计数2000, 被截断后只返回两个哈希值
+        merge(new ApproximateCountDistinctAggregationUnit(1), "2000:" + hex(1) + "," + hex(2));
+    }
+
+    @Test(expected = SQLException.class)
+    public void partialHashInCountDistinctSketch() throws SQLException {
+        merge(new ApproximateCountDistinctAggregationUnit(1), "2:" + hex(1) + "," + hex(2).substring(0, 5));
+    }
+
+    @Test
+    public void percentileWithoutTruncation() throws SQLException {
+        assertEquals(3D, merge(new PercentileAggregationUnit(1, 0.5D), "3:5,1,3", "2:4,2"));
+        assertEquals(1D, merge(new PercentileAggregationUnit(1, 0D), "3:5,1,3", "2:4,2"));
+        assertEquals(5D, merge(new PercentileAggregationUnit(1, 1D), "3:5,1,3", "2:4,2"));
+        assertNull(merge(new PercentileAggregationUnit(1, 0.5D), null, "0:"));
+    }
+
+    @Test
+    public void percentileWeightedBySampledRows() throws SQLException {
+        // 第一个分片1000行全部返回, 第二个分片3072行返回k+1个样本, 只用前k个
+        StringBuilder first = new StringBuilder("1000:");
+        for (int i = 0; i < 1000; i++) {
+            first.append(i).append(',');
+        }
+        StringBuilder second = new StringBuilder("3072:");
+        for (int i = 0; i < SQLApproximateAggregation.SKETCH_SIZE; i++) {
+            second.append(1000 + i * 3).append(',');
+        }
+        second.append("39");
+        double median = (Double) merge(new PercentileAggregationUnit(1, 0.5D), first.substring(0, first.length() - 1), second.toString());
+        assertTrue("median " + median, Math.abs(median - 2036) < 40);
+        double p90 = (Double) merge(new PercentileAggregationUnit(1, 0.9D), first.substring(0, first.length() - 1), second.toString());
+        assertTrue("p90 " + p90, Math.abs(p90 - 3665) < 40);
+    }
+
+    @Test(expected = SQLException.class)
+    public void invalidPercentileSketch() throws SQLException {
+        merge(new PercentileAggregationUnit(1, 0.5D), "2:1,x");
+    }
+
+    @Test(expected = SQLException.class)
+    public void truncatedPercentileSketch() throws SQLException {
+        merge(new PercentileAggregationUnit(1, 0.5D), "3000:1,2,3");
+    }
+
+    private static Comparable<?> merge(final AggregationUnit unit, final String... sketches) throws SQLException {
+        Object[][] rows = new Object[sketches.length][];
+        for (int i = 0; i < sketches.length; i++) {
+            rows[i] = new Object[] {sketches[i]};
+        }
+        ResultSet resultSet = StubResultSets.of(new String[] {"sketch"}, new int[] {Types.VARCHAR}, rows);
+        while (resultSet.next()) {
+            unit.merge(resultSet);
+        }
+        return unit.getResult();
+    }
+
+    // 和分片上一样取MD5的前60位
+    private static long hash(final String value) throws NoSuchAlgorithmException {
+        byte[] digest = MessageDigest.getInstance("MD5").digest(value.getBytes());
+        return new BigInteger(1, digest).shiftRight(128 - 60).longValue();
+    }
+
+    private static String hex(final long hash) {
+        return String.format("%0" + SQLApproximateAggregation.HASH_LENGTH + "x", hash);
+    }
+
+    // 和MySQL一样返回去重计数和最小的k+1个哈希值, 最后一个可能被截断
+    private static String countDistinctSketch(final List<Long> hashes) {
+        Collections.sort(hashes);
+        StringBuilder result = new StringBuilder().append(hashes.size()).append(':');
+        for (int i = 0; i < SQLApproximateAggregation.SKETCH_SIZE; i++) {
+            result.append(hex(hashes.get(i))).append(',');
+        }
+        return result.append(hex(hashes.get(SQLApproximateAggregation.SKETCH_SIZE)).substring(0, 5)).toString();
+    }
+}
@@ -0,0 +1,156 @@
+package io.anyway.sherlock.testcase.merger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import io.anyway.sherlock.merger.resultset.memory.row.ColumnarRowBuffer;
+import io.anyway.sherlock.sqlparser.bean.OrderColumn;
+import io.anyway.sherlock.sqlparser.bean.OrderColumn.OrderType;
+import io.anyway.sherlock.testcase.StubResultSets;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+public class ColumnarRowBufferTest {
+
+    private static final String[] LABELS = {"user_id", "price", "name", "memo"};
+
+    private static final int[] TYPES = {Types.BIGINT, Types.DOUBLE, Types.VARCHAR, Types.OTHER};
+
+    @Test
+    public void sortByMultipleColumns() throws SQLException {
+        ColumnarRowBuffer buffer = load(LABELS, TYPES, new Object[][] {
+            {3L, 1.5D, "b", "r0"}, {1L, 2.5D, "a", "r1"}, {3L, 0.5D, "c", "r2"}, {2L, 9.0D, "ab", "r3"}, {1L, 2.5D, "", "r4"}});
+        assertArrayEquals(new int[] {4, 1, 3, 0, 2}, buffer.sort(orderBy(1, OrderType.ASC, 3, OrderType.ASC)));
+        assertArrayEquals(new int[] {0, 2, 3, 1, 4}, buffer.sort(orderBy(1, OrderType.DESC, 2, OrderType.DESC)));
+        assertArrayEquals(new int[] {4, 1, 3, 0, 2}, buffer.sort(orderBy(3, OrderType.ASC)));
+    }
+
+    @Test
+    public void sortIsStable() throws SQLException {
+        ColumnarRowBuffer buffer = load(LABELS, TYPES, new Object[][] {
+            {2L, 1D, "x", "r0"}, {1L, 1D, "x", "r1"}, {2L, 1D, "x", "r2"}, {1L, 1D, "x", "r3"}, {2L, 1D, "x", "r4"},
+            {1L, 1D, "x", "r5"}, {2L, 1D, "x", "r6"}, {1L, 1D, "x", "r7"}, {2L, 1D, "x", "r8"}});
+        assertArrayEquals(new int[] {1, 3, 5, 7, 0, 2, 4, 6, 8}, buffer.sort(orderBy(1, OrderType.ASC)));
+        assertArrayEquals(new int[] {0, 2, 4, 6, 8, 1, 3, 5, 7}, buffer.sort(orderBy(1, OrderType.DESC)));
+        assertArrayEquals(new int[] {0, 1, 2, 3, 4, 5, 6, 7, 8}, buffer.sort(Collections.<OrderColumn>emptyList()));
+    }
+
+    @Test
+    public void parallelSortMatchesSequentialSort() throws SQLException {
+        int rows = 40000;
+        Random random = new Random(42L);
+        Object[][] data = new Object[rows][];
+        for (int i = 0; i < rows; i++) {
+            data[i] = new Object[] {(long) random.nextInt(100), random.nextDouble(), "n" + random.nextInt(1000), "r" + i};
+        }
+        ColumnarRowBuffer buffer = load(LABELS, TYPES, data);
+        List<OrderColumn> orderByColumns = orderBy(1, OrderType.ASC, 3, OrderType.DESC);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            int[] expected = buffer.sort(orderByColumns);
+            assertArrayEquals(expected, buffer.sort(orderByColumns, executor, true));
+            // 线程池已关闭时在调用线程中排序
+            executor.shutdown();
+            assertArrayEquals(expected, buffer.sort(orderByColumns, executor, true));
+            for (int i = 1; i < rows; i++) {
+                assertTrue(compare(buffer, expected[i - 1], expected[i]) < 0);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void nullValues() throws SQLException {
+        ColumnarRowBuffer buffer = load(LABELS, TYPES, new Object[][] {{1L, 2.0D, "a", "r0"}, {null, null, null, null}});
+        assertFalse(buffer.isNull(0, 1));
+        for (int i = 1; i <= LABELS.length; i++) {
+            assertTrue(buffer.isNull(1, i));
+            assertNull(buffer.get(1, i));
+        }
+        assertEquals(0L, buffer.getLong(1, 1));
+        assertEquals(0D, buffer.getDouble(1, 2), 0D);
+        assertNull(buffer.getRow(1).getCell(3));
+        assertTrue(buffer.getRow(1).isNull(4));
+    }
+
+    @Test
+    public void sortNullValue() throws SQLException {
+        ColumnarRowBuffer buffer = load(LABELS, TYPES, new Object[][] {
+            {1L, 2.0D, "a", "r0"}, {null, 1.0D, null, "r1"}, {0L, null, "b", "r2"}, {null, 3.0D, "c", null}});
+        // MySQL中空值最小, 升序时排在最前
+        assertArrayEquals(new int[] {1, 3, 2, 0}, buffer.sort(orderBy(1, OrderType.ASC)));
+        assertArrayEquals(new int[] {0, 2, 1, 3}, buffer.sort(orderBy(1, OrderType.DESC)));
+        assertArrayEquals(new int[] {3, 1, 2, 0}, buffer.sort(orderBy(1, OrderType.ASC, 2, OrderType.DESC)));
+        assertArrayEquals(new int[] {1, 0, 2, 3}, buffer.sort(orderBy(3, OrderType.ASC)));
+        assertArrayEquals(new int[] {3, 0, 1, 2}, buffer.sort(orderBy(4, OrderType.ASC), null, true));
+        // PostgreSQL和Oracle中空值最大, 升序时排在最后
+        assertArrayEquals(new int[] {2, 0, 1, 3}, buffer.sort(orderBy(1, OrderType.ASC), null, false));
+        assertArrayEquals(new int[] {1, 3, 0, 2}, buffer.sort(orderBy(1, OrderType.DESC), null, false));
+        assertArrayEquals(new int[] {1, 0, 3, 2}, buffer.sort(orderBy(2, OrderType.ASC), null, false));
+    }
+
+    @Test
+    public void fallbackToObjectColumn() throws SQLException {
+        ColumnarRowBuffer buffer = new ColumnarRowBuffer(2);
+        String[] labels = {"user_id", "price"};
+        add(buffer, StubResultSets.of(labels, new int[] {Types.INTEGER, Types.DOUBLE}, new Object[][] {{2, 1.5D}, {null, 0.5D}}));
+        // 第二个分片同一列的Java类型不同, 已读取的数据转为按对象保存, 取出的值和驱动返回的类型相同
+        add(buffer, StubResultSets.of(labels, new int[] {Types.BIGINT, Types.OTHER}, new Object[][] {{3L, 2.5D}, {1L, null}}));
+        assertEquals(Integer.valueOf(2), buffer.get(0, 1));
+        assertNull(buffer.get(1, 1));
+        assertTrue(buffer.isNull(1, 1));
+        assertEquals(0L, buffer.getLong(1, 1));
+        assertEquals(Long.valueOf(3L), buffer.get(2, 1));
+        assertEquals(3L, buffer.getLong(2, 1));
+        assertEquals(Double.valueOf(0.5D), buffer.get(1, 2));
+        assertTrue(buffer.isNull(3, 2));
+        buffer.set(3, 2, 0.75D);
+        assertArrayEquals(new int[] {2, 0, 3, 1}, buffer.sort(orderBy(2, OrderType.DESC)));
+    }
+
+    private static int compare(final ColumnarRowBuffer buffer, final int a, final int b) {
+        long x = buffer.getLong(a, 1);
+        long y = buffer.getLong(b, 1);
+        int result = x < y ? -1 : (x == y ? 0 : 1);
+        if (0 == result) {
+            result = -((String) buffer.get(a, 3)).compareTo((String) buffer.get(b, 3));
+        }
+        return 0 == result ? a - b : result;
+    }
+
+    private static ColumnarRowBuffer load(final String[] labels, final int[] types, final Object[][] rows) throws SQLException {
+        ColumnarRowBuffer result = new ColumnarRowBuffer(labels.length);
+        add(result, StubResultSets.of(labels, types, rows));
+        return result;
+    }
+
+    private static void add(final ColumnarRowBuffer buffer, final ResultSet resultSet) throws SQLException {
+        buffer.bind(resultSet.getMetaData());
+        while (resultSet.next()) {
+            buffer.add(resultSet);
+        }
+    }
+
+    private static List<OrderColumn> orderBy(final Object... columns) {
+        OrderColumn[] result = new OrderColumn[columns.length / 2];
+        for (int i = 0; i < result.length; i++) {
+            int columnIndex = (Integer) columns[i * 2];
+            result[i] = new OrderColumn(LABELS[columnIndex - 1], (OrderType) columns[i * 2 + 1], columnIndex);
+        }
+        return Arrays.asList(result);
+    }
+}
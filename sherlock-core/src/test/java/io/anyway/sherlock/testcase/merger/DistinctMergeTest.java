@@ -0,0 +1,71 @@
+package io.anyway.sherlock.testcase.merger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import io.anyway.sherlock.datasource.DatabaseType;
+import io.anyway.sherlock.merger.MergeContext;
+import io.anyway.sherlock.merger.ResultSetFactory;
+import io.anyway.sherlock.sqlparser.SQLParsedResult;
+import io.anyway.sherlock.sqlparser.SQLParserFactory;
+import io.anyway.sherlock.testcase.StubExecuteContexts;
+import io.anyway.sherlock.testcase.StubResultSets;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class DistinctMergeTest {
+
+    @Test
+    public void sortedDistinctOnNumbers() throws SQLException {
+        MergeContext mergeContext = mergeContext("select distinct user_id from t_order order by user_id", "user_id", Types.BIGINT,
+                new Object[][] {{1L}, {2L}, {2L}, {4L}},
+                new Object[][] {{2L}, {3L}, {4L}});
+        assertTrue(mergeContext.isDistinctSorted());
+        assertEquals(Arrays.<Object>asList(1L, 2L, 3L, 4L), merge(mergeContext));
+    }
+
+    @Test
+    public void hashDistinctOnCollatedStrings() throws SQLException {
+        // MySQL按不区分大小写的排序规则返回, 按Java的顺序归并后相同的行不相邻
+        MergeContext mergeContext = mergeContext("select distinct city from t_user order by city", "city", Types.VARCHAR,
+                new Object[][] {{"a"}, {"B"}, {"c"}},
+                new Object[][] {{"B"}, {"b"}, {"C"}, {"c"}});
+        assertFalse(mergeContext.isDistinctSorted());
+        assertEquals(Arrays.<Object>asList("B", "C", "a", "b", "c"), merge(mergeContext));
+    }
+
+    @Test
+    public void hashDistinctOnCollatedStringsDescending() throws SQLException {
+        MergeContext mergeContext = mergeContext("select distinct city from t_user order by city desc", "city", Types.VARCHAR,
+                new Object[][] {{"c"}, {"B"}, {"a"}},
+                new Object[][] {{"C"}, {"b"}, {"B"}});
+        assertFalse(mergeContext.isDistinctSorted());
+        assertEquals(Arrays.<Object>asList("c", "b", "a", "C", "B"), merge(mergeContext));
+    }
+
+    private static MergeContext mergeContext(final String sql, final String label, final int type, final Object[][]... shards) throws SQLException {
+        SQLParsedResult parsedResult = SQLParserFactory.create(DatabaseType.MySQL, sql, new ArrayList<Object>()).parse();
+        List<ResultSet> resultSets = new ArrayList<ResultSet>(shards.length);
+        for (Object[][] each : shards) {
+            resultSets.add(StubResultSets.of(new String[] {label}, new int[] {type}, each));
+        }
+        return new MergeContext(resultSets, StubExecuteContexts.of(parsedResult, DatabaseType.MySQL, null));
+    }
+
+    private static List<Object> merge(final MergeContext mergeContext) throws SQLException {
+        ResultSet resultSet = ResultSetFactory.getResultSet(mergeContext);
+        List<Object> result = new ArrayList<Object>();
+        while (resultSet.next()) {
+            result.add(resultSet.getObject(1));
+        }
+        return result;
+    }
+}
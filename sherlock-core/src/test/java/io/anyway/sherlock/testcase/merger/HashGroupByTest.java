@@ -0,0 +1,108 @@
+package io.anyway.sherlock.testcase.merger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.anyway.sherlock.datasource.DatabaseType;
+import io.anyway.sherlock.merger.MergeContext;
+import io.anyway.sherlock.merger.ResultSetFactory;
+import io.anyway.sherlock.merger.pipeline.coupling.aggregation.AggregationUnit;
+import io.anyway.sherlock.merger.pipeline.coupling.aggregation.DoubleAccumulationAggregationUnit;
+import io.anyway.sherlock.merger.pipeline.coupling.aggregation.LongAccumulationAggregationUnit;
+import io.anyway.sherlock.sqlparser.SQLParsedResult;
+import io.anyway.sherlock.sqlparser.SQLParserFactory;
+import io.anyway.sherlock.testcase.StubExecuteContexts;
+import io.anyway.sherlock.testcase.StubResultSets;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class HashGroupByTest {
+
+    @Test
+    public void longAccumulation() throws SQLException {
+        assertEquals(6L, merge(new LongAccumulationAggregationUnit(1), Types.BIGINT, 1L, null, 5L));
+        // 全部为空时结果为空, 和数据库的SUM一致
+        assertNull(merge(new LongAccumulationAggregationUnit(1), Types.BIGINT, null, null));
+        assertEquals(Long.MIN_VALUE, merge(new LongAccumulationAggregationUnit(1), Types.BIGINT, Long.MIN_VALUE + 1, -1L));
+    }
+
+    @Test
+    public void longAccumulationOverflow() {
+        try {
+            merge(new LongAccumulationAggregationUnit(1), Types.BIGINT, Long.MAX_VALUE, 1L);
+            fail("overflow should be rejected");
+        } catch (final SQLException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().contains("out of range"));
+        }
+        try {
+            merge(new LongAccumulationAggregationUnit(1), Types.BIGINT, Long.MIN_VALUE, -1L);
+            fail("overflow should be rejected");
+        } catch (final SQLException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().contains("out of range"));
+        }
+    }
+
+    @Test
+    public void doubleAccumulation() throws SQLException {
+        assertEquals(4D, merge(new DoubleAccumulationAggregationUnit(1), Types.DOUBLE, 1.5D, null, 2.5D));
+        assertNull(merge(new DoubleAccumulationAggregationUnit(1), Types.DOUBLE, (Object) null));
+    }
+
+    @Test
+    public void aggregateByColumnType() throws SQLException {
+        // 字符串分组列只能哈希分组, 各聚合列按类型选择累加方式
+        String sql = "select user_name, sum(qty) as qty, sum(price) as price, sum(amount) as amount, count(*) as cnt from t_order group by user_name";
+        String[] labels = {"user_name", "qty", "price", "amount", "cnt"};
+        int[] types = {Types.VARCHAR, Types.BIGINT, Types.DOUBLE, Types.DECIMAL, Types.BIGINT};
+        SQLParsedResult parsedResult = SQLParserFactory.create(DatabaseType.MySQL, sql, new ArrayList<Object>()).parse();
+        List<ResultSet> resultSets = new ArrayList<ResultSet>();
+        resultSets.add(StubResultSets.of(labels, types, new Object[][] {
+            {"a", 1L, 0.5D, new BigDecimal("1.10"), 1L},
+            {"b", 2L, 1.5D, new BigDecimal("2.20"), 2L},
+        }));
+        resultSets.add(StubResultSets.of(labels, types, new Object[][] {
+            {"b", 3L, 2.5D, new BigDecimal("3.30"), 3L},
+            {"a", null, null, null, 4L},
+        }));
+        MergeContext mergeContext = new MergeContext(resultSets, StubExecuteContexts.of(sql, parsedResult, DatabaseType.MySQL, null));
+        assertFalse(mergeContext.isGroupBySorted());
+        ResultSet resultSet = ResultSetFactory.getResultSet(mergeContext);
+        Map<Object, Object[]> rows = new HashMap<Object, Object[]>();
+        while (resultSet.next()) {
+            rows.put(resultSet.getObject(1), new Object[] {resultSet.getObject(2), resultSet.getObject(3), resultSet.getObject(4), resultSet.getObject(5)});
+        }
+        assertEquals(2, rows.size());
+        assertRow(rows.get("a"), 1L, 0.5D, new BigDecimal("1.10"), 5L);
+        assertRow(rows.get("b"), 5L, 4D, new BigDecimal("5.50"), 5L);
+    }
+
+    private static void assertRow(final Object[] actual, final Object... expected) {
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], actual[i]);
+        }
+    }
+
+    private static Comparable<?> merge(final AggregationUnit unit, final int type, final Object... values) throws SQLException {
+        Object[][] rows = new Object[values.length][];
+        for (int i = 0; i < values.length; i++) {
+            rows[i] = new Object[] {values[i]};
+        }
+        ResultSet resultSet = StubResultSets.of(new String[] {"value"}, new int[] {type}, rows);
+        while (resultSet.next()) {
+            unit.merge(resultSet);
+        }
+        return unit.getResult();
+    }
+}
@@ -0,0 +1,111 @@
+package io.anyway.sherlock.testcase.merger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import io.anyway.sherlock.datasource.DatabaseType;
+import io.anyway.sherlock.executor.ExecuteCompletion;
+import io.anyway.sherlock.executor.ExecuteContext;
+import io.anyway.sherlock.executor.ExecuteStatementCallback;
+import io.anyway.sherlock.executor.support.ExecuteProcessorSupport;
+import io.anyway.sherlock.executor.support.ExecuteStatementWrapper;
+import io.anyway.sherlock.merger.MergeUtils;
+import io.anyway.sherlock.router.support.SQLExecutionUnit;
+import io.anyway.sherlock.sqlparser.SQLParserFactory;
+import io.anyway.sherlock.testcase.StubExecuteContexts;
+import io.anyway.sherlock.testcase.StubPartitionDataSource;
+import io.anyway.sherlock.testcase.StubResultSets;
+import io.anyway.sherlock.testcase.StubStatements;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LimitCancelTest {
+
+    private final List<StubPartitionDataSource> partitions = new ArrayList<StubPartitionDataSource>();
+
+    private final Map<String, ResultSet> results = new ConcurrentHashMap<String, ResultSet>();
+
+    private ExecuteContext ctx;
+
+    @Before
+    public void setUp() {
+        for (int i = 0; i < 3; i++) {
+            partitions.add(new StubPartitionDataSource("ds_" + i, 1, 1));
+        }
+        ctx = StubExecuteContexts.of(StubExecuteContexts.repository(partitions.toArray(new StubPartitionDataSource[partitions.size()])), true, 0);
+    }
+
+    @After
+    public void tearDown() {
+        for (StubPartitionDataSource each : partitions) {
+            each.shutdown();
+        }
+    }
+
+    @Test
+    public void reachLimitCancelsRunningShards() throws Exception {
+        List<ExecuteStatementWrapper<Statement>> wrappers = wrappers("ds_0:0", "ds_1:100", "ds_2:5000");
+        // MySQL流式读取的分片, 关闭结果集前要先取消查询
+        wrappers.get(1).getStatement().setFetchSize(Integer.MIN_VALUE);
+        ExecuteCompletion<ResultSet> completion = new ExecuteProcessorSupport().executeStreaming(ctx, wrappers, new QueryCallback());
+        ResultSet resultSet = MergeUtils.mergeResultSet(completion, context("select order_id from t_order limit 2"));
+        assertTrue(resultSet.next());
+        // 等第二个分片执行完成但还没有被读取
+        TimeUnit.MILLISECONDS.sleep(500);
+        assertTrue(results.containsKey("ds_1:100"));
+        assertFalse(results.get("ds_1:100").isClosed());
+        // 返回最后一行时关闭归并结果集
+        assertTrue(resultSet.next());
+        assertEquals(2L, resultSet.getLong(1));
+        assertTrue(results.get("ds_0:0").isClosed());
+        assertFalse(StubStatements.isCancelled(wrappers.get(0).getStatement()));
+        assertTrue(results.get("ds_1:100").isClosed());
+        assertTrue(StubStatements.isCancelled(wrappers.get(1).getStatement()));
+        // 还在执行的分片取消查询
+        assertTrue(StubStatements.isCancelled(wrappers.get(2).getStatement()));
+        assertFalse(results.containsKey("ds_2:5000"));
+        assertFalse(resultSet.next());
+    }
+
+    private static ExecuteContext context(final String sql) throws SQLException {
+        return StubExecuteContexts.of(SQLParserFactory.create(DatabaseType.MySQL, sql, new ArrayList<Object>()).parse(), DatabaseType.MySQL, null);
+    }
+
+    // 执行单元的SQL为"分片:毫秒数"
+    private static List<ExecuteStatementWrapper<Statement>> wrappers(final String... sqls) {
+        List<ExecuteStatementWrapper<Statement>> result = new ArrayList<ExecuteStatementWrapper<Statement>>(sqls.length);
+        for (String each : sqls) {
+            result.add(new ExecuteStatementWrapper<Statement>(new SQLExecutionUnit(each.substring(0, each.indexOf(':')), each), StubStatements.create()));
+        }
+        return result;
+    }
+
+    // 每个分片返回两行, 执行完成的结果集按SQL记录
+    private class QueryCallback implements ExecuteStatementCallback<Statement, ResultSet> {
+
+        @Override
+        public ResultSet execute(final String actualSql, final Statement statement) throws SQLException {
+            try {
+                TimeUnit.MILLISECONDS.sleep(Long.parseLong(actualSql.substring(actualSql.indexOf(':') + 1)));
+            } catch (final InterruptedException ex) {
+                throw new SQLException("cancelled: " + actualSql);
+            }
+            ResultSet result = StubResultSets.of(statement, new String[] {"order_id"}, new int[] {Types.BIGINT}, new Object[][] {{1L}, {2L}});
+            results.put(actualSql, result);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package io.anyway.sherlock.testcase.merger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import io.anyway.sherlock.datasource.DatabaseType;
+import io.anyway.sherlock.executor.ExecuteContext;
+import io.anyway.sherlock.merger.MergeContext;
+import io.anyway.sherlock.merger.MergeUtils;
+import io.anyway.sherlock.merger.ResultSetFactory;
+import io.anyway.sherlock.merger.pipeline.coupling.MaxRowsCouplingResultSet;
+import io.anyway.sherlock.sqlparser.SQLParserFactory;
+import io.anyway.sherlock.testcase.StubExecuteContexts;
+import io.anyway.sherlock.testcase.StubResultSets;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class MaxRowsTest {
+
+    @Test
+    public void pushMaxRowsToShards() throws SQLException {
+        assertEquals(10, MergeUtils.getPushableMaxRows(context("select order_id from t_order"), 10));
+        assertEquals(0, MergeUtils.getPushableMaxRows(context("select order_id from t_order"), 0));
+        // 归并时要先跳过offset行
+        assertEquals(15, MergeUtils.getPushableMaxRows(context("select order_id from t_order limit 5, 20"), 10));
+    }
+
+    @Test
+    public void keepAllShardRowsForAggregation() throws SQLException {
+        assertEquals(0, MergeUtils.getPushableMaxRows(context("select count(*) from t_order"), 10));
+        assertEquals(0, MergeUtils.getPushableMaxRows(context("select user_id from t_order group by user_id"), 10));
+    }
+
+    @Test
+    public void overflowDisablesPushDown() throws SQLException {
+        assertEquals(0, MergeUtils.getPushableMaxRows(context("select order_id from t_order limit 2147483600, 10"), 100));
+    }
+
+    @Test
+    public void capMergedRows() throws SQLException {
+        // 两个分片各自返回maxRows行, 归并后仍只保留maxRows行
+        ExecuteContext ctx = context("select order_id from t_order");
+        List<ResultSet> shards = Arrays.asList(shard(1L, 2L), shard(3L, 4L));
+        ResultSet resultSet = new MaxRowsCouplingResultSet(ResultSetFactory.getResultSet(new MergeContext(shards, ctx)), 3, Collections.<Statement>emptyList());
+        assertTrue(resultSet.next());
+        assertTrue(resultSet.next());
+        assertFalse(shards.get(0).isClosed());
+        assertTrue(resultSet.next());
+        // 返回最后一行时已关闭分片结果集, 最后一行仍可读取
+        assertTrue(shards.get(0).isClosed());
+        assertTrue(shards.get(1).isClosed());
+        assertTrue(resultSet.getObject(1) instanceof Long);
+        assertFalse(resultSet.next());
+    }
+
+    @Test
+    public void fewerRowsThanMax() throws SQLException {
+        ResultSet resultSet = new MaxRowsCouplingResultSet(shard(1L, 2L), 5, Collections.<Statement>emptyList());
+        assertTrue(resultSet.next());
+        assertTrue(resultSet.next());
+        assertFalse(resultSet.next());
+    }
+
+    private static ExecuteContext context(final String sql) throws SQLException {
+        return StubExecuteContexts.of(SQLParserFactory.create(DatabaseType.MySQL, sql, new ArrayList<Object>()).parse(), DatabaseType.MySQL, null);
+    }
+
+    private static ResultSet shard(final Object... orderIds) {
+        Object[][] rows = new Object[orderIds.length][];
+        for (int i = 0; i < orderIds.length; i++) {
+            rows[i] = new Object[] {orderIds[i]};
+        }
+        return StubResultSets.of(new String[] {"order_id"}, new int[] {Types.BIGINT}, rows);
+    }
+}
@@ -0,0 +1,115 @@
+package io.anyway.sherlock.testcase.merger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.anyway.sherlock.merger.resultset.memory.MaterializedResultSet;
+import io.anyway.sherlock.merger.resultset.memory.row.ColumnType;
+import io.anyway.sherlock.testcase.StubResultSets;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+
+import org.junit.Test;
+
+public class MemoryResultSetGetterTest {
+
+    private static final String[] LABELS = {"user_id", "age", "price", "amount", "name", "memo"};
+
+    private static final int[] TYPES = {Types.BIGINT, Types.INTEGER, Types.DOUBLE, Types.DECIMAL, Types.VARCHAR, Types.OTHER};
+
+    @Test
+    public void resolveColumnType() {
+        assertEquals(ColumnType.LONG, ColumnType.of(Long.class.getName()));
+        assertEquals(ColumnType.INTEGER, ColumnType.of(Integer.class.getName()));
+        assertEquals(ColumnType.BIG_DECIMAL, ColumnType.of(BigDecimal.class.getName()));
+        assertEquals(ColumnType.STRING, ColumnType.of(String.class.getName()));
+        assertEquals(ColumnType.OBJECT, ColumnType.of("java.sql.Timestamp"));
+        assertEquals(ColumnType.OBJECT, ColumnType.of(null));
+        assertTrue(ColumnType.SHORT.isIntegral());
+        assertTrue(ColumnType.FLOAT.isFloating());
+        assertFalse(ColumnType.BIG_DECIMAL.isIntegral());
+    }
+
+    @Test
+    public void primitiveGetters() throws SQLException {
+        ResultSet resultSet = load(new Object[][] {{7L, 30, 2.5D, new BigDecimal("10.25"), "tom", 5}});
+        assertTrue(resultSet.next());
+        assertEquals(7L, resultSet.getLong(1));
+        assertEquals(7, resultSet.getInt(1));
+        assertEquals(7.0D, resultSet.getDouble(1), 0D);
+        assertEquals(30, resultSet.getInt(2));
+        assertEquals((short) 30, resultSet.getShort(2));
+        assertEquals((byte) 30, resultSet.getByte(2));
+        assertEquals(2L, resultSet.getLong(3));
+        assertEquals(2.5F, resultSet.getFloat(3), 0F);
+        assertEquals(10L, resultSet.getLong(4));
+        assertEquals(10.25D, resultSet.getDouble(4), 0D);
+        // 未知类型的列按值转换
+        assertEquals(5L, resultSet.getLong(6));
+        assertEquals(5.0D, resultSet.getDouble(6), 0D);
+        assertFalse(resultSet.wasNull());
+        assertFalse(resultSet.next());
+    }
+
+    @Test
+    public void objectGetters() throws SQLException {
+        ResultSet resultSet = load(new Object[][] {{7L, 30, 2.5D, new BigDecimal("10.25"), "tom", "memo"}});
+        assertTrue(resultSet.next());
+        assertEquals("7", resultSet.getString(1));
+        assertEquals("tom", resultSet.getString(5));
+        assertEquals(new BigDecimal("10.25"), resultSet.getBigDecimal(4));
+        assertEquals(new BigDecimal("10.3"), resultSet.getBigDecimal(4, 1));
+        assertEquals(new BigDecimal("7"), resultSet.getBigDecimal(1));
+        assertEquals(new BigDecimal("2.5"), resultSet.getBigDecimal(3));
+    }
+
+    @Test
+    public void nullValues() throws SQLException {
+        ResultSet resultSet = load(new Object[][] {{null, null, null, null, null, null}});
+        assertTrue(resultSet.next());
+        assertEquals(0L, resultSet.getLong(1));
+        assertTrue(resultSet.wasNull());
+        assertEquals(0, resultSet.getInt(2));
+        assertTrue(resultSet.wasNull());
+        assertEquals(0D, resultSet.getDouble(3), 0D);
+        assertTrue(resultSet.wasNull());
+        assertNull(resultSet.getBigDecimal(4));
+        assertTrue(resultSet.wasNull());
+        assertNull(resultSet.getString(5));
+        assertTrue(resultSet.wasNull());
+        assertEquals(0L, resultSet.getLong(6));
+        assertTrue(resultSet.wasNull());
+    }
+
+    @Test
+    public void findColumnByLabel() throws SQLException {
+        ResultSet resultSet = load(new Object[][] {{7L, 30, 2.5D, new BigDecimal("10.25"), "tom", "memo"}});
+        assertTrue(resultSet.next());
+        // 原样、小写和大写的列名预先放入索引表
+        assertEquals(1, resultSet.findColumn("user_id"));
+        assertEquals(1, resultSet.findColumn("USER_ID"));
+        assertEquals(5, resultSet.findColumn("name"));
+        // 带引号的列名去掉引号后查找
+        assertEquals(2, resultSet.findColumn("`age`"));
+        // 再次查找命中缓存
+        assertEquals(2, resultSet.findColumn("`age`"));
+        assertEquals(30, resultSet.getInt("AGE"));
+        assertEquals("tom", resultSet.getString("NAME"));
+        try {
+            resultSet.findColumn("unknown");
+            fail("unknown column should not be found");
+        } catch (final SQLException ex) {
+            // 不存在的列抛出异常
+        }
+    }
+
+    private static ResultSet load(final Object[][] rows) throws SQLException {
+        return new MaterializedResultSet(StubResultSets.of(LABELS, TYPES, rows));
+    }
+}
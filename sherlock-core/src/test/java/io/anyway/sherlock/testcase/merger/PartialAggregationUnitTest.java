@@ -0,0 +1,53 @@
+package io.anyway.sherlock.testcase.merger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import io.anyway.sherlock.merger.pipeline.coupling.aggregation.AggregationUnit;
+import io.anyway.sherlock.merger.pipeline.coupling.aggregation.AverageAggregationUnit;
+import io.anyway.sherlock.merger.pipeline.coupling.aggregation.VarianceAggregationUnit;
+import io.anyway.sherlock.testcase.StubResultSets;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+
+import org.junit.Test;
+
+public class PartialAggregationUnitTest {
+
+    // 分片一的值为1, 2, 3, 分片二的值为4, 5, 分片三没有非空值; 每行依次是SUM, COUNT和平方和
+    private static final Object[][] PARTIALS = {{6, 3L, 14}, {9, 2L, 41}, {null, 0L, null}};
+
+    @Test
+    public void average() throws SQLException {
+        assertEquals(new BigDecimal("3.0000"), merge(new AverageAggregationUnit(1, 2, false), Types.DECIMAL, PARTIALS));
+        assertEquals(3D, merge(new AverageAggregationUnit(1, 2, true), Types.DOUBLE, PARTIALS));
+        assertNull(merge(new AverageAggregationUnit(1, 2, false), Types.DECIMAL, new Object[][] {{null, 0L, null}}));
+    }
+
+    @Test
+    public void variance() throws SQLException {
+        assertEquals(2D, merge(new VarianceAggregationUnit(2, 1, 3, false, false), Types.DECIMAL, PARTIALS));
+        assertEquals(2.5D, merge(new VarianceAggregationUnit(2, 1, 3, true, false), Types.DECIMAL, PARTIALS));
+        assertEquals(Math.sqrt(2D), merge(new VarianceAggregationUnit(2, 1, 3, false, true), Types.DECIMAL, PARTIALS));
+        assertEquals(Math.sqrt(2.5D), merge(new VarianceAggregationUnit(2, 1, 3, true, true), Types.DECIMAL, PARTIALS));
+    }
+
+    @Test
+    public void sampleVarianceOfSingleRow() throws SQLException {
+        Object[][] partials = {{5, 1L, 25}, {null, 0L, null}};
+        assertNull(merge(new VarianceAggregationUnit(2, 1, 3, true, false), Types.DECIMAL, partials));
+        assertEquals(0D, merge(new VarianceAggregationUnit(2, 1, 3, false, false), Types.DECIMAL, partials));
+        assertNull(merge(new VarianceAggregationUnit(2, 1, 3, false, false), Types.DECIMAL, new Object[][] {}));
+    }
+
+    private static Comparable<?> merge(final AggregationUnit unit, final int sumType, final Object[][] partials) throws SQLException {
+        ResultSet resultSet = StubResultSets.of(new String[] {"sum", "cnt", "squares"}, new int[] {sumType, Types.BIGINT, sumType}, partials);
+        while (resultSet.next()) {
+            unit.merge(resultSet);
+        }
+        return unit.getResult();
+    }
+}
@@ -0,0 +1,123 @@
+package io.anyway.sherlock.testcase.merger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import io.anyway.sherlock.datasource.DatabaseType;
+import io.anyway.sherlock.executor.ExecuteCompletion;
+import io.anyway.sherlock.executor.ExecuteContext;
+import io.anyway.sherlock.merger.MergeContext;
+import io.anyway.sherlock.merger.MergeUtils;
+import io.anyway.sherlock.merger.ResultSetFactory;
+import io.anyway.sherlock.sqlparser.SQLParserFactory;
+import io.anyway.sherlock.testcase.StubExecuteContexts;
+import io.anyway.sherlock.testcase.StubResultSets;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ScalarAggregationTest {
+
+    private static final String SQL = "select count(*) as cnt, sum(amount) as total, max(price) as price from t_order";
+
+    private static final String[] LABELS = {"cnt", "total", "price"};
+
+    private static final int[] TYPES = {Types.BIGINT, Types.DECIMAL, Types.INTEGER};
+
+    @Test
+    public void foldShardsIntoOneRow() throws SQLException {
+        ExecuteContext ctx = context(SQL);
+        MergeContext mergeContext = new MergeContext(Arrays.asList(shard(2L, "1.5", 3), shard(0L, null, null), shard(5L, "2.5", 9)), ctx);
+        assertTrue(mergeContext.isScalarAggregation());
+        ResultSet resultSet = ResultSetFactory.getResultSet(mergeContext);
+        assertTrue(resultSet.next());
+        assertEquals(7L, resultSet.getLong(1));
+        assertEquals(new BigDecimal("4.0"), resultSet.getBigDecimal(2));
+        assertEquals(9, resultSet.getInt(3));
+        assertFalse(resultSet.next());
+    }
+
+    @Test
+    public void groupByIsNotScalar() throws SQLException {
+        assertTrue(MergeUtils.isStreamingMergeable(context(SQL)));
+        String sql = "select user_id, count(*) as cnt from t_order group by user_id";
+        assertFalse(MergeUtils.isStreamingMergeable(context(sql)));
+        String[] labels = {"user_id", "cnt"};
+        int[] types = {Types.BIGINT, Types.BIGINT};
+        MergeContext mergeContext = new MergeContext(Arrays.asList(StubResultSets.of(labels, types, new Object[][] {{1L, 1L}}),
+                StubResultSets.of(labels, types, new Object[][] {{1L, 2L}})), context(sql));
+        assertFalse(mergeContext.isScalarAggregation());
+    }
+
+    @Test
+    public void foldShardsInCompletionOrder() throws SQLException {
+        // 最先完成的分片放入归并上下文, 其余分片按完成顺序累加
+        ListCompletion completion = new ListCompletion(shard(1L, "1", 4), shard(3L, "3", 2));
+        List<ResultSet> first = new ArrayList<ResultSet>(Arrays.asList(shard(2L, "2", 1)));
+        ResultSet resultSet = ResultSetFactory.getStreamingResultSet(new MergeContext(first, context(SQL)), completion);
+        assertTrue(resultSet.next());
+        assertFalse(completion.hasNext());
+        assertEquals(6L, resultSet.getLong(1));
+        assertEquals(new BigDecimal("6"), resultSet.getBigDecimal(2));
+        assertEquals(4, resultSet.getInt(3));
+        assertFalse(resultSet.next());
+    }
+
+    @Test
+    public void closeCancelsPendingShards() throws SQLException {
+        ResultSet pending = shard(1L, "1", 1);
+        ListCompletion completion = new ListCompletion(pending);
+        List<ResultSet> first = new ArrayList<ResultSet>(Arrays.asList(shard(2L, "2", 1)));
+        ResultSet resultSet = ResultSetFactory.getStreamingResultSet(new MergeContext(first, context(SQL)), completion);
+        resultSet.close();
+        assertTrue(completion.cancelled);
+        assertTrue(pending.isClosed());
+    }
+
+    private static ExecuteContext context(final String sql) throws SQLException {
+        return StubExecuteContexts.of(sql, SQLParserFactory.create(DatabaseType.MySQL, sql, new ArrayList<Object>()).parse(), DatabaseType.MySQL, null);
+    }
+
+    private static ResultSet shard(final long count, final String total, final Integer price) {
+        return StubResultSets.of(LABELS, TYPES, new Object[][] {{count, null == total ? null : new BigDecimal(total), price}});
+    }
+
+    // 依次返回给定的结果集, 模拟按完成顺序获取分片结果
+    private static final class ListCompletion implements ExecuteCompletion<ResultSet> {
+
+        private final LinkedList<ResultSet> resultSets;
+
+        private boolean cancelled;
+
+        ListCompletion(final ResultSet... resultSets) {
+            this.resultSets = new LinkedList<ResultSet>(Arrays.asList(resultSets));
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !resultSets.isEmpty();
+        }
+
+        @Override
+        public ResultSet next() {
+            return resultSets.removeFirst();
+        }
+
+        @Override
+        public List<ResultSet> cancel() {
+            cancelled = true;
+            List<ResultSet> result = new ArrayList<ResultSet>(resultSets);
+            resultSets.clear();
+            return result;
+        }
+    }
+}
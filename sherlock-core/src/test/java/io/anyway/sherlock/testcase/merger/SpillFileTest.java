@@ -0,0 +1,143 @@
+package io.anyway.sherlock.testcase.merger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import io.anyway.sherlock.datasource.DatabaseType;
+import io.anyway.sherlock.jdbc.ShardingDataSource;
+import io.anyway.sherlock.merger.MergeContext;
+import io.anyway.sherlock.merger.pipeline.reducer.GroupByReducerResultSet;
+import io.anyway.sherlock.merger.resultset.spill.RowCodec;
+import io.anyway.sherlock.merger.resultset.spill.SpillFile;
+import io.anyway.sherlock.metrics.ShardingMetrics;
+import io.anyway.sherlock.sqlparser.SQLParsedResult;
+import io.anyway.sherlock.sqlparser.SQLParserFactory;
+import io.anyway.sherlock.testcase.StubExecuteContexts;
+import io.anyway.sherlock.testcase.StubResultSets;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class SpillFileTest {
+
+    private static final String[] LABELS = {"user_id", "total", "cnt"};
+
+    private static final int[] TYPES = {Types.BIGINT, Types.DECIMAL, Types.BIGINT};
+
+    @Test
+    public void codecRoundTrip() throws IOException, SQLException {
+        Timestamp timestamp = new Timestamp(1500000000123L);
+        timestamp.setNanos(123456789);
+        Object[] values = {null, "", "订单-order", Integer.MIN_VALUE, Long.MAX_VALUE, (short) -7, (byte) 3, 0.1D, 2.5F, true,
+            new BigDecimal("-12345678901234567890.0012"), new BigInteger("98765432109876543210"), timestamp,
+            new java.sql.Date(1500000000000L), new Time(36000000L), new java.util.Date(1500000000999L), Arrays.asList(1, "a")};
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        for (Object each : values) {
+            RowCodec.writeValue(output, each);
+        }
+        RowCodec.writeValue(output, new byte[] {1, 0, -1});
+        output.close();
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        for (Object each : values) {
+            Object actual = RowCodec.readValue(input);
+            assertEquals(each, actual);
+            if (null != each) {
+                assertEquals(each.getClass(), actual.getClass());
+            }
+        }
+        assertEquals(123456789, ((Timestamp) values[12]).getNanos());
+        assertArrayEquals(new byte[] {1, 0, -1}, (byte[]) RowCodec.readValue(input));
+        assertEquals(-1, input.read());
+    }
+
+    @Test(expected = SQLException.class)
+    public void unsupportedValue() throws IOException, SQLException {
+        RowCodec.writeValue(new DataOutputStream(new ByteArrayOutputStream()), new Object());
+    }
+
+    @Test
+    public void spillFileRoundTrip() throws SQLException {
+        Object[][] rows = {{1L, new BigDecimal("1.50"), 2L}, {2L, null, 0L}, {3L, new BigDecimal("-3"), null}};
+        SpillFile spillFile = SpillFile.create(LABELS.length);
+        try {
+            ResultSet resultSet = StubResultSets.of(LABELS, TYPES, rows);
+            while (resultSet.next()) {
+                spillFile.write(resultSet);
+            }
+            spillFile.finish();
+            assertEquals(3L, spillFile.getRowCount());
+            for (Object[] each : rows) {
+                assertArrayEquals(each, spillFile.read());
+            }
+            assertNull(spillFile.read());
+        } finally {
+            spillFile.delete();
+        }
+    }
+
+    @Test
+    public void aggregateSpilledPartitions() throws SQLException {
+        String sql = "select user_id, sum(amount) as total, count(*) as cnt from t_order group by user_id";
+        SQLParsedResult parsedResult = SQLParserFactory.create(DatabaseType.MySQL, sql, new ArrayList<Object>()).parse();
+        int groups = 500;
+        Map<Long, BigDecimal> expectedTotals = new HashMap<Long, BigDecimal>();
+        Map<Long, Long> expectedCounts = new HashMap<Long, Long>();
+        List<ResultSet> resultSets = new ArrayList<ResultSet>();
+        for (int shard = 0; shard < 3; shard++) {
+            Object[][] rows = new Object[groups][];
+            for (int i = 0; i < groups; i++) {
+                // 各分片的分组顺序不同, 超过预算后的分组落到不同的分区
+                long userId = (i * 7 + shard * 131) % groups;
+                BigDecimal total = BigDecimal.valueOf(userId * 10 + shard);
+                long count = shard + 1;
+                rows[i] = new Object[] {userId, total, count};
+                BigDecimal previousTotal = expectedTotals.get(userId);
+                expectedTotals.put(userId, null == previousTotal ? total : previousTotal.add(total));
+                Long previousCount = expectedCounts.get(userId);
+                expectedCounts.put(userId, null == previousCount ? count : previousCount + count);
+            }
+            resultSets.add(StubResultSets.of(LABELS, TYPES, rows));
+        }
+        ShardingDataSource shardingDataSource = new ShardingDataSource();
+        shardingDataSource.setMergeMemoryBudget(4096L);
+        long spillFiles = ShardingMetrics.get(ShardingMetrics.MERGE_SPILL_FILES);
+        ResultSet resultSet = new GroupByReducerResultSet(new MergeContext(resultSets, StubExecuteContexts.of(parsedResult, DatabaseType.MySQL, shardingDataSource)));
+        Map<Long, BigDecimal> actualTotals = new HashMap<Long, BigDecimal>();
+        Map<Long, Long> actualCounts = new HashMap<Long, Long>();
+        try {
+            while (resultSet.next()) {
+                long userId = resultSet.getLong(1);
+                assertNull("duplicate group " + userId, actualTotals.put(userId, resultSet.getBigDecimal(2)));
+                actualCounts.put(userId, resultSet.getLong(3));
+            }
+        } finally {
+            resultSet.close();
+        }
+        assertTrue(ShardingMetrics.get(ShardingMetrics.MERGE_SPILL_FILES) > spillFiles);
+        assertEquals(expectedCounts, actualCounts);
+        assertEquals(expectedTotals.size(), actualTotals.size());
+        for (Map.Entry<Long, BigDecimal> each : expectedTotals.entrySet()) {
+            assertEquals(0, each.getValue().compareTo(actualTotals.get(each.getKey())));
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package io.anyway.sherlock.testcase.merger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import io.anyway.sherlock.datasource.DatabaseType;
+import io.anyway.sherlock.hint.GroupByHintHolder;
+import io.anyway.sherlock.merger.MergeContext;
+import io.anyway.sherlock.merger.ResultSetFactory;
+import io.anyway.sherlock.sqlparser.SQLParsedResult;
+import io.anyway.sherlock.sqlparser.SQLParserFactory;
+import io.anyway.sherlock.testcase.StubExecuteContexts;
+import io.anyway.sherlock.testcase.StubResultSets;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class StreamingGroupByTest {
+
+    private static final String SQL = "select user_id, sum(amount) as total, count(*) as cnt from t_order group by user_id";
+
+    private static final String[] LABELS = {"user_id", "total", "cnt"};
+
+    private static final int[] TYPES = {Types.BIGINT, Types.DECIMAL, Types.BIGINT};
+
+    @Test
+    public void mysqlNullKeysFirst() throws SQLException {
+        MergeContext mergeContext = mergeContext(DatabaseType.MySQL, SQL, LABELS, TYPES,
+                new Object[][] {{null, 1, 1L}, {1L, 10, 2L}, {3L, 30, 1L}},
+                new Object[][] {{null, 2, 3L}, {2L, 20, 1L}, {3L, 3, 4L}},
+                new Object[][] {});
+        assertTrue(mergeContext.isGroupBySorted());
+        assertEquals(Arrays.asList("null|3|4", "1|10|2", "2|20|1", "3|33|5"), merge(mergeContext));
+    }
+
+    @Test
+    public void postgresqlNullKeysLast() throws SQLException {
+        MergeContext mergeContext = mergeContext(DatabaseType.PostgreSQL, SQL, LABELS, TYPES,
+                new Object[][] {{1L, 10, 2L}, {3L, 30, 1L}, {null, 1, 1L}},
+                new Object[][] {{2L, 20, 1L}, {3L, 3, 4L}, {null, 2, 3L}});
+        assertTrue(mergeContext.isGroupBySorted());
+        assertEquals(Arrays.asList("1|10|2", "2|20|1", "3|33|5", "null|3|4"), merge(mergeContext));
+    }
+
+    @Test
+    public void descendingGroupOrder() throws SQLException {
+        MergeContext mergeContext = mergeContext(DatabaseType.MySQL, SQL + " order by user_id desc", LABELS, TYPES,
+                new Object[][] {{3L, 30, 1L}, {1L, 10, 2L}, {null, 1, 1L}},
+                new Object[][] {{3L, 3, 4L}, {2L, 20, 1L}, {null, 2, 3L}});
+        assertTrue(mergeContext.isGroupBySorted());
+        assertEquals(Arrays.asList("3|33|5", "2|20|1", "1|10|2", "null|3|4"), merge(mergeContext));
+    }
+
+    @Test
+    public void havingAndLimitOnSortedGroups() throws SQLException {
+        MergeContext mergeContext = mergeContext(DatabaseType.MySQL, SQL + " having count(*) > 1 limit 2", LABELS, TYPES,
+                new Object[][] {{null, 1, 1L}, {1L, 10, 2L}, {2L, 20, 1L}, {3L, 30, 1L}},
+                new Object[][] {{3L, 3, 4L}, {4L, 4, 2L}});
+        assertTrue(mergeContext.isGroupBySorted());
+        assertEquals(Arrays.asList("1|10|2", "3|33|5"), merge(mergeContext));
+    }
+
+    @Test
+    public void limitAfterHavingFiltersLeadingGroups() throws SQLException {
+        // 分片不分页, 前面的分组都不满足HAVING时仍能取到后面满足条件的分组
+        MergeContext mergeContext = mergeContext(DatabaseType.MySQL, SQL + " having count(*) > 2 limit 1, 2", LABELS, TYPES,
+                new Object[][] {{1L, 10, 1L}, {2L, 20, 1L}, {3L, 30, 2L}, {5L, 50, 3L}, {6L, 60, 4L}},
+                new Object[][] {{1L, 1, 1L}, {2L, 2, 1L}, {4L, 40, 3L}, {7L, 70, 5L}});
+        assertTrue(mergeContext.isGroupBySorted());
+        assertEquals(Arrays.asList("5|50|3", "6|60|4"), merge(mergeContext));
+    }
+
+    @Test
+    public void stringKeysUseHashGrouping() throws SQLException {
+        // 数据库按排序规则比较字符串, 分片的顺序不一定和Java一致
+        MergeContext mergeContext = mergeContext(DatabaseType.MySQL, "select user_name, count(*) as cnt from t_order group by user_name",
+                new String[] {"user_name", "cnt"}, new int[] {Types.VARCHAR, Types.BIGINT},
+                new Object[][] {{null, 1L}, {"a", 1L}, {"B", 2L}},
+                new Object[][] {{"A", 3L}, {"b", 1L}, {"a", 2L}});
+        assertFalse(mergeContext.isGroupBySorted());
+        // 哈希分组的结果按分组第一次出现的顺序输出, 没有ORDER BY时不保证顺序
+        List<String> result = merge(mergeContext);
+        Collections.sort(result);
+        assertEquals(Arrays.asList("A|3", "B|2", "a|3", "b|1", "null|1"), result);
+    }
+
+    @Test
+    public void mixedNumericKeysShareGroup() throws SQLException {
+        // 各分片的score列类型不同, 数值相等的行属于同一分组
+        String sql = "select user_name, score, count(*) as cnt from t_order group by user_name, score";
+        String[] labels = {"user_name", "score", "cnt"};
+        SQLParsedResult parsedResult = SQLParserFactory.create(DatabaseType.MySQL, sql, new ArrayList<Object>()).parse();
+        List<ResultSet> resultSets = new ArrayList<ResultSet>();
+        resultSets.add(StubResultSets.of(labels, new int[] {Types.VARCHAR, Types.INTEGER, Types.BIGINT}, new Object[][] {{"a", 1, 1L}, {"a", 2, 1L}}));
+        resultSets.add(StubResultSets.of(labels, new int[] {Types.VARCHAR, Types.DECIMAL, Types.BIGINT}, new Object[][] {{"a", new BigDecimal("1.00"), 2L}, {"a", new BigDecimal("2.50"), 1L}}));
+        resultSets.add(StubResultSets.of(labels, new int[] {Types.VARCHAR, Types.DOUBLE, Types.BIGINT}, new Object[][] {{"a", 2D, 4L}, {"a", 2.5D, 8L}}));
+        resultSets.add(StubResultSets.of(labels, new int[] {Types.VARCHAR, Types.BIGINT, Types.BIGINT}, new Object[][] {{"a", 1L, 16L}}));
+        MergeContext mergeContext = new MergeContext(resultSets, StubExecuteContexts.of(sql, parsedResult, DatabaseType.MySQL, null));
+        assertFalse(mergeContext.isGroupBySorted());
+        List<String> result = merge(mergeContext);
+        Collections.sort(result);
+        assertEquals(Arrays.asList("a|1|19", "a|2.50|9", "a|2|5"), result);
+    }
+
+    @Test
+    public void skipShardSortWithHashGroupingHint() throws SQLException {
+        String sql = "select user_name, count(*) as cnt from t_order where status = 'done' group by user_name";
+        String[] labels = {"user_name", "cnt"};
+        int[] types = {Types.VARCHAR, Types.BIGINT};
+        // 分片SQL只由解析决定, 之前的归并按哈希分组也不影响下一次解析
+        MergeContext mergeContext = mergeContext(DatabaseType.MySQL, sql, labels, types, new Object[][] {{"a", 1L}}, new Object[][] {{"a", 2L}});
+        assertFalse(mergeContext.isGroupBySorted());
+        SQLParsedResult parsedResult = SQLParserFactory.create(DatabaseType.MySQL, sql, new ArrayList<Object>()).parse();
+        assertTrue(parsedResult.getSqlBuilder().toSQL().endsWith("ORDER BY user_name"));
+        assertEquals(1, parsedResult.getGroupOrderColumns().size());
+        // 提示哈希分组时分片不再排序, MySQL用ORDER BY NULL去掉GROUP BY的隐式排序
+        GroupByHintHolder.setHashGrouping(true);
+        try {
+            parsedResult = SQLParserFactory.create(DatabaseType.MySQL, sql, new ArrayList<Object>()).parse();
+            assertTrue(parsedResult.getSqlBuilder().toSQL().endsWith("ORDER BY NULL"));
+            assertTrue(parsedResult.getGroupOrderColumns().isEmpty());
+            parsedResult = SQLParserFactory.create(DatabaseType.PostgreSQL, sql, new ArrayList<Object>()).parse();
+            assertFalse(parsedResult.getSqlBuilder().toSQL().contains("ORDER BY"));
+        } finally {
+            GroupByHintHolder.clear();
+        }
+        assertTrue(SQLParserFactory.create(DatabaseType.PostgreSQL, sql, new ArrayList<Object>()).parse().getSqlBuilder().toSQL().endsWith("ORDER BY user_name"));
+    }
+
+    @Test
+    public void groupColumnNotSelected() {
+        String sql = "select count(*) as cnt from t_order group by user_id";
+        SQLParsedResult parsedResult = SQLParserFactory.create(DatabaseType.MySQL, sql, new ArrayList<Object>()).parse();
+        assertTrue(parsedResult.getSqlBuilder().toSQL().endsWith("ORDER BY NULL"));
+        assertTrue(parsedResult.getGroupOrderColumns().isEmpty());
+        // UNION的分支不能单独排序
+        sql = "select user_id, count(*) as cnt from t_order group by user_id union all select user_id, count(*) as cnt from t_item group by user_id";
+        assertFalse(SQLParserFactory.create(DatabaseType.MySQL, sql, new ArrayList<Object>()).parse().getSqlBuilder().toSQL().contains("ORDER BY"));
+    }
+
+    private static MergeContext mergeContext(final DatabaseType databaseType, final String sql, final String[] labels, final int[] types, final Object[][]... shards) throws SQLException {
+        SQLParsedResult parsedResult = SQLParserFactory.create(databaseType, sql, new ArrayList<Object>()).parse();
+        List<ResultSet> resultSets = new ArrayList<ResultSet>(shards.length);
+        for (Object[][] each : shards) {
+            resultSets.add(StubResultSets.of(labels, types, each));
+        }
+        return new MergeContext(resultSets, StubExecuteContexts.of(sql, parsedResult, databaseType, null));
+    }
+
+    private static List<String> merge(final MergeContext mergeContext) throws SQLException {
+        ResultSet resultSet = ResultSetFactory.getResultSet(mergeContext);
+        int columnCount = resultSet.getMetaData().getColumnCount();
+        List<String> result = new ArrayList<String>();
+        while (resultSet.next()) {
+            StringBuilder row = new StringBuilder();
+            for (int i = 1; i <= columnCount; i++) {
+                row.append(i > 1 ? "|" : "").append(resultSet.getObject(i));
+            }
+            result.add(row.toString());
+        }
+        return result;
+    }
+}
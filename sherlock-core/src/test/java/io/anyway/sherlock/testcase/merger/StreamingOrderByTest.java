@@ -0,0 +1,77 @@
+package io.anyway.sherlock.testcase.merger;
+
+import static org.junit.Assert.assertEquals;
+
+import io.anyway.sherlock.datasource.DatabaseType;
+import io.anyway.sherlock.merger.MergeContext;
+import io.anyway.sherlock.merger.ResultSetFactory;
+import io.anyway.sherlock.sqlparser.SQLParsedResult;
+import io.anyway.sherlock.sqlparser.SQLParserFactory;
+import io.anyway.sherlock.testcase.StubExecuteContexts;
+import io.anyway.sherlock.testcase.StubResultSets;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class StreamingOrderByTest {
+
+    @Test
+    public void mergeSortedShards() throws SQLException {
+        String sql = "select order_id, user_id from t_order order by user_id desc, order_id";
+        Object[][][] shards = {
+            {{1L, 9L}, {4L, 5L}, {7L, 1L}},
+            {},
+            {{2L, 9L}, {3L, 6L}, {5L, 5L}, {6L, 2L}},
+        };
+        assertEquals(Arrays.asList("1|9", "2|9", "3|6", "4|5", "5|5", "6|2", "7|1"), merge(DatabaseType.MySQL, sql, shards));
+    }
+
+    @Test
+    public void equalKeysKeepShardOrder() throws SQLException {
+        // 排序项相同的行按分片顺序输出
+        String sql = "select order_id, user_id from t_order order by user_id";
+        Object[][][] shards = {
+            {{10L, 1L}, {11L, 2L}},
+            {{20L, 1L}, {21L, 2L}},
+            {{30L, 1L}},
+        };
+        assertEquals(Arrays.asList("10|1", "20|1", "30|1", "11|2", "21|2"), merge(DatabaseType.MySQL, sql, shards));
+    }
+
+    @Test
+    public void mergeNullKeys() throws SQLException {
+        // MySQL中空值最小, PostgreSQL中空值最大, 分片结果集按各自数据库的规则排序
+        String sql = "select order_id, user_id from t_order order by user_id";
+        Object[][][] mysqlShards = {{{1L, null}, {2L, 3L}}, {{3L, 1L}, {4L, 2L}}};
+        assertEquals(Arrays.asList("1|null", "3|1", "4|2", "2|3"), merge(DatabaseType.MySQL, sql, mysqlShards));
+        Object[][][] pgsqlShards = {{{2L, 3L}, {1L, null}}, {{3L, 1L}, {4L, 2L}}};
+        assertEquals(Arrays.asList("3|1", "4|2", "2|3", "1|null"), merge(DatabaseType.PostgreSQL, sql, pgsqlShards));
+    }
+
+    @Test
+    public void mergeWithLimit() throws SQLException {
+        String sql = "select order_id, user_id from t_order order by user_id limit 1, 3";
+        Object[][][] shards = {{{1L, 1L}, {3L, 3L}, {5L, 5L}}, {{2L, 2L}, {4L, 4L}, {6L, 6L}}};
+        assertEquals(Arrays.asList("2|2", "3|3", "4|4"), merge(DatabaseType.MySQL, sql, shards));
+    }
+
+    private static List<String> merge(final DatabaseType databaseType, final String sql, final Object[][][] shards) throws SQLException {
+        SQLParsedResult parsedResult = SQLParserFactory.create(databaseType, sql, new ArrayList<Object>()).parse();
+        List<ResultSet> resultSets = new ArrayList<ResultSet>(shards.length);
+        for (Object[][] each : shards) {
+            resultSets.add(StubResultSets.of(new String[] {"order_id", "user_id"}, new int[] {Types.BIGINT, Types.BIGINT}, each));
+        }
+        ResultSet resultSet = ResultSetFactory.getResultSet(new MergeContext(resultSets, StubExecuteContexts.of(parsedResult, databaseType, null)));
+        List<String> result = new ArrayList<String>();
+        while (resultSet.next()) {
+            result.add(resultSet.getObject(1) + "|" + resultSet.getObject(2));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,77 @@
+package io.anyway.sherlock.testcase.merger;
+
+import static org.junit.Assert.assertEquals;
+
+import io.anyway.sherlock.datasource.DatabaseType;
+import io.anyway.sherlock.merger.MergeContext;
+import io.anyway.sherlock.merger.ResultSetFactory;
+import io.anyway.sherlock.sqlparser.SQLParsedResult;
+import io.anyway.sherlock.sqlparser.SQLParserFactory;
+import io.anyway.sherlock.testcase.StubExecuteContexts;
+import io.anyway.sherlock.testcase.StubResultSets;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TopNOrderByTest {
+
+    private static final String SQL = "select user_id, count(*) as cnt from t_order group by user_id order by cnt desc";
+
+    // 各用户合并后的行数: 1->5, 2->3, 3->3, 4->1, 5->3
+    private static final Object[][][] SHARDS = {
+        {{1L, 2L}, {2L, 1L}, {3L, 3L}, {4L, 1L}},
+        {{1L, 3L}, {2L, 2L}, {5L, 3L}},
+    };
+
+    @Test
+    public void keepTopRowsInFullSortOrder() throws SQLException {
+        List<String> all = merge(SQL);
+        assertEquals(Arrays.asList("1|5", "2|3", "3|3", "5|3", "4|1"), all);
+        // 排序值相同的行和全部排序的顺序一致
+        assertEquals(all.subList(1, 3), merge(SQL + " limit 1, 2"));
+        assertEquals(all.subList(0, 4), merge(SQL + " limit 4"));
+    }
+
+    @Test
+    public void largeLimitReturnsAllRows() throws SQLException {
+        assertEquals(merge(SQL), merge(SQL + " limit 100000000"));
+    }
+
+    @Test
+    public void sortNullKeys() throws SQLException {
+        String sql = "select city, count(*) as cnt from t_order group by city order by city";
+        String[] labels = {"city", "cnt"};
+        int[] types = {Types.VARCHAR, Types.BIGINT};
+        Object[][][] shards = {{{"b", 1L}, {null, 2L}}, {{"a", 1L}, {null, 1L}, {"b", 2L}}};
+        // MySQL中空值最小, PostgreSQL中空值最大, 有分页时按堆保留前N行的顺序和全部排序一致
+        assertEquals(Arrays.asList("null|3", "a|1", "b|3"), merge(DatabaseType.MySQL, sql, labels, types, shards));
+        assertEquals(Arrays.asList("null|3", "a|1"), merge(DatabaseType.MySQL, sql + " limit 2", labels, types, shards));
+        assertEquals(Arrays.asList("a|1", "b|3", "null|3"), merge(DatabaseType.PostgreSQL, sql, labels, types, shards));
+        assertEquals(Arrays.asList("a|1", "b|3"), merge(DatabaseType.PostgreSQL, sql + " limit 2", labels, types, shards));
+        assertEquals(Arrays.asList("null|3", "b|3"), merge(DatabaseType.PostgreSQL, sql + " desc limit 2", labels, types, shards));
+    }
+
+    private static List<String> merge(final String sql) throws SQLException {
+        return merge(DatabaseType.MySQL, sql, new String[] {"user_id", "cnt"}, new int[] {Types.BIGINT, Types.BIGINT}, SHARDS);
+    }
+
+    private static List<String> merge(final DatabaseType databaseType, final String sql, final String[] labels, final int[] types, final Object[][][] shards) throws SQLException {
+        SQLParsedResult parsedResult = SQLParserFactory.create(databaseType, sql, new ArrayList<Object>()).parse();
+        List<ResultSet> resultSets = new ArrayList<ResultSet>(shards.length);
+        for (Object[][] each : shards) {
+            resultSets.add(StubResultSets.of(labels, types, each));
+        }
+        ResultSet resultSet = ResultSetFactory.getResultSet(new MergeContext(resultSets, StubExecuteContexts.of(parsedResult, databaseType, null)));
+        List<String> result = new ArrayList<String>();
+        while (resultSet.next()) {
+            result.add(resultSet.getObject(1) + "|" + resultSet.getObject(2));
+        }
+        return result;
+    }
+}
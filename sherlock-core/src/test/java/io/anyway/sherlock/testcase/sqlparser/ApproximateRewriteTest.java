@@ -0,0 +1,37 @@
+package io.anyway.sherlock.testcase.sqlparser;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import io.anyway.sherlock.datasource.DatabaseType;
+import io.anyway.sherlock.sqlparser.SQLParsedResult;
+import io.anyway.sherlock.sqlparser.SQLParserFactory;
+import io.anyway.sherlock.sqlparser.bean.AggregationColumn.AggregationType;
+
+public class ApproximateRewriteTest {
+
+	//MySQL只返回k+1个定长的哈希值或样本，合并时取前k个
+	@Test
+	public void boundSketchOnMySQL(){
+		SQLParsedResult result= parse(DatabaseType.MySQL,"select approx_count_distinct(user_id) as c, percentile_approx(amount, 0.9) as p from t_order");
+		assertEquals("SELECT CONCAT(COUNT(DISTINCT user_id), ':', IFNULL(SUBSTRING_INDEX(GROUP_CONCAT(DISTINCT LEFT(MD5(user_id), 15) ORDER BY LEFT(MD5(user_id), 15) SEPARATOR ','), ',', 1025), '')) AS c, "
+				+ "CONCAT(COUNT(amount), ':', IFNULL(SUBSTRING_INDEX(GROUP_CONCAT(amount ORDER BY RAND() SEPARATOR ','), ',', 1025), '')) AS p FROM t_order",result.getSqlBuilder().toSQL());
+		assertEquals(AggregationType.APPROX_COUNT_DISTINCT,result.getAggregationColumns().get(0).getAggregationType());
+		assertEquals(AggregationType.PERCENTILE_APPROX,result.getAggregationColumns().get(1).getAggregationType());
+	}
+
+	//PostgreSQL的分位数摘要是等间隔的分位点，不按随机数排序
+	@Test
+	public void percentilePointsOnPostgreSQL(){
+		SQLParsedResult result= parse(DatabaseType.PostgreSQL,"select approx_count_distinct(user_id) as c, percentile_approx(amount, 0.9) as p from t_order");
+		assertEquals("SELECT (CAST(COUNT(DISTINCT user_id) AS TEXT) || ':' || COALESCE(ARRAY_TO_STRING((ARRAY_AGG(DISTINCT LEFT(MD5(CAST(user_id AS TEXT)), 15) ORDER BY LEFT(MD5(CAST(user_id AS TEXT)), 15)))[1:1024], ','), '')) AS c, "
+				+ "(CAST(COUNT(amount) AS TEXT) || ':' || COALESCE(ARRAY_TO_STRING(PERCENTILE_DISC(ARRAY(SELECT CAST(GENERATE_SERIES(0, 1023) AS FLOAT8) / 1023)) WITHIN GROUP (ORDER BY amount), ','), '')) AS p FROM t_order",result.getSqlBuilder().toSQL());
+	}
+
+	private static SQLParsedResult parse(DatabaseType databaseType,String sql){
+		return SQLParserFactory.create(databaseType,sql,new ArrayList<Object>()).parse();
+	}
+}
@@ -0,0 +1,90 @@
+package io.anyway.sherlock.testcase.sqlparser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import io.anyway.sherlock.datasource.DatabaseType;
+import io.anyway.sherlock.exception.SQLParserException;
+import io.anyway.sherlock.sqlparser.SQLParsedResult;
+import io.anyway.sherlock.sqlparser.SQLParserFactory;
+import io.anyway.sherlock.sqlparser.bean.AggregationColumn;
+import io.anyway.sherlock.sqlparser.bean.AggregationColumn.AggregationType;
+
+public class PartialColumnsTest {
+
+	@Test
+	public void attachAverageAndDeviationColumns(){
+		SQLParsedResult result= parse(DatabaseType.MySQL,"select user_id, avg(amount) as a, stddev(bonus) as s from t_order group by user_id");
+		assertEquals("SELECT user_id, AVG(amount) AS a, STDDEV(bonus) AS s, SUM(amount) AS auto_gen_col_sum_2, COUNT(amount) AS auto_gen_col_count_2, "
+				+ "SUM(bonus) AS auto_gen_col_sum_3, COUNT(bonus) AS auto_gen_col_count_3, SUM(bonus * bonus) AS auto_gen_col_squares_3 FROM t_order GROUP BY user_id ORDER BY user_id",result.getSqlBuilder().toSQL());
+		List<AggregationColumn> columns= result.getAggregationColumns();
+		assertEquals(2,columns.size());
+		assertIndexes(columns.get(0),AggregationType.AVG,2,4,5,0);
+		assertIndexes(columns.get(1),AggregationType.STDDEV_POP,3,6,7,8);
+	}
+
+	@Test
+	public void castSquaresOnPostgreSQL(){
+		SQLParsedResult result= parse(DatabaseType.PostgreSQL,"select var_samp(amount) as v from t_order");
+		assertEquals("SELECT var_samp(amount) AS v, SUM(amount) AS auto_gen_col_sum_1, COUNT(amount) AS auto_gen_col_count_1, "
+				+ "SUM(CAST(amount AS NUMERIC) * amount) AS auto_gen_col_squares_1 FROM t_order",result.getSqlBuilder().toSQL());
+		assertIndexes(result.getAggregationColumns().get(0),AggregationType.VAR_SAMP,1,2,3,4);
+	}
+
+	@Test
+	public void attachColumnsForHavingAverage(){
+		SQLParsedResult result= parse(DatabaseType.Oracle,"select user_id from t_order group by user_id having avg(amount) > 10");
+		assertEquals("SELECT user_id, AVG(amount) AS auto_gen_col_having_2, SUM(amount) AS auto_gen_col_sum_2, COUNT(amount) AS auto_gen_col_count_2 FROM t_order GROUP BY user_id",result.getSqlBuilder().toSQL());
+		assertIndexes(result.getAggregationColumns().get(0),AggregationType.AVG,2,3,4,0);
+	}
+
+	//各分片的去重集合可能重叠，DISTINCT的平均值和方差不追加中间结果列
+	@Test
+	public void keepDistinctAverageAndDeviation(){
+		for(DatabaseType each: new DatabaseType[]{DatabaseType.MySQL,DatabaseType.PostgreSQL,DatabaseType.Oracle}){
+			SQLParsedResult result= parse(each,"select avg(distinct amount) as a, stddev(distinct amount) as s, count(distinct amount) as c from t_order");
+			assertEquals("SELECT AVG(DISTINCT amount) AS a, STDDEV(DISTINCT amount) AS s, COUNT(DISTINCT amount) AS c FROM t_order",result.getSqlBuilder().toSQL());
+			assertEquals(1,result.getAggregationColumns().size());
+			assertEquals(AggregationType.COUNT,result.getAggregationColumns().get(0).getAggregationType());
+			result= parse(each,"select user_id from t_order group by user_id having avg(distinct amount) > 10");
+			assertNull(result.getHavingPredicate());
+			assertEquals(0,result.getAggregationColumns().size());
+		}
+	}
+
+	//参数占位符在追加的列里会再出现一次，参数列表没有对应的值
+	@Test
+	public void rejectParameterizedAverageArgument(){
+		for(DatabaseType each: new DatabaseType[]{DatabaseType.MySQL,DatabaseType.PostgreSQL,DatabaseType.Oracle}){
+			try{
+				SQLParserFactory.create(each,"select avg(price * ?) as a from t_order where user_id = ?",new ArrayList<Object>(Arrays.<Object>asList(1,2))).parse();
+				fail("parameterized average argument should be rejected");
+			}catch(SQLParserException ex){
+				assertTrue(ex.getMessage(),ex.getMessage().startsWith("not support parameter in AVG argument"));
+			}
+			//条件里的参数不受影响
+			SQLParsedResult result= SQLParserFactory.create(each,"select avg(price) as a from t_order where user_id = ?",new ArrayList<Object>(Arrays.<Object>asList(2))).parse();
+			assertEquals(AggregationType.AVG,result.getAggregationColumns().get(0).getAggregationType());
+		}
+	}
+
+	private static void assertIndexes(AggregationColumn column,AggregationType aggregationType,int columnIndex,int sumIndex,int countIndex,int sumOfSquaresIndex){
+		assertEquals(aggregationType,column.getAggregationType());
+		assertEquals(columnIndex,column.getColumnIndex());
+		assertEquals(sumIndex,column.getSumIndex());
+		assertEquals(countIndex,column.getCountIndex());
+		assertEquals(sumOfSquaresIndex,column.getSumOfSquaresIndex());
+	}
+
+	private static SQLParsedResult parse(DatabaseType databaseType,String sql){
+		return SQLParserFactory.create(databaseType,sql,new ArrayList<Object>()).parse();
+	}
+}
@@ -0,0 +1,135 @@
+package io.anyway.sherlock.testcase.sqlparser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import io.anyway.sherlock.datasource.DatabaseType;
+import io.anyway.sherlock.sqlparser.SQLHavingPredicate;
+import io.anyway.sherlock.sqlparser.SQLParsedResult;
+import io.anyway.sherlock.sqlparser.SQLParserFactory;
+import io.anyway.sherlock.testcase.StubResultSets;
+
+public class SQLHavingPredicateTest {
+
+	private static final String[] LABELS= {"user_id","total","auto_gen_col_having_3"};
+
+	private static final int[] TYPES= {Types.BIGINT,Types.DECIMAL,Types.BIGINT};
+
+	@Test
+	public void attachHiddenAggregation(){
+		SQLParsedResult result= parse("select user_id, sum(amount) as total from t_order group by user_id having count(*) > 10 and total >= ?",100);
+		assertNotNull(result.getHavingPredicate());
+		assertTrue(result.getHavingPredicate().isParameterized());
+		assertTrue(result.getSqlBuilder().toSQL().contains("COUNT(*) AS auto_gen_col_having_3"));
+	}
+
+	@Test
+	public void evaluateOnShardWithoutAggregation(){
+		SQLParsedResult result= parse("select user_id from t_order group by user_id having user_id > 3");
+		assertNull(result.getHavingPredicate());
+	}
+
+	@Test
+	public void comparison() throws SQLException{
+		SQLHavingPredicate predicate= parse("select user_id, sum(amount) as total from t_order group by user_id having count(*) > 10 and total >= ?",100).getHavingPredicate();
+		assertEquals(Arrays.asList(true,false,false),evaluate(predicate,new Object[][]{{1L,200,11L},{2L,200,10L},{3L,99.5,11L}}));
+	}
+
+	@Test
+	public void nullIsUnknown() throws SQLException{
+		SQLHavingPredicate predicate= parse("select user_id, sum(amount) as total from t_order group by user_id having total >= 0").getHavingPredicate();
+		assertEquals(Arrays.asList(false),evaluate(predicate,new Object[][]{{1L,null,1L}}));
+		predicate= parse("select user_id, sum(amount) as total from t_order group by user_id having not (total >= 0)").getHavingPredicate();
+		assertEquals(Arrays.asList(false,false,true),evaluate(predicate,new Object[][]{{1L,null,1L},{2L,5,1L},{3L,-5,1L}}));
+		predicate= parse("select user_id, sum(amount) as total from t_order group by user_id having total = null").getHavingPredicate();
+		assertEquals(Arrays.asList(false),evaluate(predicate,new Object[][]{{1L,null,1L}}));
+	}
+
+	@Test
+	public void threeValuedLogic() throws SQLException{
+		//未知 AND 假为假，未知 AND 真为未知
+		SQLHavingPredicate predicate= parse("select user_id, sum(amount) as total from t_order group by user_id having not (total > 5 and count(*) > 1)").getHavingPredicate();
+		assertEquals(Arrays.asList(true,false),evaluate(predicate,new Object[][]{{1L,null,1L},{2L,null,2L}}));
+		//未知 OR 真为真，未知 OR 假为未知
+		predicate= parse("select user_id, sum(amount) as total from t_order group by user_id having not (total > 5 or count(*) > 1)").getHavingPredicate();
+		assertEquals(Arrays.asList(false,false),evaluate(predicate,new Object[][]{{1L,null,2L},{2L,null,1L}}));
+		predicate= parse("select user_id, sum(amount) as total from t_order group by user_id having total > 5 or count(*) > 1").getHavingPredicate();
+		assertEquals(Arrays.asList(true,false),evaluate(predicate,new Object[][]{{1L,null,2L},{2L,null,1L}}));
+	}
+
+	@Test
+	public void isNull() throws SQLException{
+		SQLHavingPredicate predicate= parse("select user_id, sum(amount) as total from t_order group by user_id having total is null").getHavingPredicate();
+		assertEquals(Arrays.asList(true,false),evaluate(predicate,new Object[][]{{1L,null,1L},{2L,0,1L}}));
+		predicate= parse("select user_id, sum(amount) as total from t_order group by user_id having total is not null").getHavingPredicate();
+		assertEquals(Arrays.asList(false,true),evaluate(predicate,new Object[][]{{1L,null,1L},{2L,0,1L}}));
+	}
+
+	@Test
+	public void arithmetic() throws SQLException{
+		SQLHavingPredicate predicate= parse("select user_id, sum(amount) as total from t_order group by user_id having total / count(*) > 2").getHavingPredicate();
+		//除数为0时结果为NULL，比较结果未知
+		assertEquals(Arrays.asList(true,false,false),evaluate(predicate,new Object[][]{{1L,10,3L},{2L,6,3L},{3L,10,0L}}));
+		predicate= parse("select user_id, sum(amount) as total from t_order group by user_id having -total + 1 < 0").getHavingPredicate();
+		assertEquals(Arrays.asList(true,false,false),evaluate(predicate,new Object[][]{{1L,2,1L},{2L,1,1L},{3L,null,1L}}));
+	}
+
+	@Test
+	public void betweenAndIn() throws SQLException{
+		SQLHavingPredicate predicate= parse("select user_id, sum(amount) as total from t_order group by user_id having total between 1 and 10 and total not in (5,6)").getHavingPredicate();
+		assertEquals(Arrays.asList(true,false,false,false),evaluate(predicate,new Object[][]{{1L,1,1L},{2L,5,1L},{3L,11,1L},{4L,null,1L}}));
+		//NOT IN的列表中有NULL时结果不会为真
+		predicate= parse("select user_id, sum(amount) as total from t_order group by user_id having total not in (5,null)").getHavingPredicate();
+		assertEquals(Arrays.asList(false,false),evaluate(predicate,new Object[][]{{1L,1,1L},{2L,5,1L}}));
+	}
+
+	//HAVING提出到归并后过滤时分片不分页，否则分片的前N组都不满足条件时会少返回满足条件的组
+	@Test
+	public void skipShardLimitAfterHaving(){
+		List<Object> parameters= new ArrayList<Object>(Arrays.<Object>asList(1,2,5));
+		SQLParsedResult result= SQLParserFactory.create(DatabaseType.MySQL,"select user_id, count(*) as cnt from t_order group by user_id having count(*) > ? limit ?, ?",parameters).parse();
+		assertTrue(result.getSqlBuilder().toSQL(),result.getSqlBuilder().toSQL().endsWith("HAVING 1 = 1 OR (COUNT(*) > ?) ORDER BY user_id LIMIT ?, ?"));
+		assertEquals(Arrays.<Object>asList(1,0,Long.MAX_VALUE),parameters);
+		assertEquals(2,result.getLimit().getOffset());
+		assertEquals(5,result.getLimit().getRowCount());
+		result= parse("select user_id, count(*) as cnt from t_order group by user_id having count(*) > 1 limit 2, 5");
+		assertFalse(result.getSqlBuilder().toSQL(),result.getSqlBuilder().toSQL().contains("LIMIT"));
+		assertEquals(2,result.getLimit().getOffset());
+		assertEquals(5,result.getLimit().getRowCount());
+		parameters= new ArrayList<Object>(Arrays.<Object>asList(5,2));
+		result= SQLParserFactory.create(DatabaseType.PostgreSQL,"select user_id, count(*) as cnt from t_order group by user_id having count(*) > 1 limit ? offset ?",parameters).parse();
+		assertTrue(result.getSqlBuilder().toSQL(),result.getSqlBuilder().toSQL().endsWith("LIMIT ? OFFSET ?"));
+		assertEquals(Arrays.<Object>asList(Long.MAX_VALUE,0),parameters);
+		result= SQLParserFactory.create(DatabaseType.PostgreSQL,"select user_id, count(*) as cnt from t_order group by user_id having count(*) > 1 limit 5 offset 2",new ArrayList<Object>()).parse();
+		assertTrue(result.getSqlBuilder().toSQL(),result.getSqlBuilder().toSQL().endsWith("LIMIT ALL"));
+		//分片上能过滤的HAVING仍然下推分页
+		result= parse("select user_id from t_order group by user_id having user_id > 3 limit 2, 5");
+		assertTrue(result.getSqlBuilder().toSQL(),result.getSqlBuilder().toSQL().endsWith("LIMIT 0, 7"));
+	}
+
+	private static SQLParsedResult parse(String sql,Object... parameters){
+		List<Object> values= new ArrayList<Object>(Arrays.asList(parameters));
+		return SQLParserFactory.create(DatabaseType.MySQL,sql,values).parse();
+	}
+
+	private static List<Boolean> evaluate(SQLHavingPredicate predicate,Object[][] rows) throws SQLException{
+		ResultSet resultSet= StubResultSets.of(LABELS,TYPES,rows);
+		List<Boolean> result= new ArrayList<Boolean>();
+		while(resultSet.next()){
+			result.add(predicate.evaluate(resultSet));
+		}
+		return result;
+	}
+}
@@ -0,0 +1,87 @@
+package io.anyway.sherlock.testcase.sqlparser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.alibaba.druid.sql.SQLUtils;
+import com.alibaba.druid.sql.ast.SQLStatement;
+
+import io.anyway.sherlock.datasource.DatabaseType;
+import io.anyway.sherlock.hint.PaginationHintHolder;
+import io.anyway.sherlock.sqlparser.SQLKeysetRewriter;
+import io.anyway.sherlock.sqlparser.SQLParsedResult;
+import io.anyway.sherlock.sqlparser.SQLParserFactory;
+
+public class SQLKeysetRewriterTest {
+
+	@After
+	public void clear(){
+		PaginationHintHolder.clear();
+	}
+
+	@Test
+	public void rewriteParameterizedOffset(){
+		List<Object> parameters= parameters(7,1000,10);
+		PaginationHintHolder.setLastKey(100L);
+		SQLParsedResult result= SQLParserFactory.create(DatabaseType.MySQL,"select order_id, user_id from t_order where user_id = ? order by order_id limit ?, ?",parameters).parse();
+		assertEquals("SELECT order_id, user_id FROM t_order WHERE user_id = ? AND order_id > 100 ORDER BY order_id LIMIT ?, ?",result.getSqlBuilder().toSQL());
+		//改写的是本次执行的参数副本，偏移量改为0
+		assertEquals(parameters(7,0,10),parameters);
+		assertEquals(0,result.getLimit().getOffset());
+		assertEquals(10,result.getLimit().getRowCount());
+	}
+
+	@Test
+	public void rewriteLiteralOffsetDescending(){
+		PaginationHintHolder.setLastKey("abc");
+		SQLParsedResult result= SQLParserFactory.create(DatabaseType.MySQL,"select o.order_id from t_order o order by o.order_id desc limit 1000, 10",parameters()).parse();
+		assertEquals("SELECT o.order_id FROM t_order o WHERE o.order_id < 'abc' ORDER BY o.order_id DESC LIMIT 0, 10",result.getSqlBuilder().toSQL());
+		assertEquals(0,result.getLimit().getOffset());
+	}
+
+	@Test
+	public void rewritePostgreSQLOffset(){
+		List<Object> parameters= parameters(1,20,30);
+		PaginationHintHolder.setLastKey(new BigDecimal("1.5"));
+		SQLParsedResult result= SQLParserFactory.create(DatabaseType.PostgreSQL,"select order_id from t_order where status = ? order by order_id limit ? offset ?",parameters).parse();
+		assertEquals("SELECT order_id FROM t_order WHERE status = ? AND order_id > 1.5 ORDER BY order_id LIMIT ? OFFSET ?",result.getSqlBuilder().toSQL());
+		assertEquals(parameters(1,20,0),parameters);
+		assertEquals(0,result.getLimit().getOffset());
+		assertEquals(20,result.getLimit().getRowCount());
+	}
+
+	@Test
+	public void keepStatementWithoutLastKey(){
+		SQLParsedResult result= SQLParserFactory.create(DatabaseType.MySQL,"select order_id from t_order order by order_id limit 10, 10",parameters()).parse();
+		assertEquals("SELECT order_id FROM t_order ORDER BY order_id LIMIT 0, 20",result.getSqlBuilder().toSQL());
+		assertEquals(10,result.getLimit().getOffset());
+	}
+
+	@Test
+	public void keepUnsupportedStatement(){
+		assertFalse(rewrite("select order_id from t_order order by order_id, user_id limit 10, 10",5L));
+		assertFalse(rewrite("select order_id from t_order order by 1 limit 10, 10",5L));
+		assertFalse(rewrite("select order_id from t_order order by order_id",5L));
+		assertFalse(rewrite("select order_id from t_order order by order_id limit 10, 10",new Object()));
+		assertFalse(rewrite("update t_order set status = 1 where order_id = 2",5L));
+		assertTrue(rewrite("select order_id from t_order order by order_id limit 10, 10",5L));
+	}
+
+	private static boolean rewrite(String sql,Object lastKey){
+		SQLStatement sqlStatement= SQLUtils.parseStatements(sql,"mysql").get(0);
+		return SQLKeysetRewriter.rewrite(sqlStatement,parameters(),lastKey);
+	}
+
+	private static List<Object> parameters(Object... values){
+		return new ArrayList<Object>(Arrays.asList(values));
+	}
+}
@@ -0,0 +1,91 @@
+package io.anyway.sherlock.testcase.sqlparser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import io.anyway.sherlock.datasource.DatabaseType;
+import io.anyway.sherlock.exception.SQLParserException;
+import io.anyway.sherlock.sqlparser.SQLParsedResult;
+import io.anyway.sherlock.sqlparser.SQLParserFactory;
+import io.anyway.sherlock.sqlparser.bean.UnionBranch;
+
+public class SQLUnionSplitterTest {
+
+	@Test
+	public void sliceParametersWithLimit(){
+		List<Object> parameters= parameters(10,20,30,40,5);
+		SQLParsedResult result= parse(DatabaseType.MySQL,"(select order_id, user_id from t_order where user_id = ? and status = ?) union all (select refund_id, user_id from t_refund where user_id in (?, ?)) order by user_id limit ?",parameters);
+		List<UnionBranch> branches= result.getUnionBranches();
+		assertEquals(2,branches.size());
+		assertEquals(parameters(10,20),branches.get(0).getParameters());
+		assertEquals(parameters(30,40),branches.get(1).getParameters());
+		assertTrue(branches.get(1).getSql().contains("t_refund"));
+		assertEquals(5,result.getLimit().getRowCount());
+		assertFalse(result.distinct());
+		//分支的参数是单独的副本
+		parameters.set(0,99);
+		assertEquals(parameters(10,20),branches.get(0).getParameters());
+	}
+
+	@Test
+	public void sliceParametersOfEachBranch(){
+		for(DatabaseType each: new DatabaseType[]{DatabaseType.MySQL,DatabaseType.PostgreSQL}){
+			SQLParsedResult result= parse(each,"select order_id from t_order where user_id = ? union select refund_id from t_refund where user_id = ? and status = ? union select id from t_x where a = ?",parameters(1,2,3,4));
+			List<UnionBranch> branches= result.getUnionBranches();
+			assertEquals(3,branches.size());
+			assertEquals(parameters(1),branches.get(0).getParameters());
+			assertEquals(parameters(2,3),branches.get(1).getParameters());
+			assertEquals(parameters(4),branches.get(2).getParameters());
+			assertTrue(result.distinct());
+		}
+	}
+
+	@Test
+	public void branchWithoutParameters(){
+		SQLParsedResult result= parse(DatabaseType.MySQL,"select order_id from t_order where user_id = 1 union all select refund_id from t_refund where user_id = ?",parameters(2));
+		List<UnionBranch> branches= result.getUnionBranches();
+		assertEquals(2,branches.size());
+		assertEquals(Collections.emptyList(),branches.get(0).getParameters());
+		assertEquals(parameters(2),branches.get(1).getParameters());
+	}
+
+	@Test
+	public void routeAsWholeWhenParametersMismatch(){
+		assertTrue(parse(DatabaseType.MySQL,"select order_id from t_order where user_id = ? union all select refund_id from t_refund where user_id = ?",parameters(1)).getUnionBranches().isEmpty());
+		assertTrue(parse(DatabaseType.MySQL,"select order_id from t_order where user_id = ? union all select refund_id from t_refund where user_id = ?",parameters(1,2,3)).getUnionBranches().isEmpty());
+	}
+
+	@Test
+	public void routeAsWholeWhenBranchIsNotPlain(){
+		assertTrue(parse(DatabaseType.MySQL,"select order_id from t_order where user_id = ? union all select count(*) from t_refund where user_id = ?",parameters(1,2)).getUnionBranches().isEmpty());
+		//混用UNION和UNION ALL时不拆分，按书写顺序最后一个操作符是UNION时仍然去重
+		SQLParsedResult result= parse(DatabaseType.MySQL,"select order_id from t_order where user_id = ? union all select refund_id from t_refund where user_id = ? union select id from t_x where a = ?",parameters(1,2,3));
+		assertTrue(result.getUnionBranches().isEmpty());
+		assertTrue(result.distinct());
+		result= parse(DatabaseType.PostgreSQL,"select order_id from t_order where user_id = ? union select refund_id from t_refund where user_id = ? union all select id from t_x where a = ?",parameters(1,2,3));
+		assertTrue(result.getUnionBranches().isEmpty());
+		assertFalse(result.distinct());
+	}
+
+	//PostgreSQL的解析器不认识UNION后面的LIMIT，不能忽略后路由
+	@Test(expected= SQLParserException.class)
+	public void rejectUnparsedClause(){
+		parse(DatabaseType.PostgreSQL,"(select order_id from t_order where user_id = ?) union all (select refund_id from t_refund where user_id = ?) order by order_id limit ?",parameters(1,2,3));
+	}
+
+	private static SQLParsedResult parse(DatabaseType databaseType,String sql,List<Object> parameters){
+		return SQLParserFactory.create(databaseType,sql,parameters).parse();
+	}
+
+	private static List<Object> parameters(Object... values){
+		return new ArrayList<Object>(Arrays.asList(values));
+	}
+}
@@ -0,0 +1,117 @@
+package io.anyway.sherlock.executor.support;
+
+import java.sql.SQLTimeoutException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
+
+import io.anyway.sherlock.executor.ExecuteContext;
+import io.anyway.sherlock.metrics.ShardingMetrics;
+
+/**
+ * 基于虚拟线程的Statement处理器，每个分片操作（执行Statement、获取连接、并行提交和关闭连接）在独立的虚拟线程中执行，
+ * 每个分片数据源通过信号量限制并发数，避免耗尽数据源的连接池。
+ * 虚拟线程不受分片线程池poolSize的限制，必须显式设置并发数，不大于分片连接池的最大连接数
+ *
+ * <pre>
+ * &lt;bean id="virtualThreadProcessor" class="io.anyway.sherlock.executor.support.VirtualThreadExecuteProcessorSupport"&gt;
+ *     &lt;property name="concurrency" value="20"/&gt;
+ * &lt;/bean&gt;
+ * &lt;sherlock:data-source id="shardingDataSource" database-type="MySQL" processor="virtualThreadProcessor"&gt;
+ * </pre>
+ * @author yangzz
+ *
+ */
+public class VirtualThreadExecuteProcessorSupport extends ExecuteProcessorSupport implements InitializingBean,DisposableBean {
+
+	private Log logger = LogFactory.getLog(VirtualThreadExecuteProcessorSupport.class);
+
+	private final ExecutorService executorService= Executors.newVirtualThreadPerTaskExecutor();
+
+	private final ConcurrentMap<String,Semaphore> permits= new ConcurrentHashMap<String,Semaphore>();
+
+	private int concurrency= 0;
+
+	/**
+	 * 设置每个分片数据源的最大并发数，即同时占用的连接数，必须设置
+	 * @param concurrency
+	 */
+	public void setConcurrency(int concurrency){
+		this.concurrency= concurrency;
+	}
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		Assert.isTrue(concurrency> 0, "concurrency must be set to the max connections of each partition");
+	}
+
+	@Override
+	public <T> Future<T> submit(ExecuteContext ctx,final String dataSourceName,final Callable<T> task){
+		final Semaphore semaphore= getSemaphore(dataSourceName);
+		final long deadline= getDeadline(ctx);
+		return executorService.submit(() -> {
+			//虚拟线程阻塞等待许可，不占用平台线程，最多等到SQL执行的截止时间
+			if(!semaphore.tryAcquire(getRemaining(deadline),TimeUnit.MILLISECONDS)){
+				ShardingMetrics.increment(ShardingMetrics.STATEMENT_TIMEOUT);
+				throw new SQLTimeoutException("Wait permit of partition ["+dataSourceName+"] timeout");
+			}
+			try{
+				return task.call();
+			}finally{
+				semaphore.release();
+			}
+		});
+	}
+
+	@Override
+	protected <T> Future<T> submitHedge(ExecuteContext ctx,String dataSourceName,final Callable<T> task){
+		//对冲查询同样占用分片的并发许可，没有空闲许可时放弃对冲，不排队等待
+		final Semaphore semaphore= getSemaphore(dataSourceName);
+		if(!semaphore.tryAcquire()){
+			throw new RejectedExecutionException("no permit of partition ["+dataSourceName+"] for hedge read");
+		}
+		try{
+			return executorService.submit(() -> {
+				try{
+					return task.call();
+				}finally{
+					semaphore.release();
+				}
+			});
+		}catch(RejectedExecutionException e){
+			semaphore.release();
+			throw e;
+		}
+	}
+
+	private Semaphore getSemaphore(String dataSourceName){
+		Semaphore semaphore= permits.get(dataSourceName);
+		if(semaphore== null){
+			Semaphore existing= permits.putIfAbsent(dataSourceName, semaphore= new Semaphore(concurrency,true));
+			if(existing!= null){
+				return existing;
+			}
+			if(logger.isInfoEnabled()){
+				logger.info("init virtual thread permits of partition ["+dataSourceName+"]: "+concurrency);
+			}
+		}
+		return semaphore;
+	}
+
+	@Override
+	public void destroy() throws Exception {
+		executorService.shutdownNow();
+	}
+}
@@ -0,0 +1,168 @@
+package io.anyway.sherlock.testcase.executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.anyway.sherlock.executor.ExecuteContext;
+import io.anyway.sherlock.executor.support.VirtualThreadExecuteProcessorSupport;
+
+import java.lang.reflect.Proxy;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class VirtualThreadExecuteProcessorTest {
+
+    private HedgeableProcessor processor;
+
+    @Before
+    public void setUp() throws Exception {
+        processor = new HedgeableProcessor();
+        processor.setConcurrency(2);
+        processor.setTimeout(5);
+        processor.afterPropertiesSet();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        processor.destroy();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void concurrencyIsRequired() throws Exception {
+        new VirtualThreadExecuteProcessorSupport().afterPropertiesSet();
+    }
+
+    @Test
+    public void boundRunningTasksPerPartition() throws Exception {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger peak = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+        List<Future<Void>> futures = new ArrayList<Future<Void>>();
+        for (int i = 0; i < 6; i++) {
+            futures.add(processor.submit(context(0), "ds_0", new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    release.await();
+                    running.decrementAndGet();
+                    return null;
+                }
+            }));
+        }
+        // 其他分片的许可互不影响
+        assertEquals("ds_1", processor.submit(context(0), "ds_1", () -> "ds_1").get(1, TimeUnit.SECONDS));
+        TimeUnit.MILLISECONDS.sleep(200);
+        assertEquals(2, running.get());
+        release.countDown();
+        for (Future<Void> each : futures) {
+            each.get(1, TimeUnit.SECONDS);
+        }
+        assertEquals(2, peak.get());
+    }
+
+    @Test
+    public void waitPermitUntilDeadline() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        occupy("ds_0", 2, release);
+        long begin = System.currentTimeMillis();
+        Future<String> future = processor.submit(context(System.currentTimeMillis() + 300), "ds_0", () -> "late");
+        try {
+            future.get(2, TimeUnit.SECONDS);
+            fail("permit should not be acquired");
+        } catch (final ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof SQLTimeoutException);
+        }
+        assertTrue(System.currentTimeMillis() - begin < 2000);
+        release.countDown();
+    }
+
+    @Test
+    public void rejectHedgeWithoutPermit() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        occupy("ds_0", 2, release);
+        try {
+            processor.hedge("ds_0", () -> "hedge");
+            fail("hedge should be rejected");
+        } catch (final RejectedExecutionException ex) {
+            // 没有空闲许可时不排队等待
+        }
+        release.countDown();
+        // 许可释放后可以对冲
+        TimeUnit.MILLISECONDS.sleep(100);
+        assertEquals("hedge", processor.hedge("ds_0", () -> "hedge").get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void hedgeReleasesPermit() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            assertEquals("hedge", processor.hedge("ds_0", () -> "hedge").get(1, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void destroyInterruptsRunningTasks() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        Future<Void> future = processor.submit(context(0), "ds_0", new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                started.countDown();
+                TimeUnit.SECONDS.sleep(10);
+                return null;
+            }
+        });
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+        processor.destroy();
+        try {
+            future.get(1, TimeUnit.SECONDS);
+            fail("task should be interrupted");
+        } catch (final ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof InterruptedException);
+        }
+        try {
+            processor.submit(context(0), "ds_0", () -> "closed");
+            fail("destroyed processor should reject tasks");
+        } catch (final RejectedExecutionException ex) {
+            // 销毁后不再接受任务
+        }
+    }
+
+    private void occupy(final String dataSourceName, final int count, final CountDownLatch release) throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(count);
+        for (int i = 0; i < count; i++) {
+            processor.submit(context(0), dataSourceName, new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    started.countDown();
+                    release.await();
+                    return null;
+                }
+            });
+        }
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+    }
+
+    private static ExecuteContext context(final long deadline) {
+        return (ExecuteContext) Proxy.newProxyInstance(VirtualThreadExecuteProcessorTest.class.getClassLoader(), new Class<?>[] {ExecuteContext.class},
+                (proxy, method, args) -> "getDeadline".equals(method.getName()) ? Long.valueOf(deadline) : null);
+    }
+
+    private static final class HedgeableProcessor extends VirtualThreadExecuteProcessorSupport {
+
+        <T> Future<T> hedge(final String dataSourceName, final Callable<T> task) {
+            return submitHedge(context(0), dataSourceName, task);
+        }
+    }
+}